@@ -0,0 +1,529 @@
+package aQute.lib.filter;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A filter that is parsed once into a tree of terms. It matches like
+ * {@link Filter} but does not parse the filter string on every match, and
+ * the value of a term is converted once to the type of the attribute it is
+ * compared with, for example a version, instead of on every comparison. The
+ * attributes are looked up directly in the map.
+ * <p>
+ * The filters are shared, use {@link #compile(String)} to get the filter for
+ * a string. A filter that is not valid does not match anything, like
+ * {@link Filter}.
+ * <p>
+ * This class is thread safe.
+ */
+public class CompiledFilter {
+	private final static int						MAX_FILTERS	= 4096;
+	private final static Map<String,CompiledFilter>	filters		= new ConcurrentHashMap<String,CompiledFilter>();
+	private final static Map<String,CompiledFilter>	extended	= new ConcurrentHashMap<String,CompiledFilter>();
+	final static char								WILDCARD	= 65535;
+
+	private final String							filter;
+	private final Term								term;
+	private final String							error;
+
+	/*
+	 * A parsed (sub) expression
+	 */
+	static abstract class Term {
+		abstract boolean match(Map< ? , ? > map);
+	}
+
+	static class And extends Term {
+		final Term[] terms;
+
+		And(List<Term> terms) {
+			this.terms = terms.toArray(new Term[terms.size()]);
+		}
+
+		@Override
+		boolean match(Map< ? , ? > map) {
+			for (Term t : terms) {
+				if (!t.match(map))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	static class Or extends Term {
+		final Term[] terms;
+
+		Or(List<Term> terms) {
+			this.terms = terms.toArray(new Term[terms.size()]);
+		}
+
+		@Override
+		boolean match(Map< ? , ? > map) {
+			for (Term t : terms) {
+				if (t.match(map))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	static class Not extends Term {
+		final Term term;
+
+		Not(Term term) {
+			this.term = term;
+		}
+
+		@Override
+		boolean match(Map< ? , ? > map) {
+			return !term.match(map);
+		}
+	}
+
+	/*
+	 * The value of a term converted to a type. A value that cannot be
+	 * converted is null.
+	 */
+	static class Operand {
+		final Class< ? >	type;
+		final Object		value;
+
+		Operand(Class< ? > type, Object value) {
+			this.type = type;
+			this.value = value;
+		}
+	}
+
+	static class Simple extends Term {
+		final String		key;
+		final int			op;
+		final String		value;
+		final boolean		presence;
+		final boolean		wildcard;
+		final String		approximate;
+		volatile Operand	operand;
+
+		Simple(String key, int op, String value) {
+			this.key = key;
+			this.op = op;
+			this.value = value;
+			this.presence = op == Filter.EQ && value.length() == 1 && value.charAt(0) == WILDCARD;
+			this.wildcard = value.indexOf(WILDCARD) >= 0;
+			this.approximate = op == Filter.APPROX ? fixupString(value) : null;
+		}
+
+		@Override
+		boolean match(Map< ? , ? > map) {
+			return compare(map.get(key));
+		}
+
+		boolean compare(Object obj) {
+			if (obj == null)
+				return false;
+			if (presence)
+				return true;
+
+			if (obj instanceof String)
+				return compareString((String) obj);
+			if (obj instanceof Character)
+				return compareString(obj.toString());
+
+			if (obj instanceof Collection< ? >) {
+				for (Object x : (Collection< ? >) obj) {
+					if (compare(x))
+						return true;
+				}
+				return false;
+			}
+
+			Class< ? > type = obj.getClass();
+			if (type.isArray()) {
+				for (int i = 0, l = Array.getLength(obj); i < l; i++) {
+					if (compare(Array.get(obj, i)))
+						return true;
+				}
+				return false;
+			}
+
+			Object source = getOperand(type);
+			if (source == null)
+				return false;
+
+			try {
+				if (obj instanceof Boolean) {
+					if (op != Filter.EQ)
+						return false;
+					return source.equals(obj);
+				}
+
+				if (op == Filter.EQ && !isNumber(type))
+					return source.equals(obj);
+
+				@SuppressWarnings("unchecked")
+				Comparable<Object> a = (Comparable<Object>) source;
+				return compareSign(op, a.compareTo(obj));
+			} catch (Exception e) {
+				return false;
+			}
+		}
+
+		/*
+		 * The value is converted once for the type of the attribute. An
+		 * attribute usually has the same type in all capabilities, so the
+		 * last conversion is kept.
+		 */
+		private Object getOperand(Class< ? > type) {
+			Operand o = operand;
+			if (o == null || o.type != type) {
+				o = new Operand(type, convert(type));
+				operand = o;
+			}
+			return o.value;
+		}
+
+		private Object convert(Class< ? > type) {
+			try {
+				if (type == Long.class)
+					return Long.valueOf(value);
+				if (type == Integer.class)
+					return Integer.valueOf(value);
+				if (type == Short.class)
+					return Short.valueOf(value);
+				if (type == Byte.class)
+					return Byte.valueOf(value);
+				if (type == Double.class)
+					return Double.valueOf(value);
+				if (type == Float.class)
+					return Float.valueOf(value);
+				if (type == Boolean.class)
+					return Boolean.valueOf(value);
+				if (type == BigInteger.class)
+					return new BigInteger(value);
+				if (type == BigDecimal.class)
+					return new BigDecimal(value);
+
+				Constructor< ? > constructor = type.getConstructor(String.class);
+				return constructor.newInstance(value);
+			} catch (Exception e) {
+				return null;
+			}
+		}
+
+		private boolean compareString(String s) {
+			switch (op) {
+				case Filter.EQ :
+					return wildcard ? patSubstr(s, value) : value.equals(s);
+				case Filter.APPROX :
+					return approximate.equals(fixupString(s));
+				default :
+					return compareSign(op, value.compareTo(s));
+			}
+		}
+	}
+
+	private CompiledFilter(String filter, Term term, String error) {
+		this.filter = filter;
+		this.term = term;
+		this.error = error;
+	}
+
+	/**
+	 * Answer the compiled filter for a filter string.
+	 *
+	 * @param filter the filter
+	 * @return the compiled filter, never null
+	 * @throws IllegalArgumentException if the filter is null or empty
+	 */
+	public static CompiledFilter compile(String filter) throws IllegalArgumentException {
+		return compile(filter, false);
+	}
+
+	/**
+	 * Answer the compiled filter for a filter string.
+	 *
+	 * @param filter the filter
+	 * @param extended if the extended operators {@code !=}, {@code <} and
+	 *            {@code >} can be used, see {@link ExtendedFilter}
+	 * @return the compiled filter, never null
+	 * @throws IllegalArgumentException if the filter is null or empty
+	 */
+	public static CompiledFilter compile(String filter, boolean extended) throws IllegalArgumentException {
+		if (filter == null || filter.length() == 0)
+			throw new IllegalArgumentException("Null query");
+
+		Map<String,CompiledFilter> cache = extended ? CompiledFilter.extended : filters;
+		CompiledFilter f = cache.get(filter);
+		if (f == null) {
+			f = parse(filter, extended);
+			if (cache.size() >= MAX_FILTERS)
+				cache.clear();
+			cache.put(filter, f);
+		}
+		return f;
+	}
+
+	/**
+	 * Match the filter against a map of attributes.
+	 *
+	 * @param map the attributes
+	 * @return true if the filter is valid and matches
+	 */
+	public boolean matchMap(Map< ? , ? > map) {
+		return term != null && term.match(map);
+	}
+
+	/**
+	 * Answer the reason the filter is not valid.
+	 *
+	 * @return the error or null if the filter is valid
+	 */
+	public String verify() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return filter;
+	}
+
+	private static CompiledFilter parse(String filter, boolean extended) {
+		Parser parser = new Parser(filter, extended);
+		try {
+			Term term = parser.parse();
+			return new CompiledFilter(filter, term, null);
+		} catch (IllegalArgumentException e) {
+			return new CompiledFilter(filter, null, e.getMessage());
+		}
+	}
+
+	/*
+	 * Parses the same syntax as the query of Filter and fails in the same
+	 * places.
+	 */
+	static class Parser {
+		final String	filter;
+		final boolean	extended;
+		int				n;
+
+		Parser(String filter, boolean extended) {
+			this.filter = filter;
+			this.extended = extended;
+		}
+
+		Term parse() {
+			Term term = doQuery();
+			if (n < filter.length())
+				error(Filter.Query.GARBAGE);
+			return term;
+		}
+
+		private Term doQuery() {
+			if (filter.length() - n < 3 || !prefix("("))
+				error(Filter.Query.MALFORMED);
+
+			Term term;
+			switch (filter.charAt(n)) {
+				case '&' :
+					term = new And(doList());
+					break;
+				case '|' :
+					term = new Or(doList());
+					break;
+				case '!' :
+					skip();
+					if (!startsWith('('))
+						error(Filter.Query.SUBEXPR);
+					term = new Not(doQuery());
+					break;
+				default :
+					term = doSimple();
+					break;
+			}
+
+			if (!prefix(")"))
+				error(Filter.Query.MALFORMED);
+			return term;
+		}
+
+		private List<Term> doList() {
+			skip();
+			if (!startsWith('('))
+				error(Filter.Query.EMPTY);
+			List<Term> terms = new ArrayList<Term>();
+			do {
+				terms.add(doQuery());
+			} while (startsWith('('));
+			return terms;
+		}
+
+		private void skip() {
+			do {
+				n++;
+			} while (n < filter.length() && Character.isWhitespace(filter.charAt(n)));
+		}
+
+		private boolean startsWith(char c) {
+			return n < filter.length() && filter.charAt(n) == c;
+		}
+
+		private boolean prefix(String pre) {
+			if (!filter.startsWith(pre, n))
+				return false;
+			n += pre.length();
+			return true;
+		}
+
+		private Term doSimple() {
+			String key = getAttr();
+
+			int op = 0;
+			if (prefix("="))
+				op = Filter.EQ;
+			else if (prefix("<="))
+				op = Filter.LE;
+			else if (prefix(">="))
+				op = Filter.GE;
+			else if (prefix("~="))
+				op = Filter.APPROX;
+			else if (extended && prefix("!="))
+				op = Filter.NEQ;
+			else if (extended && prefix(">"))
+				op = Filter.GT;
+			else if (extended && prefix("<"))
+				op = Filter.LT;
+			else
+				error(Filter.Query.OPERATOR);
+
+			return new Simple(key, op, getValue());
+		}
+
+		private String getAttr() {
+			int start = n;
+			int len = filter.length();
+			label: for (; n < len; n++) {
+				switch (filter.charAt(n)) {
+					case '(' :
+					case ')' :
+					case '<' :
+					case '>' :
+					case '=' :
+					case '~' :
+					case '*' :
+					case '\\' :
+						break label;
+				}
+			}
+			return filter.substring(start, n);
+		}
+
+		private String getValue() {
+			StringBuilder sb = new StringBuilder();
+			int len = filter.length();
+			label: for (; n < len; n++) {
+				char c = filter.charAt(n);
+				switch (c) {
+					case '(' :
+					case ')' :
+						break label;
+					case '*' :
+						sb.append(WILDCARD);
+						break;
+					case '\\' :
+						if (n == len - 1)
+							break label;
+						sb.append(filter.charAt(++n));
+						break;
+					default :
+						sb.append(c);
+						break;
+				}
+			}
+			return sb.toString();
+		}
+
+		private void error(String m) throws IllegalArgumentException {
+			throw new IllegalArgumentException(m + " " + filter.substring(n));
+		}
+	}
+
+	static boolean isNumber(Class< ? > type) {
+		return type == Long.class || type == Integer.class || type == Short.class || type == Byte.class
+				|| type == Double.class || type == Float.class || type == BigInteger.class
+				|| type == BigDecimal.class;
+	}
+
+	static boolean compareSign(int op, int cmp) {
+		switch (op) {
+			case Filter.LE :
+				return cmp >= 0;
+			case Filter.GE :
+				return cmp <= 0;
+			case Filter.EQ :
+				return cmp == 0;
+			case Filter.NEQ :
+				return cmp != 0;
+			case Filter.LT :
+				return cmp > 0;
+			case Filter.GT :
+				return cmp < 0;
+			default : /* APPROX */
+				return cmp == 0;
+		}
+	}
+
+	static String fixupString(String s) {
+		StringBuilder sb = new StringBuilder();
+		int len = s.length();
+		boolean isStart = true;
+		boolean isWhite = false;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (Character.isWhitespace(c)) {
+				isWhite = true;
+			} else {
+				if (!isStart && isWhite)
+					sb.append(' ');
+				if (Character.isUpperCase(c))
+					c = Character.toLowerCase(c);
+				sb.append(c);
+				isStart = false;
+				isWhite = false;
+			}
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * Match a string against a pattern where the wildcard matches any sequence
+	 * of characters. When a later part does not match, the last wildcard is
+	 * retried one character further.
+	 */
+	static boolean patSubstr(String s, String pat) {
+		int si = 0, pi = 0;
+		int star = -1, mark = 0;
+		int sl = s.length(), pl = pat.length();
+		while (si < sl) {
+			if (pi < pl && pat.charAt(pi) == WILDCARD) {
+				star = pi++;
+				mark = si;
+			} else if (pi < pl && pat.charAt(pi) == s.charAt(si)) {
+				pi++;
+				si++;
+			} else if (star >= 0) {
+				pi = star + 1;
+				si = ++mark;
+			} else
+				return false;
+		}
+		while (pi < pl && pat.charAt(pi) == WILDCARD)
+			pi++;
+		return pi == pl;
+	}
+}
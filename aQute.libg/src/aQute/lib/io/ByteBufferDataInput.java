@@ -0,0 +1,248 @@
+package aQute.lib.io;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link DataInput} that reads directly from a {@link ByteBuffer}. The
+ * buffer can be a heap buffer or a memory mapped file. Skipping bytes is just
+ * a position change and modified UTF-8 strings are decoded straight from the
+ * buffer, also at an absolute position so that a caller can defer the decoding
+ * until the string is actually needed.
+ */
+public class ByteBufferDataInput implements DataInput {
+	private final ByteBuffer bb;
+
+	/**
+	 * Read from a buffer. The buffer is used from its current position to its
+	 * limit, the position and limit of the given buffer are not modified.
+	 *
+	 * @param bb the buffer to read from
+	 */
+	public ByteBufferDataInput(ByteBuffer bb) {
+		this.bb = bb.slice();
+		this.bb.order(ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * Answer the current position, relative to the start of the buffer.
+	 */
+	public int position() {
+		return bb.position();
+	}
+
+	/**
+	 * Answer the number of remaining bytes.
+	 */
+	public int remaining() {
+		return bb.remaining();
+	}
+
+	/**
+	 * Answer a view on the next length bytes and skip them. The content is
+	 * shared, not copied.
+	 *
+	 * @param length the number of bytes
+	 * @return a big endian buffer with the given number of bytes
+	 */
+	public ByteBuffer slice(int length) throws IOException {
+		ensure(length);
+		ByteBuffer slice = bb.slice();
+		slice.limit(length);
+		slice.order(ByteOrder.BIG_ENDIAN);
+		bb.position(bb.position() + length);
+		return slice;
+	}
+
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		ensure(len);
+		bb.get(b, off, len);
+	}
+
+	public int skipBytes(int n) {
+		int skip = Math.max(0, Math.min(n, bb.remaining()));
+		bb.position(bb.position() + skip);
+		return skip;
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public byte readByte() throws IOException {
+		try {
+			return bb.get();
+		} catch (BufferUnderflowException e) {
+			throw eof(e);
+		}
+	}
+
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	public short readShort() throws IOException {
+		try {
+			return bb.getShort();
+		} catch (BufferUnderflowException e) {
+			throw eof(e);
+		}
+	}
+
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	public char readChar() throws IOException {
+		return (char) readShort();
+	}
+
+	public int readInt() throws IOException {
+		try {
+			return bb.getInt();
+		} catch (BufferUnderflowException e) {
+			throw eof(e);
+		}
+	}
+
+	public long readLong() throws IOException {
+		try {
+			return bb.getLong();
+		} catch (BufferUnderflowException e) {
+			throw eof(e);
+		}
+	}
+
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	public String readLine() throws IOException {
+		if (!bb.hasRemaining())
+			return null;
+
+		StringBuilder sb = new StringBuilder();
+		while (bb.hasRemaining()) {
+			int c = bb.get() & 0xFF;
+			if (c == '\n')
+				break;
+			if (c == '\r') {
+				if (bb.hasRemaining() && bb.get(bb.position()) == '\n')
+					bb.get();
+				break;
+			}
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	public String readUTF() throws IOException {
+		int length = readUnsignedShort();
+		ensure(length);
+		String s = decodeUTF(bb.position(), length);
+		bb.position(bb.position() + length);
+		return s;
+	}
+
+	/**
+	 * Decode the modified UTF-8 string that starts at the given absolute
+	 * position, the position points at the 2 byte length. The current
+	 * position is not changed.
+	 *
+	 * @param position the position of the length of the string
+	 * @return the decoded string
+	 */
+	public String readUTF(int position) throws IOException {
+		if (position < 0 || position + 2 > bb.limit())
+			throw new EOFException();
+		int length = bb.getShort(position) & 0xFFFF;
+		if (position + 2 + length > bb.limit())
+			throw new EOFException();
+		return decodeUTF(position + 2, length);
+	}
+
+	private String decodeUTF(int offset, int length) throws UTFDataFormatException {
+		char[] chars = new char[length];
+		int count = 0;
+		int end = offset + length;
+		int i = offset;
+
+		// fast path for the usual ASCII names
+		while (i < end) {
+			int c = bb.get(i);
+			if (c < 0)
+				break;
+			chars[count++] = (char) c;
+			i++;
+		}
+
+		while (i < end) {
+			int c = bb.get(i) & 0xFF;
+			switch (c >> 4) {
+				case 0 :
+				case 1 :
+				case 2 :
+				case 3 :
+				case 4 :
+				case 5 :
+				case 6 :
+				case 7 :
+					chars[count++] = (char) c;
+					i++;
+					break;
+
+				case 12 :
+				case 13 : {
+					if (i + 2 > end)
+						throw new UTFDataFormatException("malformed input: partial character at end");
+					int c2 = bb.get(i + 1);
+					if ((c2 & 0xC0) != 0x80)
+						throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+					chars[count++] = (char) (((c & 0x1F) << 6) | (c2 & 0x3F));
+					i += 2;
+					break;
+				}
+
+				case 14 : {
+					if (i + 3 > end)
+						throw new UTFDataFormatException("malformed input: partial character at end");
+					int c2 = bb.get(i + 1);
+					int c3 = bb.get(i + 2);
+					if (((c2 & 0xC0) != 0x80) || ((c3 & 0xC0) != 0x80))
+						throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+					chars[count++] = (char) (((c & 0x0F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F));
+					i += 3;
+					break;
+				}
+
+				default :
+					throw new UTFDataFormatException("malformed input around byte " + (i - offset));
+			}
+		}
+		return new String(chars, 0, count);
+	}
+
+	private void ensure(int length) throws EOFException {
+		if (length > bb.remaining())
+			throw new EOFException();
+	}
+
+	private static EOFException eof(BufferUnderflowException e) {
+		EOFException eof = new EOFException();
+		eof.initCause(e);
+		return eof;
+	}
+}
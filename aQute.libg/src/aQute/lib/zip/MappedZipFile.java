@@ -0,0 +1,485 @@
+package aQute.lib.zip;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Calendar;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * A read only zip file that is memory mapped. Opening the file only locates
+ * the central directory, the central directory is indexed when an entry is
+ * looked up for the first time. The index is a hash table of entry numbers
+ * and the names stay as bytes in the mapped file, a name is only decoded when
+ * it is asked for. Reading a single entry, for example the manifest, from a
+ * large jar therefore does not create an object per entry.
+ * <p>
+ * Only files smaller than 2Gb can be mapped. The entries can be read from
+ * several threads.
+ */
+public class MappedZipFile implements Closeable {
+	private final static int	LOCSIG				= 0x04034b50;
+	private final static int	CENSIG				= 0x02014b50;
+	private final static int	ENDSIG				= 0x06054b50;
+	private final static int	ZIP64_ENDSIG		= 0x06064b50;
+	private final static int	ZIP64_LOCSIG		= 0x07064b50;
+	private final static int	ZIP64_EXTID			= 0x0001;
+	private final static int	ENDHDR				= 22;
+	private final static int	LOCHDR				= 30;
+	private final static int	CENHDR				= 46;
+	private final static long	ZIP64_MAGIC			= 0xFFFFFFFFL;
+	private final static int	ZIP64_MAGICCOUNT	= 0xFFFF;
+
+	private final File			file;
+	private ByteBuffer			buffer;
+	private final int			cenOffset;
+	private final int			cenSize;
+	private final int			count;
+
+	/*
+	 * The position of the central directory header of every entry and an
+	 * open addressing hash table of entry numbers + 1 on the name bytes.
+	 */
+	private int[]				headers;
+	private int[]				table;
+
+	public MappedZipFile(File file) throws IOException {
+		this.file = file;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new ZipException("Zip file is too large to map " + file);
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			raf.close();
+		}
+
+		try {
+			int end = findEnd();
+			long entries = buffer.getShort(end + 10) & 0xFFFF;
+			long cenSize = buffer.getInt(end + 12) & ZIP64_MAGIC;
+			long cenOffset = buffer.getInt(end + 16) & ZIP64_MAGIC;
+
+			if ((entries == ZIP64_MAGICCOUNT || cenSize == ZIP64_MAGIC || cenOffset == ZIP64_MAGIC) && end >= 20
+					&& buffer.getInt(end - 20) == ZIP64_LOCSIG) {
+				long end64 = buffer.getLong(end - 20 + 8);
+				if (end64 < 0 || end64 + 56 > buffer.limit() || buffer.getInt((int) end64) != ZIP64_ENDSIG)
+					throw new ZipException("Invalid zip64 end of central directory record in " + file);
+				entries = buffer.getLong((int) end64 + 32);
+				cenSize = buffer.getLong((int) end64 + 40);
+				cenOffset = buffer.getLong((int) end64 + 48);
+			}
+			if (cenOffset + cenSize > buffer.limit() || entries > cenSize / CENHDR)
+				throw new ZipException("Invalid central directory in " + file);
+
+			this.count = (int) entries;
+			this.cenSize = (int) cenSize;
+			this.cenOffset = (int) cenOffset;
+		} catch (RuntimeException e) {
+			throw invalid(e);
+		}
+	}
+
+	/**
+	 * Answer the number of entries.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Answer the number of the entry with the given name.
+	 *
+	 * @param name the name of the entry
+	 * @return the number of the entry or -1 if there is no such entry
+	 */
+	public int getEntry(String name) throws IOException {
+		ByteBuffer bb;
+		int[] headers;
+		int[] table;
+		synchronized (this) {
+			table = index();
+			headers = this.headers;
+			bb = this.buffer;
+		}
+		byte[] bytes = name.getBytes("UTF-8");
+		int mask = table.length - 1;
+		for (int i = hash(bytes) & mask;; i = (i + 1) & mask) {
+			int n = table[i] - 1;
+			if (n < 0)
+				return -1;
+			if (nameEquals(bb, headers[n], bytes))
+				return n;
+		}
+	}
+
+	/**
+	 * Answer the name of an entry.
+	 *
+	 * @param n the number of the entry
+	 */
+	public String getName(int n) throws IOException {
+		int h = header(n);
+		ByteBuffer bb = buffer();
+		return decode(bb, h + CENHDR, bb.getShort(h + 28) & 0xFFFF);
+	}
+
+	/**
+	 * Answer the entry with its method, time, CRC, sizes, extra data and
+	 * comment.
+	 *
+	 * @param n the number of the entry
+	 */
+	public ZipEntry getZipEntry(int n) throws IOException {
+		int h = header(n);
+		ByteBuffer bb = buffer();
+		int nameLength = bb.getShort(h + 28) & 0xFFFF;
+		int extraLength = bb.getShort(h + 30) & 0xFFFF;
+		int commentLength = bb.getShort(h + 32) & 0xFFFF;
+
+		ZipEntry entry = new ZipEntry(decode(bb, h + CENHDR, nameLength));
+		int method = bb.getShort(h + 10) & 0xFFFF;
+		if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)
+			throw new ZipException("Unsupported compression method " + method + " for " + entry.getName());
+		entry.setMethod(method);
+		entry.setTime(javaTime(bb.getInt(h + 12) & ZIP64_MAGIC));
+		entry.setCrc(bb.getInt(h + 16) & ZIP64_MAGIC);
+		entry.setCompressedSize(compressedSize(n));
+		entry.setSize(size(n));
+		if (extraLength > 0) {
+			byte[] extra = new byte[extraLength];
+			get(bb, h + CENHDR + nameLength, extra);
+			entry.setExtra(extra);
+		}
+		if (commentLength > 0)
+			entry.setComment(decode(bb, h + CENHDR + nameLength + extraLength, commentLength));
+		return entry;
+	}
+
+	/**
+	 * Answer if the entry is a directory.
+	 *
+	 * @param n the number of the entry
+	 */
+	public boolean isDirectory(int n) throws IOException {
+		int h = header(n);
+		ByteBuffer bb = buffer();
+		int nameLength = bb.getShort(h + 28) & 0xFFFF;
+		return nameLength > 0 && bb.get(h + CENHDR + nameLength - 1) == '/';
+	}
+
+	/**
+	 * Answer the uncompressed size of the entry.
+	 *
+	 * @param n the number of the entry
+	 */
+	public long size(int n) throws IOException {
+		int h = header(n);
+		long size = buffer().getInt(h + 24) & ZIP64_MAGIC;
+		if (size == ZIP64_MAGIC)
+			size = zip64(h, 0);
+		return size;
+	}
+
+	/**
+	 * Answer the data of the entry as it is stored in the file. For a
+	 * {@link ZipEntry#DEFLATED} entry this is the compressed data. The buffer
+	 * shares the mapping with this file.
+	 *
+	 * @param n the number of the entry
+	 */
+	public ByteBuffer getData(int n) throws IOException {
+		try {
+			int h = header(n);
+			ByteBuffer bb = buffer();
+			long offset = bb.getInt(h + 42) & ZIP64_MAGIC;
+			if (offset == ZIP64_MAGIC)
+				offset = zip64(h, 2);
+			long csize = compressedSize(n);
+			if (offset + LOCHDR > bb.limit() || bb.getInt((int) offset) != LOCSIG)
+				throw new ZipException("Invalid local header for " + getName(n) + " in " + file);
+
+			long start = offset + LOCHDR + (bb.getShort((int) offset + 26) & 0xFFFF)
+					+ (bb.getShort((int) offset + 28) & 0xFFFF);
+			if (start + csize > bb.limit())
+				throw new ZipException("Invalid size for " + getName(n) + " in " + file);
+
+			ByteBuffer data = bb.duplicate();
+			data.position((int) start);
+			data.limit((int) (start + csize));
+			return data.slice();
+		} catch (RuntimeException e) {
+			throw invalid(e);
+		}
+	}
+
+	/**
+	 * Answer a stream on the uncompressed content of the entry.
+	 *
+	 * @param n the number of the entry
+	 */
+	public InputStream getInputStream(int n) throws IOException {
+		ByteBuffer data = getData(n);
+		int method = buffer().getShort(header(n) + 10) & 0xFFFF;
+		switch (method) {
+			case ZipEntry.STORED :
+				return new BufferInputStream(data);
+
+			case ZipEntry.DEFLATED : {
+				final Inflater inflater = new Inflater(true);
+				return new InflaterInputStream(new BufferInputStream(data), inflater,
+						(int) Math.min(Math.max(data.remaining(), 64), 8192)) {
+					private boolean	eof;
+					private boolean	closed;
+
+					/*
+					 * The inflater needs an extra dummy byte in nowrap mode
+					 */
+					@Override
+					protected void fill() throws IOException {
+						if (eof)
+							throw new EOFException("Unexpected end of zip entry");
+						len = in.read(buf, 0, buf.length);
+						if (len == -1) {
+							buf[0] = 0;
+							len = 1;
+							eof = true;
+						}
+						inflater.setInput(buf, 0, len);
+					}
+
+					@Override
+					public void close() throws IOException {
+						if (!closed) {
+							closed = true;
+							inflater.end();
+							super.close();
+						}
+					}
+				};
+			}
+
+			default :
+				throw new ZipException("Unsupported compression method " + method + " for " + getName(n));
+		}
+	}
+
+	/*
+	 * Read the entry straight from the mapping, the data is not copied.
+	 */
+	private static class BufferInputStream extends InputStream {
+		private final ByteBuffer bb;
+
+		BufferInputStream(ByteBuffer bb) {
+			this.bb = bb;
+		}
+
+		@Override
+		public int read() {
+			return bb.hasRemaining() ? bb.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!bb.hasRemaining())
+				return -1;
+			len = Math.min(len, bb.remaining());
+			bb.get(b, off, len);
+			return len;
+		}
+
+		@Override
+		public long skip(long n) {
+			int skip = (int) Math.min(Math.max(n, 0), bb.remaining());
+			bb.position(bb.position() + skip);
+			return skip;
+		}
+
+		@Override
+		public int available() {
+			return bb.remaining();
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Release the mapping. The memory is unmapped when the buffer is garbage
+	 * collected.
+	 */
+	public synchronized void close() {
+		buffer = null;
+		headers = null;
+		table = null;
+	}
+
+	@Override
+	public String toString() {
+		return "MappedZipFile[" + file + "]";
+	}
+
+	private synchronized ByteBuffer buffer() throws IOException {
+		if (buffer == null)
+			throw new IOException("Zip file is closed " + file);
+		return buffer;
+	}
+
+	private synchronized int[] index() throws IOException {
+		ByteBuffer bb = buffer();
+		if (table != null)
+			return table;
+
+		try {
+			int[] headers = new int[count];
+			int size = Integer.highestOneBit(Math.max(count, 1) * 2) * 2;
+			int[] table = new int[size];
+			int mask = size - 1;
+			int h = cenOffset;
+			int end = cenOffset + cenSize;
+			for (int n = 0; n < count; n++) {
+				if (h + CENHDR > end || bb.getInt(h) != CENSIG)
+					throw new ZipException("Invalid central directory header in " + file);
+				int nameLength = bb.getShort(h + 28) & 0xFFFF;
+				headers[n] = h;
+
+				int i = hash(bb, h + CENHDR, nameLength) & mask;
+				while (table[i] != 0)
+					i = (i + 1) & mask;
+				table[i] = n + 1;
+
+				h += CENHDR + nameLength + (bb.getShort(h + 30) & 0xFFFF) + (bb.getShort(h + 32) & 0xFFFF);
+			}
+			this.headers = headers;
+			this.table = table;
+			return table;
+		} catch (RuntimeException e) {
+			throw invalid(e);
+		}
+	}
+
+	private synchronized int header(int n) throws IOException {
+		index();
+		if (n < 0 || n >= count)
+			throw new IndexOutOfBoundsException("No entry " + n + " in " + file);
+		return headers[n];
+	}
+
+	private long compressedSize(int n) throws IOException {
+		int h = header(n);
+		long csize = buffer().getInt(h + 20) & ZIP64_MAGIC;
+		if (csize == ZIP64_MAGIC)
+			csize = zip64(h, 1);
+		return csize;
+	}
+
+	/*
+	 * Answer a value from the zip64 extra field, the field has the values
+	 * that did not fit in the header in the order size (0), compressed size
+	 * (1) and offset (2).
+	 */
+	private long zip64(int h, int field) throws IOException {
+		ByteBuffer bb = buffer();
+		int nameLength = bb.getShort(h + 28) & 0xFFFF;
+		int start = h + CENHDR + nameLength;
+		int end = start + (bb.getShort(h + 30) & 0xFFFF);
+		while (start + 4 <= end) {
+			int id = bb.getShort(start) & 0xFFFF;
+			int sz = bb.getShort(start + 2) & 0xFFFF;
+			if (id == ZIP64_EXTID) {
+				int n = start + 4;
+				if (field > 0 && (bb.getInt(h + 24) & ZIP64_MAGIC) == ZIP64_MAGIC)
+					n += 8;
+				if (field > 1 && (bb.getInt(h + 20) & ZIP64_MAGIC) == ZIP64_MAGIC)
+					n += 8;
+				if (n + 8 <= start + 4 + sz)
+					return bb.getLong(n);
+				break;
+			}
+			start += 4 + sz;
+		}
+		throw new ZipException("Missing zip64 extra field in " + file);
+	}
+
+	private int findEnd() throws ZipException {
+		int limit = buffer.limit();
+		int stop = Math.max(0, limit - ENDHDR - 0xFFFF);
+		for (int i = limit - ENDHDR; i >= stop; i--) {
+			if (buffer.getInt(i) == ENDSIG && i + ENDHDR + (buffer.getShort(i + 20) & 0xFFFF) <= limit)
+				return i;
+		}
+		throw new ZipException("No end of central directory record in " + file);
+	}
+
+	private static boolean nameEquals(ByteBuffer bb, int h, byte[] name) {
+		if ((bb.getShort(h + 28) & 0xFFFF) != name.length)
+			return false;
+		for (int i = 0; i < name.length; i++) {
+			if (bb.get(h + CENHDR + i) != name[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(byte[] bytes) {
+		int hash = 0;
+		for (int i = 0; i < bytes.length; i++)
+			hash = 31 * hash + bytes[i];
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int hash(ByteBuffer bb, int offset, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++)
+			hash = 31 * hash + bb.get(offset + i);
+		return hash ^ (hash >>> 16);
+	}
+
+	private static void get(ByteBuffer bb, int offset, byte[] bytes) {
+		ByteBuffer d = bb.duplicate();
+		d.position(offset);
+		d.get(bytes);
+	}
+
+	private static String decode(ByteBuffer bb, int offset, int length) throws UnsupportedEncodingException {
+		byte[] bytes = new byte[length];
+		get(bb, offset, bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private ZipException invalid(RuntimeException e) {
+		ZipException ze = new ZipException("Invalid zip file " + file + ": " + e);
+		ze.initCause(e);
+		return ze;
+	}
+
+	/*
+	 * Convert the MS-DOS date and time in the default time zone to a Java
+	 * time, the inverse of ZipWriter.dosTime.
+	 */
+	static long javaTime(long dosTime) {
+		Calendar c = Calendar.getInstance();
+		c.clear();
+		c.set((int) ((dosTime >> 25) & 0x7f) + 1980, (int) ((dosTime >> 21) & 0x0f) - 1,
+				(int) ((dosTime >> 16) & 0x1f), (int) ((dosTime >> 11) & 0x1f), (int) ((dosTime >> 5) & 0x3f),
+				(int) ((dosTime << 1) & 0x3e));
+		return c.getTimeInMillis();
+	}
+}
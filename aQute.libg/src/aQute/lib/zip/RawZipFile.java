@@ -0,0 +1,179 @@
+package aQute.lib.zip;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Provides access to the compressed data of the entries in a zip file. The
+ * central directory is read once to find the local headers of the entries.
+ * The data of an entry is answered as it is stored in the file, so that it
+ * can be written to another zip file with a {@link ZipWriter} without
+ * inflating and deflating it again.
+ * <p>
+ * The reads use absolute positions on the file channel and can be done from
+ * several threads.
+ */
+public class RawZipFile implements Closeable {
+	private final static int	LOCSIG				= 0x04034b50;
+	private final static int	CENSIG				= 0x02014b50;
+	private final static int	ENDSIG				= 0x06054b50;
+	private final static int	ZIP64_ENDSIG		= 0x06064b50;
+	private final static int	ZIP64_LOCSIG		= 0x07064b50;
+	private final static int	ZIP64_EXTID			= 0x0001;
+	private final static int	ENDHDR				= 22;
+	private final static int	LOCHDR				= 30;
+	private final static int	CENHDR				= 46;
+	private final static long	ZIP64_MAGIC			= 0xFFFFFFFFL;
+	private final static int	ZIP64_MAGICCOUNT	= 0xFFFF;
+
+	private final RandomAccessFile	file;
+	private final FileChannel		channel;
+	private final Map<String,Long>	offsets				= new HashMap<String,Long>();
+
+	public RawZipFile(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		try {
+			readCentralDirectory();
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (RuntimeException e) {
+			close();
+			throw new ZipException("Invalid zip file " + file + ": " + e);
+		}
+	}
+
+	/**
+	 * Answer the data of an entry as it is stored in the file. The entry must
+	 * come from a {@link java.util.zip.ZipFile} on the same file so that its
+	 * compressed size is known.
+	 *
+	 * @param entry the entry
+	 * @return the stored data or null if the entry is not in this file, its
+	 *         compressed size is unknown or its local header is not valid
+	 */
+	public byte[] read(ZipEntry entry) throws IOException {
+		Long offset = offsets.get(entry.getName());
+		long csize = entry.getCompressedSize();
+		if (offset == null || csize < 0 || csize > Integer.MAX_VALUE - 8)
+			return null;
+
+		ByteBuffer header = read(offset, LOCHDR);
+		if (header.getInt(0) != LOCSIG)
+			return null;
+
+		long position = offset + LOCHDR + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+		return read(position, (int) csize).array();
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private void readCentralDirectory() throws IOException {
+		long size = channel.size();
+		int length = (int) Math.min(size, ENDHDR + 0xFFFF);
+		ByteBuffer tail = read(size - length, length);
+
+		int end = -1;
+		for (int i = length - ENDHDR; i >= 0; i--) {
+			if (tail.getInt(i) == ENDSIG && i + ENDHDR + (tail.getShort(i + 20) & 0xFFFF) <= length) {
+				end = i;
+				break;
+			}
+		}
+		if (end < 0)
+			throw new ZipException("No end of central directory record");
+
+		long count = tail.getShort(end + 10) & 0xFFFF;
+		long cenSize = tail.getInt(end + 12) & ZIP64_MAGIC;
+		long cenOffset = tail.getInt(end + 16) & ZIP64_MAGIC;
+		long endPosition = size - length + end;
+
+		if (count == ZIP64_MAGICCOUNT || cenSize == ZIP64_MAGIC || cenOffset == ZIP64_MAGIC) {
+			if (endPosition >= 20) {
+				ByteBuffer locator = read(endPosition - 20, 20);
+				if (locator.getInt(0) == ZIP64_LOCSIG) {
+					ByteBuffer end64 = read(locator.getLong(8), 56);
+					if (end64.getInt(0) != ZIP64_ENDSIG)
+						throw new ZipException("Invalid zip64 end of central directory record");
+					count = end64.getLong(32);
+					cenSize = end64.getLong(40);
+					cenOffset = end64.getLong(48);
+				}
+			}
+		}
+		if (cenSize > Integer.MAX_VALUE)
+			throw new ZipException("Central directory is too large");
+
+		ByteBuffer cen = read(cenOffset, (int) cenSize);
+		int n = 0;
+		for (long i = 0; i < count; i++) {
+			if (cen.getInt(n) != CENSIG)
+				throw new ZipException("Invalid central directory header");
+
+			long csize = cen.getInt(n + 20) & ZIP64_MAGIC;
+			long usize = cen.getInt(n + 24) & ZIP64_MAGIC;
+			int nameLength = cen.getShort(n + 28) & 0xFFFF;
+			int extraLength = cen.getShort(n + 30) & 0xFFFF;
+			int commentLength = cen.getShort(n + 32) & 0xFFFF;
+			long offset = cen.getInt(n + 42) & ZIP64_MAGIC;
+
+			String name = new String(cen.array(), n + CENHDR, nameLength, "UTF-8");
+			if (offset == ZIP64_MAGIC)
+				offset = zip64Offset(cen, n + CENHDR + nameLength, extraLength, usize == ZIP64_MAGIC,
+						csize == ZIP64_MAGIC);
+			offsets.put(name, offset);
+
+			n += CENHDR + nameLength + extraLength + commentLength;
+		}
+	}
+
+	/*
+	 * The zip64 extra field holds the values that did not fit in the header,
+	 * in the order size, compressed size and offset.
+	 */
+	private static long zip64Offset(ByteBuffer cen, int start, int length, boolean size, boolean csize)
+			throws ZipException {
+		int end = start + length;
+		while (start + 4 <= end) {
+			int id = cen.getShort(start) & 0xFFFF;
+			int sz = cen.getShort(start + 2) & 0xFFFF;
+			if (id == ZIP64_EXTID) {
+				int n = start + 4;
+				if (size)
+					n += 8;
+				if (csize)
+					n += 8;
+				if (n + 8 <= start + 4 + sz)
+					return cen.getLong(n);
+				break;
+			}
+			start += 4 + sz;
+		}
+		throw new ZipException("Missing zip64 offset");
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer bb = ByteBuffer.allocate(length);
+		bb.order(ByteOrder.LITTLE_ENDIAN);
+		while (bb.hasRemaining()) {
+			int n = channel.read(bb, position + bb.position());
+			if (n < 0)
+				throw new EOFException();
+		}
+		bb.flip();
+		return bb;
+	}
+}
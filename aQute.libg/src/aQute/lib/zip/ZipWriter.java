@@ -0,0 +1,290 @@
+package aQute.lib.zip;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip file from entries of which the data is already prepared. In
+ * contrast to {@link java.util.zip.ZipOutputStream}, the data of a
+ * {@link ZipEntry#DEFLATED} entry is written as is, it must already be
+ * compressed. This allows the entries to be compressed concurrently, or to be
+ * copied from another zip file without inflating and deflating them again.
+ * <p>
+ * The entries are written in the order of the calls to
+ * {@link #putEntry(ZipEntry, byte[], int, int)}. The central directory is
+ * written by {@link #finish()}, this does not close the underlying stream.
+ */
+public class ZipWriter {
+	private final static int	LOCSIG				= 0x04034b50;
+	private final static int	CENSIG				= 0x02014b50;
+	private final static int	ENDSIG				= 0x06054b50;
+	private final static int	ZIP64_ENDSIG		= 0x06064b50;
+	private final static int	ZIP64_LOCSIG		= 0x07064b50;
+	private final static int	ZIP64_EXTID			= 0x0001;
+	private final static int	EFS					= 0x0800;
+	private final static long	ZIP64_MAGIC			= 0xFFFFFFFFL;
+	private final static int	ZIP64_MAGICCOUNT	= 0xFFFF;
+
+	private final OutputStream	out;
+	private final List<Written>	written				= new ArrayList<Written>();
+	private final Set<String>	names				= new HashSet<String>();
+	private final byte[]		buffer				= new byte[64];
+	private long				offset;
+	private boolean				finished;
+
+	private static class Written {
+		final byte[]	name;
+		final byte[]	extra;
+		final byte[]	comment;
+		final int		method;
+		final long		time;
+		final long		crc;
+		final long		csize;
+		final long		size;
+		final long		offset;
+
+		Written(byte[] name, byte[] extra, byte[] comment, int method, long time, long crc, long csize, long size,
+				long offset) {
+			this.name = name;
+			this.extra = extra;
+			this.comment = comment;
+			this.method = method;
+			this.time = time;
+			this.crc = crc;
+			this.csize = csize;
+			this.size = size;
+			this.offset = offset;
+		}
+	}
+
+	public ZipWriter(OutputStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Write an entry. For a {@link ZipEntry#STORED} entry the data is the
+	 * content and the CRC and sizes are calculated. For a
+	 * {@link ZipEntry#DEFLATED} entry the data is the compressed content and
+	 * the entry must have its CRC and (uncompressed) size set. The time,
+	 * extra data and comment of the entry are used as is.
+	 *
+	 * @param entry the entry, stored if the method is not set
+	 * @param data the stored or compressed data
+	 * @param off the offset of the data
+	 * @param len the length of the data
+	 * @throws ZipException if the entry is a duplicate or incomplete
+	 */
+	public void putEntry(ZipEntry entry, byte[] data, int off, int len) throws IOException {
+		if (finished)
+			throw new ZipException("ZipWriter is already finished");
+
+		String name = entry.getName();
+		if (!names.add(name))
+			throw new ZipException("duplicate entry: " + name);
+
+		int method = entry.getMethod() == -1 ? ZipEntry.STORED : entry.getMethod();
+		long crc;
+		long size;
+		switch (method) {
+			case ZipEntry.STORED :
+				CRC32 crc32 = new CRC32();
+				crc32.update(data, off, len);
+				crc = crc32.getValue();
+				size = len;
+				break;
+
+			case ZipEntry.DEFLATED :
+				crc = entry.getCrc();
+				size = entry.getSize();
+				if (crc == -1 || size == -1)
+					throw new ZipException("Compressed entry " + name + " requires a CRC and a size");
+				break;
+
+			default :
+				throw new ZipException("Invalid compression method for " + name + ": " + method);
+		}
+		if (size >= ZIP64_MAGIC)
+			throw new ZipException("Entry " + name + " is too large");
+
+		long time = entry.getTime();
+		if (time == -1)
+			time = System.currentTimeMillis();
+
+		byte[] nameBytes = name.getBytes("UTF-8");
+		byte[] extra = entry.getExtra();
+		if (extra == null)
+			extra = new byte[0];
+		String comment = entry.getComment();
+		byte[] commentBytes = comment == null ? new byte[0] : comment.getBytes("UTF-8");
+		if (nameBytes.length > 0xFFFF || extra.length > 0xFFFF || commentBytes.length > 0xFFFF)
+			throw new ZipException("Name, extra or comment of " + name + " is too long");
+
+		Written w = new Written(nameBytes, extra, commentBytes, method, time, crc, len, size, offset);
+		written.add(w);
+
+		int n = 0;
+		n = int32(n, LOCSIG);
+		n = int16(n, version(method));
+		n = int16(n, EFS);
+		n = int16(n, method);
+		n = int32(n, dosTime(time));
+		n = int32(n, crc);
+		n = int32(n, len);
+		n = int32(n, size);
+		n = int16(n, nameBytes.length);
+		n = int16(n, extra.length);
+		write(buffer, 0, n);
+		write(nameBytes, 0, nameBytes.length);
+		write(extra, 0, extra.length);
+		write(data, off, len);
+	}
+
+	/**
+	 * Write a directory entry.
+	 *
+	 * @param name the name of the directory, ending in a '/'
+	 * @param time the modification time or -1
+	 */
+	public void putDirectory(String name, long time) throws IOException {
+		ZipEntry entry = new ZipEntry(name);
+		entry.setMethod(ZipEntry.STORED);
+		if (time != -1)
+			entry.setTime(time);
+		putEntry(entry, new byte[0], 0, 0);
+	}
+
+	/**
+	 * Write the central directory. The underlying stream is flushed but not
+	 * closed.
+	 */
+	public void finish() throws IOException {
+		if (finished)
+			return;
+		finished = true;
+
+		long start = offset;
+		for (Written w : written) {
+			boolean zip64 = w.offset >= ZIP64_MAGIC;
+			byte[] extra = w.extra;
+			if (zip64) {
+				byte[] x = new byte[extra.length + 12];
+				int n = 0;
+				x[n++] = (byte) ZIP64_EXTID;
+				x[n++] = (byte) (ZIP64_EXTID >> 8);
+				x[n++] = 8;
+				x[n++] = 0;
+				for (int i = 0; i < 8; i++)
+					x[n++] = (byte) (w.offset >> (i * 8));
+				System.arraycopy(extra, 0, x, n, extra.length);
+				extra = x;
+			}
+
+			int n = 0;
+			n = int32(n, CENSIG);
+			n = int16(n, zip64 ? 45 : version(w.method));
+			n = int16(n, zip64 ? 45 : version(w.method));
+			n = int16(n, EFS);
+			n = int16(n, w.method);
+			n = int32(n, dosTime(w.time));
+			n = int32(n, w.crc);
+			n = int32(n, w.csize);
+			n = int32(n, w.size);
+			n = int16(n, w.name.length);
+			n = int16(n, extra.length);
+			n = int16(n, w.comment.length);
+			n = int16(n, 0); // disk number start
+			n = int16(n, 0); // internal file attributes
+			n = int32(n, 0); // external file attributes
+			n = int32(n, zip64 ? ZIP64_MAGIC : w.offset);
+			write(buffer, 0, n);
+			write(w.name, 0, w.name.length);
+			write(extra, 0, extra.length);
+			write(w.comment, 0, w.comment.length);
+		}
+		long size = offset - start;
+		int count = written.size();
+
+		if (count >= ZIP64_MAGICCOUNT || start >= ZIP64_MAGIC || size >= ZIP64_MAGIC) {
+			long end = offset;
+			int n = 0;
+			n = int32(n, ZIP64_ENDSIG);
+			n = int64(n, 44); // size of the remaining record
+			n = int16(n, 45); // version made by
+			n = int16(n, 45); // version needed
+			n = int32(n, 0); // number of this disk
+			n = int32(n, 0); // disk with the central directory
+			n = int64(n, count);
+			n = int64(n, count);
+			n = int64(n, size);
+			n = int64(n, start);
+			write(buffer, 0, n);
+
+			n = 0;
+			n = int32(n, ZIP64_LOCSIG);
+			n = int32(n, 0); // disk with the zip64 end record
+			n = int64(n, end);
+			n = int32(n, 1); // total number of disks
+			write(buffer, 0, n);
+		}
+
+		int n = 0;
+		n = int32(n, ENDSIG);
+		n = int16(n, 0); // number of this disk
+		n = int16(n, 0); // disk with the central directory
+		n = int16(n, Math.min(count, ZIP64_MAGICCOUNT));
+		n = int16(n, Math.min(count, ZIP64_MAGICCOUNT));
+		n = int32(n, Math.min(size, ZIP64_MAGIC));
+		n = int32(n, Math.min(start, ZIP64_MAGIC));
+		n = int16(n, 0); // comment length
+		write(buffer, 0, n);
+		out.flush();
+	}
+
+	private void write(byte[] data, int off, int len) throws IOException {
+		out.write(data, off, len);
+		offset += len;
+	}
+
+	private int int16(int n, int v) {
+		buffer[n++] = (byte) v;
+		buffer[n++] = (byte) (v >> 8);
+		return n;
+	}
+
+	private int int32(int n, long v) {
+		n = int16(n, (int) (v & 0xFFFF));
+		return int16(n, (int) ((v >> 16) & 0xFFFF));
+	}
+
+	private int int64(int n, long v) {
+		n = int32(n, v & ZIP64_MAGIC);
+		return int32(n, (v >>> 32) & ZIP64_MAGIC);
+	}
+
+	private static int version(int method) {
+		return method == ZipEntry.DEFLATED ? 20 : 10;
+	}
+
+	/*
+	 * Convert a Java time to the MS-DOS date and time in the default time
+	 * zone, the same conversion as ZipOutputStream.
+	 */
+	static long dosTime(long time) {
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(time);
+		int year = c.get(Calendar.YEAR);
+		if (year < 1980)
+			return (1 << 21) | (1 << 16);
+		return ((long) (year - 1980) << 25) | ((c.get(Calendar.MONTH) + 1) << 21)
+				| (c.get(Calendar.DAY_OF_MONTH) << 16) | (c.get(Calendar.HOUR_OF_DAY) << 11)
+				| (c.get(Calendar.MINUTE) << 5) | (c.get(Calendar.SECOND) >> 1);
+	}
+}
@@ -0,0 +1,196 @@
+package aQute.libg.cryptography;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import aQute.lib.io.IO;
+import aQute.lib.io.IOConstants;
+
+/**
+ * Calculates a number of digests over the same bytes. A file is read only
+ * once, also when the manifest of a JAR must be extracted from it. The bytes
+ * can be written to the digester or read through a stream from
+ * {@link #stream(InputStream)}. The digests are calculated when the first
+ * digest is asked for, after that no more bytes can be added.
+ */
+public class MultiDigester extends OutputStream {
+	private final static int		BUFFER_SIZE	= IOConstants.PAGE_SIZE * 16;
+
+	private final String[]			algorithms;
+	private final MessageDigest[]	mds;
+	private byte[][]				digests;
+	private Manifest				manifest;
+
+	public MultiDigester(String... algorithms) throws NoSuchAlgorithmException {
+		this.algorithms = algorithms;
+		this.mds = new MessageDigest[algorithms.length];
+		for (int i = 0; i < algorithms.length; i++)
+			mds[i] = MessageDigest.getInstance(algorithms[i]);
+	}
+
+	@Override
+	public void write(byte[] buffer, int offset, int length) throws IOException {
+		update(buffer, offset, length);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		check();
+		for (MessageDigest md : mds)
+			md.update((byte) b);
+	}
+
+	private void update(byte[] buffer, int offset, int length) {
+		check();
+		for (MessageDigest md : mds)
+			md.update(buffer, offset, length);
+	}
+
+	private void check() {
+		if (digests != null)
+			throw new IllegalStateException("The digests have already been calculated");
+	}
+
+	/**
+	 * Answer a stream that adds the bytes read from the given stream to the
+	 * digests.
+	 */
+	public InputStream stream(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0)
+					MultiDigester.this.write(b);
+				return b;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				int size = super.read(buffer, offset, length);
+				if (size > 0)
+					update(buffer, offset, size);
+				return size;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+				int size = read(buffer, 0, buffer.length);
+				return size < 0 ? 0 : size;
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
+
+	public MultiDigester from(InputStream in) throws IOException {
+		IO.drain(stream(in));
+		return this;
+	}
+
+	public MultiDigester from(File file) throws IOException {
+		return from(new FileInputStream(file));
+	}
+
+	public MultiDigester from(byte[] data) {
+		update(data, 0, data.length);
+		return this;
+	}
+
+	/**
+	 * Digest a file and extract its manifest when it is a JAR. The manifest is
+	 * read from the start of the stream that is digested. Only when the
+	 * manifest is not one of the first entries the central directory is used
+	 * to find it. A file that is not a JAR is digested without a manifest.
+	 */
+	public MultiDigester fromJar(File file) throws IOException {
+		InputStream in = stream(new FileInputStream(file));
+		JarInputStream jin = null;
+		try {
+			try {
+				jin = new JarInputStream(in, false);
+				manifest = jin.getManifest();
+			} catch (IOException e) {
+				// Not a JAR, the rest of the file is digested anyway
+			}
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (in.read(buffer) >= 0)
+				continue;
+		} finally {
+			if (jin != null)
+				IO.close(jin);
+			IO.close(in);
+		}
+
+		if (manifest == null) {
+			try {
+				ZipFile zf = new ZipFile(file);
+				try {
+					ZipEntry entry = zf.getEntry("META-INF/MANIFEST.MF");
+					if (entry != null)
+						manifest = new Manifest(zf.getInputStream(entry));
+				} finally {
+					zf.close();
+				}
+			} catch (ZipException e) {
+				// Not a JAR
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * The manifest found by {@link #fromJar(File)} or null.
+	 */
+	public Manifest getManifest() {
+		return manifest;
+	}
+
+	public String[] getAlgorithms() {
+		return algorithms.clone();
+	}
+
+	/**
+	 * Answer the digest for one of the algorithms of this digester.
+	 */
+	public byte[] digest(String algorithm) {
+		if (digests == null) {
+			byte[][] result = new byte[mds.length][];
+			for (int i = 0; i < mds.length; i++)
+				result[i] = mds[i].digest();
+			digests = result;
+		}
+		for (int i = 0; i < algorithms.length; i++) {
+			if (algorithms[i].equalsIgnoreCase(algorithm))
+				return digests[i].clone();
+		}
+		throw new IllegalArgumentException("No digest calculated for " + algorithm);
+	}
+
+	public SHA1 getSHA1() {
+		return new SHA1(digest(SHA1.ALGORITHM));
+	}
+
+	public SHA256 getSHA256() {
+		return new SHA256(digest(SHA256.ALGORITHM));
+	}
+
+	public MD5 getMD5() {
+		return new MD5(digest(MD5.ALGORITHM));
+	}
+}
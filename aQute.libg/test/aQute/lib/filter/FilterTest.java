@@ -1,5 +1,10 @@
 package aQute.lib.filter;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import junit.framework.TestCase;
 
 public class FilterTest extends TestCase {
@@ -18,6 +23,87 @@ public class FilterTest extends TestCase {
 		verify("(willResolve=false)");
 	}
 
+	public void testCompiledFilter() throws Exception {
+		Map<String,Object> map = new HashMap<String,Object>();
+		map.put("name", "org.example.api");
+		map.put("version", new V("1.2.3"));
+		map.put("count", 42L);
+		map.put("size", 7);
+		map.put("ratio", new BigDecimal("1.50"));
+		map.put("flag", Boolean.TRUE);
+		map.put("text", "  Hello   World ");
+		map.put("list", Arrays.asList("a", "b", "c"));
+		map.put("array", new int[] {
+				1, 2, 3
+		});
+		map.put("versions", Arrays.asList(new V("1.0.0"), new V("2.0.0")));
+		map.put("c", 'x');
+
+		String[] filters = {
+				"(name=org.example.api)", "(name=org.example.*)", "(name=*api)", "(name=org*ex*api)", "(name=*)",
+				"(name=org.example.impl)", "(name=org\\.example\\.api)", "(name>=org)", "(name<=org)", "(name~=ORG.EXAMPLE.API)",
+				"(version=1.2.3)", "(version>=1.2)", "(version<=1.2)", "(version=1.2.3.qualifier)", "(version=bad)",
+				"(&(version>=1.0.0)(!(version>=2.0.0)))", "(&(version>=1.0.0) (!(version>=2.0.0)))",
+				"(count=42)", "(count>=50)", "(count<=50)", "(count=4*)", "(count=x)", "(size=7)", "(size>=8)",
+				"(ratio=1.5)", "(ratio>=1.2)", "(flag=true)", "(flag=TRUE)", "(flag>=true)", "(text~=hello world)",
+				"(list=b)", "(list=d)", "(list=*)", "(array=2)", "(array>=3)", "(array=5)", "(versions=2.0.0)",
+				"(versions>=3)", "(c=x)", "(c>=y)", "(missing=*)", "(!(missing=*))", "(|(missing=1)(size=7))",
+				"(| (missing=1)(size=7))", "(&(name=org.example.api)(|(count=1)(count=42)))", "(&)", "(|)", "(!)",
+				"name=x", "(name=x", "(name=x))", "(name=x)(size=7)", "(name)", "(name=x\\", "(=x)", "( name=x)",
+				"(name!=x)", "(size>7)", "(size<8)"
+		};
+
+		for (String f : filters) {
+			for (boolean extended : new boolean[] {
+					false, true
+			}) {
+				boolean expected = new Filter(f, extended).matchMap(map);
+				CompiledFilter compiled = CompiledFilter.compile(f, extended);
+				assertEquals(f, expected, compiled.matchMap(map));
+				assertEquals(f, expected, compiled.matchMap(map));
+				assertEquals(f, new Filter(f, extended).verify() == null, compiled.verify() == null);
+			}
+		}
+
+		assertSame(CompiledFilter.compile("(a=b)"), CompiledFilter.compile("(a=b)"));
+		try {
+			CompiledFilter.compile("");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public static class V implements Comparable<V> {
+		final int[] parts = new int[3];
+
+		public V(String s) {
+			String[] split = s.split("\\.");
+			if (split.length > 3)
+				throw new IllegalArgumentException(s);
+			for (int i = 0; i < split.length; i++)
+				parts[i] = Integer.parseInt(split[i]);
+		}
+
+		public int compareTo(V o) {
+			for (int i = 0; i < 3; i++) {
+				if (parts[i] != o.parts[i])
+					return parts[i] - o.parts[i];
+			}
+			return 0;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof V && compareTo((V) o) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(parts);
+		}
+	}
+
 	private void verify(String string) throws IllegalArgumentException, Exception {
 		assertNull("Invalid filter", new Filter(string).verify());
 
@@ -0,0 +1,116 @@
+package aQute.lib.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+public class MappedZipFileTest extends TestCase {
+
+	public void testEntries() throws Exception {
+		byte[] content = "Hello World, Hello World, Hello World".getBytes("UTF-8");
+		File file = File.createTempFile("mappedzip", ".zip");
+		try {
+			long time = System.currentTimeMillis() / 2000 * 2000;
+			ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(file));
+			try {
+				ZipEntry dir = new ZipEntry("a/");
+				zout.putNextEntry(dir);
+				zout.closeEntry();
+				ZipEntry deflated = new ZipEntry("a/deflated.txt");
+				deflated.setTime(time);
+				deflated.setExtra(new byte[] {
+						(byte) 0xFE, (byte) 0xCA, 0, 0
+				});
+				zout.putNextEntry(deflated);
+				zout.write(content);
+				zout.closeEntry();
+
+				CRC32 crc = new CRC32();
+				crc.update(content);
+				ZipEntry stored = new ZipEntry("a/st\u00f6red.txt");
+				stored.setMethod(ZipEntry.STORED);
+				stored.setSize(content.length);
+				stored.setCrc(crc.getValue());
+				zout.putNextEntry(stored);
+				zout.write(content);
+				zout.closeEntry();
+			} finally {
+				zout.close();
+			}
+
+			MappedZipFile zip = new MappedZipFile(file);
+			try {
+				assertEquals(3, zip.size());
+				assertEquals(-1, zip.getEntry("missing"));
+
+				int n = zip.getEntry("a/");
+				assertTrue(n >= 0);
+				assertTrue(zip.isDirectory(n));
+
+				n = zip.getEntry("a/deflated.txt");
+				assertFalse(zip.isDirectory(n));
+				assertEquals("a/deflated.txt", zip.getName(n));
+				assertEquals(content.length, zip.size(n));
+				assertEquals(new String(content, "UTF-8"), new String(read(zip.getInputStream(n)), "UTF-8"));
+				ZipEntry entry = zip.getZipEntry(n);
+				assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+				assertEquals(time, entry.getTime());
+				assertEquals(4, entry.getExtra().length);
+				ByteBuffer data = zip.getData(n);
+				assertEquals(entry.getCompressedSize(), data.remaining());
+
+				n = zip.getEntry("a/st\u00f6red.txt");
+				assertEquals(ZipEntry.STORED, zip.getZipEntry(n).getMethod());
+				assertEquals(new String(content, "UTF-8"), new String(read(zip.getInputStream(n)), "UTF-8"));
+			} finally {
+				zip.close();
+			}
+
+			try {
+				zip.getEntry("a/");
+				fail("Expected the zip file to be closed");
+			} catch (Exception e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testInvalid() throws Exception {
+		File file = File.createTempFile("mappedzip", ".zip");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write("not a zip file".getBytes("UTF-8"));
+			out.close();
+			try {
+				new MappedZipFile(file);
+				fail("Expected a ZipException");
+			} catch (java.util.zip.ZipException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static byte[] read(InputStream in) throws Exception {
+		try {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			int n;
+			while ((n = in.read(buffer)) > 0)
+				bout.write(buffer, 0, n);
+			return bout.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package aQute.lib.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+public class RawZipFileTest extends TestCase {
+
+	public void testCopy() throws Exception {
+		byte[] content = "Hello World, Hello World, Hello World".getBytes("UTF-8");
+		File source = File.createTempFile("rawzip", ".zip");
+		File target = File.createTempFile("rawzip", ".zip");
+		try {
+			ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(source));
+			try {
+				zout.setComment("a comment");
+				zout.putNextEntry(new ZipEntry("a/"));
+				zout.closeEntry();
+				zout.putNextEntry(new ZipEntry("a/b.txt"));
+				zout.write(content);
+				zout.closeEntry();
+			} finally {
+				zout.close();
+			}
+
+			ZipFile in = new ZipFile(source);
+			RawZipFile raw = new RawZipFile(source);
+			FileOutputStream out = new FileOutputStream(target);
+			try {
+				ZipEntry entry = in.getEntry("a/b.txt");
+				byte[] data = raw.read(entry);
+				assertNotNull(data);
+				assertEquals(entry.getCompressedSize(), data.length);
+
+				ZipEntry copy = new ZipEntry(entry.getName());
+				copy.setMethod(entry.getMethod());
+				copy.setCrc(entry.getCrc());
+				copy.setSize(entry.getSize());
+				ZipWriter zip = new ZipWriter(out);
+				zip.putEntry(copy, data, 0, data.length);
+				zip.finish();
+
+				assertNull(raw.read(new ZipEntry("missing")));
+			} finally {
+				out.close();
+				raw.close();
+				in.close();
+			}
+
+			ZipFile zipFile = new ZipFile(target);
+			try {
+				InputStream is = zipFile.getInputStream(zipFile.getEntry("a/b.txt"));
+				try {
+					assertEquals(new String(content, "UTF-8"), new String(read(is), "UTF-8"));
+				} finally {
+					is.close();
+				}
+			} finally {
+				zipFile.close();
+			}
+		} finally {
+			source.delete();
+			target.delete();
+		}
+	}
+
+	private static byte[] read(InputStream in) throws Exception {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			bout.write(buffer, 0, n);
+		return bout.toByteArray();
+	}
+}
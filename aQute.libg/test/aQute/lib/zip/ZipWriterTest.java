@@ -0,0 +1,113 @@
+package aQute.lib.zip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import junit.framework.TestCase;
+
+public class ZipWriterTest extends TestCase {
+
+	public void testStoredAndDeflated() throws Exception {
+		byte[] content = "Hello World, Hello World, Hello World".getBytes("UTF-8");
+
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ZipWriter zip = new ZipWriter(bout);
+		zip.putDirectory("a/", -1);
+		zip.putEntry(new ZipEntry("a/stored.txt"), content, 0, content.length);
+		ZipEntry deflated = new ZipEntry("a/deflated.txt");
+		byte[] compressed = deflate(deflated, content);
+		zip.putEntry(deflated, compressed, 0, compressed.length);
+		zip.finish();
+
+		ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(bout.toByteArray()));
+		try {
+			assertEquals("a/", zin.getNextEntry().getName());
+			assertEquals("a/stored.txt", zin.getNextEntry().getName());
+			assertEquals(new String(content, "UTF-8"), new String(read(zin), "UTF-8"));
+			assertEquals("a/deflated.txt", zin.getNextEntry().getName());
+			assertEquals(new String(content, "UTF-8"), new String(read(zin), "UTF-8"));
+			assertNull(zin.getNextEntry());
+		} finally {
+			zin.close();
+		}
+	}
+
+	public void testDuplicate() throws Exception {
+		ZipWriter zip = new ZipWriter(new ByteArrayOutputStream());
+		zip.putDirectory("a/", -1);
+		try {
+			zip.putDirectory("a/", -1);
+			fail("Expected a ZipException");
+		} catch (ZipException e) {
+			// expected
+		}
+	}
+
+	public void testZip64EntryCount() throws Exception {
+		File file = File.createTempFile("zipwriter", ".zip");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				ZipWriter zip = new ZipWriter(out);
+				for (int i = 0; i < 70000; i++)
+					zip.putEntry(new ZipEntry("e" + i), new byte[0], 0, 0);
+				zip.finish();
+			} finally {
+				out.close();
+			}
+
+			ZipFile zipFile = new ZipFile(file);
+			try {
+				int count = 0;
+				for (Enumeration< ? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); e.nextElement())
+					count++;
+				assertEquals(70000, count);
+				assertNotNull(zipFile.getEntry("e69999"));
+			} finally {
+				zipFile.close();
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static byte[] deflate(ZipEntry entry, byte[] content) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(content);
+			deflater.finish();
+			byte[] buffer = new byte[content.length + 64];
+			int n = deflater.deflate(buffer);
+			byte[] compressed = new byte[n];
+			System.arraycopy(buffer, 0, compressed, 0, n);
+
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			entry.setMethod(ZipEntry.DEFLATED);
+			entry.setCrc(crc.getValue());
+			entry.setSize(content.length);
+			return compressed;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] read(InputStream in) throws Exception {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			bout.write(buffer, 0, n);
+		return bout.toByteArray();
+	}
+}
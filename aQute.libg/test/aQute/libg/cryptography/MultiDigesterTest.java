@@ -0,0 +1,118 @@
+package aQute.libg.cryptography;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class MultiDigesterTest extends TestCase {
+	File tmp;
+
+	@Override
+	protected void setUp() throws Exception {
+		tmp = new File("generated/tmp/test/" + getName());
+		IO.delete(tmp);
+		tmp.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		IO.delete(tmp);
+	}
+
+	public void testDigests() throws Exception {
+		byte[] data = "A plan, a plan, a canal, Panama.".getBytes("UTF-8");
+		MultiDigester digester = new MultiDigester(SHA1.ALGORITHM, SHA256.ALGORITHM, MD5.ALGORITHM).from(data);
+		assertEquals(SHA1.digest(data), digester.getSHA1());
+		assertEquals(SHA256.digest(data), digester.getSHA256());
+		assertEquals(MD5.digest(data), digester.getMD5());
+		assertTrue(Arrays.equals(SHA1.digest(data).digest(), digester.digest("sha-1")));
+
+		try {
+			digester.write(1);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		try {
+			new MultiDigester(SHA1.ALGORITHM).from(data).getSHA256();
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testStream() throws Exception {
+		File file = new File("testresources/unzipped.dat");
+		MultiDigester digester = new MultiDigester(SHA1.ALGORITHM, SHA256.ALGORITHM);
+		InputStream in = digester.stream(IO.stream(file));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			assertEquals('A', in.read());
+			IO.copy(in, out);
+		} finally {
+			in.close();
+		}
+		assertEquals(file.length() - 1, out.size());
+		assertEquals(SHA1.digest(file), digester.getSHA1());
+		assertEquals(SHA256.digest(file), digester.getSHA256());
+	}
+
+	public void testJar() throws Exception {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-SymbolicName", "test");
+		File file = new File(tmp, "test.jar");
+		JarOutputStream jout = new JarOutputStream(new FileOutputStream(file), manifest);
+		try {
+			for (int i = 0; i < 100; i++) {
+				jout.putNextEntry(new ZipEntry("a/" + i + ".txt"));
+				jout.write(("entry " + i).getBytes("UTF-8"));
+				jout.closeEntry();
+			}
+		} finally {
+			jout.close();
+		}
+
+		MultiDigester digester = new MultiDigester(SHA1.ALGORITHM, SHA256.ALGORITHM).fromJar(file);
+		assertEquals("test", digester.getManifest().getMainAttributes().getValue("Bundle-SymbolicName"));
+		assertEquals(SHA1.digest(file), digester.getSHA1());
+		assertEquals(SHA256.digest(file), digester.getSHA256());
+	}
+
+	public void testManifestNotFirst() throws Exception {
+		File file = new File(tmp, "late.jar");
+		ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(file));
+		try {
+			zout.putNextEntry(new ZipEntry("a.txt"));
+			zout.write("a".getBytes("UTF-8"));
+			zout.closeEntry();
+			zout.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+			zout.write("Manifest-Version: 1.0\r\nBundle-SymbolicName: late\r\n\r\n".getBytes("UTF-8"));
+			zout.closeEntry();
+		} finally {
+			zout.close();
+		}
+
+		MultiDigester digester = new MultiDigester(SHA256.ALGORITHM).fromJar(file);
+		assertEquals("late", digester.getManifest().getMainAttributes().getValue("Bundle-SymbolicName"));
+		assertEquals(SHA256.digest(file), digester.getSHA256());
+	}
+
+	public void testNotAJar() throws Exception {
+		File file = new File("testresources/unzipped.dat");
+		MultiDigester digester = new MultiDigester(SHA256.ALGORITHM).fromJar(file);
+		assertNull(digester.getManifest());
+		assertEquals(SHA256.digest(file), digester.getSHA256());
+	}
+}
@@ -33,6 +33,7 @@ import aQute.bnd.differ.Baseline;
 import aQute.bnd.differ.Baseline.BundleInfo;
 import aQute.bnd.differ.Baseline.Info;
 import aQute.bnd.differ.DiffPluginImpl;
+import aQute.bnd.differ.TreeCache;
 import aQute.bnd.header.Attrs;
 import aQute.bnd.header.OSGiHeader;
 import aQute.bnd.header.Parameters;
@@ -52,6 +53,7 @@ import aQute.lib.collections.SortedList;
 import aQute.lib.getopt.Arguments;
 import aQute.lib.getopt.Description;
 import aQute.lib.getopt.Options;
+import aQute.lib.io.IO;
 import aQute.lib.tag.Tag;
 
 /**
@@ -69,6 +71,7 @@ public class BaselineCommands {
 	BaselineCommands(bnd bnd) throws IOException {
 		this.bnd = bnd;
 		this.baseline = new Baseline(bnd, differ);
+		this.baseline.setTreeCache(new TreeCache(IO.getFile("~/.bnd/caches/baseline")));
 	}
 
 	@Description("Compare a newer bundle to a baselined bundle and provide versioning advice")
@@ -108,6 +111,9 @@ public class BaselineCommands {
 						bnd.error("No baseline JAR available. Did you set " + Constants.BASELINE);
 						return;
 					}
+					TreeCache cache = pb.getPlugin(TreeCache.class);
+					if (cache != null)
+						baseline.setTreeCache(cache);
 					try {
 						pb.setProperty(Constants.BASELINE, ""); // do not do
 																// baselining in
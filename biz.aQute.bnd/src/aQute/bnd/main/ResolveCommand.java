@@ -159,6 +159,9 @@ public class ResolveCommand extends Processor {
 		Parameters capabilities();
 
 		boolean all();
+
+		@Description("The number of resources to resolve in parallel, default 1")
+		int threads();
 	}
 
 	public void _validate(ValidateOptions options) throws Exception {
@@ -193,6 +196,7 @@ public class ResolveCommand extends Processor {
 		validator.use(bnd);
 		validator.addRepository(index.toURI());
 		validator.setSystem(system.build());
+		validator.setThreads(options.threads());
 
 		List<Resolution> result = validator.validate();
 		Set<Requirement> done = new HashSet<>();
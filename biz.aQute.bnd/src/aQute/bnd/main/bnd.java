@@ -64,6 +64,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 
+import aQute.bnd.build.BuildScheduler;
 import aQute.bnd.build.Container;
 import aQute.bnd.build.Project;
 import aQute.bnd.build.ProjectLauncher;
@@ -87,6 +88,7 @@ import aQute.bnd.osgi.Analyzer;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Clazz;
 import aQute.bnd.osgi.Clazz.Def;
+import aQute.bnd.osgi.ClazzCache;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Descriptors;
 import aQute.bnd.osgi.Descriptors.PackageRef;
@@ -851,16 +853,57 @@ public class bnd extends Processor {
 
 		@Description("Do full")
 		boolean full();
+
+		@Description("Print the hits and misses of the class cache after the build")
+		boolean cachestats();
+
+		@Description("The number of projects to build in parallel when the workspace is built, default 1")
+		int jobs();
 	}
 
 	@Description("Build a project. This will create the jars defined in the bnd.bnd and sub-builders.")
 	public void _build(final buildoptions opts) throws Exception {
+		Project project = getProject(opts.project());
+		if (project != null) {
+			project.build(opts.test());
+			getInfo(project, project + ": ");
+		} else if (opts.project() != null) {
+			// getProject reported the error unless the project was the
+			// current directory
+			if (isOk())
+				error("Project not found: %s", opts.project());
+			return;
+		} else {
+			Workspace workspace = Workspace.findWorkspace(getBase());
+			if (workspace == null || !workspace.isValid()) {
+				messages.NoValidWorkspace(getBase());
+				return;
+			}
+			ws = workspace;
+			Collection<Project> projects = ws.getAllProjects();
+			if (projects.isEmpty()) {
+				out.println("No projects");
+				return;
+			}
 
-		perProject(opts, new PerProject() {
-			public void doit(Project p) throws Exception {
-				p.build(opts.test());
+			BuildScheduler scheduler = new BuildScheduler(projects);
+			if (!scheduler.getCycles().isEmpty()) {
+				error("Circular dependencies between projects %s", scheduler.getCycles());
+				return;
 			}
-		});
+			scheduler.build(Math.max(1, opts.jobs()), opts.test());
+			for (Project p : scheduler.getOrder())
+				getInfo(p, p + ": ");
+		}
+
+		if (opts.cachestats() && ws != null) {
+			ClazzCache cache = ws.getPlugin(ClazzCache.class);
+			if (cache == null)
+				out.println("No class cache");
+			else
+				out.printf("Class cache %s: %d hits, %d misses%n", cache.getRoot(), cache.getHits(),
+						cache.getMisses());
+		}
 	}
 
 	@Arguments(arg = {})
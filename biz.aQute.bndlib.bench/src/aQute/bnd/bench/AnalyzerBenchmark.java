@@ -0,0 +1,53 @@
+package aQute.bnd.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Manifest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.Constants;
+
+/**
+ * Calculate the manifest of a jar that exports and imports all its packages,
+ * this covers the complete analysis including the uses directives.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AnalyzerBenchmark {
+
+	@Param({
+			Inputs.OSGI_CMPN, Inputs.FELIX
+	})
+	public String	jar;
+
+	@Param({
+			"false", "true"
+	})
+	public String	parallel;
+
+	@Benchmark
+	public Manifest analyze() throws Exception {
+		try (Analyzer analyzer = new Analyzer()) {
+			analyzer.setJar(Inputs.file(jar));
+			analyzer.setProperty(Constants.EXPORT_PACKAGE, "*");
+			analyzer.setProperty(Constants.IMPORT_PACKAGE, "*");
+			analyzer.setProperty(Constants.NOEXTRAHEADERS, "true");
+			analyzer.setProperty(Constants.PARALLELANALYSIS, parallel);
+			return analyzer.calcManifest();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package aQute.bnd.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.ClassDataCollector;
+import aQute.bnd.osgi.Clazz;
+import aQute.bnd.osgi.Resource;
+
+/**
+ * Parse all the class files of a jar, without and with a collector. The
+ * class files are held in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClazzBenchmark {
+
+	@Param({
+			Inputs.OSGI_CMPN, Inputs.FELIX
+	})
+	public String				jar;
+
+	private Analyzer			analyzer;
+	private Map<String,Resource>	classes;
+
+	@Setup
+	public void setup() throws Exception {
+		analyzer = new Analyzer();
+		classes = Inputs.classes(jar);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		analyzer.close();
+	}
+
+	@Benchmark
+	public void parseClassFile(Blackhole bh) throws Exception {
+		for (Map.Entry<String,Resource> entry : classes.entrySet()) {
+			Clazz clazz = new Clazz(analyzer, entry.getKey(), entry.getValue());
+			bh.consume(clazz.parseClassFile());
+		}
+	}
+
+	@Benchmark
+	public void parseClassFileWithCollector(Blackhole bh) throws Exception {
+		ClassDataCollector cd = new ClassDataCollector() {};
+		for (Map.Entry<String,Resource> entry : classes.entrySet()) {
+			Clazz clazz = new Clazz(analyzer, entry.getKey(), entry.getValue());
+			bh.consume(clazz.parseClassFileWithCollector(cd));
+		}
+	}
+}
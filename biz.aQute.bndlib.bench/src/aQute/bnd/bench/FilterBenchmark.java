@@ -0,0 +1,106 @@
+package aQute.bnd.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.osgi.Domain;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.repository.ResourcesRepository;
+import aQute.bnd.osgi.resource.ResourceBuilder;
+import aQute.lib.filter.CompiledFilter;
+import aQute.lib.filter.Filter;
+
+/**
+ * Match the requirements of bundles against the capabilities of the
+ * framework and the compendium, the way a resolver looks for providers. The
+ * filters are matched with the interpreting {@link Filter} that parses the
+ * filter on every match, with a {@link CompiledFilter}, and through the
+ * capability index of a {@link ResourcesRepository}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilterBenchmark {
+	private List<Resource>		providers;
+	private List<Requirement>	requirements;
+	private ResourcesRepository	repository;
+
+	@Setup
+	public void setup() throws Exception {
+		providers = new ArrayList<>();
+		requirements = new ArrayList<>();
+		for (String path : new String[] {
+				Inputs.FELIX, Inputs.OSGI_CMPN, Inputs.JETTY
+		}) {
+			Resource resource = resource(path);
+			providers.add(resource);
+			requirements.addAll(resource.getRequirements(null));
+		}
+		repository = new ResourcesRepository(providers);
+	}
+
+	private static Resource resource(String path) throws Exception {
+		try (Jar jar = new Jar(Inputs.file(path))) {
+			ResourceBuilder rb = new ResourceBuilder();
+			rb.addManifest(Domain.domain(jar.getManifest()));
+			return rb.build();
+		}
+	}
+
+	@Benchmark
+	public int interpreted() throws Exception {
+		int matches = 0;
+		for (Requirement requirement : requirements) {
+			String filter = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+			for (Resource resource : providers) {
+				for (Capability capability : resource.getCapabilities(requirement.getNamespace())) {
+					if (filter == null || new Filter(filter).matchMap(capability.getAttributes()))
+						matches++;
+				}
+			}
+		}
+		return matches;
+	}
+
+	@Benchmark
+	public int compiled() {
+		int matches = 0;
+		for (Requirement requirement : requirements) {
+			String filter = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+			for (Resource resource : providers) {
+				for (Capability capability : resource.getCapabilities(requirement.getNamespace())) {
+					if (filter == null || CompiledFilter.compile(filter).matchMap(capability.getAttributes()))
+						matches++;
+				}
+			}
+		}
+		return matches;
+	}
+
+	@Benchmark
+	public int indexed() {
+		int matches = 0;
+		for (Requirement requirement : requirements)
+			matches += repository.findProvider(requirement).size();
+		return matches;
+	}
+}
@@ -0,0 +1,50 @@
+package aQute.bnd.bench;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import aQute.bnd.osgi.EmbeddedResource;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Resource;
+import aQute.lib.io.IO;
+
+/**
+ * The inputs of the benchmarks are jars from the workspace repository so
+ * that the benchmarks run over realistic content that does not change between
+ * commits. The repository directory can be overridden with the
+ * {@code bench.repo} system property.
+ */
+final class Inputs {
+	final static String	OSGI_CMPN		= "osgi.cmpn/osgi.cmpn-6.0.0.jar";
+	final static String	FELIX			= "org.apache.felix.framework/org.apache.felix.framework-4.4.0.jar";
+	final static String	JETTY			= "org.apache.felix.http.jetty/org.apache.felix.http.jetty-2.0.4.jar";
+
+	private Inputs() {}
+
+	static File file(String path) {
+		File file = IO.getFile(new File(System.getProperty("bench.repo", "../cnf/repo")), path);
+		if (!file.isFile())
+			throw new IllegalArgumentException("No such benchmark input " + file.getAbsolutePath());
+		return file;
+	}
+
+	/**
+	 * Read the class files of a jar into memory so that a benchmark measures
+	 * the processing and not the decompression of the jar.
+	 */
+	static Map<String,Resource> classes(String path) throws Exception {
+		Map<String,Resource> classes = new LinkedHashMap<>();
+		try (Jar jar = new Jar(file(path))) {
+			for (Map.Entry<String,Resource> entry : jar.getResources().entrySet()) {
+				if (!entry.getKey().endsWith(".class"))
+					continue;
+				try (InputStream in = entry.getValue().openInputStream()) {
+					classes.put(entry.getKey(), new EmbeddedResource(IO.read(in), 0));
+				}
+			}
+		}
+		return classes;
+	}
+}
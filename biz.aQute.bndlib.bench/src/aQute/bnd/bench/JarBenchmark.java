@@ -0,0 +1,61 @@
+package aQute.bnd.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import aQute.bnd.osgi.Jar;
+import aQute.lib.io.IO;
+
+/**
+ * Write a jar that was read from a file, the resources are the zip entries of
+ * the original file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JarBenchmark {
+
+	@Param({
+			Inputs.OSGI_CMPN, Inputs.FELIX
+	})
+	public String	jar;
+
+	private Jar		source;
+
+	@Setup
+	public void setup() throws Exception {
+		source = new Jar(Inputs.file(jar));
+	}
+
+	@TearDown
+	public void tearDown() {
+		source.close();
+	}
+
+	@Benchmark
+	public void write() throws Exception {
+		source.write(IO.nullStream);
+	}
+
+	@Benchmark
+	public int read() throws Exception {
+		try (Jar jar = new Jar(Inputs.file(this.jar))) {
+			return jar.getResources().size();
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package aQute.bnd.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import aQute.bnd.osgi.Macro;
+import aQute.bnd.osgi.Processor;
+
+/**
+ * Expand the kind of macros that are common in bnd files: plain property
+ * references, nested references and the built in functions that a build
+ * uses a lot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MacroBenchmark {
+
+	/*
+	 * JMH does not escape braces and commas in the parameters it writes to its
+	 * JSON results, the lines are therefore selected by name
+	 */
+	private static final Map<String,String>	LINES	= new HashMap<>();
+
+	static {
+		LINES.put("reference", "${bsn}-${version}.jar");
+		LINES.put("if", "${if;${version};${versionmask;==;${version}};0.0.0}");
+		LINES.put("replace", "${sort;${replace;${packages};([^,]+);$1.impl}}");
+		LINES.put("filter", "${filter;${packages};.*\\.api}, ${filterout;${packages};.*\\.api}");
+		LINES.put("range", "${range;[==,+);${version}}");
+	}
+
+	@Param({
+			"reference", "if", "replace", "filter", "range"
+	})
+	public String							name;
+
+	private String							line;
+	private Processor						processor;
+	private Macro							macro;
+
+	@Setup
+	public void setup() {
+		processor = new Processor();
+		processor.setProperty("bsn", "biz.aQute.bndlib");
+		processor.setProperty("version", "3.4.0.201701011200");
+		processor.setProperty("packages",
+				"aQute.bnd.api,aQute.bnd.build,aQute.bnd.header,aQute.bnd.osgi,aQute.bnd.service,aQute.bnd.version,aQute.lib.io,aQute.lib.collections");
+		macro = processor.getReplacer();
+		line = LINES.get(name);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		processor.close();
+	}
+
+	@Benchmark
+	public String process() {
+		return macro.process(line);
+	}
+}
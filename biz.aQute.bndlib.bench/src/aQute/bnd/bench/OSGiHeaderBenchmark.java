@@ -0,0 +1,74 @@
+package aQute.bnd.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import aQute.bnd.header.OSGiHeader;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Jar;
+
+/**
+ * Parse the package and capability headers of a real manifest, and parse
+ * and print them again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OSGiHeaderBenchmark {
+	final static String[]	HEADERS	= {
+			Constants.EXPORT_PACKAGE, Constants.IMPORT_PACKAGE, Constants.PROVIDE_CAPABILITY,
+			Constants.REQUIRE_CAPABILITY
+	};
+
+	@Param({
+			Inputs.FELIX, Inputs.JETTY
+	})
+	public String			jar;
+
+	private List<String>	values;
+
+	@Setup
+	public void setup() throws Exception {
+		values = new ArrayList<>();
+		try (Jar jar = new Jar(Inputs.file(this.jar))) {
+			Attributes main = jar.getManifest().getMainAttributes();
+			for (String header : HEADERS) {
+				String value = main.getValue(header);
+				if (value != null)
+					values.add(value);
+			}
+		}
+		if (values.isEmpty())
+			throw new IllegalArgumentException("No headers to parse in " + jar);
+	}
+
+	@Benchmark
+	public void parseHeader(Blackhole bh) {
+		for (String value : values)
+			bh.consume(OSGiHeader.parseHeader(value));
+	}
+
+	@Benchmark
+	public void parseAndPrint(Blackhole bh) {
+		for (String value : values)
+			bh.consume(OSGiHeader.parseHeader(value).toString());
+	}
+}
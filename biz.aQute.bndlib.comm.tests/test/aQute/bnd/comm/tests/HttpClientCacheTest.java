@@ -1,11 +1,19 @@
 package aQute.bnd.comm.tests;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
+import java.net.ServerSocket;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import aQute.bnd.http.HttpClient;
 import aQute.bnd.service.url.State;
@@ -21,6 +29,9 @@ public class HttpClientCacheTest extends TestCase {
 	File			cache	= IO.getFile(tmp, "cache");
 	private Httpbin	httpServer;
 	String			etag;
+	int				flaky;
+	int				resumed;
+	byte[]			content	= new byte[100000];
 
 	/*
 	 * Add a method where we can set the returned etag
@@ -49,6 +60,41 @@ public class HttpClientCacheTest extends TestCase {
 			rsp.content = etag != null ? etag.getBytes(StandardCharsets.UTF_8) : new byte[0];
 			return;
 		}
+
+		/*
+		 * Fails twice with a temporary error
+		 */
+		@SuppressWarnings("unused")
+		public void _flaky(Request rq, Response rsp) throws Exception {
+			if (flaky++ < 2) {
+				rsp.code = HttpURLConnection.HTTP_UNAVAILABLE;
+				rsp.length = 0;
+				return;
+			}
+			rsp.content = "ok".getBytes(StandardCharsets.UTF_8);
+		}
+
+		/*
+		 * Ends the content halfway and closes the connection unless a range
+		 * is requested
+		 */
+		@SuppressWarnings("unused")
+		public InputStream _resume(Request rq, Response rsp) throws Exception {
+			rsp.headers.put("ETag", "\"r1\"");
+			String range = rq.headers.get("Range");
+			if (range != null && "\"r1\"".equals(rq.headers.get("If-Range"))) {
+				resumed++;
+				int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+				rsp.code = HttpURLConnection.HTTP_PARTIAL;
+				rsp.headers.put("Content-Range",
+						"bytes " + start + "-" + (content.length - 1) + "/" + content.length);
+				rsp.content = Arrays.copyOfRange(content, start, content.length);
+				return null;
+			}
+			rsp.headers.put("Connection", "close");
+			rsp.length = content.length;
+			return new ByteArrayInputStream(content, 0, content.length / 2);
+		}
 	}
 
 	public void setUp() throws Exception {
@@ -60,6 +106,110 @@ public class HttpClientCacheTest extends TestCase {
 		httpServer.start();
 	}
 
+	public void testRetry() throws Exception {
+		try (HttpClient client = new HttpClient();) {
+			client.setCache(cache);
+			client.setRetryDelay(10);
+
+			File f = client.build().useCache().go(new URI(httpServer.getBaseURI() + "/flaky"));
+			assertEquals("ok", IO.collect(f));
+			assertEquals(3, flaky);
+		}
+	}
+
+	public void testResume() throws Exception {
+		new Random(1).nextBytes(content);
+		try (HttpClient client = new HttpClient();) {
+			client.setCache(cache);
+			client.setRetryDelay(10);
+
+			File f = client.build().useCache().go(new URI(httpServer.getBaseURI() + "/resume"));
+			assertTrue(Arrays.equals(content, IO.read(f)));
+			assertEquals(1, resumed);
+		}
+	}
+
+	public void testNoRetryOnConnectFailure() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+
+		try (HttpClient client = new HttpClient();) {
+			client.setCache(cache);
+			client.setRetryDelay(60000);
+
+			long start = System.currentTimeMillis();
+			try {
+				client.build().useCache().go(new URI("http://localhost:" + port + "/refused"));
+				fail("Expected a connect failure");
+			} catch (ConnectException e) {
+				// expected
+			}
+			assertTrue("Should not wait for a retry", System.currentTimeMillis() - start < 30000);
+		}
+	}
+
+	public void testPermitHeldUntilClosed() throws Exception {
+		try (final HttpClient client = new HttpClient();) {
+			client.setMaxConnectionsPerHost(1);
+			final URI uri = new URI(httpServer.getBaseURI() + "/flaky");
+			flaky = 2;
+
+			InputStream in = client.build().get(InputStream.class).go(uri);
+			final CountDownLatch done = new CountDownLatch(1);
+			Thread t = new Thread() {
+				@Override
+				public void run() {
+					try {
+						client.build().get(String.class).go(uri);
+						done.countDown();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			t.start();
+			assertFalse("Second request must wait for the first stream", done.await(500, TimeUnit.MILLISECONDS));
+			assertEquals("ok", IO.collect(in));
+			in.close();
+			assertTrue("Second request must run when the stream is closed", done.await(10, TimeUnit.SECONDS));
+		}
+	}
+
+	public void testPermitReleasedWhenConversionFails() throws Exception {
+		try (HttpClient client = new HttpClient();) {
+			client.setMaxConnectionsPerHost(1);
+			client.setPermitTimeout(TimeUnit.MINUTES.toMillis(10));
+			URI uri = new URI(httpServer.getBaseURI() + "/flaky");
+			flaky = 2;
+
+			try {
+				client.build().get(Map.class).go(uri);
+				fail("Expected the content not to be a JSON object");
+			} catch (Exception e) {
+				// expected
+			}
+			assertEquals("ok", client.build().get(String.class).go(uri));
+		}
+	}
+
+	public void testPermitTimeout() throws Exception {
+		try (HttpClient client = new HttpClient();) {
+			client.setMaxConnectionsPerHost(1);
+			client.setPermitTimeout(500);
+			URI uri = new URI(httpServer.getBaseURI() + "/flaky");
+			flaky = 2;
+
+			InputStream in = client.build().get(InputStream.class).go(uri);
+			try {
+				// the open stream holds the only permit
+				assertEquals("ok", client.build().get(String.class).go(uri));
+			} finally {
+				in.close();
+			}
+		}
+	}
+
 	public void tearDown() {
 		IO.delete(tmp);
 	}
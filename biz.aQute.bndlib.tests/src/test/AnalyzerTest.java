@@ -1,15 +1,22 @@
 package test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
@@ -18,12 +25,15 @@ import aQute.bnd.header.Parameters;
 import aQute.bnd.osgi.Analyzer;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Clazz;
+import aQute.bnd.osgi.ClazzCache;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Domain;
+import aQute.bnd.osgi.EmbeddedResource;
 import aQute.bnd.osgi.FileResource;
 import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Packages;
 import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.Resource;
 import aQute.bnd.test.BndTestCase;
 import aQute.lib.io.IO;
 
@@ -987,6 +997,124 @@ public class AnalyzerTest extends BndTestCase {
 		}
 	}
 
+	/**
+	 * Parallel analysis of the bndlib jar must produce the same manifest as
+	 * the serial analysis
+	 */
+	public void testParallelAnalysis() throws Exception {
+		File bndlib = new File(Analyzer.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+		byte[] serial = analyzeManifest(bndlib, "false", threads);
+		assertEquals(Collections.singleton(Thread.currentThread()), threads);
+
+		threads.clear();
+		byte[] parallel = analyzeManifest(bndlib, "4", threads);
+		assertTrue(Arrays.equals(serial, parallel));
+		assertTrue("Expected more than one worker, was " + threads, threads.size() > 1);
+
+		assertTrue(Arrays.equals(serial, analyzeManifest(bndlib, "true", threads)));
+	}
+
+	/*
+	 * Analyze a jar and record the threads that parse its classes. The first
+	 * class a worker parses waits a moment for a second worker so that the
+	 * first worker cannot parse all classes alone.
+	 */
+	private static byte[] analyzeManifest(File file, String parallel, final Set<Thread> threads) throws Exception {
+		final Thread caller = Thread.currentThread();
+		final CountDownLatch second = new CountDownLatch(2);
+		File cache = IO.getFile("generated/tmp/parallelcache");
+		Analyzer a = new Analyzer();
+		try {
+			a.addBasicPlugin(new ClazzCache(cache) {
+				@Override
+				public Clazz parse(Analyzer analyzer, String path, Resource resource) throws Exception {
+					if (threads.add(Thread.currentThread()) && Thread.currentThread() != caller) {
+						second.countDown();
+						second.await(5, TimeUnit.SECONDS);
+					}
+					return super.parse(analyzer, path, resource);
+				}
+			});
+			a.setJar(file);
+			a.setProperty(Constants.PARALLELANALYSIS, parallel);
+			a.setProperty(Constants.NOEXTRAHEADERS, "true");
+			a.setProperty(Constants.EXPORT_PACKAGE, "*");
+			a.setProperty(Constants.IMPORT_PACKAGE, "*");
+			Manifest manifest = a.calcManifest();
+			assertTrue(a.check());
+			assertTrue(a.getClassspace().size() > 100);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Jar.writeManifest(manifest, out);
+			return out.toByteArray();
+		} finally {
+			a.close();
+			IO.delete(cache);
+		}
+	}
+
+	/**
+	 * Reanalyze after a package was removed and a class was changed. Only the
+	 * changed class is parsed again and the manifest is the same as the
+	 * manifest of a full analysis.
+	 */
+	public void testReanalyze() throws Exception {
+		Analyzer a = new Analyzer();
+		Analyzer full = new Analyzer();
+		try {
+			Jar jar = a.setJar(IO.getFile("jar/osgi.jar"));
+			setupReanalyze(a);
+			a.calcManifest();
+			assertTrue(a.getExports().containsFQN("org.osgi.service.log"));
+
+			Map<String,Clazz> before = new HashMap<String,Clazz>();
+			for (Clazz c : a.getClassspace().values())
+				before.put(c.getAbsolutePath(), c);
+
+			Set<String> changed = new HashSet<String>();
+			for (String path : new ArrayList<String>(jar.getResources().keySet())) {
+				if (path.startsWith("org/osgi/service/log/")) {
+					jar.remove(path);
+					changed.add(path);
+				}
+			}
+			String bundle = "org/osgi/framework/Bundle.class";
+			jar.putResource(bundle, new EmbeddedResource(IO.read(jar.getResource(bundle).openInputStream()), 0));
+			changed.add(bundle);
+
+			Manifest manifest = a.calcManifest(changed);
+			assertTrue(a.check());
+			assertFalse(a.getExports().containsFQN("org.osgi.service.log"));
+			assertTrue(a.getExports().containsFQN("org.osgi.framework"));
+
+			for (Clazz c : a.getClassspace().values()) {
+				assertFalse(c.getAbsolutePath(), c.getAbsolutePath().startsWith("org/osgi/service/log/"));
+				if (c.getAbsolutePath().equals(bundle))
+					assertNotSame(before.get(bundle), c);
+				else
+					assertSame(c.getAbsolutePath(), before.get(c.getAbsolutePath()), c);
+			}
+
+			Jar copy = new Jar("copy");
+			copy.setManifest(jar.getManifest());
+			copy.addAll(jar, null);
+			full.setJar(copy);
+			setupReanalyze(full);
+			Manifest expected = full.calcManifest();
+			assertTrue(full.check());
+			assertEquals(expected.getMainAttributes(), manifest.getMainAttributes());
+		} finally {
+			a.close();
+			full.close();
+		}
+	}
+
+	private static void setupReanalyze(Analyzer a) {
+		a.setProperty(Constants.NOEXTRAHEADERS, "true");
+		a.setProperty(Constants.EXPORT_PACKAGE, "*");
+		a.setProperty(Constants.IMPORT_PACKAGE, "*");
+	}
+
 	static void assertNotPresent(Collection< ? > map, String string) {
 		Collection<String> ss = new HashSet<String>();
 		for (Object o : map)
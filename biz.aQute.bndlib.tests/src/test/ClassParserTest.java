@@ -10,7 +10,9 @@ import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -19,10 +21,15 @@ import aQute.bnd.osgi.Analyzer;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.ClassDataCollector;
 import aQute.bnd.osgi.Clazz;
+import aQute.bnd.osgi.Clazz.MethodDef;
+import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Descriptors.PackageRef;
 import aQute.bnd.osgi.FileResource;
 import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.PerClassDataCollector;
+import aQute.bnd.service.AnalyzerPlugin;
 import aQute.bnd.service.Plugin;
+import aQute.bnd.service.classparser.ClassParser;
 import aQute.lib.io.IO;
 import aQute.service.reporter.Reporter;
 import junit.framework.TestCase;
@@ -423,4 +430,91 @@ public class ClassParserTest extends TestCase {
 		assertTrue(set.contains(test));
 		assertTrue(set.contains(testAnnotations));
 	}
+
+	/**
+	 * A class parser plugin gets each class of the class space once and can
+	 * use its collector again as an analyzer plugin.
+	 */
+	static class ScanPlugin implements ClassParser, AnalyzerPlugin {
+		final List<String>	scanned	= new ArrayList<String>();
+		final List<String>	methods	= new ArrayList<String>();
+		ClassDataCollector	collector;
+		ClassDataCollector	found;
+
+		public ClassDataCollector getClassDataCollector(Analyzer analyzer) {
+			return collector = new PerClassDataCollector() {
+				@Override
+				protected void collectors(final Clazz c, List<ClassDataCollector> collectors) {
+					scanned.add(c.getFQN());
+					if (c.getFQN().equals("org.osgi.service.event.Event"))
+						collectors.add(new ClassDataCollector() {
+							@Override
+							public void method(MethodDef defined) {
+								methods.add(defined.getName());
+							}
+						});
+				}
+			};
+		}
+
+		public boolean analyzeJar(Analyzer analyzer) throws Exception {
+			found = analyzer.getClassDataCollector(this);
+			return false;
+		}
+	}
+
+	public void testClassParserScan() throws Exception {
+		ScanPlugin plugin = new ScanPlugin();
+		try (Builder b = new Builder()) {
+			b.addClasspath(IO.getFile("jar/osgi.jar"));
+			b.setProperty("Private-Package", "org.osgi.service.event");
+			b.addBasicPlugin(plugin);
+			b.build();
+			assertTrue(b.check());
+
+			assertNotNull(plugin.collector);
+			assertSame(plugin.collector, plugin.found);
+			assertEquals(b.getClassspace().size(), plugin.scanned.size());
+			assertEquals(new HashSet<String>(plugin.scanned).size(), plugin.scanned.size());
+			assertTrue(plugin.methods.contains("getTopic"));
+
+			// a parser that did not take part gets its own parse
+			ScanPlugin other = new ScanPlugin();
+			ClassDataCollector cd = b.getClassDataCollector(other);
+			assertSame(other.collector, cd);
+			assertEquals(b.getClassspace().size(), other.scanned.size());
+		}
+	}
+
+	/**
+	 * A plugin that runs before the DS annotations plugin can change the
+	 * instructions
+	 */
+	public void testPluginSetsDSAnnotations() throws Exception {
+		final AnalyzerPlugin plugin = new AnalyzerPlugin() {
+			public boolean analyzeJar(Analyzer analyzer) throws Exception {
+				analyzer.setProperty(Constants.DSANNOTATIONS, "test.component.*PluginInstruction");
+				return false;
+			}
+		};
+		try (Builder b = new Builder() {
+			@Override
+			protected void setTypeSpecificPlugins(Set<Object> list) {
+				list.add(plugin);
+				super.setTypeSpecificPlugins(list);
+			}
+		}) {
+			b.setProperty(Constants.DSANNOTATIONS, "test.component.*ValidNSVersion");
+			b.setProperty("Private-Package", "test.component");
+			b.addClasspath(IO.getFile("bin"));
+			b.addClasspath(IO.getFile("jar/osgi.jar"));
+			Jar jar = b.build();
+			assertTrue(b.check());
+
+			assertNotNull(jar.getResource("OSGI-INF/test.component.DSAnnotationTest$PluginInstruction.xml"));
+			assertNull(jar.getResource("OSGI-INF/test.component.DSAnnotationTest$ValidNSVersion.xml"));
+			assertEquals("OSGI-INF/test.component.DSAnnotationTest$PluginInstruction.xml",
+					jar.getManifest().getMainAttributes().getValue(Constants.SERVICE_COMPONENT));
+		}
+	}
 }
@@ -1,10 +1,20 @@
 package test;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.xml.sax.SAXException;
 
@@ -14,10 +24,13 @@ import aQute.bnd.osgi.Analyzer;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.ClassDataCollector;
 import aQute.bnd.osgi.Clazz;
+import aQute.bnd.osgi.Clazz.QUERY;
+import aQute.bnd.osgi.ClazzCache;
 import aQute.bnd.osgi.Descriptors;
 import aQute.bnd.osgi.Descriptors.PackageRef;
 import aQute.bnd.osgi.FileResource;
 import aQute.bnd.osgi.Jar;
+import aQute.bnd.osgi.Resource;
 import aQute.bnd.xmlattribute.XMLAttributeFinder;
 import aQute.lib.io.IO;
 import junit.framework.TestCase;
@@ -182,4 +195,160 @@ public class ClazzTest extends TestCase {
 		AnnotationReader.getDefinition(clazz, analyzer, EnumSet.noneOf(DSAnnotations.Options.class),
 				new XMLAttributeFinder(analyzer));
 	}
+
+	/**
+	 * Parsing from a ByteBuffer with lazily decoded Utf8 constants must give
+	 * the same result as parsing from a stream
+	 */
+	public void testByteBufferParser() throws Exception {
+		Analyzer analyzer = new Analyzer();
+		Jar jar = new Jar(IO.getFile("jar/asm.jar"));
+		try {
+			for (Map.Entry<String,Resource> entry : jar.getResources().entrySet()) {
+				if (!entry.getKey().endsWith(".class"))
+					continue;
+
+				Clazz stream = new Clazz(analyzer, entry.getKey(), entry.getValue());
+				InputStream in = entry.getValue().openInputStream();
+				try {
+					stream.parseClassFile(in);
+				} finally {
+					in.close();
+				}
+
+				Clazz buffer = new Clazz(analyzer, entry.getKey(), entry.getValue());
+				buffer.parseClassFile(ByteBuffer.wrap(IO.read(entry.getValue().openInputStream())), null);
+
+				assertEquals(stream.getClassName(), buffer.getClassName());
+				assertEquals(stream.getFormat(), buffer.getFormat());
+				assertEquals(stream.getReferred(), buffer.getReferred());
+				assertEquals(stream.getAPIUses(), buffer.getAPIUses());
+			}
+		} finally {
+			jar.close();
+			analyzer.close();
+		}
+	}
+
+	/**
+	 * Subclasses that override the protected constant pool hooks must still
+	 * see every constant
+	 */
+	public void testConstantPoolHooks() throws Exception {
+		Analyzer analyzer = new Analyzer();
+		try {
+			final AtomicInteger utf8 = new AtomicInteger();
+			final Set<Object> constants = new HashSet<Object>();
+			Clazz clazz = new Clazz(analyzer, "test/ClazzTest.class",
+					new FileResource(IO.getFile("bin/test/ClazzTest.class"))) {
+				@Override
+				protected void constantUtf8(DataInputStream in, int poolIndex) throws IOException {
+					super.constantUtf8(in, poolIndex);
+					utf8.incrementAndGet();
+				}
+
+				@Override
+				protected void pool(Object[] pool, int[] intPool) {
+					constants.addAll(Arrays.asList(pool));
+				}
+			};
+			clazz.parseClassFile();
+			assertTrue(utf8.get() > 0);
+			assertTrue(constants.contains("testConstantPoolHooks"));
+			assertEquals("test.ClazzTest", clazz.getClassName().getFQN());
+		} finally {
+			analyzer.close();
+		}
+	}
+
+	public void testClazzCache() throws Exception {
+		File dir = IO.getFile("generated/tmp/classcache");
+		IO.delete(dir);
+		Analyzer analyzer = new Analyzer();
+		Jar jar = new Jar(IO.getFile("jar/asm.jar"));
+		try {
+			ClazzCache first = new ClazzCache(dir);
+			ClazzCache second = new ClazzCache(dir);
+			int n = 0;
+			for (Map.Entry<String,Resource> entry : jar.getResources().entrySet()) {
+				if (!entry.getKey().endsWith(".class"))
+					continue;
+				n++;
+
+				Clazz parsed = new Clazz(analyzer, entry.getKey(), entry.getValue());
+				parsed.parseClassFile();
+				Clazz missed = first.parse(analyzer, entry.getKey(), entry.getValue());
+				Clazz restored = second.parse(analyzer, entry.getKey(), entry.getValue());
+
+				for (Clazz c : new Clazz[] {
+						missed, restored
+				}) {
+					assertEquals(parsed.getClassName(), c.getClassName());
+					assertEquals(parsed.getFormat(), c.getFormat());
+					assertEquals(parsed.getAccess(), c.getAccess());
+					assertEquals(parsed.getSuper(), c.getSuper());
+					assertTrue(Arrays.equals(parsed.getInterfaces(), c.getInterfaces()));
+					assertEquals(parsed.getReferred(), c.getReferred());
+					assertEquals(parsed.getAPIUses(), c.getAPIUses());
+					assertEquals(parsed.is(QUERY.RUNTIMEANNOTATIONS, null, analyzer),
+							c.is(QUERY.RUNTIMEANNOTATIONS, null, analyzer));
+					assertEquals(parsed.is(QUERY.CLASSANNOTATIONS, null, analyzer),
+							c.is(QUERY.CLASSANNOTATIONS, null, analyzer));
+					assertEquals(parsed.hasPublicNoArgsConstructor(), c.hasPublicNoArgsConstructor());
+					assertEquals(parsed.getSourceFile(), c.getSourceFile());
+					assertEquals(parsed.getClassSignature(), c.getClassSignature());
+				}
+			}
+			assertTrue(n > 0);
+			assertEquals(0, first.getHits());
+			assertEquals(n, first.getMisses());
+			assertEquals(n, second.getHits());
+			assertEquals(0, second.getMisses());
+		} finally {
+			jar.close();
+			analyzer.close();
+			IO.delete(dir);
+		}
+	}
+
+	/**
+	 * Classes of an output directory are not cached, the cache is pruned to
+	 * its maximum number of entries
+	 */
+	public void testClazzCachePrune() throws Exception {
+		File dir = IO.getFile("generated/tmp/classcache");
+		IO.delete(dir);
+		Analyzer analyzer = new Analyzer();
+		Jar jar = new Jar(IO.getFile("jar/asm.jar"));
+		try {
+			ClazzCache cache = new ClazzCache(dir, 10);
+			File classFile = IO.getFile("bin/test/ClazzTest.class");
+			Clazz clazz = cache.parse(analyzer, "test/ClazzTest.class", new FileResource(classFile));
+			assertEquals("test.ClazzTest", clazz.getClassName().getFQN());
+			assertEquals(0, cache.getMisses());
+			assertFalse(dir.exists());
+
+			List<Map.Entry<String,Resource>> classes = new ArrayList<Map.Entry<String,Resource>>();
+			for (Map.Entry<String,Resource> entry : jar.getResources().entrySet()) {
+				if (entry.getKey().endsWith(".class"))
+					classes.add(entry);
+			}
+			assertTrue(classes.size() > 20);
+			for (Map.Entry<String,Resource> entry : classes.subList(0, 20))
+				cache.parse(analyzer, entry.getKey(), entry.getValue());
+			assertEquals(20, cache.getMisses());
+
+			// the first entry stored by a cache prunes it
+			Map.Entry<String,Resource> last = classes.get(20);
+			new ClazzCache(dir, 10).parse(analyzer, last.getKey(), last.getValue());
+			int entries = 0;
+			for (File sub : dir.listFiles())
+				entries += sub.list().length;
+			assertEquals(10, entries);
+		} finally {
+			jar.close();
+			analyzer.close();
+			IO.delete(dir);
+		}
+	}
 }
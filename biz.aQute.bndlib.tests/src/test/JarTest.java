@@ -3,12 +3,23 @@ package test;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Constants;
@@ -16,7 +27,10 @@ import aQute.bnd.osgi.EmbeddedResource;
 import aQute.bnd.osgi.FileResource;
 import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Resource;
+import aQute.lib.base64.Base64;
 import aQute.lib.io.IO;
+import aQute.lib.zip.MappedZipFile;
+import aQute.libg.cryptography.SHA1;
 import junit.framework.TestCase;
 
 @SuppressWarnings("resource")
@@ -161,4 +175,293 @@ public class JarTest extends TestCase {
 
 		assertEquals(expectedValue, parsedValue);
 	}
+
+	public static void testParallelWrite() throws Exception {
+		for (boolean doNotTouchManifest : new boolean[] {
+				false, true
+		}) {
+			Jar jar = new Jar(IO.getFile("jar/asm.jar"));
+			try {
+				if (doNotTouchManifest)
+					jar.setDoNotTouchManifest();
+				jar.putResource("empty/dir/" + Constants.EMPTY_HEADER, new EmbeddedResource(new byte[0], 0));
+
+				ByteArrayOutputStream serial = new ByteArrayOutputStream();
+				jar.write(serial);
+
+				ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+				ExecutorService executor = Executors.newFixedThreadPool(3);
+				try {
+					jar.setExecutor(executor);
+					jar.write(parallel);
+				} finally {
+					executor.shutdown();
+				}
+
+				assertZipEquals(serial.toByteArray(), parallel.toByteArray());
+
+				JarInputStream jin = new JarInputStream(new ByteArrayInputStream(parallel.toByteArray()));
+				assertNotNull(jin.getManifest());
+				jin.close();
+
+				File tmp = IO.getFile("generated/tmp/parallel.jar");
+				tmp.getParentFile().mkdirs();
+				IO.write(parallel.toByteArray(), tmp);
+				Jar reread = new Jar(tmp);
+				Jar expected = new Jar("serial", new ByteArrayInputStream(serial.toByteArray()));
+				try {
+					assertEquals(expected.getResources().keySet(), reread.getResources().keySet());
+				} finally {
+					expected.close();
+					reread.close();
+					IO.delete(tmp);
+				}
+			} finally {
+				jar.close();
+			}
+		}
+	}
+
+	public static void testRawCopy() throws Exception {
+		File source = IO.getFile("jar/asm.jar");
+		File tmp = IO.getFile("generated/tmp/raw.jar");
+		tmp.getParentFile().mkdirs();
+
+		Jar jar = new Jar(source);
+		Jar inflated = new Jar("asm", new ByteArrayInputStream(IO.read(source)));
+		try {
+			jar.setCopyDeflated(true);
+			jar.write(tmp);
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			inflated.write(expected);
+			assertZipEquals(expected.toByteArray(), IO.read(tmp));
+
+			ZipFile in = new ZipFile(source);
+			ZipFile out = new ZipFile(tmp);
+			try {
+				int copied = 0;
+				for (Enumeration< ? extends ZipEntry> e = in.entries(); e.hasMoreElements();) {
+					ZipEntry ie = e.nextElement();
+					if (ie.isDirectory() || ie.getName().equals("META-INF/MANIFEST.MF"))
+						continue;
+					ZipEntry oe = out.getEntry(ie.getName());
+					assertNotNull(ie.getName(), oe);
+					assertEquals(ie.getCrc(), oe.getCrc());
+					assertEquals(ie.getSize(), oe.getSize());
+					assertEquals(ie.getCompressedSize(), oe.getCompressedSize());
+					copied++;
+				}
+				assertTrue(copied > 0);
+			} finally {
+				in.close();
+				out.close();
+			}
+		} finally {
+			jar.close();
+			inflated.close();
+			IO.delete(tmp);
+		}
+	}
+
+	public static void testMappedJar() throws Exception {
+		File source = IO.getFile("jar/asm.jar");
+		Jar expected = new Jar(source);
+		Jar jar = new Jar("asm", new MappedZipFile(source));
+		try {
+			assertEquals(source, jar.getSource());
+			Manifest manifest = jar.getManifest();
+			assertNotNull(manifest);
+			assertEquals(expected.getManifest().getMainAttributes(), manifest.getMainAttributes());
+
+			manifest.getMainAttributes().putValue("X-Mapped", "true");
+			assertEquals(expected.getResources().keySet(), jar.getResources().keySet());
+			assertEquals(expected.getDirectories().keySet(), jar.getDirectories().keySet());
+			assertEquals("true", jar.getManifest().getMainAttributes().getValue("X-Mapped"));
+
+			for (String path : expected.getResources().keySet()) {
+				Resource e = expected.getResource(path);
+				Resource a = jar.getResource(path);
+				assertEquals(path, e.lastModified(), a.lastModified());
+				assertEquals(path, e.size(), a.size());
+				assertTrue(path, Arrays.equals(IO.read(e.openInputStream()), IO.read(a.openInputStream())));
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			jar.write(out);
+			JarInputStream jin = new JarInputStream(new ByteArrayInputStream(out.toByteArray()));
+			try {
+				assertEquals("true", jin.getManifest().getMainAttributes().getValue("X-Mapped"));
+			} finally {
+				jin.close();
+			}
+		} finally {
+			jar.close();
+			expected.close();
+		}
+	}
+
+	/**
+	 * Reading the bsn and version or a single resource of a mapped jar must
+	 * not index the entries, modifying the entries must
+	 */
+	public static void testMappedJarIndexing() throws Exception {
+		File source = IO.getFile("jar/ds.jar");
+		final AtomicInteger names = new AtomicInteger();
+		Jar jar = new Jar("ds", new MappedZipFile(source) {
+			@Override
+			public String getName(int n) throws IOException {
+				names.incrementAndGet();
+				return super.getName(n);
+			}
+		});
+		try {
+			assertEquals("org.eclipse.equinox.ds", jar.getBsn());
+			assertEquals("1.0.0.v20060411", jar.getVersion());
+			assertEquals(0, names.get());
+
+			Resource activator = jar.getResource("org/eclipse/equinox/ds/Activator.class");
+			assertNotNull(activator);
+			assertSame(activator, jar.getResource("org/eclipse/equinox/ds/Activator.class"));
+			assertTrue(jar.exists("org/eclipse/equinox/ds/Activator.class"));
+			assertNull(jar.getResource("org/eclipse/equinox/ds/Missing.class"));
+			assertFalse(jar.exists("org/eclipse/equinox/ds/"));
+			assertEquals(0, names.get());
+
+			jar.removePrefix("org/eclipse/equinox/ds/parser/");
+			assertTrue(names.get() > 0);
+			assertSame(activator, jar.getResource("org/eclipse/equinox/ds/Activator.class"));
+			for (String path : jar.getResources().keySet())
+				assertFalse(path, path.startsWith("org/eclipse/equinox/ds/parser/"));
+			assertFalse(jar.getDirectories().containsKey("org/eclipse/equinox/ds/parser"));
+		} finally {
+			jar.close();
+		}
+	}
+
+	/**
+	 * Copying the deflated entries of a signed jar must keep the signature
+	 * valid
+	 */
+	public static void testCopyDeflatedSigned() throws Exception {
+		File tmp = IO.getFile("generated/tmp/signed.jar");
+		tmp.getParentFile().mkdirs();
+
+		Jar jar = new Jar(IO.getFile("jar/osgi-3.0.0.jar"));
+		try {
+			jar.setDoNotTouchManifest();
+			ByteArrayOutputStream serial = new ByteArrayOutputStream();
+			jar.write(serial);
+
+			jar.setCopyDeflated(true);
+			jar.write(tmp);
+			assertZipEquals(serial.toByteArray(), IO.read(tmp));
+
+			// The signer is too weak for the JarFile verifier, so check the
+			// signed digests and the signature files directly
+			Jar source = new Jar(IO.getFile("jar/osgi-3.0.0.jar"));
+			ZipFile copy = new ZipFile(tmp);
+			try {
+				Manifest manifest = source.getManifest();
+				int verified = 0;
+				for (Map.Entry<String,Attributes> entry : manifest.getEntries().entrySet()) {
+					String digest = entry.getValue().getValue("SHA1-Digest");
+					if (digest == null)
+						continue;
+					ZipEntry ze = copy.getEntry(entry.getKey());
+					assertNotNull(entry.getKey(), ze);
+					byte[] data = IO.read(copy.getInputStream(ze));
+					assertEquals(entry.getKey(), digest, Base64.encodeBase64(SHA1.digest(data).digest()));
+					verified++;
+				}
+				assertTrue(verified > 0);
+
+				for (String name : new String[] {
+						"META-INF/MANIFEST.MF", "META-INF/OSGI.SF", "META-INF/OSGI.RSA"
+				}) {
+					assertTrue(name, Arrays.equals(IO.read(source.getResource(name).openInputStream()),
+							IO.read(copy.getInputStream(copy.getEntry(name)))));
+				}
+			} finally {
+				copy.close();
+				source.close();
+			}
+		} finally {
+			jar.close();
+			IO.delete(tmp);
+		}
+	}
+
+	/**
+	 * A jar with more than 65535 entries has zip64 end records, copying its
+	 * deflated entries must give the same jar as a normal write
+	 */
+	public static void testCopyDeflatedZip64() throws Exception {
+		File source = IO.getFile("generated/tmp/zip64.jar");
+		source.getParentFile().mkdirs();
+		int count = 70000;
+		ZipOutputStream zout = new ZipOutputStream(new FileOutputStream(source));
+		try {
+			for (int i = 0; i < count; i++) {
+				zout.putNextEntry(new ZipEntry("d" + i % 10 + "/e" + i + ".txt"));
+				zout.write(("entry " + i).getBytes("UTF-8"));
+				zout.closeEntry();
+			}
+		} finally {
+			zout.close();
+		}
+
+		Jar jar = new Jar(source);
+		try {
+			jar.setDoNotTouchManifest();
+			ByteArrayOutputStream serial = new ByteArrayOutputStream();
+			jar.write(serial);
+
+			jar.setCopyDeflated(true);
+			ByteArrayOutputStream copied = new ByteArrayOutputStream();
+			jar.write(copied);
+			assertZipEquals(serial.toByteArray(), copied.toByteArray());
+
+			File tmp = IO.getFile("generated/tmp/zip64-copy.jar");
+			IO.write(copied.toByteArray(), tmp);
+			ZipFile zip = new ZipFile(tmp);
+			try {
+				assertEquals(count + 10, zip.size());
+				assertNotNull(zip.getEntry("d9/e69999.txt"));
+			} finally {
+				zip.close();
+				IO.delete(tmp);
+			}
+		} finally {
+			jar.close();
+			IO.delete(source);
+		}
+	}
+
+	private static void assertZipEquals(byte[] expected, byte[] actual) throws IOException {
+		ZipInputStream ein = new ZipInputStream(new ByteArrayInputStream(expected));
+		ZipInputStream ain = new ZipInputStream(new ByteArrayInputStream(actual));
+		try {
+			ZipEntry e;
+			while ((e = ein.getNextEntry()) != null) {
+				ZipEntry a = ain.getNextEntry();
+				assertNotNull("Missing " + e.getName(), a);
+				assertEquals(e.getName(), a.getName());
+				assertEquals(e.getName(), e.getMethod(), a.getMethod());
+				assertTrue(e.getName(), Arrays.equals(readEntry(ein), readEntry(ain)));
+			}
+			assertNull(ain.getNextEntry());
+		} finally {
+			ein.close();
+			ain.close();
+		}
+	}
+
+	private static byte[] readEntry(InputStream in) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			bout.write(buffer, 0, n);
+		return bout.toByteArray();
+	}
 }
@@ -1137,4 +1137,31 @@ public class MacroTest extends TestCase {
 			assertTrue(b.check("Key 'tst' has a non-String value", "Key 'num' has a non-String value"));
 		}
 	}
+
+	public void testParsedLineIsReused() throws Exception {
+		try (Processor b = new Processor()) {
+			b.setProperty("a", "A");
+			Macro m = b.getReplacer();
+			String line = "x ${a} $(a) $[a] \\${a} ${a";
+			assertEquals("x A A A ${a} ${a", m.process(line));
+
+			b.setProperty("a", "B");
+			assertEquals("x B B B ${a} ${a", m.process(line));
+			b.propertiesChanged();
+			assertEquals("x B B B ${a} ${a", m.process(line));
+			assertTrue(b.check());
+		}
+	}
+
+	public void testCommandErrors() throws Exception {
+		try (Processor b = new Processor()) {
+			Macro m = b.getReplacer();
+			assertEquals("${unknowncommand;1}", m.process("${unknowncommand;1}"));
+			assertEquals("${unknowncommand;1}", m.process("${unknowncommand;1}"));
+			m.process("${sum;a}");
+			m.process("${sum;a}");
+			assertTrue(b.check("No translation found for macro: unknowncommand;1", "for cmd: sum",
+					"No translation found for macro: sum;a"));
+		}
+	}
 }
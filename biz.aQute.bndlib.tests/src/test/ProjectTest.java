@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.jar.Manifest;
 
+import aQute.bnd.build.BuildScheduler;
 import aQute.bnd.build.Container;
 import aQute.bnd.build.Project;
 import aQute.bnd.build.Workspace;
@@ -367,6 +368,46 @@ public class ProjectTest extends TestCase {
 		// assertFalse(bottom.isStale());
 	}
 
+	/**
+	 * Check the build order and that the projects a project depends on are
+	 * built first
+	 */
+
+	public void testBuildScheduler() throws Exception {
+		Workspace ws = getWorkspace(IO.getFile("testresources/ws"));
+		List<Project> order = new ArrayList<Project>(ws.getBuildOrder());
+		assertEquals(new HashSet<Project>(ws.getAllProjects()), new HashSet<Project>(order));
+		for (Project project : order) {
+			for (Project dep : project.getDependson())
+				assertTrue(project + " before " + dep, order.indexOf(dep) < order.indexOf(project));
+		}
+
+		Project top = ws.getProject("p-stale");
+		Project bottom = ws.getProject("p-stale-dep");
+		BuildScheduler scheduler = new BuildScheduler(Arrays.asList(top));
+		assertEquals(Arrays.asList(bottom, top), scheduler.getOrder());
+		assertTrue(scheduler.getCycles().isEmpty());
+
+		List<Project> built = scheduler.build(2, false);
+		assertEquals(Arrays.asList(bottom, top), built);
+		assertTrue(bottom.check());
+		assertTrue(top.check());
+		assertTrue(bottom.getBuildFiles(false)[0].isFile());
+		assertTrue(top.getBuildFiles(false)[0].isFile());
+	}
+
+	public void testBuildSchedulerSkipsDependents() throws Exception {
+		Workspace ws = getWorkspace(IO.getFile("testresources/ws"));
+		Project top = ws.getProject("p-stale");
+		Project bottom = ws.getProject("p-stale-dep");
+		bottom.setProperty("Include-Resource", "missing.txt");
+
+		List<Project> built = new BuildScheduler(Arrays.asList(top)).build(2, false);
+		assertTrue(built.isEmpty());
+		assertFalse(bottom.isOk());
+		assertTrue(top.check("Not built because p-stale-dep failed"));
+	}
+
 	private void stale(Project project, boolean b) throws Exception {
 		File file = project.getBuildFiles(false)[0];
 		if (b)
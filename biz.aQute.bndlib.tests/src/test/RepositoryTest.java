@@ -1,6 +1,7 @@
 package test;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -12,6 +13,7 @@ import org.osgi.resource.Resource;
 
 import aQute.bnd.osgi.repository.ResourcesRepository;
 import aQute.bnd.osgi.repository.XMLResourceParser;
+import aQute.bnd.osgi.resource.IndexedCapabilities;
 import aQute.bnd.osgi.resource.RequirementBuilder;
 import aQute.bnd.osgi.resource.ResourceUtils;
 import junit.framework.TestCase;
@@ -76,6 +78,78 @@ public class RepositoryTest extends TestCase {
 		}
 	}
 
+	public void testIndexedFindProviders() throws Exception {
+		URL url = RepositoryTest.class.getResource("larger-repo.xml");
+		try (XMLResourceParser xrp = new XMLResourceParser(url.toURI());) {
+			List<Resource> resources = xrp.parse();
+			ResourcesRepository repository = getResourcesRepository(resources);
+
+			String[][] requirements = {
+					{
+							"osgi.wiring.package", "(osgi.wiring.package=org.osgi.service.log)"
+					}, {
+							"osgi.wiring.package",
+							"(&(osgi.wiring.package=org.osgi.service.log)(version>=1.3.0)(!(version>=2.0.0)))"
+					}, {
+							"osgi.wiring.package", "(|(osgi.wiring.package=org.osgi.service.log)(osgi.wiring.package=javax.servlet))"
+					}, {
+							"osgi.wiring.package", "(osgi.wiring.package=org.osgi.service.*)"
+					}, {
+							"osgi.wiring.package", "(!(osgi.wiring.package=org.osgi.service.log))"
+					}, {
+							"osgi.identity", "(&(osgi.identity=org.apache.felix.scr)(type=osgi.bundle))"
+					}, {
+							"osgi.extender", "(osgi.extender=osgi.component)"
+					}, {
+							"osgi.service", "(objectClass=org.osgi.service.log.LogService)"
+					}, {
+							"osgi.wiring.package", "(osgi.wiring.package= org.osgi.service.log)"
+					}, {
+							"osgi.wiring.package", "(osgi.wiring.package=does.not.exist)"
+					}, {
+							"osgi.wiring.package", null
+					}
+			};
+
+			for (String[] r : requirements) {
+				RequirementBuilder rb = new RequirementBuilder(r[0]);
+				if (r[1] != null)
+					rb.addDirective("filter", r[1]);
+				Requirement requirement = rb.buildSyntheticRequirement();
+
+				List<Capability> expected = new ArrayList<>();
+				for (Resource resource : resources) {
+					for (Capability capability : resource.getCapabilities(r[0])) {
+						if (ResourceUtils.matches(requirement, capability))
+							expected.add(capability);
+					}
+				}
+				assertEquals(r[1], expected, repository.findProvider(requirement));
+			}
+
+			assertEquals(1, repository.findProvider(new RequirementBuilder("osgi.extender")
+					.addDirective("filter", "(osgi.extender=osgi.component)").buildSyntheticRequirement()).size());
+		}
+	}
+
+	public void testEqualityValue() {
+		assertEquals("a.b", IndexedCapabilities.getEqualityValue("(p=a.b)", "p"));
+		assertEquals("a.b", IndexedCapabilities.getEqualityValue("(&(v>=1)(p=a\\.b))", "p"));
+		assertEquals("a.b", IndexedCapabilities.getEqualityValue("(& (x=y)(&(p=a.b)(v=1)))", "p"));
+		assertEquals("a.b", IndexedCapabilities.getEqualityValue("(&(!(p=c))(p=a.b))", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(|(p=a.b)(p=c))", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(!(p=a.b))", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(p=a.*)", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(p=*)", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(p~=a.b)", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(p>=a.b)", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(p=a.b", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(p=a.b))", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(P=a.b)", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue("(p =a.b)", "p"));
+		assertNull(IndexedCapabilities.getEqualityValue(null, "p"));
+	}
+
 	public ResourcesRepository getResourcesRepository(List<Resource> resources) throws Exception {
 		return new ResourcesRepository(resources);
 	}
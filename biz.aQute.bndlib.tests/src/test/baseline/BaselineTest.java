@@ -19,9 +19,11 @@ import aQute.bnd.differ.Baseline;
 import aQute.bnd.differ.Baseline.BundleInfo;
 import aQute.bnd.differ.Baseline.Info;
 import aQute.bnd.differ.DiffPluginImpl;
+import aQute.bnd.differ.TreeCache;
 import aQute.bnd.header.Attrs;
 import aQute.bnd.osgi.Builder;
 import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.EmbeddedResource;
 import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Processor;
 import aQute.bnd.osgi.Verifier;
@@ -405,6 +407,55 @@ public class BaselineTest extends TestCase {
 		assertEquals("1.1.0", info.suggestedVersion.toString());
 	}
 
+	/**
+	 * The tree of the baseline jar is cached by its SHA and the ignore
+	 * settings of the differ.
+	 */
+	public void testTreeCache() throws Exception {
+		File dir = IO.getFile(tmp, "baseline-cache");
+		IO.delete(dir);
+		try {
+			TreeCache cache = new TreeCache(dir);
+			DiffPluginImpl differ = new DiffPluginImpl();
+			Jar older = new Jar(IO.getFile("testresources/api-orig.jar"));
+			Jar newer = new Jar(IO.getFile("testresources/api-providerbump.jar"));
+
+			Tree tree = differ.tree(older);
+			Tree cached = cache.tree(differ, older);
+			assertEquals(0, cache.getHits());
+			assertEquals(1, cache.getMisses());
+			assertEquals(Delta.UNCHANGED, cached.diff(tree).getDelta());
+
+			cached = cache.tree(differ, older);
+			assertEquals(1, cache.getHits());
+			assertEquals(older.getName(), cached.getName());
+			assertEquals(Delta.UNCHANGED, cached.diff(tree).getDelta());
+			assertEquals(Delta.UNCHANGED, tree.diff(cached).getDelta());
+
+			// Other ignore settings make another tree
+			differ.setIgnore("Bundle-Version");
+			cache.tree(differ, older);
+			assertEquals(2, cache.getMisses());
+
+			// Newer and in memory jars are not cached
+			Jar memory = new Jar("memory");
+			memory.putResource("a/b.txt", new EmbeddedResource("b".getBytes("UTF-8"), 0));
+			cache.tree(differ, memory);
+			assertEquals(2, cache.getMisses());
+
+			Baseline baseline = new Baseline(new Processor(), differ);
+			baseline.setTreeCache(cache);
+			Set<Info> infoSet = baseline.baseline(newer, older, null);
+			assertEquals(2, cache.getHits());
+			assertEquals(1, infoSet.size());
+			Info info = infoSet.iterator().next();
+			assertTrue(info.mismatch);
+			assertEquals("1.1.0", info.suggestedVersion.toString());
+		} finally {
+			IO.delete(dir);
+		}
+	}
+
 	// Adding a method to a ConsumerType produces a MINOR bump (1.0.0 -> 2.0.0)
 	public static void testConsumerTypeBump() throws Exception {
 		Processor processor = new Processor();
@@ -100,6 +100,15 @@ public class DSAnnotationTest extends BndTestCase {
 		r.write(System.err);
 	}
 
+	/**
+	 * Selected by a plugin in {@link test.ClassParserTest}
+	 */
+
+	@Component()
+	public static class PluginInstruction {
+
+	}
+
 	/**
 	 * Property test
 	 */
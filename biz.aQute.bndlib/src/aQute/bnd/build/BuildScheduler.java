@@ -0,0 +1,195 @@
+package aQute.bnd.build;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import aQute.libg.tarjan.Tarjan;
+
+/**
+ * Builds a set of projects and the projects they depend on in dependency
+ * order. The dependency graph is calculated once from
+ * {@link Project#getDependson()}. A project is built when all the projects it
+ * depends on are built, projects that do not depend on each other are built
+ * in parallel up to the given level of parallelism. A project is not built
+ * when a project it depends on failed.
+ */
+public class BuildScheduler {
+	private final Map<Project,Set<Project>>	dependsOn	= new LinkedHashMap<Project,Set<Project>>();
+	private final Map<Project,Set<Project>>	dependents	= new HashMap<Project,Set<Project>>();
+	private final List<Project>				order		= new ArrayList<Project>();
+	private final List<Set<Project>>		cycles		= new ArrayList<Set<Project>>();
+
+	/**
+	 * Calculate the dependency graph of the given projects and the projects
+	 * they depend on.
+	 *
+	 * @param projects the projects to build
+	 */
+	public BuildScheduler(Collection<Project> projects) throws Exception {
+		List<Project> todo = new ArrayList<Project>(projects);
+		for (int i = 0; i < todo.size(); i++) {
+			Project project = todo.get(i);
+			if (dependsOn.containsKey(project))
+				continue;
+
+			Set<Project> deps = new LinkedHashSet<Project>(project.getDependson());
+			dependsOn.put(project, deps);
+			todo.addAll(deps);
+		}
+
+		for (Map.Entry<Project,Set<Project>> entry : dependsOn.entrySet()) {
+			for (Project dep : entry.getValue()) {
+				Set<Project> s = dependents.get(dep);
+				if (s == null)
+					dependents.put(dep, s = new LinkedHashSet<Project>());
+				s.add(entry.getKey());
+			}
+		}
+
+		for (Collection<Project> component : Tarjan.tarjan(dependsOn)) {
+			if (component.size() > 1)
+				cycles.add(new LinkedHashSet<Project>(component));
+		}
+
+		Set<Project> visited = new HashSet<Project>();
+		for (Project project : dependsOn.keySet())
+			visit(project, visited);
+	}
+
+	/*
+	 * Depth first, dependencies before the projects that depend on them. A
+	 * project that is already visited breaks a cycle.
+	 */
+	private void visit(Project project, Set<Project> visited) {
+		if (!visited.add(project))
+			return;
+		for (Project dep : dependsOn.get(project))
+			visit(dep, visited);
+		order.add(project);
+	}
+
+	/**
+	 * Answer the projects in an order where every project comes after the
+	 * projects it depends on, unless they are part of a cycle.
+	 */
+	public List<Project> getOrder() {
+		return Collections.unmodifiableList(order);
+	}
+
+	/**
+	 * Answer the sets of projects that depend on each other.
+	 */
+	public List<Set<Project>> getCycles() {
+		return Collections.unmodifiableList(cycles);
+	}
+
+	/**
+	 * Build the projects. The errors of a build are reported on its project,
+	 * a project that is not built because a project it depends on failed gets
+	 * an error as well.
+	 *
+	 * @param parallelism the maximum number of projects that are built at the
+	 *            same time, 1 builds the projects one by one in the build
+	 *            order
+	 * @param underTest build for test
+	 * @return the projects that were built successfully
+	 * @throws CircularDependencyException if the projects depend on each
+	 *             other
+	 */
+	public List<Project> build(int parallelism, final boolean underTest) throws Exception {
+		if (!cycles.isEmpty())
+			throw new CircularDependencyException("Circular dependencies between projects " + cycles);
+
+		Map<Project,Integer> waiting = new HashMap<Project,Integer>();
+		List<Project> ready = new ArrayList<Project>();
+		for (Project project : order) {
+			int n = dependsOn.get(project).size();
+			if (n == 0)
+				ready.add(project);
+			else
+				waiting.put(project, n);
+		}
+
+		List<Project> built = new ArrayList<Project>();
+		Set<Project> failed = new HashSet<Project>();
+		Map<Future<Project>,Project> running = new HashMap<Future<Project>,Project>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		try {
+			CompletionService<Project> completion = new ExecutorCompletionService<Project>(executor);
+			while (!ready.isEmpty() || !running.isEmpty()) {
+				for (final Project project : ready) {
+					Future<Project> future = completion.submit(new Callable<Project>() {
+						public Project call() throws Exception {
+							project.build(underTest);
+							return project;
+						}
+					});
+					running.put(future, project);
+				}
+				ready.clear();
+
+				Future<Project> done = completion.take();
+				Project project = running.remove(done);
+				try {
+					done.get();
+				} catch (ExecutionException e) {
+					project.exception(e.getCause(), "Build of %s failed: %s", project, e.getCause());
+				}
+
+				if (project.isOk())
+					built.add(project);
+				else
+					failed.add(project);
+
+				Set<Project> next = dependents.get(project);
+				if (next == null)
+					continue;
+				for (Project dependent : next) {
+					Integer n = waiting.get(dependent);
+					if (n == null)
+						continue;
+					if (failed.contains(project)) {
+						skip(dependent, project, waiting);
+					} else if (n == 1) {
+						waiting.remove(dependent);
+						ready.add(dependent);
+					} else
+						waiting.put(dependent, n - 1);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return built;
+	}
+
+	/*
+	 * A project that is not built is never done, so the projects that depend
+	 * on it are skipped as well.
+	 */
+	private void skip(Project project, Project failed, Map<Project,Integer> waiting) {
+		if (waiting.remove(project) == null)
+			return;
+		project.error("Not built because %s failed", failed);
+		Set<Project> next = dependents.get(project);
+		if (next != null) {
+			for (Project dependent : next)
+				skip(dependent, failed, waiting);
+		}
+	}
+}
@@ -1973,6 +1973,9 @@ public class Project extends Processor {
 			launcher.setKeep(keep);
 			Jar jar = launcher.executable();
 			getInfo(launcher);
+			if (packageProject.is(PARALLELWRITE))
+				jar.setExecutor(getExecutor());
+			jar.setCopyDeflated(packageProject.is(COPYDEFLATED));
 
 			outStream = new FileOutputStream(output);
 			jar.write(outStream);
@@ -2612,6 +2615,9 @@ public class Project extends Processor {
 		jar.calcChecksums(new String[] {
 				"SHA1", "MD5"
 		});
+		if (is(PARALLELWRITE))
+			jar.setExecutor(getExecutor());
+		jar.setCopyDeflated(is(COPYDEFLATED));
 		return jar;
 	}
 
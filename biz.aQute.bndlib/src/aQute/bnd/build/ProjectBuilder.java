@@ -19,6 +19,7 @@ import org.slf4j.LoggerFactory;
 import aQute.bnd.differ.Baseline;
 import aQute.bnd.differ.Baseline.Info;
 import aQute.bnd.differ.DiffPluginImpl;
+import aQute.bnd.differ.TreeCache;
 import aQute.bnd.header.Attrs;
 import aQute.bnd.header.Parameters;
 import aQute.bnd.osgi.Builder;
@@ -168,6 +169,7 @@ public class ProjectBuilder extends Builder {
 		logger.debug("baseline {}-{} against: {}", getBsn(), getVersion(), fromRepo.getName());
 		try {
 			Baseline baseliner = new Baseline(this, differ);
+			baseliner.setTreeCache(getPlugin(TreeCache.class));
 
 			Set<Info> infos = baseliner.baseline(dot, fromRepo, null);
 			if (infos.isEmpty())
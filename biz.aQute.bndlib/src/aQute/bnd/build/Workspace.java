@@ -40,6 +40,7 @@ import org.slf4j.LoggerFactory;
 
 import aQute.bnd.annotation.plugin.BndPlugin;
 import aQute.bnd.connection.settings.ConnectionSettings;
+import aQute.bnd.differ.TreeCache;
 import aQute.bnd.exporter.subsystem.SubsystemExporter;
 import aQute.bnd.header.Attrs;
 import aQute.bnd.header.OSGiHeader;
@@ -47,6 +48,7 @@ import aQute.bnd.header.Parameters;
 import aQute.bnd.http.HttpClient;
 import aQute.bnd.maven.support.Maven;
 import aQute.bnd.osgi.About;
+import aQute.bnd.osgi.ClazzCache;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Macro;
 import aQute.bnd.osgi.Processor;
@@ -551,30 +553,12 @@ public class Workspace extends Processor {
 		return data.repositories;
 	}
 
+	/**
+	 * Answer all projects in an order where every project comes after the
+	 * projects it depends on.
+	 */
 	public Collection<Project> getBuildOrder() throws Exception {
-		List<Project> result = new ArrayList<Project>();
-		for (Project project : getAllProjects()) {
-			Collection<Project> dependsOn = project.getDependson();
-			getBuildOrder(dependsOn, result);
-			if (!result.contains(project)) {
-				result.add(project);
-			}
-		}
-		return result;
-	}
-
-	private void getBuildOrder(Collection<Project> dependsOn, List<Project> result) throws Exception {
-		for (Project project : dependsOn) {
-			Collection<Project> subProjects = project.getDependson();
-			for (Project subProject : subProjects) {
-				if (!result.contains(subProject)) {
-					result.add(subProject);
-				}
-			}
-			if (!result.contains(project)) {
-				result.add(project);
-			}
-		}
+		return new BuildScheduler(getAllProjects()).getOrder();
 	}
 
 	public static Workspace getWorkspace(String path) throws Exception {
@@ -598,6 +582,12 @@ public class Workspace extends Processor {
 				list.add(new CachedFileRepo());
 			}
 
+			if (!isTrue(getProperty(NOCLASSCACHE))) {
+				list.add(new ClazzCache(getCache("classes")));
+			}
+
+			list.add(new TreeCache(getCache("baseline")));
+
 			resourceRepositoryImpl = new ResourceRepositoryImpl();
 			resourceRepositoryImpl.setCache(IO.getFile(getProperty(CACHEDIR, "~/.bnd/caches/shas")));
 			resourceRepositoryImpl.setExecutor(getExecutor());
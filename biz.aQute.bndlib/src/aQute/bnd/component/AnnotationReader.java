@@ -131,6 +131,13 @@ public class AnnotationReader extends ClassDataCollector {
 
 	private ComponentDef getDef() throws Exception {
 		clazz.parseClassFileWithCollector(this);
+		return finish();
+	}
+
+	/*
+	 * Complete the definition after the class is parsed with this reader.
+	 */
+	ComponentDef finish() throws Exception {
 		if (component.implementation == null)
 			return null;
 
@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,13 +17,16 @@ import aQute.bnd.header.Attrs;
 import aQute.bnd.header.OSGiHeader;
 import aQute.bnd.header.Parameters;
 import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.ClassDataCollector;
 import aQute.bnd.osgi.Clazz;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Descriptors;
 import aQute.bnd.osgi.Instruction;
 import aQute.bnd.osgi.Instructions;
+import aQute.bnd.osgi.PerClassDataCollector;
 import aQute.bnd.osgi.Processor;
 import aQute.bnd.service.AnalyzerPlugin;
+import aQute.bnd.service.classparser.ClassParser;
 import aQute.bnd.version.Version;
 import aQute.bnd.xmlattribute.XMLAttributeFinder;
 import aQute.lib.strings.Strings;
@@ -29,34 +34,28 @@ import aQute.lib.strings.Strings;
 /**
  * Analyze the class space for any classes that have an OSGi annotation for DS.
  */
-public class DSAnnotations implements AnalyzerPlugin {
+public class DSAnnotations implements AnalyzerPlugin, ClassParser {
 
 	public enum Options {
 		inherit, felixExtensions, extender, nocapabilities, norequirements
 	};
 
+	/**
+	 * Parse the classes for DS annotations during the scan of the class space
+	 * by the analyzer, {@link #analyzeJar(Analyzer)} then uses the outcome.
+	 */
+	public ClassDataCollector getClassDataCollector(Analyzer analyzer) {
+		return Scan.create(analyzer);
+	}
+
 	public boolean analyzeJar(Analyzer analyzer) throws Exception {
-		Parameters header = OSGiHeader.parseHeader(analyzer.getProperty(Constants.DSANNOTATIONS, "*"));
-		if (header.size() == 0)
+		ClassDataCollector cd = analyzer.getClassDataCollector(this);
+		Scan scan = cd instanceof Scan && ((Scan) cd).isCurrent() ? (Scan) cd : Scan.create(analyzer);
+		if (scan == null)
 			return false;
 
-		Parameters optionsHeader = OSGiHeader.parseHeader(analyzer.getProperty(Constants.DSANNOTATIONS_OPTIONS));
-		EnumSet<Options> options = EnumSet.noneOf(Options.class);
-		for (String s : optionsHeader.keySet()) {
-			try {
-				options.add(Options.valueOf(s));
-			} catch (IllegalArgumentException e) {
-				analyzer.error("Unrecognized %s value %s, expected values are %s", Constants.DSANNOTATIONS_OPTIONS, s,
-						EnumSet.allOf(Options.class));
-			}
-		}
-		// obsolete but backwards compatible, use the options instead
-		if (Processor.isTrue(analyzer.getProperty("-dsannotations-inherit")))
-			options.add(Options.inherit);
-		if (Processor.isTrue(analyzer.getProperty("-ds-felix-extensions")))
-			options.add(Options.felixExtensions);
-
-		Instructions instructions = new Instructions(header);
+		Instructions instructions = scan.instructions;
+		EnumSet<Options> options = scan.options;
 		Collection<Clazz> list = analyzer.getClassspace().values();
 		String sc = analyzer.getProperty(Constants.SERVICE_COMPONENT);
 		List<String> names = new ArrayList<String>();
@@ -67,14 +66,13 @@ public class DSAnnotations implements AnalyzerPlugin {
 		TreeSet<String> requires = new TreeSet<String>();
 		Version maxVersion = AnnotationReader.V1_0;
 
-		XMLAttributeFinder finder = new XMLAttributeFinder(analyzer);
 		for (Clazz c : list) {
 			for (Instruction instruction : instructions.keySet()) {
 
 				if (instruction.matches(c.getFQN())) {
 					if (instruction.isNegated())
 						break;
-					ComponentDef definition = AnnotationReader.getDefinition(c, analyzer, options, finder);
+					ComponentDef definition = scan.getDefinition(c);
 					if (definition != null) {
 
 						definition.sortReferences();
@@ -119,6 +117,92 @@ public class DSAnnotations implements AnalyzerPlugin {
 		return false;
 	}
 
+	/*
+	 * The readers of the classes that were parsed during the scan of the
+	 * class space. A class that is not part of the scan is parsed when its
+	 * definition is asked for.
+	 */
+	static class Scan extends PerClassDataCollector {
+		final Analyzer							analyzer;
+		final Instructions						instructions;
+		final EnumSet<Options>					options;
+		final XMLAttributeFinder				finder;
+		final Map<Clazz,AnnotationReader>		readers		= new HashMap<Clazz,AnnotationReader>();
+		final Set<Clazz>						unannotated	= new HashSet<Clazz>();
+		final List<String>						config;
+
+		Scan(Analyzer analyzer, Instructions instructions, EnumSet<Options> options) {
+			this.analyzer = analyzer;
+			this.config = config(analyzer);
+			this.instructions = instructions;
+			this.options = options;
+			this.finder = new XMLAttributeFinder(analyzer);
+		}
+
+		static Scan create(Analyzer analyzer) {
+			Parameters header = OSGiHeader.parseHeader(analyzer.getProperty(Constants.DSANNOTATIONS, "*"));
+			if (header.size() == 0)
+				return null;
+
+			Parameters optionsHeader = OSGiHeader.parseHeader(analyzer.getProperty(Constants.DSANNOTATIONS_OPTIONS));
+			EnumSet<Options> options = EnumSet.noneOf(Options.class);
+			for (String s : optionsHeader.keySet()) {
+				try {
+					options.add(Options.valueOf(s));
+				} catch (IllegalArgumentException e) {
+					analyzer.error("Unrecognized %s value %s, expected values are %s", Constants.DSANNOTATIONS_OPTIONS,
+							s, EnumSet.allOf(Options.class));
+				}
+			}
+			// obsolete but backwards compatible, use the options instead
+			if (Processor.isTrue(analyzer.getProperty("-dsannotations-inherit")))
+				options.add(Options.inherit);
+			if (Processor.isTrue(analyzer.getProperty("-ds-felix-extensions")))
+				options.add(Options.felixExtensions);
+
+			return new Scan(analyzer, new Instructions(header), options);
+		}
+
+		/*
+		 * The instructions the scan depends on, a plugin can change them
+		 * after the scan was created.
+		 */
+		static List<String> config(Analyzer analyzer) {
+			return Arrays.asList(analyzer.getProperty(Constants.DSANNOTATIONS, "*"),
+					analyzer.getProperty(Constants.DSANNOTATIONS_OPTIONS),
+					analyzer.getProperty("-dsannotations-inherit"), analyzer.getProperty("-ds-felix-extensions"));
+		}
+
+		boolean isCurrent() {
+			return config.equals(config(analyzer));
+		}
+
+		@Override
+		protected void collectors(Clazz c, List<ClassDataCollector> collectors) {
+			Instruction instruction = instructions.matcher(c.getFQN());
+			if (instruction == null || instruction.isNegated())
+				return;
+
+			// without annotations there is no component
+			if (!c.hasAnnotations()) {
+				unannotated.add(c);
+				return;
+			}
+			AnnotationReader reader = new AnnotationReader(analyzer, c, options, finder);
+			readers.put(c, reader);
+			collectors.add(reader);
+		}
+
+		ComponentDef getDefinition(Clazz c) throws Exception {
+			if (unannotated.contains(c))
+				return null;
+			AnnotationReader reader = readers.remove(c);
+			if (reader != null)
+				return reader.finish();
+			return AnnotationReader.getDefinition(c, analyzer, options, finder);
+		}
+	}
+
 	private void addServiceCapability(String[] objectClass, Set<String> provides) {
 		if (objectClass.length > 0) {
 			Parameters p = new Parameters();
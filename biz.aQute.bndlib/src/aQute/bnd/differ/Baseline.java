@@ -68,12 +68,22 @@ public class Baseline {
 	Version				olderVersion;
 	Version				suggestedVersion;
 	String				releaseRepository;
+	TreeCache			cache;
 
 	public Baseline(Reporter bnd, Differ differ) throws IOException {
 		this.differ = differ;
 		this.bnd = bnd;
 	}
 
+	/**
+	 * Use a cache for the trees of the baseline jars.
+	 *
+	 * @param cache the cache or null
+	 */
+	public void setTreeCache(TreeCache cache) {
+		this.cache = cache;
+	}
+
 	/**
 	 * This method compares a jar to a baseline jar and returns version
 	 * suggestions if the baseline does not agree with the newer jar. The
@@ -88,7 +98,7 @@ public class Baseline {
 	public Set<Info> baseline(Jar newer, Jar older, Instructions packageFilters) throws Exception {
 		Tree n = differ.tree(newer);
 		Parameters nExports = getExports(newer);
-		Tree o = differ.tree(older);
+		Tree o = cache != null ? cache.tree(differ, older) : differ.tree(older);
 		Parameters oExports = getExports(older);
 		if (packageFilters == null)
 			packageFilters = new Instructions();
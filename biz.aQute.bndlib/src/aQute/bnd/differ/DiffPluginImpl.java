@@ -82,7 +82,8 @@ public class DiffPluginImpl implements Differ {
 		ORDERED_HEADERS.add(Constants.TESTCASES);
 	}
 
-	Instructions localIgnore = null;
+	Instructions	localIgnore	= null;
+	String			ignore		= null;
 
 	/**
 	 * @see aQute.bnd.service.diff.Differ#tree(aQute.bnd.osgi.Jar)
@@ -283,6 +284,7 @@ public class DiffPluginImpl implements Differ {
 	}
 
 	public void setIgnore(String diffignore) {
+		ignore = diffignore;
 		if (diffignore == null) {
 			localIgnore = null;
 			return;
@@ -292,4 +294,8 @@ public class DiffPluginImpl implements Differ {
 		localIgnore = new Instructions(p);
 	}
 
+	String getIgnore() {
+		return ignore;
+	}
+
 }
@@ -0,0 +1,201 @@
+package aQute.bnd.differ;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.osgi.About;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.service.diff.Delta;
+import aQute.bnd.service.diff.Differ;
+import aQute.bnd.service.diff.Tree;
+import aQute.bnd.service.diff.Tree.Data;
+import aQute.bnd.service.diff.Type;
+import aQute.lib.io.IO;
+import aQute.libg.cryptography.SHA256;
+
+/**
+ * A persistent cache of the API trees of baseline bundles. A baseline bundle
+ * is a released artifact that does not change, its {@link Tree} is therefore
+ * stored in a file named after the SHA-256 of the JAR file. When the same JAR
+ * is baselined against again, in this or in a later process, the tree is
+ * restored from the file and the JAR is not analyzed.
+ * <p>
+ * A tree depends on the headers and resources the differ ignores, these are
+ * stored with the tree; a tree made with other settings or by another version
+ * of bnd is replaced. Only trees made by the {@link DiffPluginImpl} are cached
+ * and only for JARs read from a file. Failures to read or write the cache are
+ * never fatal, the JAR is then just analyzed.
+ */
+public class TreeCache {
+	private final static Logger	logger	= LoggerFactory.getLogger(TreeCache.class);
+	private final static int	VERSION	= 1;
+
+	private final File			dir;
+	private final AtomicLong	hits	= new AtomicLong();
+	private final AtomicLong	misses	= new AtomicLong();
+
+	public TreeCache(File dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Answer the tree of a JAR. This is equivalent to
+	 * {@link Differ#tree(Jar)}.
+	 *
+	 * @param differ the differ that makes the tree
+	 * @param jar the JAR
+	 * @return the tree of the JAR
+	 */
+	public Tree tree(Differ differ, Jar jar) throws Exception {
+		File source = jar.getSource();
+		if (!(differ instanceof DiffPluginImpl) || source == null || !source.isFile())
+			return differ.tree(jar);
+
+		String settings = getSettings((DiffPluginImpl) differ);
+		File file = getFile(source);
+
+		if (file.isFile()) {
+			try {
+				DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(IO.read(file))));
+				if (in.readInt() == VERSION && in.readUTF().equals(settings)) {
+					Data data = read(in);
+					data.name = jar.getName();
+					hits.incrementAndGet();
+					return differ.deserialize(data);
+				}
+			} catch (Exception e) {
+				logger.debug("Ignoring unreadable cache entry {} for {}", file, jar, e);
+			}
+		}
+
+		misses.incrementAndGet();
+		Tree tree = differ.tree(jar);
+		store(file, settings, tree);
+		return tree;
+	}
+
+	/**
+	 * Answer the number of trees that were restored from the cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Answer the number of trees that had to be made.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public File getRoot() {
+		return dir;
+	}
+
+	@Override
+	public String toString() {
+		return "TreeCache[" + dir + ", hits=" + hits + ", misses=" + misses + "]";
+	}
+
+	private static String getSettings(DiffPluginImpl differ) {
+		String ignore = differ.getIgnore();
+		return About.CURRENT + ";" + (ignore == null ? "" : ignore);
+	}
+
+	private File getFile(File source) throws Exception {
+		String key = SHA256.digest(source).asHex();
+		return new File(dir, key.substring(0, 2) + "/" + key);
+	}
+
+	/*
+	 * The entry is written to a temporary file and then renamed so that
+	 * concurrent builds never see a partial entry.
+	 */
+	private void store(File file, String settings, Tree tree) {
+		try {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bout));
+			out.writeInt(VERSION);
+			out.writeUTF(settings);
+			write(out, tree.serialize());
+			out.close();
+
+			File parent = file.getParentFile();
+			if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory())
+				return;
+
+			File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+			try {
+				IO.write(bout.toByteArray(), tmp);
+				IO.rename(tmp, file);
+			} finally {
+				IO.delete(tmp);
+			}
+		} catch (Exception e) {
+			logger.debug("Failed to store cache entry {} for {}", file, tree.getName(), e);
+		}
+	}
+
+	private static void write(DataOutputStream out, Data data) throws IOException {
+		writeString(out, data.name);
+		out.writeByte(data.type.ordinal());
+		out.writeByte(data.add.ordinal());
+		out.writeByte(data.rem.ordinal());
+		writeString(out, data.comment);
+		if (data.children == null)
+			out.writeInt(-1);
+		else {
+			out.writeInt(data.children.length);
+			for (Data child : data.children)
+				write(out, child);
+		}
+	}
+
+	private static Data read(DataInputStream in) throws IOException {
+		Data data = new Data();
+		data.name = readString(in);
+		data.type = Type.values()[in.readByte()];
+		data.add = Delta.values()[in.readByte()];
+		data.rem = Delta.values()[in.readByte()];
+		data.comment = readString(in);
+		int n = in.readInt();
+		if (n >= 0) {
+			data.children = new Data[n];
+			for (int i = 0; i < n; i++)
+				data.children[i] = read(in);
+		}
+		return data;
+	}
+
+	/*
+	 * Names of elements can be longer than writeUTF allows
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+}
@@ -586,10 +586,26 @@ public class Syntax implements Constants {
 																					NOUSES + "=true", "true,false",
 																					Verifier.TRUEORFALSEPATTERN),
 
+																			new Syntax(NOCLASSCACHE,
+																					"Do not cache the outcome of parsing class files in the workspace cache.",
+																					NOCLASSCACHE + "=true", "true,false",
+																					Verifier.TRUEORFALSEPATTERN),
 																			new Syntax(NOEE,
 																					"Do not calculate the osgi.ee name space Execution Environment from the class file version",
 																					NOEE + "=true", "true,false",
 																					Verifier.TRUEORFALSEPATTERN),
+																			new Syntax(PARALLELANALYSIS,
+																					"Parse the class files of the bundle concurrently, on the given number of workers or on a number based on the processors when true. The resulting manifest is identical to the serial analysis.",
+																					PARALLELANALYSIS + "=true", "true,false,2,4",
+																					Pattern.compile("true|false|TRUE|FALSE|\\d+")),
+																			new Syntax(PARALLELWRITE,
+																					"Compress the entries of the bundle and of exported executables concurrently when they are written.",
+																					PARALLELWRITE + "=true", "true,false",
+																					Verifier.TRUEORFALSEPATTERN),
+																			new Syntax(COPYDEFLATED,
+																					"Copy the compressed data of deflated entries from the source jars as is when the bundle and exported executables are written.",
+																					COPYDEFLATED + "=true", "true,false",
+																					Verifier.TRUEORFALSEPATTERN),
 																			new Syntax(PEDANTIC,
 																					"Warn about things that are not really wrong but still not right.",
 																					PEDANTIC + "=true", "true,false",
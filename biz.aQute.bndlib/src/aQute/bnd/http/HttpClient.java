@@ -4,6 +4,8 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -18,6 +20,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.UnknownHostException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -29,10 +32,17 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TimeZone;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
+import org.osgi.util.promise.Promise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +73,8 @@ public class HttpClient implements Closeable, URLConnector {
 	public static final SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH);
 
 	private static final ThreadLocal<DateFormat>	HTTP_DATE_FORMATTER	= new ThreadLocal<>();
+	private static final Pattern					CONTENT_RANGE_P		= Pattern.compile("bytes\\s+(\\d+)-");
+	private static final long						MAX_RETRY_DELAY		= 30000L;
 
 	static {
 		sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
@@ -77,6 +89,12 @@ public class HttpClient implements Closeable, URLConnector {
 	private Registry							registry				= null;
 	private Reporter							reporter;
 	private volatile AtomicBoolean				offline;
+	private volatile int						retries					= 3;
+	private volatile long						retryDelay				= 1000L;
+	private volatile boolean					retryIOExceptions;
+	private volatile int						maxConnectionsPerHost	= 8;
+	private volatile long						permitTimeout			= TimeUnit.MINUTES.toMillis(2);
+	private final ConcurrentMap<String,Semaphore>	hosts				= new ConcurrentHashMap<>();
 
 	public HttpClient() {}
 
@@ -132,24 +150,50 @@ public class HttpClient implements Closeable, URLConnector {
 		if (isOffline() || request.isCache()) {
 			return doCached(request);
 		} else {
-			TaggedData in = send0(request);
+			TaggedData in;
+			Semaphore permit = acquire(request.url);
+			try {
+				in = send1(request);
+
+				//
+				// The connection is in use until the content is read, the
+				// permit is released when the stream is closed
+				//
+
+				if (in.getInputStream() != null) {
+					in = new TaggedData(in.getConnection(), new PermitInputStream(in.getInputStream(), permit),
+							request.useCacheFile);
+					permit = null;
+				}
+			} finally {
+				if (permit != null)
+					permit.release();
+			}
 			if (request.download == TaggedData.class)
 				return in;
 
-			switch (in.getState()) {
-				case NOT_FOUND :
-					return null;
-				case OTHER :
-					in.throwIt();
-					return null;
-
-				case UNMODIFIED :
-				case UPDATED :
-				default :
-					break;
+			InputStream stream = in.getInputStream();
+			Object result = null;
+			try {
+				switch (in.getState()) {
+					case NOT_FOUND :
+						return null;
+					case OTHER :
+						in.throwIt();
+						return null;
+
+					case UNMODIFIED :
+					case UPDATED :
+					default :
+						break;
 
+				}
+				result = convert(request.download, stream);
+				return result;
+			} finally {
+				if (result != stream)
+					IO.close(stream);
 			}
-			return convert(request.download, in.getInputStream());
 		}
 	}
 
@@ -230,15 +274,8 @@ public class HttpClient implements Closeable, URLConnector {
 							request.ifModifiedSince(time + 1);
 					}
 
-					TaggedData in = send0(request);
-					if (in.getState() == State.UPDATED) {
-
-						//
-						// update the cache from the input stream
-						//
-
-						info.update(in.getInputStream(), in.getTag(), in.getModified());
-					} else if (in.getState() == State.UNMODIFIED)
+					TaggedData in = fetch(request, info);
+					if (in.getState() == State.UNMODIFIED)
 						info.jsonFile.setLastModified(System.currentTimeMillis());
 
 					return in;
@@ -260,16 +297,307 @@ public class HttpClient implements Closeable, URLConnector {
 					return new TaggedData(url.toURI(), 404, request.useCacheFile);
 				}
 
+				return fetch(request, info);
+			}
+		}
+	}
+
+	/*
+	 * Fetch a URL into the cache. The number of concurrent connections to a
+	 * host is limited, the permit is held until the content is in the cache.
+	 */
+	private TaggedData fetch(final HttpRequest< ? > request, Info info) throws Exception {
+		Semaphore permit = acquire(request.url);
+		try {
+			TaggedData in = send1(request);
+			if (in.isOk()) {
+
+				//
+				// update the cache from the input stream
+				//
+
+				download(request, info, in);
+			}
+			return in;
+		} finally {
+			if (permit != null)
+				permit.release();
+		}
+	}
+
+	/*
+	 * Send a request and retry an idempotent request when it fails with a
+	 * response that indicates a temporary problem. Connection failures and
+	 * timeouts are only retried when this is enabled, they usually do not go
+	 * away and every retry waits for the full timeout again.
+	 */
+	TaggedData send1(final HttpRequest< ? > request) throws Exception {
+		int retries = getRetries(request);
+		boolean retryIOExceptions = isRetryIOExceptions(request);
+		for (int attempt = 0;; attempt++) {
+			try {
 				TaggedData in = send0(request);
+				if (attempt >= retries || !isTemporary(in, retryIOExceptions) || !isIdempotent(request))
+					return in;
+
+				logger.debug("Retrying {} after {}", request.url, in);
+				discard(in);
+			} catch (IOException e) {
+				if (attempt >= retries || !retryIOExceptions || !isIdempotent(request)
+						|| e instanceof UnknownHostException)
+					throw e;
 
-				if (in.isOk()) {
-					info.update(in.getInputStream(), in.getTag(), in.getModified());
+				logger.debug("Retrying {} after {}", request.url, e);
+			}
+			backoff(request, attempt);
+		}
+	}
+
+	/*
+	 * Copy the content into the cache. The content is first written to a
+	 * temporary file. When the connection breaks, the download is resumed with
+	 * a Range request if the server returned a validator and did not encode
+	 * the content. Otherwise it is restarted.
+	 */
+	private void download(final HttpRequest< ? > request, Info info, TaggedData tag) throws Exception {
+		File parent = info.file.getParentFile();
+		parent.mkdirs();
+		File part = File.createTempFile(info.file.getName(), ".part", parent);
+		try {
+			String validator = getValidator(tag);
+			int retries = getRetries(request);
+			TaggedData in = tag;
+			for (int attempt = 0;; attempt++) {
+				boolean append = in.getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+				try {
+					long offset = append ? part.length() : 0L;
+					try (OutputStream out = new FileOutputStream(part, append)) {
+						IO.copy(in.getInputStream(), out);
+					}
+
+					//
+					// A connection that is closed early can look like a
+					// normal end of the stream
+					//
+
+					long expected = getContentLength(in);
+					if (expected >= 0 && part.length() - offset != expected)
+						throw new IOException("Premature end of content, received " + (part.length() - offset)
+								+ " of " + expected + " bytes");
+					break;
+				} catch (IOException e) {
+					if (attempt >= retries || (e instanceof SocketTimeoutException && !isRetryIOExceptions(request)))
+						throw e;
+					logger.debug("Resuming {} at {} after {}", request.url, part.length(), e);
 				}
-				return in;
+				backoff(request, attempt);
+
+				request.ifNoneMatch = null;
+				request.ifMatch = null;
+				request.ifModifiedSince = -1;
+				request.headers.remove("If-None-Match");
+				request.headers.remove("If-Match");
+				request.headers.remove("If-Modified-Since");
+				long offset = part.length();
+				boolean resume = validator != null && offset > 0;
+				if (resume) {
+					request.headers.put("Range", "bytes=" + offset + "-");
+					request.headers.put("If-Range", validator);
+				}
+				try {
+					in = send1(request);
+				} finally {
+					request.headers.remove("Range");
+					request.headers.remove("If-Range");
+				}
+
+				if (in.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+					if (!resume || getRangeStart(in) != offset) {
+						discard(in);
+						throw new IOException("Unexpected partial content for " + request.url);
+					}
+				} else if (in.getResponseCode() != HttpURLConnection.HTTP_OK) {
+					discard(in);
+					throw new HttpRequestException(in);
+				}
+			}
+			info.update(part, tag.getTag(), tag.getModified());
+		} finally {
+			IO.delete(part);
+		}
+	}
+
+	private static String getValidator(TaggedData tag) {
+		URLConnection con = tag.getConnection();
+		if (con == null || con.getHeaderField("Content-Encoding") != null)
+			return null;
+
+		String etag = tag.getTag();
+		if (etag != null && !etag.isEmpty() && !etag.startsWith("W/"))
+			return etag;
+
+		return con.getHeaderField("Last-Modified");
+	}
+
+	private static long getContentLength(TaggedData tag) {
+		URLConnection con = tag.getConnection();
+		if (con == null || con.getHeaderField("Content-Encoding") != null)
+			return -1;
+		return con.getContentLengthLong();
+	}
+
+	private static long getRangeStart(TaggedData tag) {
+		String range = tag.getConnection().getHeaderField("Content-Range");
+		if (range != null) {
+			Matcher m = CONTENT_RANGE_P.matcher(range);
+			if (m.lookingAt())
+				return Long.parseLong(m.group(1));
+		}
+		return -1;
+	}
+
+	private static boolean isTemporary(TaggedData in, boolean retryIOExceptions) {
+		switch (in.getResponseCode()) {
+			case HttpURLConnection.HTTP_GATEWAY_TIMEOUT :
+				// a timeout of our own connection is also reported as a
+				// gateway timeout, but without a connection
+				return retryIOExceptions || in.getConnection() != null;
+
+			case HttpURLConnection.HTTP_UNAVAILABLE :
+			case HttpURLConnection.HTTP_BAD_GATEWAY :
+			case 429 :
+				return true;
+
+			default :
+				return false;
+		}
+	}
+
+	private static boolean isIdempotent(HttpRequest< ? > request) {
+		return request.upload == null
+				&& ("GET".equalsIgnoreCase(request.verb) || "HEAD".equalsIgnoreCase(request.verb));
+	}
+
+	private int getRetries(HttpRequest< ? > request) {
+		return request.retries >= 0 ? request.retries : retries;
+	}
+
+	private boolean isRetryIOExceptions(HttpRequest< ? > request) {
+		return request.retryIOExceptions != null ? request.retryIOExceptions : retryIOExceptions;
+	}
+
+	private void backoff(HttpRequest< ? > request, int attempt) throws InterruptedException {
+		long delay = request.retryDelay >= 0 ? request.retryDelay : retryDelay;
+		Thread.sleep(Math.min(delay << Math.min(attempt, 10), MAX_RETRY_DELAY));
+	}
+
+	/*
+	 * Read the rest of a response we do not use so the connection can be
+	 * reused from the keep alive cache of the JDK
+	 */
+	private static void discard(TaggedData in) {
+		try {
+			URLConnection con = in.getConnection();
+			if (con instanceof HttpURLConnection) {
+				InputStream error = ((HttpURLConnection) con).getErrorStream();
+				if (error != null)
+					IO.drain(error);
 			}
+			if (in.getInputStream() != null)
+				IO.drain(in.getInputStream());
+		} catch (Exception e) {
+			// ignore
 		}
 	}
 
+	/*
+	 * Releases the permit of a connection when its content is read or the
+	 * stream is closed
+	 */
+	private static class PermitInputStream extends FilterInputStream {
+		private final AtomicBoolean	released	= new AtomicBoolean();
+		private final Semaphore		permit;
+
+		PermitInputStream(InputStream in, Semaphore permit) {
+			super(in);
+			this.permit = permit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int c = super.read();
+			if (c < 0)
+				release();
+			return c;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n < 0)
+				release();
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				release();
+			}
+		}
+
+		private void release() {
+			if (permit != null && !released.getAndSet(true))
+				permit.release();
+		}
+	}
+
+	/*
+	 * Answer the permit for a connection to the host of a URL. All requests
+	 * to a host share the permits so that a large batch of downloads does not
+	 * open more connections than the server accepts. A caller that never
+	 * closes a stream holds on to its permit, so waiting for a permit is
+	 * bounded. After the timeout the request proceeds without a permit and
+	 * null is returned.
+	 */
+	private Semaphore acquire(URL url) throws InterruptedException {
+		String host = url.getProtocol() + "://" + url.getHost() + ":" + url.getPort();
+		Semaphore semaphore = hosts.get(host);
+		if (semaphore == null) {
+			Semaphore s = new Semaphore(maxConnectionsPerHost);
+			semaphore = hosts.putIfAbsent(host, s);
+			if (semaphore == null)
+				semaphore = s;
+		}
+		if (semaphore.tryAcquire(permitTimeout, TimeUnit.MILLISECONDS))
+			return semaphore;
+
+		if (reporter != null)
+			reporter.warning("No connection to %s became available in %s ms, a stream to this host might not be closed",
+					host, permitTimeout);
+		return null;
+	}
+
+	/**
+	 * Download a batch of URLs into the cache in parallel. The number of
+	 * concurrent connections to a host is limited, see
+	 * {@link #setMaxConnectionsPerHost(int)}.
+	 *
+	 * @param uris the URLs to download
+	 * @param maxStale the accepted age of a cached file in milliseconds, or -1
+	 *            to always check the server
+	 * @return a promise to the cache file per URL, in the order of the URLs.
+	 *         The promise resolves to null when the URL does not exist.
+	 */
+	public List<Promise<File>> prefetch(Collection<URI> uris, long maxStale) throws Exception {
+		List<Promise<File>> promises = new ArrayList<>(uris.size());
+		for (URI uri : uris)
+			promises.add(build().useCache(maxStale).async(uri));
+		return promises;
+	}
+
 	public TaggedData send0(final HttpRequest< ? > request) throws Exception {
 
 		final ProxySetup proxy = getProxySetup(request.url);
@@ -683,6 +1011,48 @@ public class HttpClient implements Closeable, URLConnector {
 			return uri;
 	}
 
+	/**
+	 * Set the number of times a GET or HEAD request is retried when the server
+	 * answers with a temporary error (429, 502, 503 or 504), or a download
+	 * into the cache is resumed when the connection breaks. The default is 3.
+	 */
+	public void setRetries(int retries) {
+		this.retries = retries;
+	}
+
+	/**
+	 * Set the delay in milliseconds before the first retry, the delay doubles
+	 * for each next retry. The default is 1000.
+	 */
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	/**
+	 * Also retry requests that fail to connect or time out. The default is
+	 * false.
+	 */
+	public void setRetryIOExceptions(boolean retryIOExceptions) {
+		this.retryIOExceptions = retryIOExceptions;
+	}
+
+	/**
+	 * Set the maximum number of concurrent connections per host. The default
+	 * is 8. This only affects hosts that were not yet used.
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Set the time in milliseconds a request waits for a connection to a host
+	 * when all connections are in use. The request proceeds when the time
+	 * has passed. The default is 2 minutes.
+	 */
+	public void setPermitTimeout(long permitTimeout) {
+		this.permitTimeout = permitTimeout;
+	}
+
 	public boolean isOffline() {
 		AtomicBoolean localOffline = offline;
 		if (localOffline == null) {
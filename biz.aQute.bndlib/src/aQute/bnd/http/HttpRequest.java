@@ -42,6 +42,9 @@ public class HttpRequest<T> {
 	Reporter			reporter;
 	File				useCacheFile;
 	boolean				updateTag;
+	int					retries		= -1;
+	long				retryDelay	= -1;
+	Boolean				retryIOExceptions;
 
 	HttpRequest(HttpClient client) {
 		this.client = client;
@@ -177,6 +180,34 @@ public class HttpRequest<T> {
 		return this;
 	}
 
+	/**
+	 * Set the number of times the request is retried when it fails with a
+	 * temporary server error. Only GET and HEAD requests are retried. The
+	 * default is set on the client.
+	 */
+	public HttpRequest<T> retries(int retries) {
+		this.retries = retries;
+		return this;
+	}
+
+	/**
+	 * Set the delay in ms before the first retry, the delay doubles for each
+	 * next retry. The default is set on the client.
+	 */
+	public HttpRequest<T> retryDelay(long retryDelayInMs) {
+		this.retryDelay = retryDelayInMs;
+		return this;
+	}
+
+	/**
+	 * Also retry the request when it fails to connect or times out. The
+	 * default is set on the client.
+	 */
+	public HttpRequest<T> retryIOExceptions(boolean retryIOExceptions) {
+		this.retryIOExceptions = retryIOExceptions;
+		return this;
+	}
+
 	public HttpRequest<T> maxRedirects(int n) {
 		this.redirects = n;
 		return this;
@@ -81,6 +81,20 @@ public class URLCache {
 			update(etag);
 		}
 
+		/**
+		 * Move a downloaded file into the cache.
+		 */
+		public void update(File download, String etag, long modified) throws Exception {
+			this.file.getParentFile().mkdirs();
+			IO.rename(download, this.file);
+			codec.enc().to(jsonFile).put(this.dto);
+			if (modified > 0) {
+				this.file.setLastModified(modified);
+				this.jsonFile.setLastModified(modified);
+			}
+			update(etag);
+		}
+
 		public void update(String etag) throws Exception {
 			this.dto.sha_1 = SHA1.digest(file).asHex();
 			this.dto.sha_256 = SHA256.digest(file).asHex();
@@ -41,6 +41,14 @@ public class DesignateReader extends ClassDataCollector {
 
 	private DesignateDef getDef() throws Exception {
 		clazz.parseClassFileWithCollector(this);
+		return finish();
+	}
+
+	/*
+	 * Complete the designate after the class is parsed with this reader and
+	 * the object class definitions are known.
+	 */
+	DesignateDef finish() throws Exception {
 		if (pid != null && designate != null) {
 			if (pids != null && pids.length > 1) {
 				analyzer.error(
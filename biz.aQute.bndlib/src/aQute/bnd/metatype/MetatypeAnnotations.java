@@ -1,5 +1,6 @@
 package aQute.bnd.metatype;
 
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -11,56 +12,54 @@ import aQute.bnd.component.TagResource;
 import aQute.bnd.header.OSGiHeader;
 import aQute.bnd.header.Parameters;
 import aQute.bnd.osgi.Analyzer;
+import aQute.bnd.osgi.ClassDataCollector;
 import aQute.bnd.osgi.Clazz;
 import aQute.bnd.osgi.Constants;
 import aQute.bnd.osgi.Descriptors.TypeRef;
 import aQute.bnd.osgi.Instruction;
 import aQute.bnd.osgi.Instructions;
+import aQute.bnd.osgi.PerClassDataCollector;
 import aQute.bnd.service.AnalyzerPlugin;
+import aQute.bnd.service.classparser.ClassParser;
 import aQute.bnd.xmlattribute.XMLAttributeFinder;
 import aQute.libg.generics.Create;
 
 /**
  * Analyze the class space for any classes that have an OSGi annotation for DS.
  */
-public class MetatypeAnnotations implements AnalyzerPlugin {
+public class MetatypeAnnotations implements AnalyzerPlugin, ClassParser {
 
 	enum Options {
 		nested
 	}
 
+	/**
+	 * Parse the classes for metatype annotations during the scan of the class
+	 * space by the analyzer, {@link #analyzeJar(Analyzer)} then uses the
+	 * outcome.
+	 */
+	public ClassDataCollector getClassDataCollector(Analyzer analyzer) {
+		return Scan.create(analyzer);
+	}
+
 	public boolean analyzeJar(Analyzer analyzer) throws Exception {
-		Parameters header = OSGiHeader.parseHeader(analyzer.getProperty(Constants.METATYPE_ANNOTATIONS, "*"));
-		if (header.size() == 0)
+		ClassDataCollector cd = analyzer.getClassDataCollector(this);
+		Scan scan = cd instanceof Scan && ((Scan) cd).isCurrent() ? (Scan) cd : Scan.create(analyzer);
+		if (scan == null)
 			return false;
 
-		Parameters optionsHeader = OSGiHeader.parseHeader(analyzer.getProperty(Constants.METATYPE_ANNOTATIONS_OPTIONS));
-		EnumSet<Options> options = EnumSet.noneOf(Options.class);
-		for (String s : optionsHeader.keySet()) {
-			try {
-				options.add(Options.valueOf(s));
-			} catch (IllegalArgumentException e) {
-				analyzer.error("Unrecognized %s value %s, expected values are %s",
-						Constants.METATYPE_ANNOTATIONS_OPTIONS, s, EnumSet.allOf(Options.class));
-			}
-		}
-
-		Map<TypeRef,OCDDef> classToOCDMap = new HashMap<TypeRef,OCDDef>();
+		Map<TypeRef,OCDDef> classToOCDMap = scan.classToOCDMap;
 
 		Set<String> ocdIds = new HashSet<String>();
 		Set<String> pids = new HashSet<String>();
 
-		Instructions instructions = new Instructions(header);
-
-		XMLAttributeFinder finder = new XMLAttributeFinder(analyzer);
-
 		List<Clazz> list = Create.list();
 		for (Clazz c : analyzer.getClassspace().values()) {
-			for (Instruction instruction : instructions.keySet()) {
+			for (Instruction instruction : scan.instructions.keySet()) {
 				if (instruction.matches(c.getFQN())) {
 					if (!instruction.isNegated()) {
 						list.add(c);
-						OCDDef definition = OCDReader.getOCDDef(c, analyzer, options, finder);
+						OCDDef definition = scan.getOCDDef(c);
 						if (definition != null) {
 							classToOCDMap.put(c.getClassName(), definition);
 						}
@@ -72,7 +71,7 @@ public class MetatypeAnnotations implements AnalyzerPlugin {
 
 		// process Designate annotations after OCD annotations
 		for (Clazz c : list) {
-			DesignateReader.getDesignate(c, analyzer, classToOCDMap, finder);
+			scan.getDesignate(c);
 		}
 
 		for (Map.Entry<TypeRef,OCDDef> entry : classToOCDMap.entrySet()) {
@@ -94,6 +93,100 @@ public class MetatypeAnnotations implements AnalyzerPlugin {
 		return false;
 	}
 
+	/*
+	 * The readers of the classes that were parsed during the scan of the
+	 * class space. A class that is not part of the scan is parsed when its
+	 * definition is asked for.
+	 */
+	static class Scan extends PerClassDataCollector {
+		final Analyzer						analyzer;
+		final Instructions					instructions;
+		final EnumSet<Options>				options;
+		final XMLAttributeFinder			finder;
+		final Map<TypeRef,OCDDef>			classToOCDMap	= new HashMap<TypeRef,OCDDef>();
+		final Map<Clazz,OCDReader>			ocds			= new HashMap<Clazz,OCDReader>();
+		final Map<Clazz,DesignateReader>	designates		= new HashMap<Clazz,DesignateReader>();
+		final Set<Clazz>					unannotated		= new HashSet<Clazz>();
+		final List<String>					config;
+
+		Scan(Analyzer analyzer, Instructions instructions, EnumSet<Options> options) {
+			this.analyzer = analyzer;
+			this.config = config(analyzer);
+			this.instructions = instructions;
+			this.options = options;
+			this.finder = new XMLAttributeFinder(analyzer);
+		}
+
+		static Scan create(Analyzer analyzer) {
+			Parameters header = OSGiHeader.parseHeader(analyzer.getProperty(Constants.METATYPE_ANNOTATIONS, "*"));
+			if (header.size() == 0)
+				return null;
+
+			Parameters optionsHeader = OSGiHeader
+					.parseHeader(analyzer.getProperty(Constants.METATYPE_ANNOTATIONS_OPTIONS));
+			EnumSet<Options> options = EnumSet.noneOf(Options.class);
+			for (String s : optionsHeader.keySet()) {
+				try {
+					options.add(Options.valueOf(s));
+				} catch (IllegalArgumentException e) {
+					analyzer.error("Unrecognized %s value %s, expected values are %s",
+							Constants.METATYPE_ANNOTATIONS_OPTIONS, s, EnumSet.allOf(Options.class));
+				}
+			}
+			return new Scan(analyzer, new Instructions(header), options);
+		}
+
+		/*
+		 * The instructions the scan depends on, a plugin can change them
+		 * after the scan was created.
+		 */
+		static List<String> config(Analyzer analyzer) {
+			return Arrays.asList(analyzer.getProperty(Constants.METATYPE_ANNOTATIONS, "*"),
+					analyzer.getProperty(Constants.METATYPE_ANNOTATIONS_OPTIONS));
+		}
+
+		boolean isCurrent() {
+			return config.equals(config(analyzer));
+		}
+
+		@Override
+		protected void collectors(Clazz c, List<ClassDataCollector> collectors) {
+			Instruction instruction = instructions.matcher(c.getFQN());
+			if (instruction == null || instruction.isNegated())
+				return;
+
+			// without annotations there is no definition or designate
+			if (!c.hasAnnotations()) {
+				unannotated.add(c);
+				return;
+			}
+			OCDReader ocd = new OCDReader(analyzer, c, options, finder);
+			ocds.put(c, ocd);
+			collectors.add(ocd);
+			DesignateReader designate = new DesignateReader(analyzer, c, classToOCDMap, finder);
+			designates.put(c, designate);
+			collectors.add(designate);
+		}
+
+		OCDDef getOCDDef(Clazz c) throws Exception {
+			if (unannotated.contains(c))
+				return null;
+			OCDReader reader = ocds.remove(c);
+			if (reader != null)
+				return reader.finish();
+			return OCDReader.getOCDDef(c, analyzer, options, finder);
+		}
+
+		DesignateDef getDesignate(Clazz c) throws Exception {
+			if (unannotated.contains(c))
+				return null;
+			DesignateReader reader = designates.remove(c);
+			if (reader != null)
+				return reader.finish();
+			return DesignateReader.getDesignate(c, analyzer, classToOCDMap, finder);
+		}
+	}
+
 	@Override
 	public String toString() {
 		return "MetatypeAnnotations";
@@ -62,6 +62,13 @@ public class OCDReader extends ClassDataCollector {
 
 	private OCDDef getDef() throws Exception {
 		clazz.parseClassFileWithCollector(this);
+		return finish();
+	}
+
+	/*
+	 * Complete the definition after the class is parsed with this reader.
+	 */
+	OCDDef finish() throws Exception {
 		if (ocd != null) {
 			topLevel = false;
 			parseExtends(clazz);
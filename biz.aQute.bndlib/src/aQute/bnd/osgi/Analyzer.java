@@ -40,6 +40,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -51,6 +52,10 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TimeZone;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
@@ -117,9 +122,20 @@ public class Analyzer extends Processor {
 	final protected AnalyzerMessages				msgs					= ReporterMessages.base(this,
 			AnalyzerMessages.class);
 	private AnnotationHeaders						annotationHeaders;
+	private Map<ClassParser,ClassDataCollector>		scanned;
+	private final Set<ClassParser>					requested				= Collections
+			.newSetFromMap(new IdentityHashMap<ClassParser,Boolean>());
 	private Set<PackageRef>							packagesVisited			= new HashSet<PackageRef>();
+	private final Set<String>						extraPaths				= new HashSet<String>();
+	private Map<Resource,Clazz>						reusable				= Collections.emptyMap();
 	private Set<Check>								checks;
 
+	/**
+	 * Minimum number of classes per worker before parallel analysis is worth
+	 * the overhead.
+	 */
+	private final static int						PARALLEL_MIN_CLASSES	= 64;
+
 	public enum Check {
 		ALL, IMPORTS, EXPORTS;
 	}
@@ -166,6 +182,8 @@ public class Analyzer extends Processor {
 			uses.clear();
 			apiUses.clear();
 			classspace.clear();
+			scanned = null;
+			requested.clear();
 			classpathExports.clear();
 			contracts.clear();
 			packagesVisited.clear();
@@ -211,24 +229,8 @@ public class Analyzer extends Processor {
 			// TODO handle better reanalyze
 			doPlugins();
 
-			if (since(About._2_3)) {
-				List<ClassParser> parsers = getPlugins(ClassParser.class);
-				ClassDataCollectors cds = new ClassDataCollectors(this);
-				for (ClassParser cp : parsers) {
-					cds.add(cp.getClassDataCollector(this));
-				}
-
-				//
-				// built ins
-				//
-
-				cds.add(annotationHeaders = new AnnotationHeaders(this));
-
-				for (Clazz c : classspace.values()) {
-					cds.parse(c);
-				}
-				cds.close();
-			}
+			if (since(About._2_3))
+				scanClassspace();
 
 			// Conditional packages
 
@@ -243,6 +245,10 @@ public class Analyzer extends Processor {
 			Jar extra = getExtra();
 
 			while (extra != null) {
+				for (String path : extra.getResources().keySet()) {
+					if (dot.getResource(path) == null)
+						extraPaths.add(path);
+				}
 				dot.addAll(extra);
 				analyzeJar(extra, "", true);
 				extra = getExtra();
@@ -364,6 +370,67 @@ public class Analyzer extends Processor {
 		}
 	}
 
+	/**
+	 * Analyze the jar again after some of its resources were changed, added or
+	 * removed. The classes of the resources that did not change are taken from
+	 * the previous analysis, only the changed classes are parsed again. The
+	 * contained and referred packages, the uses and the headers are then
+	 * recalculated. A resource is considered changed when its path is in the
+	 * given set or when the jar holds a different resource for its path. The
+	 * resources that an earlier analysis added to the jar for conditional
+	 * packages are removed and calculated again, resources that analyzer
+	 * plugins added to the jar are left in place.
+	 * <p>
+	 * If the jar was not analyzed yet, this is the same as {@link #analyze()}.
+	 * 
+	 * @param changed the paths in the jar of the changed, added and removed
+	 *            resources
+	 */
+	public void reanalyze(Collection<String> changed) throws Exception {
+		if (!analyzed) {
+			analyze();
+			return;
+		}
+
+		Map<Resource,Clazz> previous = new IdentityHashMap<Resource,Clazz>();
+		for (Clazz c : classspace.values()) {
+			if (!changed.contains(c.getAbsolutePath()))
+				previous.put(c.resource, c);
+		}
+
+		for (String path : extraPaths)
+			dot.remove(path);
+		extraPaths.clear();
+
+		contained.clear();
+		referred.clear();
+		ees.clear();
+		exports = null;
+		imports = null;
+		activator = null;
+		analyzed = false;
+
+		reusable = previous;
+		try {
+			analyze();
+		} finally {
+			reusable = Collections.emptyMap();
+		}
+	}
+
+	/**
+	 * Calculate the manifest again after some of the resources of the jar
+	 * were changed, added or removed.
+	 * 
+	 * @param changed the paths in the jar of the changed, added and removed
+	 *            resources
+	 * @see #reanalyze(Collection)
+	 */
+	public Manifest calcManifest(Collection<String> changed) throws Exception {
+		reanalyze(changed);
+		return calcManifest();
+	}
+
 	/*
 	 * Learn the package details from the Jar. This can either be the manifest
 	 * (in that case the attrs are already set on the package), a
@@ -662,6 +729,7 @@ public class Analyzer extends Processor {
 				}
 				if (reanalyze) {
 					classspace.clear();
+					scanned = null;
 					analyzeBundleClasspath();
 				}
 			} catch (Exception e) {
@@ -671,6 +739,83 @@ public class Analyzer extends Processor {
 		}
 	}
 
+	/*
+	 * Parse all classes in the class space for the class parsers and the built
+	 * in collectors, after the plugins have run. The parsers whose collector
+	 * was already requested by their plugin are skipped.
+	 */
+	private void scanClassspace() throws Exception {
+		scanned = null;
+		ClassDataCollectors cds = new ClassDataCollectors(this);
+		for (ClassParser cp : getPlugins(ClassParser.class)) {
+			if (!requested.contains(cp)) {
+				ClassDataCollector cd = cp.getClassDataCollector(this);
+				if (cd != null)
+					cds.add(cd);
+			}
+		}
+
+		//
+		// built ins
+		//
+
+		cds.add(annotationHeaders = new AnnotationHeaders(this));
+
+		for (Clazz c : classspace.values()) {
+			cds.parse(c);
+		}
+		cds.close();
+	}
+
+	/*
+	 * Parse all classes in the class space once for the given parser and the
+	 * class parsers of the analyzer plugins that have not requested their
+	 * collector yet, so those plugins can share the parse.
+	 */
+	private void scanPlugins(ClassParser parser) throws Exception {
+		scanned = new IdentityHashMap<ClassParser,ClassDataCollector>();
+		ClassDataCollectors cds = new ClassDataCollectors(this);
+		ClassDataCollector collector = parser.getClassDataCollector(this);
+		scanned.put(parser, collector);
+		if (collector != null)
+			cds.add(collector);
+		for (ClassParser cp : getPlugins(ClassParser.class)) {
+			if (cp != parser && cp instanceof AnalyzerPlugin && !requested.contains(cp)) {
+				ClassDataCollector cd = cp.getClassDataCollector(this);
+				scanned.put(cp, cd);
+				if (cd != null)
+					cds.add(cd);
+			}
+		}
+
+		for (Clazz c : classspace.values()) {
+			cds.parse(c);
+		}
+		cds.close();
+	}
+
+	/**
+	 * Answer the collector of a class parser for the current class space. An
+	 * analyzer plugin that is also a class parser can use it to get the
+	 * outcome of the parse instead of parsing the classes again. The class
+	 * space is parsed when the collector is first requested, at the time the
+	 * plugin runs, for all the analyzer plugins that are class parsers. The
+	 * parser is then skipped when the class space is parsed after the
+	 * plugins.
+	 *
+	 * @param parser the class parser
+	 * @return the collector of the parser or {@code null} if the parser has
+	 *         no collector
+	 */
+	public ClassDataCollector getClassDataCollector(ClassParser parser) throws Exception {
+		if (!since(About._2_3))
+			return null;
+		if (scanned == null || !scanned.containsKey(parser))
+			scanPlugins(parser);
+		requested.add(parser);
+		return scanned.get(parser);
+	}
+
 	/**
 	 * @return {@code true} if the {@code -resourceonly} instruction is set,
 	 *         {@code false} otherwise
@@ -2305,6 +2450,10 @@ public class Analyzer extends Processor {
 	 */
 	private boolean analyzeJar(Jar jar, String prefix, boolean okToIncludeDirs) throws Exception {
 		Map<String,Clazz> mismatched = new HashMap<String,Clazz>();
+		ClazzCache cache = getPlugin(ClazzCache.class);
+		int workers = getParallelAnalysisWorkers();
+		Map<String,Object> parsed = workers != 0 ? parseClassesConcurrently(jar, prefix, cache, workers)
+				: Collections.<String, Object> emptyMap();
 
 		next: for (String path : jar.getResources().keySet()) {
 			if (path.startsWith(prefix)) {
@@ -2327,13 +2476,14 @@ public class Analyzer extends Processor {
 					Clazz clazz;
 
 					try {
-						InputStream in = resource.openInputStream();
-						clazz = new Clazz(this, path, resource);
-						try {
-							clazz.parseClassFile();
-						} finally {
-							in.close();
-						}
+						Object result = parsed.get(path);
+						if (result instanceof Throwable)
+							throw (Throwable) result;
+
+						if (result != null)
+							clazz = (Clazz) result;
+						else if ((clazz = reusable.get(resource)) == null)
+							clazz = parseClass(cache, path, resource);
 					} catch (Throwable e) {
 						exception(e, "Invalid class file %s (%s)", relativePath, e);
 						continue next;
@@ -2374,6 +2524,100 @@ public class Analyzer extends Processor {
 		return true;
 	}
 
+	/**
+	 * Parse the class files under the prefix of a jar on the shared executor.
+	 * Only the parsing is done concurrently, the caller merges the results in
+	 * the iteration order of the jar so that the outcome is identical to the
+	 * serial analysis. The returned map contains either the parsed
+	 * {@link Clazz} or the {@link Throwable} that was thrown while parsing it.
+	 * 
+	 * @param jar the jar to parse
+	 * @param prefix the prefix of the paths to parse
+	 * @param cache the class cache or null
+	 * @param workers the number of workers, or -1 to calculate it
+	 * @return a map from path to parsed class or failure
+	 */
+	private Map<String,Object> parseClassesConcurrently(Jar jar, String prefix, final ClazzCache cache,
+			int workers) throws Exception {
+		final List<Map.Entry<String,Resource>> todo = new ArrayList<Map.Entry<String,Resource>>();
+		for (Map.Entry<String,Resource> entry : jar.getResources().entrySet()) {
+			String path = entry.getKey();
+			if (path.startsWith(prefix) && path.endsWith(".class") && !reusable.containsKey(entry.getValue()))
+				todo.add(entry);
+		}
+
+		final Map<String,Object> parsed = new ConcurrentHashMap<String,Object>();
+		final AtomicInteger next = new AtomicInteger();
+		if (workers < 0)
+			workers = Math.min(Runtime.getRuntime().availableProcessors(), todo.size() / PARALLEL_MIN_CLASSES);
+		else
+			workers = Math.min(workers, todo.size());
+		if (workers < 2)
+			return parsed;
+
+		Callable<Void> worker = new Callable<Void>() {
+			@Override
+			public Void call() {
+				int n;
+				while ((n = next.getAndIncrement()) < todo.size()) {
+					Map.Entry<String,Resource> entry = todo.get(n);
+					try {
+						parsed.put(entry.getKey(), parseClass(cache, entry.getKey(), entry.getValue()));
+					} catch (Throwable e) {
+						parsed.put(entry.getKey(), e);
+					}
+				}
+				return null;
+			}
+		};
+
+		List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(workers);
+		for (int i = 0; i < workers; i++) {
+			FutureTask<Void> task = new FutureTask<Void>(worker);
+			tasks.add(task);
+			getExecutor().execute(task);
+		}
+		for (FutureTask<Void> task : tasks) {
+			task.get();
+		}
+		return parsed;
+	}
+
+	/*
+	 * Answer the number of workers for the -parallelanalysis instruction. A
+	 * number is the number of workers, true calculates it from the number of
+	 * processors and classes and anything else is a serial analysis.
+	 */
+	private int getParallelAnalysisWorkers() {
+		String value = getProperty(PARALLELANALYSIS);
+		if (value == null)
+			return 0;
+
+		value = value.trim();
+		if (Verifier.NUMBERPATTERN.matcher(value).matches()) {
+			try {
+				return Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+
+		return isTrue(value) ? -1 : 0;
+	}
+
+	/**
+	 * Parse a class file without a collector, through the class cache when
+	 * there is one.
+	 */
+	private Clazz parseClass(ClazzCache cache, String path, Resource resource) throws Exception {
+		if (cache != null)
+			return cache.parse(this, path, resource);
+
+		Clazz clazz = new Clazz(this, path, resource);
+		clazz.parseClassFile();
+		return clazz;
+	}
+
 	/**
 	 * Clean up version parameters. Other builders use more fuzzy definitions of
 	 * the version syntax. This method cleans up such a version to match an OSGi
@@ -2713,8 +2957,7 @@ public class Analyzer extends Processor {
 				r = new URLResource(url);
 		}
 		if (r != null) {
-			c = new Clazz(this, typeRef.getPath(), r);
-			c.parseClassFile();
+			c = parseClass(getPlugin(ClazzCache.class), typeRef.getPath(), r);
 			importedClassesCache.put(typeRef, c);
 		}
 		return c;
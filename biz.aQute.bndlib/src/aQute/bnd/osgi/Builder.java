@@ -151,6 +151,9 @@ public class Builder extends Analyzer {
 		dot.setName(getBsn());
 
 		doDigests(dot);
+		if (is(PARALLELWRITE))
+			dot.setExecutor(getExecutor());
+		dot.setCopyDeflated(is(COPYDEFLATED));
 
 		sign(dot);
 		doSaveManifest(dot);
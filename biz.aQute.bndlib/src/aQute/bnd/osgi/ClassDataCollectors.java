@@ -262,6 +262,16 @@ class ClassDataCollectors implements Closeable {
 				}
 		}
 
+		@Override
+		public void annotationDefault(MethodDef last, Object value) {
+			for (ClassDataCollector cd : shortlist)
+				try {
+					cd.annotationDefault(last, value);
+				} catch (Exception e) {
+					reporter.exception(e, "Failure for %s on call annotationDefault[%s]", clazz, cd);
+				}
+		}
+
 		@Override
 		public void referTo(TypeRef typeRef, int modifiers) {
 			for (ClassDataCollector cd : shortlist)
@@ -1,13 +1,19 @@
 package aQute.bnd.osgi;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
 import java.io.DataInputStream;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -17,9 +23,12 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,6 +38,9 @@ import org.slf4j.LoggerFactory;
 import aQute.bnd.osgi.Descriptors.Descriptor;
 import aQute.bnd.osgi.Descriptors.PackageRef;
 import aQute.bnd.osgi.Descriptors.TypeRef;
+import aQute.lib.exceptions.Exceptions;
+import aQute.lib.io.ByteBufferDataInput;
+import aQute.lib.io.IO;
 import aQute.lib.utf8properties.UTF8Properties;
 import aQute.libg.generics.Create;
 
@@ -46,7 +58,7 @@ public class Clazz {
 		}
 
 		public String getName() {
-			return (String) pool[cname];
+			return (String) constant(cname);
 		}
 
 		public String toString() {
@@ -444,6 +456,13 @@ public class Clazz {
 	TypeRef				className;
 	Object				pool[];
 	int					intPool[];
+	/*
+	 * When parsing from a ByteBuffer the Utf8 constants are only decoded when
+	 * they are accessed through constant(int). Until then utf8Pool holds the
+	 * position of the constant in utf8Source.
+	 */
+	int					utf8Pool[];
+	ByteBufferDataInput	utf8Source;
 	Set<PackageRef>		imports		= Create.set();
 	String				path;
 	int					minor		= 0;
@@ -484,27 +503,216 @@ public class Clazz {
 	}
 
 	public Set<TypeRef> parseClassFileWithCollector(ClassDataCollector cd) throws Exception {
+		if (isStreamParser()) {
+			InputStream in = resource.openInputStream();
+			try {
+				return parseClassFile(in, cd);
+			} finally {
+				in.close();
+			}
+		}
+		return parseClassFile(read(resource), cd);
+	}
+
+	/*
+	 * Subclasses that override one of the protected parse hooks expect to see
+	 * every constant and the byte code through them. Their class files are
+	 * parsed from a stream, as before the buffer based parse was added.
+	 */
+	private static final ConcurrentMap<Class< ? >,Boolean> streamParsers = new ConcurrentHashMap<>();
+
+	private boolean isStreamParser() {
+		Class< ? > c = getClass();
+		if (c == Clazz.class)
+			return false;
+
+		Boolean streamParser = streamParsers.get(c);
+		if (streamParser == null) {
+			streamParser = overridesParseHooks(c);
+			streamParsers.put(c, streamParser);
+		}
+		return streamParser;
+	}
+
+	private static boolean overridesParseHooks(Class< ? > c) {
+		for (; c != Clazz.class; c = c.getSuperclass()) {
+			for (Method m : c.getDeclaredMethods()) {
+				if (Modifier.isStatic(m.getModifiers()))
+					continue;
+				String name = m.getName();
+				Class< ? >[] types = m.getParameterTypes();
+				if (name.startsWith("constant") && types.length == 2 && types[0] == DataInputStream.class
+						&& types[1] == int.class)
+					return true;
+				if (name.equals("pool") && types.length == 2 && types[0] == Object[].class
+						&& types[1] == int[].class)
+					return true;
+				if (name.equals("crawl") && types.length == 1 && types[0] == byte[].class)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Parse the class file from a buffer, the buffer can be a heap buffer or
+	 * a memory mapped file. The buffer is not copied and the Utf8 constants in
+	 * the constant pool are only decoded when they are actually used.
+	 * 
+	 * @param bb the buffer with the class file from its position to its limit
+	 * @param cd the collector or null
+	 * @return the referenced types
+	 */
+	public Set<TypeRef> parseClassFile(ByteBuffer bb, ClassDataCollector cd) throws Exception {
+		if (isStreamParser()) {
+			byte[] data = new byte[bb.remaining()];
+			bb.duplicate().get(data);
+			return parseClassFile(new ByteArrayInputStream(data), cd);
+		}
+		try {
+			cds.push(this.cd);
+			this.cd = cd;
+			return parseClassFile(new ByteBufferDataInput(bb));
+		} finally {
+			this.cd = cds.pop();
+		}
+	}
+
+	/*
+	 * Read the class file into a buffer. Only the sizes of embedded, file and
+	 * zip resources are cheap and reliable, other resources are read until
+	 * the end of the stream.
+	 */
+	static ByteBuffer read(Resource resource) throws Exception {
+		if (resource instanceof EmbeddedResource)
+			return ByteBuffer.wrap(((EmbeddedResource) resource).data);
+
 		InputStream in = resource.openInputStream();
 		try {
-			return parseClassFile(in, cd);
+			long size = (resource instanceof FileResource || resource instanceof ZipResource) ? resource.size() : -1;
+			if (size < 0 || size > Integer.MAX_VALUE)
+				return ByteBuffer.wrap(IO.read(in));
+
+			byte[] data = new byte[(int) size];
+			new DataInputStream(in).readFully(data);
+			return ByteBuffer.wrap(data);
 		} finally {
 			in.close();
 		}
 	}
 
+	/*
+	 * Write the outcome of a parse without a collector so that readSummary can
+	 * restore an equivalent Clazz without parsing the class file again. Type
+	 * and package references are written in their binary form because they
+	 * are specific to the analyzer.
+	 */
+	void writeSummary(DataOutput out) throws IOException {
+		out.writeUTF(className.getBinary());
+		out.writeShort(minor);
+		out.writeShort(major);
+		out.writeInt(accessx);
+		out.writeInt(innerAccess);
+		writeTypeRef(out, zuper);
+		writeTypeRefs(out, interfaces == null ? null : Arrays.asList(interfaces));
+		writeTypeRefs(out, annotations);
+		writePackageRefs(out, imports);
+		writePackageRefs(out, api);
+		out.writeBoolean(hasRuntimeAnnotations);
+		out.writeBoolean(hasClassAnnotations);
+		out.writeBoolean(hasDefaultConstructor);
+		out.writeBoolean(deprecated);
+		writeString(out, sourceFile);
+		writeString(out, classSignature);
+	}
+
+	void readSummary(DataInput in) throws IOException {
+		className = analyzer.getTypeRef(in.readUTF());
+		minor = in.readUnsignedShort();
+		major = in.readUnsignedShort();
+		accessx = in.readInt();
+		innerAccess = in.readInt();
+		zuper = readTypeRef(in);
+		List<TypeRef> list = readTypeRefs(in);
+		interfaces = list == null ? null : list.toArray(new TypeRef[0]);
+		list = readTypeRefs(in);
+		annotations = list == null ? null : new HashSet<TypeRef>(list);
+		imports = readPackageRefs(in);
+		api = readPackageRefs(in);
+		hasRuntimeAnnotations = in.readBoolean();
+		hasClassAnnotations = in.readBoolean();
+		hasDefaultConstructor = in.readBoolean();
+		deprecated = in.readBoolean();
+		sourceFile = readString(in);
+		classSignature = readString(in);
+	}
+
+	private static void writeString(DataOutput out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null)
+			out.writeUTF(s);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeTypeRef(DataOutput out, TypeRef ref) throws IOException {
+		writeString(out, ref == null ? null : ref.getBinary());
+	}
+
+	private TypeRef readTypeRef(DataInput in) throws IOException {
+		String binary = readString(in);
+		return binary == null ? null : analyzer.getTypeRef(binary);
+	}
+
+	private static void writeTypeRefs(DataOutput out, Collection<TypeRef> refs) throws IOException {
+		out.writeInt(refs == null ? -1 : refs.size());
+		if (refs != null)
+			for (TypeRef ref : refs)
+				out.writeUTF(ref.getBinary());
+	}
+
+	private List<TypeRef> readTypeRefs(DataInput in) throws IOException {
+		int size = in.readInt();
+		if (size < 0)
+			return null;
+		List<TypeRef> refs = new ArrayList<TypeRef>(size);
+		for (int i = 0; i < size; i++)
+			refs.add(analyzer.getTypeRef(in.readUTF()));
+		return refs;
+	}
+
+	private static void writePackageRefs(DataOutput out, Set<PackageRef> refs) throws IOException {
+		out.writeInt(refs == null ? -1 : refs.size());
+		if (refs != null)
+			for (PackageRef ref : refs)
+				out.writeUTF(ref.getBinary());
+	}
+
+	private Set<PackageRef> readPackageRefs(DataInput in) throws IOException {
+		int size = in.readInt();
+		if (size < 0)
+			return null;
+		Set<PackageRef> refs = new HashSet<PackageRef>();
+		for (int i = 0; i < size; i++)
+			refs.add(analyzer.getPackageRef(in.readUTF()));
+		return refs;
+	}
+
 	public Set<TypeRef> parseClassFile(InputStream in, ClassDataCollector cd) throws Exception {
 		DataInputStream din = new DataInputStream(in);
 		try {
 			cds.push(this.cd);
 			this.cd = cd;
-			return parseClassFile(din);
+			return parseClassFile((DataInput) din);
 		} finally {
 			this.cd = cds.pop();
 			din.close();
 		}
 	}
 
-	Set<TypeRef> parseClassFile(DataInputStream in) throws Exception {
+	Set<TypeRef> parseClassFile(DataInput in) throws Exception {
 		logger.debug("parseClassFile(): path={} resource={}", path, resource);
 
 		++depth;
@@ -523,6 +731,16 @@ public class Clazz {
 		int count = in.readUnsignedShort();
 		pool = new Object[count];
 		intPool = new int[count];
+		if (in instanceof ByteBufferDataInput) {
+			utf8Source = (ByteBufferDataInput) in;
+			utf8Pool = new int[count];
+		} else {
+			utf8Source = null;
+			utf8Pool = null;
+		}
+
+		// The protected hooks are only called when parsing from a stream
+		DataInputStream din = in instanceof DataInputStream ? (DataInputStream) in : null;
 
 		CONSTANT[] tags = CONSTANT.values();
 		process: for (int poolIndex = 1; poolIndex < count; poolIndex++) {
@@ -533,7 +751,10 @@ public class Clazz {
 				case Two :
 					throw new IOException("Invalid tag " + tag);
 				case Utf8 :
-					constantUtf8(in, poolIndex);
+					if (din != null)
+						constantUtf8(din, poolIndex);
+					else
+						constantUtf8(in, poolIndex);
 					break;
 				case Integer :
 					constantInteger(in, poolIndex);
@@ -545,15 +766,24 @@ public class Clazz {
 				// the long and double entries take two slots in the
 				// constant pool. See 4.4.5
 				case Long :
-					constantLong(in, poolIndex);
+					if (din != null)
+						constantLong(din, poolIndex);
+					else
+						constantLong(in, poolIndex);
 					poolIndex++;
 					break;
 				case Double :
-					constantDouble(in, poolIndex);
+					if (din != null)
+						constantDouble(din, poolIndex);
+					else
+						constantDouble(in, poolIndex);
 					poolIndex++;
 					break;
 				case Class :
-					constantClass(in, poolIndex);
+					if (din != null)
+						constantClass(din, poolIndex);
+					else
+						constantClass(in, poolIndex);
 					break;
 				case String :
 					constantString(in, poolIndex);
@@ -633,11 +863,14 @@ public class Clazz {
 		 */
 
 		accessx = in.readUnsignedShort(); // access
-		if (Modifier.isPublic(accessx))
+
+		// A collector can stop the parse early, so keep the api of an earlier
+		// full parse
+		if (Modifier.isPublic(accessx) && (cd == null || api == null))
 			api = new HashSet<PackageRef>();
 
 		int this_class = in.readUnsignedShort();
-		className = analyzer.getTypeRef((String) pool[intPool[this_class]]);
+		className = analyzer.getTypeRef((String) constant(intPool[this_class]));
 		referTo(className, Modifier.PUBLIC);
 
 		try {
@@ -648,7 +881,7 @@ public class Clazz {
 			}
 
 			int super_class = in.readUnsignedShort();
-			String superName = (String) pool[intPool[super_class]];
+			String superName = (String) constant(intPool[super_class]);
 			if (superName != null) {
 				zuper = analyzer.getTypeRef(superName);
 			}
@@ -663,7 +896,7 @@ public class Clazz {
 			if (interfacesCount > 0) {
 				interfaces = new TypeRef[interfacesCount];
 				for (int i = 0; i < interfacesCount; i++) {
-					interfaces[i] = analyzer.getTypeRef((String) pool[intPool[in.readUnsignedShort()]]);
+					interfaces[i] = analyzer.getTypeRef((String) constant(intPool[in.readUnsignedShort()]));
 					referTo(interfaces[i], accessx);
 				}
 				if (cd != null)
@@ -686,12 +919,12 @@ public class Clazz {
 				// class name for the field type, so bnd
 				// would not see a reference. We detect
 				// this case and add an artificial descriptor
-				String name = pool[name_index].toString(); // name_index
+				String name = constant(name_index).toString(); // name_index
 				if (name.startsWith("class$") || name.startsWith("$class$")) {
 					crawl = true;
 				}
 				if (cd != null)
-					cd.field(last = new FieldDef(access_flags, name, pool[descriptor_index].toString()));
+					cd.field(last = new FieldDef(access_flags, name, constant(descriptor_index).toString()));
 
 				referTo(descriptor_index, access_flags);
 				doAttributes(in, ElementType.FIELD, false, access_flags);
@@ -732,8 +965,8 @@ public class Clazz {
 				int access_flags = in.readUnsignedShort();
 				int name_index = in.readUnsignedShort();
 				int descriptor_index = in.readUnsignedShort();
-				String name = pool[name_index].toString();
-				String descriptor = pool[descriptor_index].toString();
+				String name = constant(name_index).toString();
+				String descriptor = constant(descriptor_index).toString();
 				MethodDef mdef = null;
 				if (cd != null) {
 					mdef = new MethodDef(access_flags, name, descriptor);
@@ -770,14 +1003,14 @@ public class Clazz {
 		}
 	}
 
-	private void constantFloat(DataInputStream in, int poolIndex) throws IOException {
+	private void constantFloat(DataInput in, int poolIndex) throws IOException {
 		if (cd != null)
 			pool[poolIndex] = in.readFloat(); // ALU
 		else
 			in.skipBytes(4);
 	}
 
-	private void constantInteger(DataInputStream in, int poolIndex) throws IOException {
+	private void constantInteger(DataInput in, int poolIndex) throws IOException {
 		intPool[poolIndex] = in.readInt();
 		if (cd != null)
 			pool[poolIndex] = intPool[poolIndex];
@@ -791,7 +1024,7 @@ public class Clazz {
 	 * @param tag
 	 * @throws IOException
 	 */
-	private void nameAndType(DataInputStream in, int poolIndex, CONSTANT tag) throws IOException {
+	private void nameAndType(DataInput in, int poolIndex, CONSTANT tag) throws IOException {
 		int name_index = in.readUnsignedShort();
 		int descriptor_index = in.readUnsignedShort();
 		pool[poolIndex] = new Assoc(tag, name_index, descriptor_index);
@@ -808,7 +1041,7 @@ public class Clazz {
 	 * @param tag
 	 * @throws IOException
 	 */
-	private void methodType(DataInputStream in, int poolIndex, CONSTANT tag) throws IOException {
+	private void methodType(DataInput in, int poolIndex, CONSTANT tag) throws IOException {
 		int descriptor_index = in.readUnsignedShort();
 		pool[poolIndex] = new Assoc(tag, 0, descriptor_index);
 	}
@@ -819,7 +1052,7 @@ public class Clazz {
 	 * @param tag
 	 * @throws IOException
 	 */
-	private void methodHandle(DataInputStream in, int poolIndex, CONSTANT tag) throws IOException {
+	private void methodHandle(DataInput in, int poolIndex, CONSTANT tag) throws IOException {
 		int reference_kind = in.readUnsignedByte();
 		int reference_index = in.readUnsignedShort();
 		pool[poolIndex] = new Assoc(tag, reference_kind, reference_index);
@@ -831,7 +1064,7 @@ public class Clazz {
 	 * @param tag
 	 * @throws IOException
 	 */
-	private void invokeDynamic(DataInputStream in, int poolIndex, CONSTANT tag) throws IOException {
+	private void invokeDynamic(DataInput in, int poolIndex, CONSTANT tag) throws IOException {
 		int bootstrap_method_attr_index = in.readUnsignedShort();
 		int name_and_type_index = in.readUnsignedShort();
 		pool[poolIndex] = new Assoc(tag, bootstrap_method_attr_index, name_and_type_index);
@@ -842,7 +1075,7 @@ public class Clazz {
 	 * @param poolIndex
 	 * @throws IOException
 	 */
-	private void ref(DataInputStream in, int poolIndex) throws IOException {
+	private void ref(DataInput in, int poolIndex) throws IOException {
 		int class_index = in.readUnsignedShort();
 		int name_and_type_index = in.readUnsignedShort();
 		pool[poolIndex] = new Assoc(CONSTANT.Methodref, class_index, name_and_type_index);
@@ -853,7 +1086,7 @@ public class Clazz {
 	 * @param poolIndex
 	 * @throws IOException
 	 */
-	private void constantString(DataInputStream in, int poolIndex) throws IOException {
+	private void constantString(DataInput in, int poolIndex) throws IOException {
 		int string_index = in.readUnsignedShort();
 		intPool[poolIndex] = string_index;
 	}
@@ -863,47 +1096,88 @@ public class Clazz {
 	 * @param poolIndex
 	 * @throws IOException
 	 */
-	protected void constantClass(DataInputStream in, int poolIndex) throws IOException {
+	private void constantClass(DataInput in, int poolIndex) throws IOException {
 		int class_index = in.readUnsignedShort();
 		intPool[poolIndex] = class_index;
 		ClassConstant c = new ClassConstant(class_index);
 		pool[poolIndex] = c;
 	}
 
+	protected void constantClass(DataInputStream in, int poolIndex) throws IOException {
+		constantClass((DataInput) in, poolIndex);
+	}
+
 	/**
 	 * @param in
 	 * @throws IOException
 	 */
-	protected void constantDouble(DataInputStream in, int poolIndex) throws IOException {
+	private void constantDouble(DataInput in, int poolIndex) throws IOException {
 		if (cd != null)
 			pool[poolIndex] = in.readDouble();
 		else
 			in.skipBytes(8);
 	}
 
+	protected void constantDouble(DataInputStream in, int poolIndex) throws IOException {
+		constantDouble((DataInput) in, poolIndex);
+	}
+
 	/**
 	 * @param in
 	 * @throws IOException
 	 */
-	protected void constantLong(DataInputStream in, int poolIndex) throws IOException {
+	private void constantLong(DataInput in, int poolIndex) throws IOException {
 		if (cd != null) {
 			pool[poolIndex] = in.readLong();
 		} else
 			in.skipBytes(8);
 	}
 
+	protected void constantLong(DataInputStream in, int poolIndex) throws IOException {
+		constantLong((DataInput) in, poolIndex);
+	}
+
 	/**
 	 * @param in
 	 * @param poolIndex
 	 * @throws IOException
 	 */
-	protected void constantUtf8(DataInputStream in, int poolIndex) throws IOException {
+	private void constantUtf8(DataInput in, int poolIndex) throws IOException {
 		// CONSTANT_Utf8
 
+		if (utf8Pool != null) {
+			utf8Pool[poolIndex] = utf8Source.position();
+			in.skipBytes(in.readUnsignedShort());
+			return;
+		}
+
 		String name = in.readUTF();
 		pool[poolIndex] = name;
 	}
 
+	/**
+	 * Answer the constant at the given index. Lazily held Utf8 constants are
+	 * decoded on first access.
+	 * 
+	 * @param index the index in the constant pool
+	 * @return the constant or null
+	 */
+	Object constant(int index) {
+		Object o = pool[index];
+		if (o == null && utf8Pool != null && utf8Pool[index] != 0) {
+			try {
+				pool[index] = o = utf8Source.readUTF(utf8Pool[index]);
+			} catch (IOException e) {
+				throw Exceptions.duck(e);
+			}
+		}
+		return o;
+	}
+
+	protected void constantUtf8(DataInputStream in, int poolIndex) throws IOException {
+		constantUtf8((DataInput) in, poolIndex);
+	}
+
 	/**
 	 * Find a method reference in the pool that points to the given class,
 	 * methodname and descriptor.
@@ -921,15 +1195,15 @@ public class Clazz {
 					// Method ref
 					int class_index = methodref.a;
 					int class_name_index = intPool[class_index];
-					if (clazz.equals(pool[class_name_index])) {
+					if (clazz.equals(constant(class_name_index))) {
 						int name_and_type_index = methodref.b;
-						Assoc name_and_type = (Assoc) pool[name_and_type_index];
+						Assoc name_and_type = (Assoc) constant(name_and_type_index);
 						if (name_and_type.tag == CONSTANT.NameAndType) {
 							// Name and Type
 							int name_index = name_and_type.a;
 							int type_index = name_and_type.b;
-							if (methodname.equals(pool[name_index])) {
-								if (descriptor.equals(pool[type_index])) {
+							if (methodname.equals(constant(name_index))) {
+								if (descriptor.equals(constant(type_index))) {
 									return i;
 								}
 							}
@@ -948,7 +1222,7 @@ public class Clazz {
 	 * @param access_flags
 	 * @throws Exception
 	 */
-	private void doAttributes(DataInputStream in, ElementType member, boolean crawl, int access_flags)
+	private void doAttributes(DataInput in, ElementType member, boolean crawl, int access_flags)
 			throws Exception {
 		int attributesCount = in.readUnsignedShort();
 		for (int j = 0; j < attributesCount; j++) {
@@ -964,9 +1238,9 @@ public class Clazz {
 	 * @param access_flags
 	 * @throws Exception
 	 */
-	private void doAttribute(DataInputStream in, ElementType member, boolean crawl, int access_flags) throws Exception {
+	private void doAttribute(DataInput in, ElementType member, boolean crawl, int access_flags) throws Exception {
 		int attribute_name_index = in.readUnsignedShort();
-		String attributeName = (String) pool[attribute_name_index];
+		String attributeName = (String) constant(attribute_name_index);
 		long attribute_length = in.readInt();
 		attribute_length &= 0xFFFFFFFF;
 		if ("Deprecated".equals(attributeName)) {
@@ -1023,22 +1297,22 @@ public class Clazz {
 	 * @param in
 	 * @throws IOException
 	 */
-	private void doEnclosingMethod(DataInputStream in) throws IOException {
+	private void doEnclosingMethod(DataInput in) throws IOException {
 		int cIndex = in.readShort();
 		int mIndex = in.readShort();
 		classConstRef(cIndex);
 
 		if (cd != null) {
 			int nameIndex = intPool[cIndex];
-			TypeRef cName = analyzer.getTypeRef((String) pool[nameIndex]);
+			TypeRef cName = analyzer.getTypeRef((String) constant(nameIndex));
 
 			String mName = null;
 			String mDescriptor = null;
 
 			if (mIndex != 0) {
-				Assoc nameAndType = (Assoc) pool[mIndex];
-				mName = (String) pool[nameAndType.a];
-				mDescriptor = (String) pool[nameAndType.b];
+				Assoc nameAndType = (Assoc) constant(mIndex);
+				mName = (String) constant(nameAndType.a);
+				mDescriptor = (String) constant(nameAndType.b);
 			}
 			cd.enclosingMethod(cName, mName, mDescriptor);
 		}
@@ -1055,7 +1329,7 @@ public class Clazz {
 	 * @param in
 	 * @throws Exception
 	 */
-	private void doInnerClasses(DataInputStream in) throws Exception {
+	private void doInnerClasses(DataInput in) throws Exception {
 		int number_of_classes = in.readShort();
 		for (int i = 0; i < number_of_classes; i++) {
 			int inner_class_info_index = in.readShort();
@@ -1070,16 +1344,16 @@ public class Clazz {
 
 				if (inner_class_info_index != 0) {
 					int nameIndex = intPool[inner_class_info_index];
-					innerClass = analyzer.getTypeRef((String) pool[nameIndex]);
+					innerClass = analyzer.getTypeRef((String) constant(nameIndex));
 				}
 
 				if (outer_class_info_index != 0) {
 					int nameIndex = intPool[outer_class_info_index];
-					outerClass = analyzer.getTypeRef((String) pool[nameIndex]);
+					outerClass = analyzer.getTypeRef((String) constant(nameIndex));
 				}
 
 				if (inner_name_index != 0)
-					innerName = (String) pool[inner_name_index];
+					innerName = (String) constant(inner_name_index);
 
 				cd.innerClass(innerClass, outerClass, innerName, inner_class_access_flags);
 			}
@@ -1098,9 +1372,9 @@ public class Clazz {
 	 * @param access_flags
 	 */
 
-	void doSignature(DataInputStream in, ElementType member, int access_flags) throws IOException {
+	void doSignature(DataInput in, ElementType member, int access_flags) throws IOException {
 		int signature_index = in.readUnsignedShort();
-		String signature = (String) pool[signature_index];
+		String signature = (String) constant(signature_index);
 		try {
 
 			parseDescriptor(signature, access_flags);
@@ -1121,24 +1395,24 @@ public class Clazz {
 	/**
 	 * Handle a constant value call the data collector with it
 	 */
-	void doConstantValue(DataInputStream in) throws IOException {
+	void doConstantValue(DataInput in) throws IOException {
 		int constantValue_index = in.readUnsignedShort();
 		if (cd == null)
 			return;
 
-		Object object = pool[constantValue_index];
+		Object object = constant(constantValue_index);
 		if (object == null)
-			object = pool[intPool[constantValue_index]];
+			object = constant(intPool[constantValue_index]);
 
 		last.constant = object;
 		cd.constant(object);
 	}
 
-	void doExceptions(DataInputStream in, int access_flags) throws IOException {
+	void doExceptions(DataInput in, int access_flags) throws IOException {
 		int exception_count = in.readUnsignedShort();
 		for (int i = 0; i < exception_count; i++) {
 			int index = in.readUnsignedShort();
-			ClassConstant cc = (ClassConstant) pool[index];
+			ClassConstant cc = (ClassConstant) constant(index);
 			TypeRef clazz = analyzer.getTypeRef(cc.getName());
 			referTo(clazz, access_flags);
 		}
@@ -1157,13 +1431,17 @@ public class Clazz {
 	 * @param pool
 	 * @throws Exception
 	 */
-	private void doCode(DataInputStream in) throws Exception {
+	private void doCode(DataInput in) throws Exception {
 		/* int max_stack = */in.readUnsignedShort();
 		/* int max_locals = */in.readUnsignedShort();
 		int code_length = in.readInt();
-		byte code[] = new byte[code_length];
-		in.readFully(code);
-		crawl(code);
+		if (in instanceof ByteBufferDataInput) {
+			crawl(((ByteBufferDataInput) in).slice(code_length));
+		} else {
+			byte code[] = new byte[code_length];
+			in.readFully(code);
+			crawl(code);
+		}
 		int exception_table_length = in.readUnsignedShort();
 		for (int i = 0; i < exception_table_length; i++) {
 			int start_pc = in.readUnsignedShort();
@@ -1183,6 +1461,10 @@ public class Clazz {
 	protected void crawl(byte[] code) {
 		ByteBuffer bb = ByteBuffer.wrap(code);
 		bb.order(ByteOrder.BIG_ENDIAN);
+		crawl(bb);
+	}
+
+	private void crawl(ByteBuffer bb) {
 		int lastReference = -1;
 
 		while (bb.remaining() > 0) {
@@ -1245,8 +1527,8 @@ public class Clazz {
 						getMethodDef(0, methodref);
 
 					if ((methodref == forName || methodref == class$) && lastReference != -1
-							&& pool[intPool[lastReference]] instanceof String) {
-						String fqn = (String) pool[intPool[lastReference]];
+							&& constant(intPool[lastReference]) instanceof String) {
+						String fqn = (String) constant(intPool[lastReference]);
 						if (!fqn.equals("class") && fqn.indexOf('.') > 0) {
 							TypeRef clazz = analyzer.getTypeRefFromFQN(fqn);
 							referTo(clazz, 0);
@@ -1304,12 +1586,12 @@ public class Clazz {
 		}
 	}
 
-	private void doSourceFile(DataInputStream in) throws IOException {
+	private void doSourceFile(DataInput in) throws IOException {
 		int sourcefile_index = in.readUnsignedShort();
-		this.sourceFile = pool[sourcefile_index].toString();
+		this.sourceFile = constant(sourcefile_index).toString();
 	}
 
-	private void doParameterAnnotations(DataInputStream in, ElementType member, RetentionPolicy policy,
+	private void doParameterAnnotations(DataInput in, ElementType member, RetentionPolicy policy,
 			int access_flags) throws Exception {
 		int num_parameters = in.readUnsignedByte();
 		for (int p = 0; p < num_parameters; p++) {
@@ -1319,7 +1601,7 @@ public class Clazz {
 		}
 	}
 
-	private void doTypeAnnotations(DataInputStream in, ElementType member, RetentionPolicy policy, int access_flags)
+	private void doTypeAnnotations(DataInput in, ElementType member, RetentionPolicy policy, int access_flags)
 			throws Exception {
 		int num_annotations = in.readUnsignedShort();
 		for (int p = 0; p < num_annotations; p++) {
@@ -1475,7 +1757,7 @@ public class Clazz {
 		}
 	}
 
-	private void doAnnotations(DataInputStream in, ElementType member, RetentionPolicy policy, int access_flags)
+	private void doAnnotations(DataInput in, ElementType member, RetentionPolicy policy, int access_flags)
 			throws Exception {
 		int num_annotations = in.readUnsignedShort(); // # of annotations
 		for (int a = 0; a < num_annotations; a++) {
@@ -1497,13 +1779,13 @@ public class Clazz {
 	// element_value_pairs[num_element_value_pairs];
 	// }
 
-	private Annotation doAnnotation(DataInputStream in, ElementType member, RetentionPolicy policy, boolean collect,
+	private Annotation doAnnotation(DataInput in, ElementType member, RetentionPolicy policy, boolean collect,
 			int access_flags) throws IOException {
 		int type_index = in.readUnsignedShort();
 		if (annotations == null)
 			annotations = new HashSet<TypeRef>();
 
-		String typeName = (String) pool[type_index];
+		String typeName = (String) constant(type_index);
 		TypeRef typeRef = null;
 		if (typeName != null) {
 			typeRef = analyzer.getTypeRef(typeName);
@@ -1522,7 +1804,7 @@ public class Clazz {
 		Map<String,Object> elements = null;
 		for (int v = 0; v < num_element_value_pairs; v++) {
 			int element_name_index = in.readUnsignedShort();
-			String element = (String) pool[element_name_index];
+			String element = (String) constant(element_name_index);
 			Object value = doElementValue(in, member, policy, collect, access_flags);
 			if (collect) {
 				if (elements == null)
@@ -1535,7 +1817,7 @@ public class Clazz {
 		return null;
 	}
 
-	private Object doElementValue(DataInputStream in, ElementType member, RetentionPolicy policy, boolean collect,
+	private Object doElementValue(DataInput in, ElementType member, RetentionPolicy policy, boolean collect,
 			int access_flags) throws IOException {
 		char tag = (char) in.readUnsignedByte();
 		switch (tag) {
@@ -1551,7 +1833,7 @@ public class Clazz {
 			case 's' : // String
 			case 'J' : // Long
 				const_value_index = in.readUnsignedShort();
-				return pool[const_value_index];
+				return constant(const_value_index);
 
 			case 'Z' : // Boolean
 				const_value_index = in.readUnsignedShort();
@@ -1562,16 +1844,16 @@ public class Clazz {
 				if (policy == RetentionPolicy.RUNTIME) {
 					referTo(type_name_index, 0);
 					if (api != null && (Modifier.isPublic(access_flags) || Modifier.isProtected(access_flags))) {
-						TypeRef name = analyzer.getTypeRef((String) pool[type_name_index]);
+						TypeRef name = analyzer.getTypeRef((String) constant(type_name_index));
 						api.add(name.getPackageRef());
 					}
 				}
 				int const_name_index = in.readUnsignedShort();
-				return pool[const_name_index];
+				return constant(const_name_index);
 
 			case 'c' : // Class
 				int class_info_index = in.readUnsignedShort();
-				TypeRef name = analyzer.getTypeRef((String) pool[class_info_index]);
+				TypeRef name = analyzer.getTypeRef((String) constant(class_info_index));
 				if (policy == RetentionPolicy.RUNTIME) {
 					referTo(class_info_index, 0);
 					if (api != null && (Modifier.isPublic(access_flags) || Modifier.isProtected(access_flags))) {
@@ -1600,7 +1882,7 @@ public class Clazz {
 	 * We don't currently process BootstrapMethods. We walk the data structure
 	 * to consume the attribute.
 	 */
-	private void doBootstrapMethods(DataInputStream in) throws IOException {
+	private void doBootstrapMethods(DataInput in) throws IOException {
 		final int num_bootstrap_methods = in.readUnsignedShort();
 		for (int v = 0; v < num_bootstrap_methods; v++) {
 			final int bootstrap_method_ref = in.readUnsignedShort();
@@ -1636,7 +1918,7 @@ public class Clazz {
 	}
 
 	void referTo(int index, int modifiers) {
-		String descriptor = (String) pool[index];
+		String descriptor = (String) constant(index);
 		parseDescriptor(descriptor, modifiers);
 	}
 
@@ -1805,6 +2087,8 @@ public class Clazz {
 		if (--depth == 0) {
 			pool = null;
 			intPool = null;
+			utf8Pool = null;
+			utf8Source = null;
 			xref = null;
 		}
 	}
@@ -1900,20 +2184,20 @@ public class Clazz {
 		if (methodRefPoolIndex == 0)
 			return;
 
-		Object o = pool[methodRefPoolIndex];
+		Object o = constant(methodRefPoolIndex);
 		if (o != null && o instanceof Assoc) {
 			Assoc assoc = (Assoc) o;
 			if (assoc.tag == CONSTANT.Methodref) {
 				int string_index = intPool[assoc.a];
-				TypeRef className = analyzer.getTypeRef((String) pool[string_index]);
+				TypeRef className = analyzer.getTypeRef((String) constant(string_index));
 				int name_and_type_index = assoc.b;
-				Assoc name_and_type = (Assoc) pool[name_and_type_index];
+				Assoc name_and_type = (Assoc) constant(name_and_type_index);
 				if (name_and_type.tag == CONSTANT.NameAndType) {
 					// Name and Type
 					int name_index = name_and_type.a;
 					int type_index = name_and_type.b;
-					String method = (String) pool[name_index];
-					String descriptor = (String) pool[type_index];
+					String method = (String) constant(name_index);
+					String descriptor = (String) constant(type_index);
 					cd.referenceMethod(access, className, method, descriptor);
 				} else
 					throw new IllegalArgumentException(
@@ -2078,6 +2362,14 @@ public class Clazz {
 		return (accessx & ACC_ANNOTATION) != 0;
 	}
 
+	/**
+	 * Answer if the class or any of its members has an annotation. This is
+	 * only known after the class is parsed.
+	 */
+	public boolean hasAnnotations() {
+		return annotations != null;
+	}
+
 	public Set<PackageRef> getAPIUses() {
 		if (api == null)
 			return Collections.emptySet();
@@ -2093,7 +2385,7 @@ public class Clazz {
 	}
 
 	private void classConstRef(int lastReference) {
-		Object o = pool[lastReference];
+		Object o = constant(lastReference);
 		if (o == null)
 			return;
 
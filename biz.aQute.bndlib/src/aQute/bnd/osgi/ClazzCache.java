@@ -0,0 +1,218 @@
+package aQute.bnd.osgi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.lib.hex.Hex;
+import aQute.lib.io.IO;
+import aQute.libg.cryptography.SHA256;
+
+/**
+ * A persistent cache of parsed class files. A class file parsed without a
+ * collector is summarized (class name, version, access, super class,
+ * interfaces, annotations, referred packages, api uses, ...) and stored in a
+ * file named after the SHA-256 of the class bytes. When the same bytes are
+ * analyzed again, in this or in a later process, the {@link Clazz} is
+ * restored from the summary and the byte code is not parsed.
+ * <p>
+ * Only classes read from a jar are cached, the classes of a project output
+ * directory change with every build. The least recently used entries are
+ * deleted when there are more than the maximum number of entries.
+ * <p>
+ * The cache is registered as a plugin by the workspace, an {@link Analyzer}
+ * uses it when it finds it. Failures to read or write the cache are never
+ * fatal, the class is then just parsed.
+ */
+public class ClazzCache {
+	private final static Logger	logger	= LoggerFactory.getLogger(ClazzCache.class);
+	private final static int	VERSION			= 1;
+	private final static String	TMP				= ".tmp";
+	final static int			MAX_ENTRIES		= 50000;
+	final static int			PRUNE_INTERVAL	= 1000;
+	final static long			TOUCH_INTERVAL	= TimeUnit.DAYS.toMillis(1);
+
+	private final File			dir;
+	private final int			maxEntries;
+	private final AtomicLong	hits			= new AtomicLong();
+	private final AtomicLong	misses			= new AtomicLong();
+	private final AtomicInteger	stored			= new AtomicInteger();
+
+	public ClazzCache(File dir) {
+		this(dir, MAX_ENTRIES);
+	}
+
+	/**
+	 * Create a cache that keeps at most maxEntries classes.
+	 *
+	 * @param dir the directory of the cache
+	 * @param maxEntries the maximum number of entries
+	 */
+	public ClazzCache(File dir, int maxEntries) {
+		this.dir = dir;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Answer a parsed class for the given resource. This is equivalent to
+	 * creating a {@link Clazz} and calling {@link Clazz#parseClassFile()}.
+	 *
+	 * @param analyzer the analyzer that owns the class
+	 * @param path the path of the class file
+	 * @param resource the class file
+	 * @return a parsed class
+	 */
+	public Clazz parse(Analyzer analyzer, String path, Resource resource) throws Exception {
+		if (!(resource instanceof ZipResource || resource instanceof MappedZipResource)) {
+			Clazz clazz = new Clazz(analyzer, path, resource);
+			clazz.parseClassFile();
+			return clazz;
+		}
+
+		ByteBuffer bb = Clazz.read(resource);
+		File file = getFile(bb);
+
+		long modified = file.lastModified();
+		if (modified != 0L) {
+			Clazz clazz = new Clazz(analyzer, path, resource);
+			try {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(IO.read(file)));
+				if (in.readInt() == VERSION) {
+					clazz.readSummary(in);
+					hits.incrementAndGet();
+
+					// keep the entry when the cache is pruned
+					long now = System.currentTimeMillis();
+					if (now - modified > TOUCH_INTERVAL)
+						file.setLastModified(now);
+					return clazz;
+				}
+			} catch (Exception e) {
+				logger.debug("Ignoring unreadable cache entry {} for {}", file, path, e);
+			}
+		}
+
+		misses.incrementAndGet();
+		Clazz clazz = new Clazz(analyzer, path, resource);
+		clazz.parseClassFile(bb, null);
+		store(file, clazz);
+		return clazz;
+	}
+
+	/**
+	 * Answer the number of classes that were restored from the cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Answer the number of classes that had to be parsed.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public File getRoot() {
+		return dir;
+	}
+
+	@Override
+	public String toString() {
+		return "ClazzCache[" + dir + ", hits=" + hits + ", misses=" + misses + "]";
+	}
+
+	private File getFile(ByteBuffer bb) throws Exception {
+		MessageDigest md = MessageDigest.getInstance(SHA256.ALGORITHM);
+		md.update(bb.duplicate());
+		String key = Hex.toHexString(md.digest());
+		return new File(dir, key.substring(0, 2) + "/" + key);
+	}
+
+	/*
+	 * The entry is written to a temporary file and then renamed so that
+	 * concurrent builds never see a partial entry.
+	 */
+	private void store(File file, Clazz clazz) {
+		try {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bout);
+			out.writeInt(VERSION);
+			clazz.writeSummary(out);
+			out.flush();
+
+			File parent = file.getParentFile();
+			if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory())
+				return;
+
+			File tmp = File.createTempFile(file.getName(), TMP, parent);
+			try {
+				IO.write(bout.toByteArray(), tmp);
+				IO.rename(tmp, file);
+			} finally {
+				IO.delete(tmp);
+			}
+		} catch (Exception e) {
+			logger.debug("Failed to store cache entry {} for {}", file, clazz, e);
+		}
+
+		if (stored.getAndIncrement() % PRUNE_INTERVAL == 0)
+			prune();
+	}
+
+	/*
+	 * Delete the least recently used entries when there are more than
+	 * maxEntries. Listing the cache is not cheap, so this is done for the
+	 * first stored entry and then once per PRUNE_INTERVAL stored entries.
+	 */
+	void prune() {
+		File[] dirs = dir.listFiles();
+		if (dirs == null)
+			return;
+
+		final Map<File,Long> entries = new HashMap<>();
+		for (File sub : dirs) {
+			File[] files = sub.listFiles();
+			if (files == null)
+				continue;
+			for (File file : files) {
+				if (file.isFile() && !file.getName().endsWith(TMP))
+					entries.put(file, file.lastModified());
+			}
+		}
+		if (entries.size() <= maxEntries)
+			return;
+
+		List<File> files = new ArrayList<>(entries.keySet());
+		Collections.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return entries.get(b).compareTo(entries.get(a));
+			}
+		});
+		for (File file : files.subList(maxEntries, files.size())) {
+			logger.debug("Pruning cache entry {}", file);
+			IO.delete(file);
+			File parent = file.getParentFile();
+			String[] rest = parent.list();
+			if (rest != null && rest.length == 0)
+				IO.delete(parent);
+		}
+	}
+}
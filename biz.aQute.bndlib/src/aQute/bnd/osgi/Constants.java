@@ -101,6 +101,7 @@ public interface Constants {
 	@Deprecated
 	String							CACHEDIR									= "-cachedir";
 	String							CONDITIONALPACKAGE							= "-conditionalpackage";
+	String							COPYDEFLATED								= "-copydeflated";
 	String							CONNECTION_SETTINGS							= "-connection-settings";
 	String							DIFFIGNORE									= "-diffignore";
 	String							DEPENDSON									= "-dependson";
@@ -151,6 +152,7 @@ public interface Constants {
 	String							SAVEMANIFEST								= "-savemanifest";
 	String							NAMESECTION									= "-namesection";
 	String							NOBUILDINCACHE								= "-nobuildincache";
+	String							NOCLASSCACHE								= "-noclasscache";
 	String							NODEFAULTVERSION							= "-nodefaultversion";
 	String							NOEXTRAHEADERS								= "-noextraheaders";
 	String							NOJUNIT										= "-nojunit";
@@ -167,6 +169,8 @@ public interface Constants {
 	String							PACKAGE_JPM									= "jpm";
 	String							PEDANTIC									= "-pedantic";
 	String							PACKAGEINFOTYPE								= "-packageinfotype";
+	String							PARALLELANALYSIS							= "-parallelanalysis";
+	String							PARALLELWRITE								= "-parallelwrite";
 	String							PLUGIN										= "-plugin";
 	String							PLUGINPATH									= "-pluginpath";
 	String							PLUGINPATH_URL_ATTR							= "url";
@@ -259,7 +263,7 @@ public interface Constants {
 			METATYPE_ANNOTATIONS, METATYPE_ANNOTATIONS_OPTIONS, PACKAGEINFOTYPE, JAVAC_SOURCE, JAVAC_TARGET,
 			JAVAC_PROFILE, JAVAC, JAVA, JAVA_DEBUG, EXPORTTYPE, RUNREMOTE, TESTER, AUGMENT, REQUIRE_BND, GROUPID,
 			STANDALONE, IGNORE_STANDALONE, RUNREPOS, INIT, MAVEN_RELEASE, BUILDREPO, CONNECTION_SETTINGS,
-			RUNPROVIDEDCAPABILITIES
+			RUNPROVIDEDCAPABILITIES, PARALLELANALYSIS, NOCLASSCACHE, PARALLELWRITE, COPYDEFLATED
 
 	};
 
@@ -355,7 +355,7 @@ public class Descriptors {
 
 	}
 
-	public TypeRef getTypeRef(String binaryClassName) {
+	public synchronized TypeRef getTypeRef(String binaryClassName) {
 		assert !binaryClassName.endsWith(".class");
 
 		TypeRef ref = typeRefCache.get(binaryClassName);
@@ -410,7 +410,7 @@ public class Descriptors {
 		return ref;
 	}
 
-	public PackageRef getPackageRef(String binaryPackName) {
+	public synchronized PackageRef getPackageRef(String binaryPackName) {
 		if (binaryPackName.indexOf('.') >= 0) {
 			binaryPackName = binaryPackName.replace('.', '/');
 		}
@@ -429,7 +429,7 @@ public class Descriptors {
 		return ref;
 	}
 
-	public Descriptor getDescriptor(String descriptor) {
+	public synchronized Descriptor getDescriptor(String descriptor) {
 		Descriptor d = descriptorCache.get(descriptor);
 		if (d != null)
 			return d;
@@ -2,6 +2,7 @@ package aQute.bnd.osgi;
 
 import static aQute.lib.io.IO.getFile;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.File;
@@ -13,20 +14,31 @@ import java.io.OutputStream;
 import java.net.URI;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
@@ -34,9 +46,12 @@ import java.util.zip.ZipOutputStream;
 
 import aQute.bnd.version.Version;
 import aQute.lib.base64.Base64;
+import aQute.lib.exceptions.Exceptions;
 import aQute.lib.io.IO;
 import aQute.lib.io.IOConstants;
+import aQute.lib.zip.MappedZipFile;
 import aQute.lib.zip.ZipUtil;
+import aQute.lib.zip.ZipWriter;
 import aQute.service.reporter.Reporter;
 
 public class Jar implements Closeable {
@@ -57,6 +72,10 @@ public class Jar implements Closeable {
 	String										name;
 	File										source;
 	ZipFile										zipFile;
+	ZipResource.Raw								raw;
+	MappedZipFile								mapped;
+	MappedZipFile								unindexed;
+	Map<String,MappedZipResource>				lookedUp;
 	long										lastModified;
 	String										lastModifiedReason;
 	Reporter									reporter;
@@ -65,6 +84,8 @@ public class Jar implements Closeable {
 	Compression									compression		= Compression.DEFLATE;
 	boolean										closed;
 	String[]									algorithms;
+	Executor									executor;
+	boolean										copyDeflated;
 
 	public Jar(String name) {
 		this.name = name;
@@ -82,6 +103,21 @@ public class Jar implements Closeable {
 		}
 	}
 
+	/**
+	 * Create a jar on a memory mapped zip file. The resources are only
+	 * indexed when all of them are accessed, reading the manifest or looking
+	 * up a single resource does not index the resources. The zip file is
+	 * closed when the jar is closed.
+	 * 
+	 * @param name the name of the jar
+	 * @param zip the zip file
+	 */
+	public Jar(String name, MappedZipFile zip) {
+		this(name);
+		source = zip.getFile();
+		mapped = unindexed = zip;
+	}
+
 	public Jar(String name, InputStream in, long lastModified) throws IOException {
 		this(name);
 		EmbeddedResource.build(this, in, lastModified);
@@ -170,12 +206,40 @@ public class Jar implements Closeable {
 	}
 
 	public Resource getResource(String path) {
-		check();
+		checkClosed();
+		if (unindexed != null)
+			return lookup(path);
 		if (resources == null)
 			return null;
 		return resources.get(path);
 	}
 
+	/*
+	 * Find a single resource in the central directory of a mapped zip file.
+	 * The resource is remembered so that the same object is returned, also
+	 * after the resources are indexed.
+	 */
+	private synchronized Resource lookup(String path) {
+		if (unindexed == null)
+			return resources.get(path);
+
+		if (lookedUp == null)
+			lookedUp = new HashMap<String,MappedZipResource>();
+		MappedZipResource resource = lookedUp.get(path);
+		if (resource == null) {
+			try {
+				int n = unindexed.getEntry(path);
+				if (n < 0 || unindexed.isDirectory(n))
+					return null;
+				resource = new MappedZipResource(unindexed, n);
+				lookedUp.put(path, resource);
+			} catch (IOException e) {
+				throw Exceptions.duck(e);
+			}
+		}
+		return resource;
+	}
+
 	private String getDirectory(String path) {
 		check();
 		int n = path.lastIndexOf('/');
@@ -217,6 +281,21 @@ public class Jar implements Closeable {
 	}
 
 	public Manifest getManifest() throws Exception {
+		if (unindexed != null && !closed) {
+			if (manifest == null) {
+				MappedZipFile zip = unindexed;
+				int n = zip.getEntry(manifestName);
+				if (n >= 0 && !zip.isDirectory(n)) {
+					InputStream in = zip.getInputStream(n);
+					try {
+						manifest = new Manifest(in);
+					} finally {
+						in.close();
+					}
+				}
+			}
+			return manifest;
+		}
 		check();
 		if (manifest == null) {
 			Resource manifestResource = getResource(manifestName);
@@ -230,7 +309,9 @@ public class Jar implements Closeable {
 	}
 
 	public boolean exists(String path) {
-		check();
+		checkClosed();
+		if (unindexed != null)
+			return lookup(path) != null;
 		return resources.containsKey(path);
 	}
 
@@ -289,6 +370,11 @@ public class Jar implements Closeable {
 			return;
 		}
 
+		if (executor != null || hasDeflatedZipResources()) {
+			writeZip(out);
+			return;
+		}
+
 		ZipOutputStream jout = nomanifest || doNotTouchManifest ? new ZipOutputStream(out) : new JarOutputStream(out);
 
 		switch (compression) {
@@ -320,6 +406,282 @@ public class Jar implements Closeable {
 		jout.finish();
 	}
 
+	/*
+	 * Resources from a zip file that are already deflated can be copied to the
+	 * output without inflating and deflating them again, this requires the
+	 * ZipWriter.
+	 */
+	private boolean hasDeflatedZipResources() {
+		if (!copyDeflated || compression != Compression.DEFLATE)
+			return false;
+		for (Resource r : resources.values()) {
+			if (getDeflatedEntry(r) != null)
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Answer the entry of a resource from a zip file if its content is
+	 * deflated and can be copied as is.
+	 */
+	static ZipEntry getDeflatedEntry(Resource r) {
+		if (r instanceof ZipResource)
+			return ((ZipResource) r).getDeflatedEntry();
+		if (r instanceof MappedZipResource)
+			return ((MappedZipResource) r).getDeflatedEntry();
+		return null;
+	}
+
+	/*
+	 * Write the resources in order with a ZipWriter. If there is an executor,
+	 * the resources are deflated on the executor. The order of the entries,
+	 * including the manifest and the directory entries, is the same as a
+	 * serial write. Only a window of entries is deflated ahead of the writer
+	 * so that the memory use is bounded.
+	 */
+	private void writeZip(OutputStream out) throws Exception {
+		ZipWriter zip = new ZipWriter(out);
+		Set<String> done = new HashSet<String>();
+		Set<String> directories = new HashSet<String>();
+		Deque<Object> pending = new ArrayDeque<Object>();
+		int window = 2 * Runtime.getRuntime().availableProcessors();
+		int deflating = 0;
+		boolean first = !nomanifest && !doNotTouchManifest;
+
+		try {
+			if (doNotTouchManifest) {
+				Resource r = getResource(manifestName);
+				if (r != null) {
+					if (queueResource(pending, directories, manifestName, r) && executor != null) {
+						executor.execute((Deflated) pending.peekLast());
+						deflating++;
+					}
+					done.add(manifestName);
+				}
+			} else if (!nomanifest) {
+				ByteArrayOutputStream bout = new ByteArrayOutputStream();
+				writeManifest(bout);
+				pending.add(
+						new Deflated(new ZipEntry(manifestName), new EmbeddedResource(bout.toByteArray(), lastModified), false));
+				done.add(manifestName);
+			}
+
+			for (Map.Entry<String,Resource> entry : getResources().entrySet()) {
+				if (done.contains(entry.getKey()))
+					continue;
+
+				if (queueResource(pending, directories, entry.getKey(), entry.getValue())) {
+					if (executor == null) {
+						writePending(zip, pending, first, true);
+						first = false;
+					} else {
+						executor.execute((Deflated) pending.peekLast());
+						if (++deflating > window) {
+							deflating -= writePending(zip, pending, first, false);
+							first = false;
+						}
+					}
+				}
+			}
+			writePending(zip, pending, first, true);
+			zip.finish();
+		} finally {
+			for (Object o : pending) {
+				if (o instanceof Deflated)
+					((Deflated) o).cancel(false);
+			}
+		}
+	}
+
+	/*
+	 * Queue the directories of the path and the resource in the order of a
+	 * serial write. Answer true if a resource was queued.
+	 */
+	private boolean queueResource(Deque<Object> pending, Set<String> directories, String path, Resource resource) {
+		if (resource == null)
+			return false;
+
+		int index = path.lastIndexOf('/');
+		List<String> missing = new ArrayList<String>();
+		while (index > 0) {
+			String dir = path.substring(0, index);
+			if (!directories.add(dir))
+				break;
+			missing.add(0, dir + '/');
+			index = dir.lastIndexOf('/');
+		}
+		pending.addAll(missing);
+
+		if (path.endsWith(Constants.EMPTY_HEADER))
+			return false;
+
+		ZipEntry ze = new ZipEntry(path);
+		pending.add(new Deflated(ze, resource, copyDeflated));
+		return true;
+	}
+
+	/*
+	 * Write the pending entries in order until the first entry that is still
+	 * deflating, or all of them if all is set. Answer the number of entries
+	 * that were handed to the executor and are written.
+	 */
+	private int writePending(ZipWriter zip, Deque<Object> pending, boolean first, boolean all) throws Exception {
+		int written = 0;
+		while (!pending.isEmpty()) {
+			Object o = pending.peekFirst();
+			if (o instanceof Deflated) {
+				Deflated deflated = (Deflated) o;
+				if (!all && written > 0 && !deflated.isDone())
+					break;
+
+				// runs the manifest and any entry the executor has not
+				// started yet on this thread
+				deflated.run();
+				Deflated.Result result;
+				try {
+					result = deflated.get();
+				} catch (ExecutionException e) {
+					throw new Exception("Problem writing resource " + deflated.entry.getName(), e.getCause());
+				}
+				if (first)
+					result.entry.setExtra(jarMagic(result.entry.getExtra()));
+				zip.putEntry(result.entry, result.data, 0, result.length);
+				if (!first)
+					written++;
+			} else {
+				putDirectory(zip, (String) o);
+			}
+			first = false;
+			pending.removeFirst();
+		}
+		return written;
+	}
+
+	/*
+	 * ZipOutputStream deflates the empty directory entries of a serial write,
+	 * so write them deflated as well.
+	 */
+	private static final byte[] EMPTY_DEFLATED = {
+			3, 0
+	};
+
+	private static void putDirectory(ZipWriter zip, String name) throws IOException {
+		ZipEntry ze = new ZipEntry(name);
+		ze.setMethod(ZipEntry.DEFLATED);
+		ze.setCrc(0L);
+		ze.setSize(0L);
+		ze.setCompressedSize(EMPTY_DEFLATED.length);
+		zip.putEntry(ze, EMPTY_DEFLATED, 0, EMPTY_DEFLATED.length);
+	}
+
+	/*
+	 * Like JarOutputStream, mark the first entry of a jar with the 0xCAFE
+	 * extra field.
+	 */
+	private static byte[] jarMagic(byte[] extra) {
+		if (extra == null)
+			return new byte[] {
+					(byte) 0xFE, (byte) 0xCA, 0, 0
+			};
+
+		for (int i = 0; i + 4 <= extra.length;) {
+			int id = (extra[i] & 0xFF) | (extra[i + 1] & 0xFF) << 8;
+			if (id == 0xCAFE)
+				return extra;
+			i += 4 + ((extra[i + 2] & 0xFF) | (extra[i + 3] & 0xFF) << 8);
+		}
+		byte[] result = new byte[extra.length + 4];
+		result[0] = (byte) 0xFE;
+		result[1] = (byte) 0xCA;
+		System.arraycopy(extra, 0, result, 4, extra.length);
+		return result;
+	}
+
+	/*
+	 * A resource that is deflated into memory as a task. When copyDeflated is
+	 * set, the content of a deflated zip resource is copied as is with the
+	 * CRC and sizes of its entry.
+	 */
+	private static class Deflated extends FutureTask<Deflated.Result> {
+		final ZipEntry entry;
+
+		static class Result {
+			ZipEntry	entry;
+			byte[]		data;
+			int			length;
+		}
+
+		Deflated(final ZipEntry entry, final Resource resource, final boolean copyDeflated) {
+			super(new Callable<Result>() {
+				public Result call() throws Exception {
+					return deflate(entry, resource, copyDeflated);
+				}
+			});
+			this.entry = entry;
+		}
+
+		static Result deflate(ZipEntry ze, Resource resource, boolean copyDeflated) throws Exception {
+			long lastModified = resource.lastModified();
+			if (lastModified == 0L) {
+				lastModified = System.currentTimeMillis();
+			}
+			ZipUtil.setModifiedTime(ze, lastModified);
+			if (resource.getExtra() != null)
+				ze.setExtra(resource.getExtra().getBytes("UTF-8"));
+
+			ZipEntry source = copyDeflated ? getDeflatedEntry(resource) : null;
+			if (source != null) {
+				byte[] data = resource instanceof ZipResource ? ((ZipResource) resource).getDeflated()
+						: ((MappedZipResource) resource).getDeflated();
+				if (data != null) {
+					ze.setMethod(ZipEntry.DEFLATED);
+					ze.setCrc(source.getCrc());
+					ze.setSize(source.getSize());
+					ze.setCompressedSize(data.length);
+
+					Result result = new Result();
+					result.entry = ze;
+					result.data = data;
+					result.length = data.length;
+					return result;
+				}
+			}
+
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				Buffer buffer = new Buffer();
+				CRC32 crc = new CRC32();
+				DeflaterOutputStream dout = new DeflaterOutputStream(buffer, deflater, BUFFER_SIZE);
+				resource.write(new CheckedOutputStream(dout, crc));
+				dout.finish();
+
+				ze.setMethod(ZipEntry.DEFLATED);
+				ze.setCrc(crc.getValue());
+				ze.setSize(deflater.getBytesRead());
+				ze.setCompressedSize(buffer.size());
+
+				Result result = new Result();
+				result.entry = ze;
+				result.data = buffer.buffer();
+				result.length = buffer.size();
+				return result;
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+	private static class Buffer extends ByteArrayOutputStream {
+		Buffer() {
+			super(BUFFER_SIZE);
+		}
+
+		byte[] buffer() {
+			return buf;
+		}
+	}
+
 	public void writeFolder(File dir) throws Exception {
 		dir.mkdirs();
 
@@ -385,6 +747,8 @@ public class Jar implements Closeable {
 			write(f);
 			Jar tmp = new Jar(f);
 			try {
+				tmp.setExecutor(executor);
+				tmp.setCopyDeflated(copyDeflated);
 				tmp.calcChecksums(algorithms);
 				tmp.write(out);
 			} finally {
@@ -693,6 +1057,10 @@ public class Jar implements Closeable {
 			} catch (IOException e) {
 				// Ignore
 			}
+		IO.close(raw);
+		IO.close(mapped);
+		unindexed = null;
+		lookedUp = null;
 		resources.clear();
 		directories.clear();
 		manifest = null;
@@ -700,6 +1068,8 @@ public class Jar implements Closeable {
 	}
 
 	public long lastModified() {
+		if (unindexed != null && !closed)
+			index();
 		return lastModified;
 	}
 
@@ -838,7 +1208,7 @@ public class Jar implements Closeable {
 	 *             be retrieved.
 	 */
 	public String getBsn() throws Exception {
-		check();
+		checkClosed();
 		Manifest m = getManifest();
 		if (m == null)
 			return null;
@@ -864,7 +1234,7 @@ public class Jar implements Closeable {
 	 *             be retrieved.
 	 */
 	public String getVersion() throws Exception {
-		check();
+		checkClosed();
 		Manifest m = getManifest();
 		if (m == null)
 			return null;
@@ -935,10 +1305,47 @@ public class Jar implements Closeable {
 	}
 
 	void check() {
+		checkClosed();
+		if (unindexed != null)
+			index();
+	}
+
+	/*
+	 * Only check that the jar is not closed, for methods that do not need the
+	 * resources of a mapped zip file.
+	 */
+	private void checkClosed() {
 		if (closed)
 			throw new RuntimeException("Already closed " + name);
 	}
 
+	/*
+	 * Add a resource for every entry of the mapped zip file. A manifest that
+	 * was already read is kept, it may have been modified.
+	 */
+	private synchronized void index() {
+		MappedZipFile zip = unindexed;
+		if (zip == null)
+			return;
+		unindexed = null;
+		Map<String,MappedZipResource> found = lookedUp;
+		lookedUp = null;
+		Manifest m = manifest;
+		try {
+			for (int n = 0; n < zip.size(); n++) {
+				if (!zip.isDirectory(n)) {
+					String path = zip.getName(n);
+					MappedZipResource resource = found != null ? found.get(path) : null;
+					putResource(path, resource != null ? resource : new MappedZipResource(zip, n), true);
+				}
+			}
+		} catch (IOException e) {
+			throw Exceptions.duck(e);
+		}
+		if (m != null)
+			manifest = m;
+	}
+
 	/**
 	 * Return a data uri from the JAR. The data must be less than 32k
 	 * 
@@ -964,6 +1371,27 @@ public class Jar implements Closeable {
 		}
 	}
 
+	/**
+	 * Deflate the resources concurrently on the given executor when this jar
+	 * is written to a stream. The written jar has the same entries in the
+	 * same order as a serial write.
+	 *
+	 * @param executor the executor or null to write serially
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Copy the compressed data of deflated resources from a zip file as is
+	 * when this jar is written, instead of inflating and deflating it again.
+	 *
+	 * @param copyDeflated true to copy the deflated data
+	 */
+	public void setCopyDeflated(boolean copyDeflated) {
+		this.copyDeflated = copyDeflated;
+	}
+
 	public void setDigestAlgorithms(String[] algorithms) {
 		this.algorithms = algorithms;
 	}
@@ -1003,6 +1431,7 @@ public class Jar implements Closeable {
 	static Pattern SIGNER_FILES_P = Pattern.compile("(.+\\.(SF|DSA|RSA))|(.*/SIG-.*)", Pattern.CASE_INSENSITIVE);
 
 	public void stripSignatures() {
+		check();
 		Map<String,Resource> map = getDirectories().get("META-INF");
 		if (map != null) {
 			for (String file : new HashSet<>(map.keySet())) {
@@ -1013,6 +1442,7 @@ public class Jar implements Closeable {
 	}
 
 	public void removePrefix(String prefixLow) {
+		check();
 		String prefixHigh = prefixLow + "\uFFFF";
 		resources.navigableKeySet().subSet(prefixLow, prefixHigh).clear();
 		if (prefixLow.endsWith("/"))
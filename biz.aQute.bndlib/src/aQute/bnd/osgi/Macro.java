@@ -4,8 +4,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -26,10 +28,13 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -77,6 +82,8 @@ public class Macro {
 	Bindings				bindings		= null;
 	StringWriter			stdout			= new StringWriter();
 	StringWriter			stderr			= new StringWriter();
+	final static int		MAX_TEMPLATES	= 1000;
+	final Map<String,Template>	templates	= new ConcurrentHashMap<String,Template>();
 
 	public Macro(Processor domain, Object... targets) {
 		this.domain = domain;
@@ -94,56 +101,28 @@ public class Macro {
 
 	String process(String line, Link link) {
 		StringBuilder sb = new StringBuilder();
-		process(line, 0, '\u0000', '\u0000', sb, link);
+		if (line != null)
+			getTemplate(line).expand(this, sb, link);
 		return sb.toString();
 	}
 
-	int process(CharSequence org, int index, char begin, char end, StringBuilder result, Link link) {
-		if (org == null) { // treat null like empty string
-			return index;
+	/*
+	 * Answer the parsed form of a line. The parse only depends on the line, so
+	 * the templates are cached until the properties change.
+	 */
+	Template getTemplate(String line) {
+		Template template = templates.get(line);
+		if (template == null) {
+			template = Template.parse(line);
+			if (templates.size() >= MAX_TEMPLATES)
+				templates.clear();
+			templates.put(line, template);
 		}
-		StringBuilder line = new StringBuilder(org);
-		int nesting = 1;
-
-		StringBuilder variable = new StringBuilder();
+		return template;
+	}
 
-		outer: while (index < line.length()) {
-			char c1 = line.charAt(index++);
-			if (c1 == end) {
-				if (--nesting == 0) {
-					result.append(replace(variable.toString(), link, begin, end));
-					return index;
-				}
-			} else if (c1 == begin)
-				nesting++;
-			else if (c1 == '\\' && index < line.length() - 1 && line.charAt(index) == '$') {
-				// remove the escape backslash and interpret the dollar
-				// as a
-				// literal
-				index++;
-				variable.append('$');
-				continue outer;
-			} else if (c1 == '$' && index < line.length() - 2) {
-				char c2 = line.charAt(index);
-				char terminator = getTerminator(c2);
-				if (terminator != 0) {
-					index = process(line, index + 1, c2, terminator, variable, link);
-					continue outer;
-				}
-			} else if (c1 == '.' && index < line.length() && line.charAt(index) == '/') {
-				// Found the sequence ./
-				if (index == 1 || Character.isWhitespace(line.charAt(index - 2))) {
-					// make sure it is preceded by whitespace or starts at begin
-					index++;
-					variable.append(domain.getBase().getAbsolutePath());
-					variable.append('/');
-					continue outer;
-				}
-			}
-			variable.append(c1);
-		}
-		result.append(variable);
-		return index;
+	void propertiesChanged() {
+		templates.clear();
 	}
 
 	public static char getTerminator(char c) {
@@ -341,32 +320,59 @@ public class Macro {
 			}
 
 			String cname = "_" + part;
+			Map<String,Object> handles = commandHandles.get(target.getClass());
+			Object command = handles.get(cname);
+			if (command == null) {
+				command = getCommand(target.getClass(), cname);
+				handles.put(cname, command);
+			}
+			if (command == NOCOMMAND)
+				return null;
+			if (command instanceof IllegalAccessException) {
+				domain.warning("Exception in replace: %s method=%s", command, method);
+				return NULLVALUE;
+			}
+
 			try {
-				Method m = target.getClass().getMethod(cname, new Class[] {
-						String[].class
-				});
-				Object result = m.invoke(target, new Object[] {
-						args
-				});
+				Object result = (Object) ((MethodHandle) command).invokeExact(target, args);
 				return result == null ? NULLVALUE : result.toString();
-			} catch (NoSuchMethodException e) {
-				return null;
-			} catch (InvocationTargetException e) {
-				if (e.getCause() instanceof IllegalArgumentException) {
-					domain.error("%s, for cmd: %s, arguments; %s", e.getCause().getMessage(), method,
-							Arrays.toString(args));
-				} else {
-					domain.warning("Exception in replace: %s", e.getCause());
-				}
+			} catch (IllegalArgumentException e) {
+				domain.error("%s, for cmd: %s, arguments; %s", e.getMessage(), method, Arrays.toString(args));
 				return NULLVALUE;
-			} catch (Exception e) {
-				domain.warning("Exception in replace: %s method=%s", e, method);
+			} catch (Throwable e) {
+				domain.warning("Exception in replace: %s", e);
 				return NULLVALUE;
 			}
 		}
 		return null;
 	}
 
+	/*
+	 * The commands of a class are looked up once. A command is a method handle
+	 * taking the target and the arguments, NOCOMMAND when the class has no such
+	 * method, or the IllegalAccessException when the method cannot be called.
+	 */
+	private final static Object									NOCOMMAND		= new Object();
+	private final static MethodType								COMMAND_TYPE	= MethodType.methodType(Object.class,
+			Object.class, String[].class);
+	private final static ClassValue<ConcurrentMap<String,Object>>	commandHandles	= new ClassValue<ConcurrentMap<String,Object>>() {
+		@Override
+		protected ConcurrentMap<String,Object> computeValue(Class< ? > type) {
+			return new ConcurrentHashMap<String,Object>();
+		}
+	};
+
+	private static Object getCommand(Class< ? > type, String name) {
+		try {
+			Method m = type.getMethod(name, String[].class);
+			return MethodHandles.lookup().unreflect(m).asType(COMMAND_TYPE);
+		} catch (NoSuchMethodException e) {
+			return NOCOMMAND;
+		} catch (IllegalAccessException e) {
+			return e;
+		}
+	}
+
 	/**
 	 * Return a unique list where the duplicates are removed.
 	 */
@@ -1177,6 +1183,109 @@ public class Macro {
 		}
 	}
 
+	/*
+	 * A parsed line. The parts are literal text, the base directory for a ./
+	 * at the start of a word, and macros. The key of a macro is a template
+	 * itself since macros nest. The line is parsed once, expanding the
+	 * template only needs to look up the macros.
+	 */
+	static class Template {
+		final static Object		BASE	= new Object();
+		final Object[]			parts;
+		final char				begin;
+		final char				end;
+
+		Template(List<Object> parts, char begin, char end) {
+			this.parts = parts.toArray();
+			this.begin = begin;
+			this.end = end;
+		}
+
+		static Template parse(String line) {
+			List<Object> parts = new ArrayList<Object>();
+			parse(line, 0, '\u0000', '\u0000', parts);
+			return new Template(parts, '\u0000', '\u0000');
+		}
+
+		/*
+		 * Parse until the end character of the macro, the result gets the
+		 * macro. If the end is not found the parts are added to the result
+		 * as is. The indexes are relative to the whole line.
+		 */
+		private static int parse(String line, int index, char begin, char end, List<Object> result) {
+			List<Object> parts = new ArrayList<Object>();
+			StringBuilder text = new StringBuilder();
+			int nesting = 1;
+
+			outer: while (index < line.length()) {
+				char c1 = line.charAt(index++);
+				if (c1 == end) {
+					if (--nesting == 0) {
+						add(parts, text);
+						result.add(new Template(parts, begin, end));
+						return index;
+					}
+				} else if (c1 == begin)
+					nesting++;
+				else if (c1 == '\\' && index < line.length() - 1 && line.charAt(index) == '$') {
+					// remove the escape backslash and interpret the dollar
+					// as a literal
+					index++;
+					text.append('$');
+					continue outer;
+				} else if (c1 == '$' && index < line.length() - 2) {
+					char c2 = line.charAt(index);
+					char terminator = getTerminator(c2);
+					if (terminator != 0) {
+						add(parts, text);
+						index = parse(line, index + 1, c2, terminator, parts);
+						continue outer;
+					}
+				} else if (c1 == '.' && index < line.length() && line.charAt(index) == '/') {
+					// Found the sequence ./
+					if (index == 1 || Character.isWhitespace(line.charAt(index - 2))) {
+						// make sure it is preceded by whitespace or starts at
+						// begin
+						index++;
+						add(parts, text);
+						parts.add(BASE);
+						continue outer;
+					}
+				}
+				text.append(c1);
+			}
+			add(parts, text);
+			result.addAll(parts);
+			return index;
+		}
+
+		private static void add(List<Object> parts, StringBuilder text) {
+			if (text.length() > 0) {
+				parts.add(text.toString());
+				text.setLength(0);
+			}
+		}
+
+		/*
+		 * Append the expanded parts. A nested template is a macro, its
+		 * expanded parts are the key to replace.
+		 */
+		void expand(Macro macro, StringBuilder result, Link link) {
+			for (Object part : parts) {
+				if (part instanceof String)
+					result.append((String) part);
+				else if (part == BASE)
+					result.append(macro.domain.getBase().getAbsolutePath()).append('/');
+				else {
+					Template t = (Template) part;
+					StringBuilder key = new StringBuilder();
+					t.expand(macro, key, link);
+					result.append(macro.replace(key.toString(), link, t.begin, t.end));
+				}
+			}
+		}
+	}
+
 	/**
 	 * Take all the properties and translate them to actual values. This method
 	 * takes the set properties and traverse them over all entries, including
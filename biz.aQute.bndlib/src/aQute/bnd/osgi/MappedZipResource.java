@@ -0,0 +1,119 @@
+package aQute.bnd.osgi;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.zip.ZipEntry;
+
+import aQute.lib.zip.MappedZipFile;
+import aQute.lib.zip.ZipUtil;
+
+/**
+ * A resource that is an entry in a {@link MappedZipFile}. Only the number of
+ * the entry is kept, the entry details are read from the central directory
+ * when they are needed.
+ */
+public class MappedZipResource implements Resource {
+	final MappedZipFile	zip;
+	final int			n;
+	ZipEntry			entry;
+	long				lastModified	= -11L;
+	String				extra;
+	boolean				extraRead;
+
+	MappedZipResource(MappedZipFile zip, int n) {
+		this.zip = zip;
+		this.n = n;
+	}
+
+	public InputStream openInputStream() throws IOException {
+		return zip.getInputStream(n);
+	}
+
+	public void write(OutputStream out) throws Exception {
+		FileResource.copy(this, out);
+	}
+
+	public synchronized long lastModified() {
+		try {
+			if (lastModified == -11L) {
+				lastModified = ZipUtil.getModifiedTime(getEntry());
+			}
+			return lastModified;
+		} catch (IOException e) {
+			return lastModified = -1;
+		}
+	}
+
+	public synchronized String getExtra() {
+		if (!extraRead) {
+			extraRead = true;
+			try {
+				byte[] data = getEntry().getExtra();
+				if (data != null)
+					extra = new String(data, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				// UTF-8 is always supported
+			} catch (IOException e) {
+				// no extra
+			}
+		}
+		return extra;
+	}
+
+	public synchronized void setExtra(String extra) {
+		this.extraRead = true;
+		this.extra = extra;
+	}
+
+	public long size() {
+		try {
+			return zip.size(n);
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Answer the entry with its CRC and sizes if the content is deflated and
+	 * can be copied as is, otherwise null.
+	 */
+	ZipEntry getDeflatedEntry() {
+		try {
+			ZipEntry entry = getEntry();
+			return entry.getMethod() == ZipEntry.DEFLATED ? entry : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Answer the deflated content as it is stored in the zip file, or null if
+	 * it is not deflated.
+	 */
+	byte[] getDeflated() throws IOException {
+		if (getDeflatedEntry() == null)
+			return null;
+		ByteBuffer data = zip.getData(n);
+		byte[] bytes = new byte[data.remaining()];
+		data.get(bytes);
+		return bytes;
+	}
+
+	synchronized ZipEntry getEntry() throws IOException {
+		if (entry == null)
+			entry = zip.getZipEntry(n);
+		return entry;
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return ":" + zip.getFile() + "(" + zip.getName(n) + "):";
+		} catch (IOException e) {
+			return ":" + zip.getFile() + "(" + n + "):";
+		}
+	}
+}
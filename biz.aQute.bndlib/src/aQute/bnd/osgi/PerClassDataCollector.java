@@ -0,0 +1,151 @@
+package aQute.bnd.osgi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import aQute.bnd.osgi.Clazz.FieldDef;
+import aQute.bnd.osgi.Clazz.MethodDef;
+import aQute.bnd.osgi.Descriptors.TypeRef;
+import aQute.lib.exceptions.Exceptions;
+
+/**
+ * A collector for the scan of the class space that hands the events of a class
+ * to collectors that are created for that class. This allows readers that keep
+ * the state of a single class to take part in the scan of the
+ * {@link Analyzer}, so that a class is parsed once for all of them. See
+ * {@link aQute.bnd.service.classparser.ClassParser}.
+ */
+public abstract class PerClassDataCollector extends ClassDataCollector {
+	private final List<ClassDataCollector> current = new ArrayList<ClassDataCollector>();
+
+	/**
+	 * Add the collectors for a class.
+	 *
+	 * @param c the class that is parsed
+	 * @param collectors the collectors for the class, empty to skip the class
+	 */
+	protected abstract void collectors(Clazz c, List<ClassDataCollector> collectors) throws Exception;
+
+	@Override
+	public boolean classStart(Clazz c) {
+		current.clear();
+		try {
+			List<ClassDataCollector> collectors = new ArrayList<ClassDataCollector>();
+			collectors(c, collectors);
+			for (ClassDataCollector cd : collectors) {
+				if (cd.classStart(c))
+					current.add(cd);
+			}
+		} catch (Exception e) {
+			throw Exceptions.duck(e);
+		}
+		return !current.isEmpty();
+	}
+
+	@Override
+	public void extendsClass(TypeRef zuper) throws Exception {
+		for (ClassDataCollector cd : current)
+			cd.extendsClass(zuper);
+	}
+
+	@Override
+	public void implementsInterfaces(TypeRef[] interfaces) throws Exception {
+		for (ClassDataCollector cd : current)
+			cd.implementsInterfaces(interfaces);
+	}
+
+	@Override
+	public void addReference(TypeRef ref) {
+		for (ClassDataCollector cd : current)
+			cd.addReference(ref);
+	}
+
+	@Override
+	public void annotation(Annotation annotation) throws Exception {
+		for (ClassDataCollector cd : current)
+			cd.annotation(annotation);
+	}
+
+	@Override
+	public void parameter(int p) {
+		for (ClassDataCollector cd : current)
+			cd.parameter(p);
+	}
+
+	@Override
+	public void method(MethodDef defined) {
+		for (ClassDataCollector cd : current)
+			cd.method(defined);
+	}
+
+	@Override
+	public void field(FieldDef defined) {
+		for (ClassDataCollector cd : current)
+			cd.field(defined);
+	}
+
+	@Override
+	public void classEnd() throws Exception {
+		try {
+			for (ClassDataCollector cd : current)
+				cd.classEnd();
+		} finally {
+			current.clear();
+		}
+	}
+
+	@Override
+	public void deprecated() throws Exception {
+		for (ClassDataCollector cd : current)
+			cd.deprecated();
+	}
+
+	@Override
+	public void enclosingMethod(TypeRef cName, String mName, String mDescriptor) {
+		for (ClassDataCollector cd : current)
+			cd.enclosingMethod(cName, mName, mDescriptor);
+	}
+
+	@Override
+	public void innerClass(TypeRef innerClass, TypeRef outerClass, String innerName, int innerClassAccessFlags)
+			throws Exception {
+		for (ClassDataCollector cd : current)
+			cd.innerClass(innerClass, outerClass, innerName, innerClassAccessFlags);
+	}
+
+	@Override
+	public void signature(String signature) {
+		for (ClassDataCollector cd : current)
+			cd.signature(signature);
+	}
+
+	@Override
+	public void constant(Object object) {
+		for (ClassDataCollector cd : current)
+			cd.constant(object);
+	}
+
+	@Override
+	public void memberEnd() {
+		for (ClassDataCollector cd : current)
+			cd.memberEnd();
+	}
+
+	@Override
+	public void referenceMethod(int access, TypeRef className, String method, String descriptor) {
+		for (ClassDataCollector cd : current)
+			cd.referenceMethod(access, className, method, descriptor);
+	}
+
+	@Override
+	public void referTo(TypeRef typeRef, int modifiers) {
+		for (ClassDataCollector cd : current)
+			cd.referTo(typeRef, modifiers);
+	}
+
+	@Override
+	public void annotationDefault(MethodDef last, Object value) {
+		for (ClassDataCollector cd : current)
+			cd.annotationDefault(last, value);
+	}
+}
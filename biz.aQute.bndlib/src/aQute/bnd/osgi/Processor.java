@@ -1205,7 +1205,10 @@ public class Processor extends Domain implements Reporter, Registry, Constants,
 		propertiesChanged();
 	}
 
-	public void propertiesChanged() {}
+	public void propertiesChanged() {
+		if (replacer != null)
+			replacer.propertiesChanged();
+	}
 
 	/**
 	 * Set the properties by file. Setting the properties this way will also set
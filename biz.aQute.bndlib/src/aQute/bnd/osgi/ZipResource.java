@@ -1,5 +1,6 @@
 package aQute.bnd.osgi;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -13,17 +14,52 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
+import aQute.lib.zip.RawZipFile;
 import aQute.lib.zip.ZipUtil;
 
 public class ZipResource implements Resource {
 	ZipFile		zip;
 	ZipEntry	entry;
+	Raw			raw;
 	long		lastModified;
 	String		extra;
 
+	/*
+	 * The raw access to the compressed data of a zip file. It is shared by
+	 * all resources of the zip file and only opened when an entry is copied.
+	 */
+	static class Raw implements Closeable {
+		final File	file;
+		RawZipFile	rawZipFile;
+		boolean		closed;
+
+		Raw(File file) {
+			this.file = file;
+		}
+
+		synchronized RawZipFile get() throws IOException {
+			if (closed)
+				throw new IOException("Zip file is closed " + file);
+			if (rawZipFile == null)
+				rawZipFile = new RawZipFile(file);
+			return rawZipFile;
+		}
+
+		public synchronized void close() throws IOException {
+			closed = true;
+			if (rawZipFile != null)
+				rawZipFile.close();
+		}
+	}
+
 	ZipResource(ZipFile zip, ZipEntry entry) throws UnsupportedEncodingException {
+		this(zip, entry, null);
+	}
+
+	ZipResource(ZipFile zip, ZipEntry entry, Raw raw) throws UnsupportedEncodingException {
 		this.zip = zip;
 		this.entry = entry;
+		this.raw = raw;
 		this.lastModified = -11L;
 		byte[] data = entry.getExtra();
 		if (data != null)
@@ -47,6 +83,8 @@ public class ZipResource implements Resource {
 
 		try {
 			ZipFile zip = new ZipFile(file);
+			Raw raw = new Raw(file);
+			jar.raw = raw;
 			nextEntry: for (Enumeration< ? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
 				ZipEntry entry = e.nextElement();
 				if (pattern != null) {
@@ -56,7 +94,7 @@ public class ZipResource implements Resource {
 				}
 				if (!entry.isDirectory()) {
 
-					jar.putResource(entry.getName(), new ZipResource(zip, entry), true);
+					jar.putResource(entry.getName(), new ZipResource(zip, entry, raw), true);
 				}
 			}
 			return zip;
@@ -74,6 +112,27 @@ public class ZipResource implements Resource {
 		FileResource.copy(this, out);
 	}
 
+	/**
+	 * Answer the deflated content of this resource as it is stored in the zip
+	 * file, or null if it is not available. The CRC and sizes of the content
+	 * are those of the {@link #getEntry() entry}.
+	 */
+	byte[] getDeflated() throws IOException {
+		if (getDeflatedEntry() == null)
+			return null;
+		return raw.get().read(entry);
+	}
+
+	/**
+	 * Answer the entry with its CRC and sizes if the content is deflated and
+	 * can be copied as is, otherwise null.
+	 */
+	ZipEntry getDeflatedEntry() {
+		if (raw == null || entry.getMethod() != ZipEntry.DEFLATED || entry.getCrc() == -1 || entry.getSize() == -1)
+			return null;
+		return entry;
+	}
+
 	public long lastModified() {
 		try {
 			if (lastModified == -11L) {
@@ -11,11 +11,12 @@ import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
 
-import aQute.bnd.osgi.resource.ResourceUtils;
+import aQute.bnd.osgi.resource.IndexedCapabilities;
 import aQute.lib.collections.MultiMap;
 
 public class ResourcesRepository extends BaseRepository {
-	final Set<Resource> resources = new LinkedHashSet<>();
+	final Set<Resource>		resources	= new LinkedHashSet<>();
+	private final IndexedCapabilities	index		= new IndexedCapabilities();
 
 	public ResourcesRepository(Resource resource) {
 		add(resource);
@@ -43,32 +44,26 @@ public class ResourcesRepository extends BaseRepository {
 	}
 
 	public List<Capability> findProvider(Requirement requirement) {
-		List<Capability> result = new ArrayList<Capability>();
-		String namespace = requirement.getNamespace();
-		for (Resource resource : resources) {
-			for (Capability capability : resource.getCapabilities(namespace)) {
-				if (ResourceUtils.matches(requirement, capability)) {
-					result.add(capability);
-				}
-			}
-		}
-		return result;
+		return index.findProviders(requirement);
 	}
 
-	public void add(Resource resource) {
-		this.resources.add(resource);
+	public synchronized void add(Resource resource) {
+		if (this.resources.add(resource))
+			index.add(resource);
 	}
 
-	public void addAll(Collection< ? extends Resource> resources) {
-		this.resources.addAll(resources);
+	public synchronized void addAll(Collection< ? extends Resource> resources) {
+		for (Resource resource : resources)
+			add(resource);
 	}
 
-	protected void set(Collection< ? extends Resource> resources) {
+	protected synchronized void set(Collection< ? extends Resource> resources) {
 		this.resources.clear();
-		this.resources.addAll(resources);
+		index.clear();
+		addAll(resources);
 	}
 
-	public List<Resource> getResources() {
+	public synchronized List<Resource> getResources() {
 		return new ArrayList<>(resources);
 	}
 }
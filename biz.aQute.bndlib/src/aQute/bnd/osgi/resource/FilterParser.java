@@ -4,10 +4,10 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import org.osgi.resource.Capability;
@@ -18,7 +18,13 @@ import aQute.bnd.version.Version;
 import aQute.lib.strings.Strings;
 
 public class FilterParser {
-	final Map<String,Expression> cache = new HashMap<String,FilterParser.Expression>();
+	private final static int	MAX_CACHE	= 4096;
+
+	/*
+	 * The parsed expressions are shared between all parsers, the expressions
+	 * are not changed after they are parsed.
+	 */
+	final static Map<String,Expression>	cache	= new ConcurrentHashMap<String,FilterParser.Expression>();
 
 	public enum Op {
 		GREATER(">"), GREATER_OR_EQUAL(">="), LESS("<"), LESS_OR_EQUAL("<="), EQUAL("="), NOT_EQUAL("!="), RANGE("..");
@@ -207,7 +213,7 @@ public class FilterParser {
 		final Op			op;
 		final String		key;
 		final String		value;
-		transient Object	cached;
+		transient volatile Object	cached;
 
 		public SimpleExpression(String key, Op op, String value) {
 			this.key = key;
@@ -242,6 +248,7 @@ public class FilterParser {
 		}
 
 		protected boolean eval(Object scalar) {
+			Object cached = this.cached;
 			if (cached == null || cached.getClass() != scalar.getClass()) {
 				Class< ? > scalarClass = scalar.getClass();
 				if (scalarClass == String.class)
@@ -274,6 +281,7 @@ public class FilterParser {
 						}
 					}
 				}
+				this.cached = cached;
 			}
 			if (op == Op.EQUAL)
 				return cached == scalar || cached.equals(scalar);
@@ -365,6 +373,15 @@ public class FilterParser {
 			return range;
 		}
 
+		/*
+		 * Answer this expression with a range. The expression can be shared,
+		 * so the subclasses answer a copy.
+		 */
+		WithRangeExpression withRange(RangeExpression range) {
+			this.range = range;
+			return this;
+		}
+
 		public abstract String printExcludingRange();
 
 	}
@@ -376,6 +393,13 @@ public class FilterParser {
 			this.packageName = value;
 		}
 
+		@Override
+		WithRangeExpression withRange(RangeExpression range) {
+			PackageExpression copy = new PackageExpression(packageName);
+			copy.range = range;
+			return copy;
+		}
+
 		@Override
 		public boolean eval(Map<String, ? > map) {
 			String p = (String) map.get("osgi.wiring.package");
@@ -417,6 +441,13 @@ public class FilterParser {
 			this.hostName = value;
 		}
 
+		@Override
+		WithRangeExpression withRange(RangeExpression range) {
+			HostExpression copy = new HostExpression(hostName);
+			copy.range = range;
+			return copy;
+		}
+
 		@Override
 		public boolean eval(Map<String, ? > map) {
 			String p = (String) map.get("osgi.wiring.host");
@@ -458,6 +489,13 @@ public class FilterParser {
 			this.bundleName = value;
 		}
 
+		@Override
+		WithRangeExpression withRange(RangeExpression range) {
+			BundleExpression copy = new BundleExpression(bundleName);
+			copy.range = range;
+			return copy;
+		}
+
 		@Override
 		public boolean eval(Map<String, ? > map) {
 			String p = (String) map.get("osgi.wiring.bundle");
@@ -496,6 +534,13 @@ public class FilterParser {
 			this.identity = value;
 		}
 
+		@Override
+		WithRangeExpression withRange(RangeExpression range) {
+			IdentityExpression copy = new IdentityExpression(identity);
+			copy.range = range;
+			return copy;
+		}
+
 		@Override
 		public boolean eval(Map<String, ? > map) {
 			String p = (String) map.get("osgi.identity");
@@ -629,7 +674,7 @@ public class FilterParser {
 
 			if (range != null) {
 				if (wre != null)
-					wre.range = range;
+					exprs.set(exprs.indexOf(wre), wre.withRange(range));
 				else
 					exprs.add(range);
 			}
@@ -959,6 +1004,8 @@ public class FilterParser {
 		} catch (IllegalArgumentException ie) {
 			throw new RuntimeException("Parsing failed on " + s + " " + ie.getMessage(), ie);
 		}
+		if (cache.size() >= MAX_CACHE)
+			cache.clear();
 		cache.put(s, e);
 		return e;
 	}
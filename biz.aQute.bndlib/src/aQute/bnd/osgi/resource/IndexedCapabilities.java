@@ -0,0 +1,387 @@
+package aQute.bnd.osgi.resource;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osgi.framework.namespace.BundleNamespace;
+import org.osgi.framework.namespace.HostNamespace;
+import org.osgi.framework.namespace.IdentityNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.namespace.contract.ContractNamespace;
+import org.osgi.namespace.extender.ExtenderNamespace;
+import org.osgi.namespace.service.ServiceNamespace;
+import org.osgi.resource.Capability;
+import org.osgi.resource.Namespace;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+/**
+ * An index of capabilities to find the providers of a requirement without
+ * matching the requirement against every capability in its namespace. The
+ * capabilities are bucketed by namespace and, for the namespaces that have a
+ * primary attribute like {@code osgi.wiring.package} or
+ * {@code osgi.identity}, by the value of that attribute. When the filter of a
+ * requirement tests the primary attribute for equality, on its own or as part
+ * of an and, only the capabilities with that value are candidates.
+ * <p>
+ * The candidates are answered in the order the capabilities were added.
+ * <p>
+ * This class is thread safe.
+ */
+public class IndexedCapabilities {
+	private final static int					MAX_FILTERS	= 1000;
+	private final static Map<String,String>		primary		= new HashMap<>();
+	private final static Map<String,Object[]>	filters		= new ConcurrentHashMap<>();
+	private final static Object[]				NOTERM		= new Object[0];
+
+	static {
+		primary.put(PackageNamespace.PACKAGE_NAMESPACE, PackageNamespace.PACKAGE_NAMESPACE);
+		primary.put(IdentityNamespace.IDENTITY_NAMESPACE, IdentityNamespace.IDENTITY_NAMESPACE);
+		primary.put(BundleNamespace.BUNDLE_NAMESPACE, BundleNamespace.BUNDLE_NAMESPACE);
+		primary.put(HostNamespace.HOST_NAMESPACE, HostNamespace.HOST_NAMESPACE);
+		primary.put(ExtenderNamespace.EXTENDER_NAMESPACE, ExtenderNamespace.EXTENDER_NAMESPACE);
+		primary.put(ContractNamespace.CONTRACT_NAMESPACE, ContractNamespace.CONTRACT_NAMESPACE);
+		primary.put(ServiceNamespace.SERVICE_NAMESPACE, ServiceNamespace.CAPABILITY_OBJECTCLASS_ATTRIBUTE);
+	}
+
+	private final Map<String,Bucket>	namespaces	= new HashMap<>();
+	private int							sequence;
+
+	/*
+	 * A capability with the order in which it was added
+	 */
+	private static class Entry {
+		final Capability	capability;
+		final int			sequence;
+
+		Entry(Capability capability, int sequence) {
+			this.capability = capability;
+			this.sequence = sequence;
+		}
+	}
+
+	/*
+	 * The capabilities of a namespace. The capabilities that have no string
+	 * value for the primary attribute can match any equality and are always
+	 * candidates.
+	 */
+	private static class Bucket {
+		final String					attribute;
+		final List<Entry>				all			= new ArrayList<>();
+		final Map<String,List<Entry>>	values		= new HashMap<>();
+		final List<Entry>				unindexed	= new ArrayList<>();
+
+		Bucket(String attribute) {
+			this.attribute = attribute;
+		}
+
+		void add(Entry entry) {
+			all.add(entry);
+			if (attribute == null)
+				return;
+
+			Set<String> keys = keys(entry.capability.getAttributes().get(attribute));
+			if (keys == null) {
+				unindexed.add(entry);
+				return;
+			}
+			for (String key : keys) {
+				List<Entry> list = values.get(key);
+				if (list == null)
+					values.put(key, list = new ArrayList<>(1));
+				list.add(entry);
+			}
+		}
+	}
+
+	/**
+	 * Add the capabilities of a resource.
+	 */
+	public synchronized void add(Resource resource) {
+		for (Capability capability : resource.getCapabilities(null))
+			add0(capability);
+	}
+
+	/**
+	 * Add a capability.
+	 */
+	public synchronized void add(Capability capability) {
+		add0(capability);
+	}
+
+	/**
+	 * Add capabilities.
+	 */
+	public synchronized void addAll(Collection< ? extends Capability> capabilities) {
+		for (Capability capability : capabilities)
+			add0(capability);
+	}
+
+	private void add0(Capability capability) {
+		String namespace = capability.getNamespace();
+		Bucket bucket = namespaces.get(namespace);
+		if (bucket == null)
+			namespaces.put(namespace, bucket = new Bucket(getPrimaryAttribute(namespace)));
+		bucket.add(new Entry(capability, sequence++));
+	}
+
+	/**
+	 * Remove all capabilities.
+	 */
+	public synchronized void clear() {
+		namespaces.clear();
+		sequence = 0;
+	}
+
+	/**
+	 * Answer the capabilities that could match the requirement. These are all
+	 * the capabilities in the namespace of the requirement unless its filter
+	 * selects a value of the primary attribute. The candidates must still be
+	 * matched against the requirement.
+	 *
+	 * @param requirement the requirement
+	 * @return the candidates in the order they were added
+	 */
+	public List<Capability> getCandidates(Requirement requirement) {
+		List<Entry> entries;
+		synchronized (this) {
+			Bucket bucket = namespaces.get(requirement.getNamespace());
+			if (bucket == null)
+				return Collections.emptyList();
+
+			String value = null;
+			if (bucket.attribute != null)
+				value = getEqualityValue(requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE),
+						bucket.attribute);
+
+			if (value == null)
+				entries = new ArrayList<>(bucket.all);
+			else
+				entries = merge(bucket.values.get(value), bucket.unindexed);
+		}
+
+		List<Capability> result = new ArrayList<>(entries.size());
+		for (Entry entry : entries)
+			result.add(entry.capability);
+		return result;
+	}
+
+	/**
+	 * Answer the capabilities that match the requirement, see
+	 * {@link ResourceUtils#matches(Requirement, Capability)}.
+	 *
+	 * @param requirement the requirement
+	 * @return the matching capabilities in the order they were added
+	 */
+	public List<Capability> findProviders(Requirement requirement) {
+		List<Capability> result = new ArrayList<>();
+		for (Capability capability : getCandidates(requirement)) {
+			if (ResourceUtils.matches(requirement, capability))
+				result.add(capability);
+		}
+		return result;
+	}
+
+	/**
+	 * Answer the attribute that names a capability in a namespace.
+	 *
+	 * @param namespace the namespace
+	 * @return the attribute or null if the capabilities in the namespace have
+	 *         no such attribute
+	 */
+	public static String getPrimaryAttribute(String namespace) {
+		return primary.get(namespace);
+	}
+
+	/**
+	 * Answer the value a filter requires for an attribute. This is the value of
+	 * an equality test without wildcards on the attribute at the top level of
+	 * the filter or in a top level and. Any other filter, also a filter that is
+	 * not valid, has no such value.
+	 *
+	 * @param filter the filter, can be null
+	 * @param attribute the attribute
+	 * @return the value or null
+	 */
+	public static String getEqualityValue(String filter, String attribute) {
+		if (filter == null)
+			return null;
+
+		Object[] terms = filters.get(filter);
+		if (terms == null) {
+			terms = parseTerms(filter);
+			if (filters.size() >= MAX_FILTERS)
+				filters.clear();
+			filters.put(filter, terms);
+		}
+
+		for (int i = 0; i < terms.length; i += 2) {
+			if (attribute.equals(terms[i]))
+				return (String) terms[i + 1];
+		}
+		return null;
+	}
+
+	/*
+	 * Parse the equality terms of a filter in pairs of attribute and value.
+	 * The parse is conservative, anything unexpected answers no terms so that
+	 * all candidates are matched against the filter.
+	 */
+	private static Object[] parseTerms(String filter) {
+		List<String> terms = new ArrayList<>();
+		int end = parseTerm(filter, 0, terms);
+		if (end != filter.length())
+			return NOTERM;
+		return terms.toArray();
+	}
+
+	private static int parseTerm(String filter, int n, List<String> terms) {
+		int length = filter.length();
+		if (n >= length || filter.charAt(n) != '(')
+			return -1;
+		n++;
+		if (n >= length)
+			return -1;
+
+		char c = filter.charAt(n);
+		switch (c) {
+			case '&' :
+				n++;
+				while (n < length && Character.isWhitespace(filter.charAt(n)))
+					n++;
+				if (n >= length || filter.charAt(n) != '(')
+					return -1;
+				while (n < length && filter.charAt(n) == '(') {
+					n = parseTerm(filter, n, terms);
+					if (n < 0)
+						return -1;
+				}
+				break;
+
+			case '|' :
+			case '!' :
+				n = skip(filter, n);
+				if (n < 0)
+					return -1;
+				break;
+
+			default :
+				int start = n;
+				while (n < length && "()<>=~*\\".indexOf(filter.charAt(n)) < 0)
+					n++;
+				if (n >= length)
+					return -1;
+				String attribute = filter.substring(start, n);
+				boolean equality = filter.charAt(n) == '=';
+
+				StringBuilder value = new StringBuilder();
+				for (; n < length; n++) {
+					c = filter.charAt(n);
+					if (c == '(' || c == ')')
+						break;
+					if (c == '*' || c == '~' || c == '<' || c == '>')
+						equality = false;
+					if (c == '\\') {
+						if (++n >= length)
+							return -1;
+						c = filter.charAt(n);
+					}
+					value.append(c);
+				}
+				if (equality && value.length() > 1 && isTrimmed(attribute) && isTrimmed(value)) {
+					terms.add(attribute);
+					terms.add(value.substring(1));
+				}
+				break;
+		}
+
+		if (n >= length || filter.charAt(n) != ')')
+			return -1;
+		return n + 1;
+	}
+
+	/*
+	 * Skip to the closing parenthesis of an expression that is not used
+	 */
+	private static int skip(String filter, int n) {
+		int depth = 1;
+		for (int length = filter.length(); n < length; n++) {
+			switch (filter.charAt(n)) {
+				case '\\' :
+					n++;
+					break;
+				case '(' :
+					depth++;
+					break;
+				case ')' :
+					if (--depth == 0)
+						return n;
+					break;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Filter implementations differ in how they treat white space around
+	 * attributes and values, such terms are not used.
+	 */
+	private static boolean isTrimmed(CharSequence s) {
+		return s.length() > 0 && !Character.isWhitespace(s.charAt(0))
+				&& !Character.isWhitespace(s.charAt(s.length() - 1));
+	}
+
+	/*
+	 * The string values of an attribute value or null when the value is not a
+	 * string or a collection or array of strings.
+	 */
+	private static Set<String> keys(Object value) {
+		if (value instanceof String)
+			return Collections.singleton((String) value);
+
+		Set<String> keys = new LinkedHashSet<>();
+		if (value instanceof Collection< ? >) {
+			for (Object o : (Collection< ? >) value) {
+				if (!(o instanceof String))
+					return null;
+				keys.add((String) o);
+			}
+			return keys;
+		}
+		if (value != null && value.getClass().isArray()) {
+			for (int i = 0, l = Array.getLength(value); i < l; i++) {
+				Object o = Array.get(value, i);
+				if (!(o instanceof String))
+					return null;
+				keys.add((String) o);
+			}
+			return keys;
+		}
+		return null;
+	}
+
+	private static List<Entry> merge(List<Entry> a, List<Entry> b) {
+		if (a == null)
+			return new ArrayList<>(b);
+
+		List<Entry> result = new ArrayList<>(a.size() + b.size());
+		int i = 0, j = 0;
+		while (i < a.size() && j < b.size()) {
+			if (a.get(i).sequence < b.get(j).sequence)
+				result.add(a.get(i++));
+			else
+				result.add(b.get(j++));
+		}
+		result.addAll(a.subList(i, a.size()));
+		result.addAll(b.subList(j, b.size()));
+		return result;
+	}
+}
@@ -36,6 +36,7 @@ import aQute.bnd.osgi.Verifier;
 import aQute.bnd.version.VersionRange;
 import aQute.lib.converter.Converter;
 import aQute.lib.filter.Filter;
+import aQute.libg.cryptography.MultiDigester;
 import aQute.libg.cryptography.SHA256;
 import aQute.libg.reporter.ReporterAdapter;
 import aQute.service.reporter.Reporter;
@@ -677,7 +678,9 @@ public class ResourceBuilder {
 		if (uri == null)
 			uri = file.toURI();
 
-		Domain manifest = Domain.domain(file);
+		MultiDigester digester = new MultiDigester(SHA256.ALGORITHM).fromJar(file);
+		Domain manifest = digester.getManifest() != null ? Domain.domain(digester.getManifest())
+				: Domain.domain(file);
 		String mime = "vnd.osgi.bundle";
 		boolean hasIdentity = false;
 		if (manifest != null)
@@ -685,7 +688,7 @@ public class ResourceBuilder {
 		else
 			mime = "application/java-archive";
 
-		String sha256 = SHA256.digest(file).asHex();
+		String sha256 = digester.getSHA256().asHex();
 		addContentCapability(uri, sha256, file.length(), mime);
 		return hasIdentity;
 	}
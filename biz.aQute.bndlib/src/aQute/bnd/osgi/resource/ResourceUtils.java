@@ -40,7 +40,7 @@ import aQute.bnd.osgi.Processor;
 import aQute.bnd.version.Version;
 import aQute.lib.converter.Converter;
 import aQute.lib.converter.Converter.Hook;
-import aQute.lib.filter.Filter;
+import aQute.lib.filter.CompiledFilter;
 import aQute.lib.strings.Strings;
 
 public class ResourceUtils {
@@ -437,7 +437,7 @@ public class ResourceUtils {
 			return true;
 
 		try {
-			Filter f = new Filter(filter);
+			CompiledFilter f = CompiledFilter.compile(filter);
 			return f.matchMap(c.getAttributes());
 		} catch (Exception e) {
 			return false;
@@ -43,6 +43,7 @@ import aQute.lib.io.IO;
 import aQute.lib.json.JSONCodec;
 import aQute.lib.persistentmap.PersistentMap;
 import aQute.libg.command.Command;
+import aQute.libg.cryptography.MultiDigester;
 import aQute.libg.cryptography.SHA1;
 import aQute.libg.cryptography.SHA256;
 import aQute.libg.reporter.ReporterAdapter;
@@ -1027,25 +1028,26 @@ public class FileRepo implements Plugin, RepositoryPlugin, Refreshable, Registry
 	private ResourceDescriptor buildDescriptor(File f, Jar jar, byte[] digest, String bsn, Version version)
 			throws NoSuchAlgorithmException, Exception {
 		init();
-		Jar tmpjar = jar;
-		if (jar == null)
-			tmpjar = new Jar(f);
-		try {
-			Manifest m = tmpjar.getManifest();
-			ResourceDescriptor rd = new ResourceDescriptor();
-			rd.bsn = bsn;
-			rd.version = version;
-			rd.description = m.getMainAttributes().getValue(Constants.BUNDLE_DESCRIPTION);
-			rd.id = digest;
-			if (rd.id == null)
-				rd.id = SHA1.digest(f).digest();
-			rd.sha256 = SHA256.digest(f).digest();
-			rd.url = f.toURI();
-			return rd;
-		} finally {
-			if (tmpjar != null)
-				tmpjar.close();
+		MultiDigester digester = digest == null ? new MultiDigester(SHA1.ALGORITHM, SHA256.ALGORITHM)
+				: new MultiDigester(SHA256.ALGORITHM);
+		Manifest m;
+		if (jar == null) {
+			// read the file once for the manifest and the digests
+			m = digester.fromJar(f).getManifest();
+		} else {
+			m = jar.getManifest();
+			digester.from(f);
 		}
+		ResourceDescriptor rd = new ResourceDescriptor();
+		rd.bsn = bsn;
+		rd.version = version;
+		rd.description = m == null ? null : m.getMainAttributes().getValue(Constants.BUNDLE_DESCRIPTION);
+		rd.id = digest;
+		if (rd.id == null)
+			rd.id = digester.digest(SHA1.ALGORITHM);
+		rd.sha256 = digester.digest(SHA256.ALGORITHM);
+		rd.url = f.toURI();
+		return rd;
 	}
 
 	public void setIndex(boolean b) {
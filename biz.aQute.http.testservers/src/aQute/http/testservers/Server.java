@@ -98,14 +98,7 @@ class Server extends NanoHTTPD {
 			if (response.length < 0)
 				response.length = response.content.length;
 
-			IStatus status = NanoHTTPD.Response.Status.OK;
-
-			for (IStatus v : fi.iki.elonen.NanoHTTPD.Response.Status.values()) {
-				if (v.getRequestStatus() == response.code) {
-					status = v;
-					break;
-				}
-			}
+			IStatus status = getStatus(response.code);
 
 			Response r;
 			if (response.stream != null)
@@ -133,6 +126,27 @@ class Server extends NanoHTTPD {
 		}
 	}
 
+	/*
+	 * NanoHTTPD only has constants for some status codes, like it has no 503
+	 */
+	private static IStatus getStatus(final int code) {
+		for (IStatus v : fi.iki.elonen.NanoHTTPD.Response.Status.values()) {
+			if (v.getRequestStatus() == code)
+				return v;
+		}
+		return new IStatus() {
+			@Override
+			public String getDescription() {
+				return code + " Status " + code;
+			}
+
+			@Override
+			public int getRequestStatus() {
+				return code;
+			}
+		};
+	}
+
 	private HttpContext findHandler(String uri) {
 		while (uri.length() > 1 && uri.endsWith("/"))
 			uri = uri.substring(0, uri.length() - 1);
@@ -0,0 +1,146 @@
+package aQute.launcher;
+
+import java.io.File;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a file and calls {@link #changed()} when it is created or modified.
+ * On Java 7 and later the directory of the file is watched with a
+ * {@code java.nio.file.WatchService} so that a change is seen immediately. The
+ * launcher must also run on Java 6, the watch service is therefore accessed
+ * reflectively. When it is not available, or when the platform only provides a
+ * watch service that polls itself (like on Mac OS X, where it polls every 10
+ * seconds), the modification time of the file is polled every second.
+ */
+abstract class FileWatcher extends Thread {
+	static final long	POLL	= 1000;
+
+	/*
+	 * A write can cause several events, we wait this long for more events
+	 * before we report a change
+	 */
+	static final long	QUIET	= 50;
+
+	/*
+	 * The JDK's fallback implementation of the watch service, it only scans the
+	 * directory every 10 seconds
+	 */
+	static final String	POLLING	= "sun.nio.fs.PollingWatchService";
+
+	final File			file;
+
+	FileWatcher(File file) {
+		super("launcher::watcher");
+		setDaemon(true);
+		this.file = file.getAbsoluteFile();
+	}
+
+	/**
+	 * Called on the watcher thread when the file has changed.
+	 */
+	protected abstract void changed();
+
+	/**
+	 * Called when the file could not be watched and the watcher falls back to
+	 * polling.
+	 */
+	protected void fallback(Throwable t) {}
+
+	@Override
+	public void run() {
+		try {
+			try {
+				if (watch())
+					return;
+			} catch (InvocationTargetException e) {
+				if (e.getTargetException() instanceof InterruptedException)
+					return;
+				fallback(e.getTargetException());
+			} catch (InterruptedException e) {
+				return;
+			} catch (Throwable t) {
+				fallback(t);
+			}
+			poll();
+		} catch (InterruptedException e) {
+			// done
+		}
+	}
+
+	/**
+	 * Watch the directory of the file until interrupted.
+	 * 
+	 * @return false if the watch service is not better than polling
+	 */
+	private boolean watch() throws Exception {
+		Class< ? > pathClass = Class.forName("java.nio.file.Path");
+		Class< ? > fileSystemClass = Class.forName("java.nio.file.FileSystem");
+		Class< ? > watchServiceClass = Class.forName("java.nio.file.WatchService");
+		Class< ? > watchKeyClass = Class.forName("java.nio.file.WatchKey");
+		Class< ? > watchEventClass = Class.forName("java.nio.file.WatchEvent");
+		Class< ? > kindClass = Class.forName("java.nio.file.WatchEvent$Kind");
+		Class< ? > standardKindsClass = Class.forName("java.nio.file.StandardWatchEventKinds");
+
+		Object kinds = Array.newInstance(kindClass, 2);
+		Array.set(kinds, 0, standardKindsClass.getField("ENTRY_CREATE").get(null));
+		Array.set(kinds, 1, standardKindsClass.getField("ENTRY_MODIFY").get(null));
+
+		Object dir = File.class.getMethod("toPath").invoke(file.getParentFile());
+		Object fileSystem = pathClass.getMethod("getFileSystem").invoke(dir);
+		Object watchService = fileSystemClass.getMethod("newWatchService").invoke(fileSystem);
+		try {
+			if (watchService.getClass().getName().equals(POLLING))
+				return false;
+
+			pathClass.getMethod("register", watchServiceClass, kinds.getClass()).invoke(dir, watchService, kinds);
+
+			Method take = watchServiceClass.getMethod("take");
+			Method poll = watchServiceClass.getMethod("poll", long.class, TimeUnit.class);
+			Method pollEvents = watchKeyClass.getMethod("pollEvents");
+			Method reset = watchKeyClass.getMethod("reset");
+			Method context = watchEventClass.getMethod("context");
+
+			while (!isInterrupted()) {
+				Object key = take.invoke(watchService);
+				boolean hit = false;
+				do {
+					for (Object event : (List< ? >) pollEvents.invoke(key)) {
+						Object name = context.invoke(event);
+						if (name != null && name.toString().equals(file.getName()))
+							hit = true;
+					}
+					if (!(Boolean) reset.invoke(key))
+						throw new IllegalStateException("Directory of " + file + " can no longer be watched");
+
+					key = poll.invoke(watchService, QUIET, TimeUnit.MILLISECONDS);
+				} while (key != null);
+
+				if (hit)
+					changed();
+			}
+			return true;
+		} finally {
+			try {
+				watchServiceClass.getMethod("close").invoke(watchService);
+			} catch (Exception e) {
+				// ignore
+			}
+		}
+	}
+
+	private void poll() throws InterruptedException {
+		long begin = file.lastModified();
+		while (!isInterrupted()) {
+			Thread.sleep(POLL);
+			long now = file.lastModified();
+			if (begin < now) {
+				begin = now;
+				changed();
+			}
+		}
+	}
+}
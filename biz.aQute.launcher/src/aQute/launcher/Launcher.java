@@ -27,10 +27,12 @@ import java.net.InetSocketAddress;
 import java.net.URL;
 import java.security.AllPermission;
 import java.security.CodeSource;
+import java.security.MessageDigest;
 import java.security.Permission;
 import java.security.PermissionCollection;
 import java.security.Policy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Enumeration;
 import java.util.HashMap;
@@ -41,10 +43,10 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.StringTokenizer;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.Vector;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.jar.Manifest;
@@ -79,11 +81,11 @@ public class Launcher implements ServiceListener {
 
 	// Use our own constant for this rather than depend on OSGi core 4.3
 	private static final String FRAMEWORK_SYSTEM_CAPABILITIES_EXTRA = "org.osgi.framework.system.capabilities.extra";
+	private static final long REFRESH_TIMEOUT = 60000;
 
 	private PrintStream					out;
 	LauncherConstants					parms;
 	Framework							systemBundle;
-	volatile boolean					inrefresh;
 	private final Properties			properties;
 	private boolean						security;
 	private SimplePermissionPolicy		policy;
@@ -91,6 +93,7 @@ public class Launcher implements ServiceListener {
 	private final List<BundleActivator>	embedded			= new ArrayList<BundleActivator>();
 	private final Map<Bundle,Throwable>	errors				= new HashMap<Bundle,Throwable>();
 	private final Map<File,Bundle>		installedBundles	= new LinkedHashMap<File,Bundle>();
+	private final Map<File,byte[]>		installedDigests	= new HashMap<File,byte[]>();
 	private File						home				= new File(System.getProperty("user.home"));
 	private File						bnd					= new File(home, "bnd");
 	private List<Bundle>				wantsToBeStarted	= new ArrayList<Bundle>();
@@ -219,26 +222,39 @@ public class Launcher implements ServiceListener {
 				parms.timeout);
 
 		if (propertiesFile != null && parms.embedded == false) {
-			TimerTask watchdog = new TimerTask() {
-				long begin = propertiesFile.lastModified();
+			FileWatcher watcher = new FileWatcher(propertiesFile) {
+				byte[] digest = digest(propertiesFile);
 
-				public void run() {
-					long now = propertiesFile.lastModified();
-					if (begin < now) {
-						try {
-							FileInputStream in = new FileInputStream(propertiesFile);
-							Properties properties = new Properties();
-							load(in, properties);
-							parms = new LauncherConstants(properties);
-							update(now);
-						} catch (Exception e) {
-							error("Error in updating the framework from the properties: %s", e);
+				@Override
+				protected void changed() {
+					try {
+						//
+						// Ignore a touch or a rewrite with the same content
+						//
+						byte[] current = digest(propertiesFile);
+						if (current != null && Arrays.equals(current, digest)) {
+							trace("properties file %s did not change", propertiesFile);
+							return;
 						}
-						begin = now;
+						digest = current;
+
+						long now = propertiesFile.lastModified();
+						FileInputStream in = new FileInputStream(propertiesFile);
+						Properties properties = new Properties();
+						load(in, properties);
+						parms = new LauncherConstants(properties);
+						update(now);
+					} catch (Exception e) {
+						error("Error in updating the framework from the properties: %s", e);
 					}
 				}
+
+				@Override
+				protected void fallback(Throwable t) {
+					trace("cannot watch %s, polling it instead: %s", propertiesFile, t);
+				}
 			};
-			new Timer(true).scheduleAtFixedRate(watchdog, 5000, 1000);
+			watcher.start();
 		}
 	}
 
@@ -431,14 +447,16 @@ public class Launcher implements ServiceListener {
 
 		FrameworkWiring fwkWiring = systemBundle.adapt(FrameworkWiring.class);
 		if (fwkWiring != null) {
-			inrefresh = true;
-			fwkWiring.refreshBundles(null);
+			final CountDownLatch refreshed = new CountDownLatch(1);
+			fwkWiring.refreshBundles(null, new FrameworkListener() {
+				public void frameworkEvent(FrameworkEvent event) {
+					trace("refresh ended %s", event);
+					refreshed.countDown();
+				}
+			});
 			trace("Waiting for refresh to finish");
-
-			// Will be reset by the Framework listener we added
-			// when we created the framework.
-			while (inrefresh)
-				Thread.sleep(100);
+			if (!refreshed.await(REFRESH_TIMEOUT, TimeUnit.MILLISECONDS))
+				error("Refresh of the bundles did not finish within %s ms", REFRESH_TIMEOUT);
 
 		} else
 			trace("cannot refresh the bundles because there is no FrameworkWiring");
@@ -522,6 +540,7 @@ public class Launcher implements ServiceListener {
 				trace("uninstalling %s", f);
 				installedBundles.get(f).uninstall();
 				installedBundles.remove(f);
+				installedDigests.remove(f);
 			} catch (Exception e) {
 				error("Failed to uninstall bundle %s, exception %s", f, e);
 			}
@@ -532,6 +551,7 @@ public class Launcher implements ServiceListener {
 				if (f.exists()) {
 					Bundle b = install(f);
 					installedBundles.put(f, b);
+					installedDigests.put(f, digest(f));
 					tobestarted.add(b);
 				} else
 					error("should installing %s but file does not exist", f);
@@ -551,15 +571,21 @@ public class Launcher implements ServiceListener {
 					// written by bnd
 					//
 					if (f.lastModified() <= before) {
-						if (b.getLastModified() < f.lastModified()) {
+						//
+						// Only update when the content changed, a build
+						// often rewrites a bundle with the same content
+						//
+						byte[] digest = digest(f);
+						if (digest == null || !Arrays.equals(digest, installedDigests.get(f))) {
 							trace("updating %s", f);
 							if (b.getState() == Bundle.ACTIVE) {
 								tobestarted.add(b);
 								b.stop();
 							}
 							b.update();
+							installedDigests.put(f, digest);
 						} else
-							trace("bundle is still current according to timestamp %s", f);
+							trace("bundle is still current according to digest %s", f);
 					}
 				} else
 					error("should update %s but file does not exist", f);
@@ -568,6 +594,27 @@ public class Launcher implements ServiceListener {
 			}
 	}
 
+	/**
+	 * Answer the SHA-1 digest of a file or null if it cannot be read.
+	 */
+	static byte[] digest(File f) {
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			InputStream in = new FileInputStream(f);
+			try {
+				byte[] buffer = new byte[64 * 1024];
+				int size;
+				while ((size = in.read(buffer)) > 0)
+					md.update(buffer, 0, size);
+			} finally {
+				in.close();
+			}
+			return md.digest();
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
 	/**
 	 * Convert a path to native when it contains a macro. This is needed for the
 	 * jpm option since it stores the paths with a macro in the JAR through the
@@ -872,11 +919,7 @@ public class Launcher implements ServiceListener {
 					switch (event.getType()) {
 						case FrameworkEvent.ERROR :
 						case FrameworkEvent.WAIT_TIMEDOUT :
-							trace("Refresh will end due to error or timeout %s", event.toString());
-
-						case FrameworkEvent.PACKAGES_REFRESHED :
-							inrefresh = false;
-							trace("refresh ended");
+							trace("framework error or timeout %s", event.toString());
 							break;
 					}
 				}
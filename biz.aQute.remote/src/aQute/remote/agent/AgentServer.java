@@ -106,6 +106,14 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 	private Link<Agent,Supervisor>							link;
 	private CountDownLatch									refresh				= new CountDownLatch(0);
 
+	//
+	// Files that are requested ahead when the supervisor can stream them
+	//
+
+	private static final int								PIPELINE			= 4;
+	private final Map<String,InputStream>					prefetched			= new HashMap<String,InputStream>();
+	private final List<String>								pending				= new ArrayList<String>();
+
 	/**
 	 * An agent server is based on a context and takes a name and cache
 	 * directory
@@ -260,6 +268,12 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 			}
 		}
 
+		List<String> needed = new ArrayList<String>();
+		for (String location : toBeInstalled)
+			needed.add(bundles.get(location));
+		needed.addAll(changed.values());
+		prefetch(needed);
+
 		for (String location : toBeInstalled) {
 			String sha = bundles.get(location);
 
@@ -308,6 +322,8 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 			}
 		}
 
+		cancelPrefetch();
+
 		for (Bundle b : toBeStarted) {
 			try {
 				b.start();
@@ -558,6 +574,9 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 
 			@Override
 			public InputStream get(String sha) throws Exception {
+				if (isStreaming())
+					return getStream(sha);
+
 				byte[] data = remote.getFile(sha);
 				if (data == null)
 					return null;
@@ -568,6 +587,74 @@ public class AgentServer implements Agent, Closeable, FrameworkListener {
 
 	}
 
+	boolean isStreaming() {
+		Link<Agent,Supervisor> link = this.link;
+		return link != null && link.getPeerVersion() >= 2;
+	}
+
+	/*
+	 * Request the files that are not in the cache from the supervisor. Up to
+	 * PIPELINE files are in transit while the previous file is installed so
+	 * we do not wait for a round trip per bundle.
+	 */
+	private void prefetch(Collection<String> shas) {
+		if (!isStreaming())
+			return;
+
+		synchronized (prefetched) {
+			for (String sha : shas) {
+				if (sha != null && !pending.contains(sha) && !prefetched.containsKey(sha)
+						&& !new File(cache.getRoot(), sha).isFile())
+					pending.add(sha);
+			}
+			fillPipeline();
+		}
+	}
+
+	private void fillPipeline() {
+		while (prefetched.size() < PIPELINE && !pending.isEmpty()) {
+			String sha = pending.remove(0);
+			try {
+				prefetched.put(sha, getFileStream(sha));
+			} catch (Exception e) {
+				printStack(e);
+			}
+		}
+	}
+
+	private InputStream getStream(String sha) throws Exception {
+		InputStream in;
+		synchronized (prefetched) {
+			in = prefetched.remove(sha);
+			pending.remove(sha);
+			fillPipeline();
+		}
+		if (in == null)
+			in = getFileStream(sha);
+		return in;
+	}
+
+	/*
+	 * Stream a file from the supervisor. Every Supervisor implements
+	 * getFile, the link sends its byte[] result in chunks.
+	 */
+	private InputStream getFileStream(String sha) throws Exception {
+		return link.stream("getFile", sha);
+	}
+
+	private void cancelPrefetch() {
+		synchronized (prefetched) {
+			pending.clear();
+			for (InputStream in : prefetched.values())
+				try {
+					in.close();
+				} catch (Exception e) {
+					// ignore
+				}
+			prefetched.clear();
+		}
+	}
+
 	@Override
 	public boolean isEnvoy() {
 		return false;
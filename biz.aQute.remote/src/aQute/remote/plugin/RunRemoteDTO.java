@@ -16,4 +16,5 @@ public class RunRemoteDTO extends DTO {
 	public int			jdb;
 	public int			timeout;
 	public int			shell	= 0;
+	public boolean		compress;
 }
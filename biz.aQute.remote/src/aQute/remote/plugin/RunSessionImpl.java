@@ -92,6 +92,7 @@ public class RunSessionImpl implements RunSession {
 		try {
 			supervisor = new LauncherSupervisor();
 			supervisor.connect(dto.host, dto.agent);
+			supervisor.setCompression(dto.compress);
 
 			Agent agent = supervisor.getAgent();
 
@@ -77,6 +77,14 @@ public class AgentSupervisor<Supervisor, Agent> {
 		this.link = link;
 	}
 
+	/**
+	 * Compress the larger messages to the agent, see
+	 * {@link Link#setCompression(boolean)}.
+	 */
+	public void setCompression(boolean compression) {
+		link.setCompression(compression);
+	}
+
 	public void close() throws IOException {
 		if (quit.getAndSet(true))
 			return;
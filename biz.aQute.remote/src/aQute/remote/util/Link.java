@@ -1,11 +1,13 @@
 package aQute.remote.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
@@ -15,13 +17,21 @@ import java.lang.reflect.Type;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import aQute.lib.json.JSONCodec;
 
@@ -30,6 +40,23 @@ import aQute.lib.json.JSONCodec;
  * implemented on the remote side. The methods on this subclass are then
  * available remotely. I.e. this is a two way street. Void messages are
  * asynchronous, other messages block to a reply.
+ * <p>
+ * Each message is a frame with a command, a message id, and a number of
+ * arguments. When a link starts it announces its {@link #VERSION protocol
+ * version} with a control frame. Control frames have a command that starts
+ * with a '#', which cannot be a method name, and are therefore ignored by
+ * older links. As long as the other side has not announced version 2, the
+ * link only sends the original frames. With version 2 the link supports:
+ * <ul>
+ * <li>Streams &ndash; A remote method that returns an {@link InputStream} is
+ * requested without waiting for the reply, the content is sent in chunks of
+ * {@link #CHUNK_SIZE} as it is read. The sender can only be {@link #WINDOW}
+ * chunks ahead of the reader, so neither side buffers a whole file. Several
+ * streams can be requested before the first one is read to pipeline the
+ * transfers.</li>
+ * <li>Compression &ndash; When {@link #setCompression(boolean)} is set, larger
+ * arguments are deflated before they are sent.</li>
+ * </ul>
  * 
  * @param <R>
  */
@@ -37,6 +64,36 @@ public class Link<L, R> extends Thread implements Closeable {
 	private static final String[]		EMPTY		= new String[] {};
 	static JSONCodec					codec		= new JSONCodec();
 
+	/**
+	 * The protocol version of this link. Version 1 is the original protocol.
+	 */
+	public static final int				VERSION		= 2;
+
+	/**
+	 * The maximum size of a chunk of a stream
+	 */
+	public static final int				CHUNK_SIZE	= 64 * 1024;
+
+	/**
+	 * The number of chunks of a stream that can be in transit
+	 */
+	public static final int				WINDOW		= 8;
+
+	static final int					COMPRESS_THRESHOLD	= 512;
+	static final long					TIMEOUT		= 300000;
+
+	//
+	// Control commands, a '#' cannot start a method name
+	//
+
+	static final String					HELLO		= "#hello";
+	static final String					STREAM		= "#stream";
+	static final String					CHUNK		= "#chunk";
+	static final String					ACK			= "#ack";
+	static final String					END			= "#end";
+	static final String					CANCEL		= "#cancel";
+	static final byte[]					END_MARK	= new byte[0];
+
 	final DataInputStream				in;
 	final DataOutputStream				out;
 	final Class<R>						remoteClass;
@@ -46,9 +103,26 @@ public class Link<L, R> extends Thread implements Closeable {
 	volatile boolean					transfer	= false;
 	private ThreadLocal<Integer>		msgid		= new ThreadLocal<Integer>();
 
+	final ConcurrentMap<Integer,Incoming>	incoming	= new ConcurrentHashMap<Integer,Incoming>();
+	final ConcurrentMap<Integer,Semaphore>	outgoing	= new ConcurrentHashMap<Integer,Semaphore>();
+	volatile int						peerVersion	= 1;
+	volatile boolean					compression	= false;
+
 	R									remote;
 	L									local;
-	ExecutorService						executor	= Executors.newFixedThreadPool(4);
+
+	//
+	// Streams block a thread while the reader is behind so the number of
+	// threads cannot be fixed
+	//
+
+	ExecutorService						executor	= Executors.newCachedThreadPool(new ThreadFactory() {
+														public Thread newThread(Runnable r) {
+															Thread t = new Thread(r, "link::executor");
+															t.setDaemon(true);
+															return t;
+														}
+													});
 
 	static class Result {
 		boolean			resolved;
@@ -101,6 +175,11 @@ public class Link<L, R> extends Thread implements Closeable {
 					out.close();
 				} catch (Exception e) {}
 		}
+		for (Incoming stream : incoming.values())
+			stream.fail("Link closed");
+		incoming.clear();
+		outgoing.clear();
+
 		executor.shutdownNow();
 	}
 
@@ -121,6 +200,9 @@ public class Link<L, R> extends Thread implements Closeable {
 						if (method.getDeclaringClass() == Object.class)
 							return method.invoke(hash, args);
 
+						if (method.getReturnType() == InputStream.class)
+							return stream(method.getName(), args);
+
 						int msgId;
 						try {
 							msgId = send(id.getAndIncrement(), method, args);
@@ -151,6 +233,13 @@ public class Link<L, R> extends Thread implements Closeable {
 	}
 
 	public void run() {
+		try {
+			hello(false);
+		} catch (Exception e) {
+			terminate(e);
+			return;
+		}
+
 		while (!isInterrupted() && !transfer && !quit.get())
 			try {
 				final String cmd = in.readUTF();
@@ -160,17 +249,35 @@ public class Link<L, R> extends Thread implements Closeable {
 				int count = in.readShort();
 				final List<byte[]> args = new ArrayList<byte[]>(count);
 				for (int i = 0; i < count; i++) {
-					int length = in.readInt();
-					byte[] data = new byte[length];
-					in.readFully(data);
-					args.add(data);
+					args.add(readArgument());
 				}
 
+				//
+				// Control frames are handled in order on this thread, except
+				// for stream requests that invoke a local method
+				//
+
+				if (cmd.startsWith("#") && !cmd.equals(STREAM)) {
+					control(cmd, id, args);
+					continue;
+				}
+
+				//
+				// Register a stream before the next frame is read, a
+				// #cancel for it can arrive before it starts executing
+				//
+
+				if (cmd.equals(STREAM))
+					outgoing.put(id, new Semaphore(WINDOW));
+
 				Runnable r = new Runnable() {
 					public void run() {
 						try {
 							msgid.set(id);
-							executeCommand(cmd, id, args);
+							if (cmd.equals(STREAM))
+								executeStream(id, args);
+							else
+								executeCommand(cmd, id, args);
 						} catch (Exception e) {
 							// e.printStackTrace();
 						}
@@ -214,33 +321,118 @@ public class Link<L, R> extends Thread implements Closeable {
 	int send(int msgId, Method m, Object args[]) throws Exception {
 		if (m != null)
 			promises.put(msgId, new Result());
+		frame(m != null ? m.getName() : "", msgId, args);
+		return msgId;
+	}
+
+	void frame(String cmd, int msgId, Object args[]) throws Exception {
+		if (args == null)
+			args = EMPTY;
+
+		//
+		// Encode outside the lock so other threads can send meanwhile
+		//
+
+		byte[][] data = new byte[args.length][];
+		for (int i = 0; i < args.length; i++) {
+			Object arg = args[i];
+
+			if (arg instanceof byte[])
+				data[i] = (byte[]) arg;
+			else {
+				ByteArrayOutputStream bout = new ByteArrayOutputStream();
+				codec.enc().to(bout).put(arg);
+				data[i] = bout.toByteArray();
+			}
+		}
+
 		trace("send");
 		synchronized (out) {
-			out.writeUTF(m != null ? m.getName() : "");
+			out.writeUTF(cmd);
 			out.writeInt(msgId);
-			if (args == null)
-				args = EMPTY;
-
-			out.writeShort(args.length);
-			for (int i = 0; i < args.length; i++) {
-				Object arg = args[i];
-
-				if (arg instanceof byte[]) {
-					byte[] data = (byte[]) arg;
-					out.writeInt(data.length);
-					out.write(data);
-				} else {
-					ByteArrayOutputStream bout = new ByteArrayOutputStream();
-					codec.enc().to(bout).put(arg);
-					byte[] data = bout.toByteArray();
-					out.writeInt(data.length);
-					out.write(data);
-				}
-			}
+			out.writeShort(data.length);
+			for (byte[] d : data)
+				writeArgument(d);
 			out.flush();
 			trace("sent");
 		}
-		return msgId;
+	}
+
+	/*
+	 * A negative length indicates a deflated argument, it is followed by the
+	 * inflated length. Only version 2 peers receive deflated arguments.
+	 */
+	private void writeArgument(byte[] data) throws IOException {
+		if (compression && peerVersion >= 2 && data.length >= COMPRESS_THRESHOLD) {
+			byte[] deflated = deflate(data);
+			if (deflated != null) {
+				out.writeInt(-deflated.length);
+				out.writeInt(data.length);
+				out.write(deflated);
+				return;
+			}
+		}
+		out.writeInt(data.length);
+		out.write(data);
+	}
+
+	private byte[] readArgument() throws IOException {
+		int length = in.readInt();
+		if (length >= 0) {
+			byte[] data = new byte[length];
+			in.readFully(data);
+			return data;
+		}
+
+		int inflatedLength = in.readInt();
+		byte[] deflated = new byte[-length];
+		in.readFully(deflated);
+		return inflate(deflated, inflatedLength);
+	}
+
+	/*
+	 * Answer the deflated data or null if deflating does not make it smaller
+	 */
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] buffer = new byte[data.length];
+			int length = 0;
+			while (!deflater.finished()) {
+				if (length == buffer.length)
+					return null;
+				length += deflater.deflate(buffer, length, buffer.length - length);
+			}
+			byte[] result = new byte[length];
+			System.arraycopy(buffer, 0, result, 0, length);
+			return result;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] deflated, int length) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(deflated);
+			byte[] data = new byte[length];
+			int n = 0;
+			while (n < length && !inflater.finished()) {
+				int r = inflater.inflate(data, n, length - n);
+				if (r == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+					throw new IOException("Truncated compressed argument");
+				n += r;
+			}
+			if (n != length)
+				throw new IOException("Compressed argument has wrong length " + n + ", expected " + length);
+			return data;
+		} catch (DataFormatException e) {
+			throw new IOException("Invalid compressed argument " + e);
+		} finally {
+			inflater.end();
+		}
 	}
 
 	void response(int msgId, byte[] data) {
@@ -321,15 +513,7 @@ public class Link<L, R> extends Thread implements Closeable {
 				return;
 			}
 
-			Object parameters[] = new Object[args.size()];
-			for (int i = 0; i < args.size(); i++) {
-				Class< ? > type = m.getParameterTypes()[i];
-				if (type == byte[].class)
-					parameters[i] = args.get(i);
-				else {
-					parameters[i] = codec.dec().from(args.get(i)).get(m.getGenericParameterTypes()[i]);
-				}
-			}
+			Object parameters[] = parameters(m, args);
 
 			try {
 				Object result = m.invoke(local, parameters);
@@ -362,6 +546,295 @@ public class Link<L, R> extends Thread implements Closeable {
 		}
 	}
 
+	Object[] parameters(Method m, List<byte[]> args) throws Exception {
+		Object parameters[] = new Object[args.size()];
+		for (int i = 0; i < args.size(); i++) {
+			Class< ? > type = m.getParameterTypes()[i];
+			if (type == byte[].class)
+				parameters[i] = args.get(i);
+			else {
+				parameters[i] = codec.dec().from(args.get(i)).get(m.getGenericParameterTypes()[i]);
+			}
+		}
+		return parameters;
+	}
+
+	/*
+	 * Announce our version. The other side answers a hello that is not a
+	 * reply so that a link that takes over the streams also learns the
+	 * version.
+	 */
+	void hello(boolean reply) throws Exception {
+		frame(HELLO, 0, new Object[] {
+				VERSION, reply
+		});
+	}
+
+	/*
+	 * Handle a control frame on the receiving thread
+	 */
+	void control(String cmd, int id, List<byte[]> args) throws Exception {
+		if (cmd.equals(HELLO)) {
+			int version = codec.dec().from(args.get(0)).get(Integer.class);
+			peerVersion = Math.min(VERSION, version);
+			boolean reply = args.size() > 1 && codec.dec().from(args.get(1)).get(Boolean.class);
+			if (!reply)
+				hello(true);
+		} else if (cmd.equals(CHUNK)) {
+			Incoming stream = incoming.get(id);
+			if (stream != null)
+				stream.chunks.add(args.get(0));
+		} else if (cmd.equals(END)) {
+			Incoming stream = incoming.get(id);
+			if (stream != null) {
+				if (!args.isEmpty())
+					stream.fail(codec.dec().from(args.get(0)).get(String.class));
+				else
+					stream.chunks.add(END_MARK);
+			}
+		} else if (cmd.equals(ACK)) {
+			Semaphore credits = outgoing.get(id);
+			if (credits != null)
+				credits.release();
+		} else if (cmd.equals(CANCEL)) {
+			Semaphore credits = outgoing.remove(id);
+			if (credits != null)
+				credits.release(WINDOW);
+		}
+		// ignore unknown control frames from newer versions
+	}
+
+	/**
+	 * Request a stream from the remote side. The request is sent immediately
+	 * but this method does not wait for the content, the returned stream
+	 * blocks until content arrives. This is the implementation of remote
+	 * methods that return an {@link InputStream}.
+	 * 
+	 * @param method the name of the remote method that returns the stream
+	 * @param args the arguments of the method
+	 * @return a stream of the content
+	 * @throws UnsupportedOperationException when the other side does not
+	 *             support streams, see {@link #getPeerVersion()}
+	 */
+	public InputStream stream(String method, Object... args) throws Exception {
+		if (peerVersion < 2)
+			throw new UnsupportedOperationException(
+					"The remote link does not support streams, its version is " + peerVersion);
+
+		if (args == null)
+			args = EMPTY;
+
+		Object[] frameArgs = new Object[args.length + 1];
+		frameArgs[0] = method.getBytes("UTF-8");
+		System.arraycopy(args, 0, frameArgs, 1, args.length);
+
+		int streamId = id.getAndIncrement();
+		Incoming stream = new Incoming(streamId);
+		incoming.put(streamId, stream);
+		try {
+			frame(STREAM, streamId, frameArgs);
+		} catch (Exception e) {
+			incoming.remove(streamId);
+			throw e;
+		}
+		return stream;
+	}
+
+	/*
+	 * Invoke a local method and send its result in chunks. We can only be
+	 * WINDOW chunks ahead of the reader. The credits of the stream were
+	 * registered when the request was read, they are gone when the stream
+	 * was cancelled before it started.
+	 */
+	void executeStream(int id, List<byte[]> args) throws Exception {
+		Semaphore credits = outgoing.get(id);
+		if (credits == null)
+			return;
+
+		InputStream content = null;
+		try {
+			String name = new String(args.get(0), "UTF-8");
+			List<byte[]> arguments = args.subList(1, args.size());
+			Method m = getMethod(name, arguments.size());
+			if (m == null)
+				throw new IllegalArgumentException("No such method " + name);
+
+			Object result = m.invoke(local, parameters(m, arguments));
+			if (result instanceof byte[])
+				content = new ByteArrayInputStream((byte[]) result);
+			else
+				content = (InputStream) result;
+
+			if (content != null) {
+				byte[] buffer = new byte[CHUNK_SIZE];
+				int size;
+				while ((size = fill(content, buffer)) > 0) {
+					if (!acquire(id, credits))
+						return;
+
+					frame(CHUNK, id, new Object[] {
+							Arrays.copyOf(buffer, size)
+					});
+				}
+			}
+			frame(END, id, null);
+		} catch (Throwable t) {
+			while (t instanceof InvocationTargetException
+					&& ((InvocationTargetException) t).getTargetException() != null)
+				t = ((InvocationTargetException) t).getTargetException();
+			try {
+				if (outgoing.containsKey(id))
+					frame(END, id, new Object[] {
+							t + ""
+					});
+			} catch (Exception e) {
+				terminate(e);
+			}
+		} finally {
+			outgoing.remove(id);
+			if (content != null)
+				try {
+					content.close();
+				} catch (Exception e) {}
+		}
+	}
+
+	/*
+	 * Wait for a credit, answer false if the stream was cancelled or the link
+	 * is closed
+	 */
+	private boolean acquire(int id, Semaphore credits) throws InterruptedException {
+		while (!quit.get()) {
+			if (credits.tryAcquire(1, TimeUnit.SECONDS))
+				return outgoing.get(id) == credits;
+		}
+		return false;
+	}
+
+	private static int fill(InputStream in, byte[] buffer) throws IOException {
+		int size = 0;
+		int n;
+		while (size < buffer.length && (n = in.read(buffer, size, buffer.length - size)) >= 0)
+			size += n;
+		return size;
+	}
+
+	/*
+	 * The receiving side of a stream. Every chunk that is taken is acknowledged
+	 * so the sender can send the next.
+	 */
+	class Incoming extends InputStream {
+		final int							streamId;
+		final LinkedBlockingQueue<byte[]>	chunks	= new LinkedBlockingQueue<byte[]>();
+		volatile String						error;
+		byte[]								current;
+		int									position;
+		boolean								eof;
+
+		Incoming(int streamId) {
+			this.streamId = streamId;
+		}
+
+		void fail(String message) {
+			error = message;
+			chunks.add(END_MARK);
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!next())
+				return -1;
+			return current[position++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!next())
+				return -1;
+			int n = Math.min(len, current.length - position);
+			System.arraycopy(current, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return current == null ? 0 : current.length - position;
+		}
+
+		private boolean next() throws IOException {
+			while (current == null || position >= current.length) {
+				if (eof)
+					return false;
+
+				byte[] chunk;
+				try {
+					chunk = chunks.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while reading stream " + streamId);
+				}
+
+				if (chunk == null)
+					throw new SocketTimeoutException("Timeout reading stream " + streamId);
+
+				if (chunk == END_MARK) {
+					eof = true;
+					current = null;
+					incoming.remove(streamId);
+					if (error != null)
+						throw new IOException(error);
+					return false;
+				}
+
+				current = chunk;
+				position = 0;
+				try {
+					frame(ACK, streamId, null);
+				} catch (IOException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IOException(e.toString());
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (eof)
+				return;
+
+			eof = true;
+			current = null;
+			if (incoming.remove(streamId) != null && isOpen())
+				try {
+					frame(CANCEL, streamId, null);
+				} catch (Exception e) {
+					// the link is going down
+				}
+		}
+	}
+
+	/**
+	 * Answer the protocol version that both sides support. This is 1 until the
+	 * other side has announced a higher version.
+	 */
+	public int getPeerVersion() {
+		return peerVersion;
+	}
+
+	/**
+	 * Deflate larger arguments when the other side supports it. This is useful
+	 * for slow connections, on fast connections compression costs more than it
+	 * saves.
+	 */
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
 	public boolean isOpen() {
 		return !quit.get();
 	}
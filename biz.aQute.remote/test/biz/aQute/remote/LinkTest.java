@@ -1,5 +1,6 @@
 package biz.aQute.remote;
 
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
@@ -7,8 +8,10 @@ import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import aQute.lib.io.IO;
 import aQute.remote.util.Link;
 import junit.framework.TestCase;
 
@@ -18,6 +21,8 @@ public class LinkTest extends TestCase {
 	private RemoteImpl		remoteImpl;
 	AtomicInteger			localClosed		= new AtomicInteger();
 	AtomicInteger			remoteClosed	= new AtomicInteger();
+	AtomicInteger			streamsOpened	= new AtomicInteger();
+	AtomicInteger			streamsClosed	= new AtomicInteger();
 	private Socket			localSocket;
 	private Socket			remoteSocket;
 
@@ -40,6 +45,10 @@ public class LinkTest extends TestCase {
 	interface Remote {
 		int foo();
 
+		InputStream data(int size);
+
+		byte[] bytes(int size);
+
 		void abort() throws IOException;
 	}
 
@@ -86,6 +95,22 @@ public class LinkTest extends TestCase {
 			return -42;
 		}
 
+		public InputStream data(int size) {
+			if (size < 0)
+				throw new IllegalArgumentException("negative");
+			streamsOpened.incrementAndGet();
+			return new ByteArrayInputStream(LinkTest.data(size, (byte) 0)) {
+				@Override
+				public void close() throws IOException {
+					streamsClosed.incrementAndGet();
+				}
+			};
+		}
+
+		public byte[] bytes(int size) {
+			return LinkTest.data(size, (byte) 1);
+		}
+
 		@Override
 		public void close() throws IOException {
 			System.out.println("remote closed");
@@ -215,6 +240,84 @@ public class LinkTest extends TestCase {
 		normalClose();
 	}
 
+	/**
+	 * Test streams, they are pipelined and larger than the window
+	 */
+	public void testStream() throws Exception {
+		localImpl.link.open();
+		remoteImpl.link.open();
+		remoteImpl.link.setCompression(true);
+
+		assertEquals(-42, localImpl.link.getRemote().foo());
+		assertEquals(Link.VERSION, localImpl.link.getPeerVersion());
+		assertEquals(Link.VERSION, remoteImpl.link.getPeerVersion());
+
+		int size = Link.CHUNK_SIZE * Link.WINDOW * 3 + 17;
+		InputStream a = localImpl.link.getRemote().data(size);
+		InputStream b = localImpl.link.getRemote().data(10);
+		InputStream c = localImpl.link.getRemote().data(0);
+
+		assertTrue(Arrays.equals(data(10, (byte) 0), IO.read(b)));
+		assertTrue(Arrays.equals(data(size, (byte) 0), IO.read(a)));
+		assertEquals(-1, c.read());
+
+		InputStream d = localImpl.link.getRemote().data(-1);
+		try {
+			d.read();
+			fail("Expected the remote exception");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("negative"));
+		}
+
+		// closing before the end cancels the stream
+		InputStream e = localImpl.link.getRemote().data(size);
+		assertTrue(e.read() >= 0);
+		e.close();
+		assertEquals(-42, localImpl.link.getRemote().foo());
+	}
+
+	/**
+	 * A method that returns a byte[] can be called as a stream, the agent
+	 * uses this to stream the getFile method of any supervisor
+	 */
+	public void testStreamBytes() throws Exception {
+		localImpl.link.open();
+		remoteImpl.link.open();
+		assertEquals(-42, localImpl.link.getRemote().foo());
+
+		int size = Link.CHUNK_SIZE * Link.WINDOW * 2 + 5;
+		InputStream in = localImpl.link.stream("bytes", size);
+		assertTrue(Arrays.equals(data(size, (byte) 1), IO.read(in)));
+	}
+
+	/**
+	 * Streams that are closed right away are cancelled, also when the cancel
+	 * arrives before the stream started
+	 */
+	public void testCancelEarly() throws Exception {
+		localImpl.link.open();
+		remoteImpl.link.open();
+		assertEquals(-42, localImpl.link.getRemote().foo());
+
+		int size = Link.CHUNK_SIZE * Link.WINDOW * 3;
+		for (int i = 0; i < 20; i++)
+			localImpl.link.getRemote().data(size).close();
+
+		// no sender may wait for the credits of a cancelled stream
+		assertEquals(-42, localImpl.link.getRemote().foo());
+		long deadline = System.currentTimeMillis() + 10000;
+		while (streamsClosed.get() < streamsOpened.get() && System.currentTimeMillis() < deadline)
+			Thread.sleep(50);
+		assertEquals(streamsOpened.get(), streamsClosed.get());
+	}
+
+	static byte[] data(int size, byte seed) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++)
+			data[i] = (byte) (seed + i % 251);
+		return data;
+	}
+
 	public void testAbort() throws IOException, InterruptedException {
 		localImpl.link.open();
 		remoteImpl.link.open();
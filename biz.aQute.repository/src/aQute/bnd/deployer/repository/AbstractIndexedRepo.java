@@ -55,6 +55,7 @@ import aQute.bnd.service.Refreshable;
 import aQute.bnd.service.Registry;
 import aQute.bnd.service.RegistryPlugin;
 import aQute.bnd.service.RemoteRepositoryPlugin;
+import aQute.bnd.service.RepositoryListenerPlugin;
 import aQute.bnd.service.ResolutionPhase;
 import aQute.bnd.service.ResourceHandle;
 import aQute.bnd.service.ResourceHandle.Location;
@@ -650,6 +651,23 @@ public abstract class AbstractIndexedRepo extends BaseRepository
 	public boolean refresh() throws Exception {
 		initialised = false;
 		init(true);
+		fireRepositoryRefreshed();
 		return true;
 	}
+
+	/**
+	 * Tell the repository listeners that the content of this repository may
+	 * have changed.
+	 */
+	protected void fireRepositoryRefreshed() {
+		if (registry == null)
+			return;
+		for (RepositoryListenerPlugin listener : registry.getPlugins(RepositoryListenerPlugin.class)) {
+			try {
+				listener.repositoryRefreshed(this);
+			} catch (Exception e) {
+				warning("Repository listener threw an unexpected exception: %s", e);
+			}
+		}
+	}
 }
@@ -1,12 +1,9 @@
 package aQute.bnd.deployer.repository;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.osgi.framework.Filter;
 import org.osgi.framework.FrameworkUtil;
@@ -16,52 +13,43 @@ import org.osgi.resource.Namespace;
 import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
 
+import aQute.bnd.osgi.resource.IndexedCapabilities;
+
 /**
+ * Finds the capabilities that match a requirement. The capabilities are kept
+ * in an {@link IndexedCapabilities} so that a requirement on a package or
+ * identity is only matched against the capabilities with that name. The
+ * parsed filters are cached since the resolver asks for the same requirements
+ * many times.
+ *
  * @ThreadSafe
  */
 public class CapabilityIndex {
+	private final static int			MAX_FILTERS	= 1000;
 
-	private final Map<String,List<Capability>> capabilityMap = new HashMap<String,List<Capability>>();
+	private final IndexedCapabilities	index		= new IndexedCapabilities();
+	private final Map<String,Filter>	filters		= new ConcurrentHashMap<String,Filter>();
 
-	public synchronized void clear() {
-		capabilityMap.clear();
+	public void clear() {
+		index.clear();
 	}
 
 	public void addResource(Resource resource) {
-		addCapabilities(resource.getCapabilities(null));
+		index.add(resource);
 	}
 
 	public void addCapability(Capability cap) {
-		addCapabilities(Collections.singletonList(cap));
-	}
-
-	private synchronized void addCapabilities(Iterable<Capability> capabilities) {
-		for (Capability cap : capabilities) {
-			List<Capability> list = capabilityMap.get(cap.getNamespace());
-			if (list == null) {
-				list = new LinkedList<Capability>();
-				capabilityMap.put(cap.getNamespace(), list);
-			}
-			list.add(cap);
-		}
+		index.add(cap);
 	}
 
 	public void appendMatchingCapabilities(Requirement requirement, Collection< ? super Capability> capabilities) {
-		List<Capability> caps;
-
-		synchronized (this) {
-			if (capabilityMap.containsKey(requirement.getNamespace()))
-				caps = new ArrayList<>(capabilityMap.get(requirement.getNamespace()));
-			else
-				caps = Collections.emptyList();
-		}
-
+		List<Capability> caps = index.getCandidates(requirement);
 		if (caps.isEmpty())
 			return;
 
 		try {
 			String filterStr = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
-			Filter filter = filterStr != null ? FrameworkUtil.createFilter(filterStr) : null;
+			Filter filter = filterStr != null ? getFilter(filterStr) : null;
 
 			for (Capability cap : caps) {
 				boolean match;
@@ -78,4 +66,15 @@ public class CapabilityIndex {
 		}
 	}
 
+	private Filter getFilter(String filterStr) throws InvalidSyntaxException {
+		Filter filter = filters.get(filterStr);
+		if (filter == null) {
+			filter = FrameworkUtil.createFilter(filterStr);
+			if (filters.size() >= MAX_FILTERS)
+				filters.clear();
+			filters.put(filterStr, filter);
+		}
+		return filter;
+	}
+
 }
@@ -5,6 +5,8 @@ import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.net.URI;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
@@ -17,6 +19,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,6 +29,7 @@ import org.osgi.service.coordinator.Participant;
 import org.osgi.service.log.LogService;
 
 import aQute.bnd.deployer.repository.api.IRepositoryContentProvider;
+import aQute.bnd.deployer.repository.api.IRepositoryFragmentContentProvider;
 import aQute.bnd.osgi.Jar;
 import aQute.bnd.osgi.Verifier;
 import aQute.bnd.service.Actionable;
@@ -52,6 +56,8 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 	public static final String	PROP_PRETTY				= "pretty";
 	public static final String	PROP_OVERWRITE			= "overwrite";
 	public static final String	PROP_ONLYDIRS			= "onlydirs";
+	public static final String	PROP_INCREMENTAL		= "incremental";
+	private static final String	FRAGMENTS_PATH			= "fragments";
 
 	@SuppressWarnings("deprecation")
 	private boolean				readOnly;
@@ -59,6 +65,29 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 	private boolean				overwrite				= true;
 	private File				storageDir;
 	private String				onlydirs				= null;
+	private boolean				incremental				= false;
+
+	/*
+	 * The content digests of the files in the repository, they are only
+	 * recalculated when the modification time or length of a file changes.
+	 */
+	private final Map<File,FileDigest>	digests			= new HashMap<File,FileDigest>();
+
+	private static class FileDigest {
+		final long		modified;
+		final long		length;
+		final String	sha;
+
+		FileDigest(File file) throws Exception {
+			this.modified = file.lastModified();
+			this.length = file.length();
+			this.sha = SHA256.digest(file).asHex();
+		}
+
+		boolean isCurrent(File file) {
+			return modified == file.lastModified() && length == file.length();
+		}
+	}
 
 	// @GuardedBy("newFilesInCoordination")
 	private final List<URI>		newFilesInCoordination	= new LinkedList<URI>();
@@ -83,6 +112,7 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 		pretty = Boolean.parseBoolean(map.get(PROP_PRETTY));
 		overwrite = map.get(PROP_OVERWRITE) == null ? true : Boolean.parseBoolean(map.get(PROP_OVERWRITE));
 		onlydirs = map.get(PROP_ONLYDIRS);
+		incremental = Boolean.parseBoolean(map.get(PROP_INCREMENTAL));
 
 		// Set the local index and cache directory locations
 		cacheDir = new File(storageDir, CACHE_PATH);
@@ -166,7 +196,10 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 			out = new FileOutputStream(indexFile);
 
 			URI rootUri = storageDir.getCanonicalFile().toURI();
-			provider.generateIndex(allFiles, out, this.getName(), rootUri, pretty, registry, logService);
+			if (incremental && provider instanceof IRepositoryFragmentContentProvider)
+				generateIndexFromFragments(allFiles, out, rootUri, (IRepositoryFragmentContentProvider) provider);
+			else
+				provider.generateIndex(allFiles, out, this.getName(), rootUri, pretty, registry, logService);
 		} finally {
 			IO.close(out);
 			out = null;
@@ -186,6 +219,68 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 		}
 	}
 
+	/*
+	 * Generate the index from the fragments of the files. A fragment is kept
+	 * under the digest of the path and content of its file, only files that
+	 * were added or changed since the last generation are analyzed. Fragments
+	 * of files that are no longer in the repository are removed.
+	 */
+	private void generateIndexFromFragments(Set<File> allFiles, OutputStream out, URI rootUri,
+			IRepositoryFragmentContentProvider provider) throws Exception {
+		File fragmentsDir = new File(new File(cacheDir, FRAGMENTS_PATH), provider.getName());
+		if (!fragmentsDir.isDirectory() && !fragmentsDir.mkdirs())
+			throw new IOException("Could not create directory " + fragmentsDir);
+
+		Set<File> sorted = new TreeSet<File>(allFiles);
+		List<File> fragments = new ArrayList<File>(sorted.size());
+		long modified = 0;
+		int generated = 0;
+
+		digests.keySet().retainAll(sorted);
+		for (File file : sorted) {
+			FileDigest digest = digests.get(file);
+			if (digest == null || !digest.isCurrent(file)) {
+				digest = new FileDigest(file);
+				digests.put(file, digest);
+			}
+			modified = Math.max(modified, digest.modified);
+
+			String path = rootUri.relativize(file.getCanonicalFile().toURI()).toString();
+			String key = SHA256.digest((path + "\n" + digest.sha).getBytes("UTF-8")).asHex();
+			File fragment = new File(fragmentsDir, key + ".xml");
+			if (!fragment.isFile()) {
+				File tmp = IO.createTempFile(fragmentsDir, key, ".tmp");
+				try {
+					Writer writer = IO.writer(tmp, "UTF-8");
+					try {
+						provider.generateFragment(file, writer, rootUri, registry, logService);
+					} finally {
+						writer.close();
+					}
+					IO.rename(tmp, fragment);
+				} finally {
+					IO.delete(tmp);
+				}
+				generated++;
+			}
+			fragments.add(fragment);
+		}
+
+		provider.generateIndex(fragments, out, this.getName(), modified, pretty);
+
+		Set<File> used = new HashSet<File>(fragments);
+		File[] existing = fragmentsDir.listFiles();
+		if (existing != null) {
+			for (File fragment : existing) {
+				if (!used.contains(fragment))
+					IO.delete(fragment);
+			}
+		}
+
+		logService.log(LogService.LOG_DEBUG, String.format("Indexed %d of %d files for repository type %s", generated,
+				fragments.size(), provider.getName()));
+	}
+
 	@SuppressWarnings("deprecation")
 	private void gatherFiles(Set<File> allFiles) throws Exception {
 		if (!storageDir.isDirectory())
@@ -395,6 +490,7 @@ public class LocalIndexedRepo extends FixedIndexedRepo implements Refreshable, P
 	public boolean refresh() {
 		reset();
 		regenerateAllIndexes();
+		fireRepositoryRefreshed();
 		return true;
 	}
 
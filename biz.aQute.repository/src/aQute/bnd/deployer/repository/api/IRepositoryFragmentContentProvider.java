@@ -0,0 +1,53 @@
+package aQute.bnd.deployer.repository.api;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.URI;
+import java.util.List;
+
+import org.osgi.service.log.LogService;
+
+import aQute.bnd.service.Registry;
+
+/**
+ * A content provider that can index the files of a repository one by one.
+ * The index of a single file is a fragment; an index is the merge of the
+ * fragments of all the files. A repository can keep the fragments and only
+ * index the files that were added or changed.
+ */
+public interface IRepositoryFragmentContentProvider extends IRepositoryContentProvider {
+
+	/**
+	 * Generate the index fragment of a single file.
+	 *
+	 * @param file The file to be indexed.
+	 * @param output The writer on which the fragment should be written.
+	 * @param rootUri The URI of the repository.
+	 * @param registry The bnd workspace plug-in registry if available, or
+	 *            {@code null}.
+	 * @param log The OSGi log service if available, or {@code null}.
+	 * @throws Exception If any other error unrecoverable occurs.
+	 */
+	void generateFragment(File file, Writer output, URI rootUri, Registry registry, LogService log)
+			throws Exception;
+
+	/**
+	 * Generate a repository index from fragments. The result must be
+	 * equivalent to the result of
+	 * {@link #generateIndex(java.util.Set, OutputStream, String, URI, boolean, Registry, LogService)}
+	 * for the files of the fragments.
+	 *
+	 * @param fragments The files that hold the fragments, in the order of the
+	 *            resources in the index.
+	 * @param output The output stream, on which the index should be written.
+	 * @param repoName The name of the repository, which may be entered into the
+	 *            generated index.
+	 * @param increment The increment of the index.
+	 * @param pretty Hint to request "pretty printing", i.e. uncompressed,
+	 *            indented output.
+	 * @throws Exception If any other error unrecoverable occurs.
+	 */
+	void generateIndex(List<File> fragments, OutputStream output, String repoName, long increment, boolean pretty)
+			throws Exception;
+}
@@ -10,12 +10,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -27,18 +33,22 @@ import org.osgi.service.indexer.ResourceAnalyzer;
 import org.osgi.service.indexer.ResourceIndexer;
 import org.osgi.service.indexer.impl.KnownBundleAnalyzer;
 import org.osgi.service.indexer.impl.RepoIndex;
+import org.osgi.service.indexer.impl.Schema;
+import org.osgi.service.indexer.impl.util.Indent;
+import org.osgi.service.indexer.impl.util.Tag;
 import org.osgi.service.log.LogService;
 import org.osgi.service.repository.ContentNamespace;
 
 import aQute.bnd.deployer.repository.api.CheckResult;
-import aQute.bnd.deployer.repository.api.IRepositoryContentProvider;
+import aQute.bnd.deployer.repository.api.IRepositoryFragmentContentProvider;
 import aQute.bnd.deployer.repository.api.IRepositoryIndexProcessor;
 import aQute.bnd.deployer.repository.api.Referral;
 import aQute.bnd.osgi.resource.CapReqBuilder;
 import aQute.bnd.osgi.resource.ResourceBuilder;
 import aQute.bnd.service.Registry;
+import aQute.lib.io.IO;
 
-public class R5RepoContentProvider implements IRepositoryContentProvider {
+public class R5RepoContentProvider implements IRepositoryFragmentContentProvider {
 
 	public static final String	NAME					= "R5";
 
@@ -261,6 +271,67 @@ public class R5RepoContentProvider implements IRepositoryContentProvider {
 
 	public void generateIndex(Set<File> files, OutputStream output, String repoName, URI baseUri, boolean pretty,
 			Registry registry, LogService log) throws Exception {
+		RepoIndex indexer = createIndexer(registry, log);
+
+		long modified = 0;
+		for (File file : files)
+			modified = Math.max(modified, file.lastModified());
+
+		Map<String,String> config = new HashMap<String,String>();
+		config.put(ResourceIndexer.REPOSITORY_NAME, repoName);
+		config.put(ResourceIndexer.ROOT_URL, baseUri.toString());
+		config.put(ResourceIndexer.PRETTY, Boolean.toString(pretty));
+		config.put(ResourceIndexer.COMPRESSED, Boolean.toString(!pretty));
+		config.put(org.osgi.service.indexer.impl.RepoIndex.REPOSITORY_INCREMENT_OVERRIDE, Long.toString(modified));
+
+		indexer.index(files, output, config);
+	}
+
+	public void generateFragment(File file, Writer output, URI rootUri, Registry registry, LogService log)
+			throws Exception {
+		RepoIndex indexer = createIndexer(registry, log);
+
+		Map<String,String> config = new HashMap<String,String>();
+		config.put(ResourceIndexer.ROOT_URL, rootUri.toString());
+
+		PrintWriter pw = new PrintWriter(output);
+		indexer.indexFragment(Collections.singleton(file), pw, config);
+		pw.flush();
+	}
+
+	/*
+	 * Writes the same repository element as RepoIndex.index, the resources
+	 * are copied from the fragments.
+	 */
+	public void generateIndex(List<File> fragments, OutputStream output, String repoName, long increment,
+			boolean pretty) throws Exception {
+		Indent indent = pretty ? Indent.PRETTY : Indent.NONE;
+		PrintWriter pw = pretty ? IO.writer(output)
+				: IO.writer(new GZIPOutputStream(output, Deflater.BEST_COMPRESSION));
+		try {
+			pw.print(Schema.XML_PROCESSING_INSTRUCTION);
+
+			Tag repoTag = new Tag(Schema.ELEM_REPOSITORY);
+			repoTag.addAttribute(Schema.ATTR_NAME, repoName);
+			repoTag.addAttribute(Schema.ATTR_INCREMENT, Long.toString(increment));
+			repoTag.addAttribute(Schema.ATTR_XML_NAMESPACE, Schema.NAMESPACE);
+
+			repoTag.printOpen(indent, pw, false);
+			for (File fragment : fragments) {
+				Reader in = IO.reader(fragment, "UTF-8");
+				try {
+					IO.copy(in, pw);
+				} finally {
+					in.close();
+				}
+			}
+			repoTag.printClose(indent, pw);
+		} finally {
+			pw.close();
+		}
+	}
+
+	private RepoIndex createIndexer(Registry registry, LogService log) throws Exception {
 		RepoIndex indexer;
 		if (log != null)
 			indexer = new RepoIndex(log);
@@ -275,18 +346,6 @@ public class R5RepoContentProvider implements IRepositoryContentProvider {
 				indexer.addAnalyzer(analyzer, null);
 			}
 		}
-
-		long modified = 0;
-		for (File file : files)
-			modified = Math.max(modified, file.lastModified());
-
-		Map<String,String> config = new HashMap<String,String>();
-		config.put(ResourceIndexer.REPOSITORY_NAME, repoName);
-		config.put(ResourceIndexer.ROOT_URL, baseUri.toString());
-		config.put(ResourceIndexer.PRETTY, Boolean.toString(pretty));
-		config.put(ResourceIndexer.COMPRESSED, Boolean.toString(!pretty));
-		config.put(org.osgi.service.indexer.impl.RepoIndex.REPOSITORY_INCREMENT_OVERRIDE, Long.toString(modified));
-
-		indexer.index(files, output, config);
+		return indexer;
 	}
 }
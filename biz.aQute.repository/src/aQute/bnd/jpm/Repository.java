@@ -37,14 +37,12 @@ import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 
 import aQute.bnd.build.Container;
 import aQute.bnd.build.Project;
@@ -97,8 +95,7 @@ import aQute.service.reporter.Reporter;
 public class Repository implements Plugin, RepositoryPlugin, Closeable, Refreshable, Actionable, RegistryPlugin,
 		SearchableRepository, InfoRepository {
 	private final static Logger					logger						= LoggerFactory.getLogger(Repository.class);
-	private static final DocumentBuilderFactory	dbf							= DocumentBuilderFactory.newInstance();
-	private static final XPathFactory			xpf							= XPathFactory.newInstance();
+	private static final XMLInputFactory		inputFactory				= XMLInputFactory.newInstance();
 	public static final String					REPO_DEFAULT_URI			= "http://repo.jpm4j.org";
 	private static final PutOptions				DEFAULT_OPTIONS				= new PutOptions();
 	private static final String					SEARCH_PREFIX				= "/#!/search?q=";
@@ -1841,20 +1838,21 @@ public class Repository implements Plugin, RepositoryPlugin, Closeable, Refresha
 
 					Resource r = jar.getResource("META-INF/maven/" + ref.groupId + "/" + ref.artifactId + "/pom.xml");
 					if (r != null) {
-						DocumentBuilder db = dbf.newDocumentBuilder();
-						Document doc = db.parse(r.openInputStream());
-						XPath xp = xpf.newXPath();
+						Map<String,String> pom;
+						try (InputStream in = r.openInputStream()) {
+							pom = firstElements(in, "description", "version", "name", "packaging", "classifier");
+						}
 						if (ref.description == null) {
-							ref.description = xp.evaluate("//description", doc);
+							ref.description = pom.get("description");
 						}
 						if (ref.version == null) {
-							ref.version = xp.evaluate("//version", doc);
+							ref.version = pom.get("version");
 						}
 						if (ref.name == null) {
-							ref.name = xp.evaluate("//name", doc);
+							ref.name = pom.get("name");
 						}
-						ref.packaging = xp.evaluate("//packaging", doc);
-						ref.classifier = xp.evaluate("//classifier", doc);
+						ref.packaging = pom.get("packaging");
+						ref.classifier = pom.get("classifier");
 					}
 				} catch (Exception e) {
 					logger.debug("parsing maven failed for {}: {}", uri, e);
@@ -1887,6 +1885,50 @@ public class Repository implements Plugin, RepositoryPlugin, Closeable, Refresha
 		return null;
 	}
 
+	/*
+	 * Answer the text of the first element with each of the given names, like
+	 * the XPath //name, in one pass over the XML. Names without an element map
+	 * to an empty string.
+	 */
+	private static Map<String,String> firstElements(InputStream in, String... names) throws Exception {
+		Map<String,String> result = new HashMap<>();
+		for (String name : names)
+			result.put(name, "");
+
+		Set<String> todo = new HashSet<>(Arrays.asList(names));
+		XMLStreamReader sr = inputFactory.createXMLStreamReader(in);
+		try {
+			while (!todo.isEmpty() && sr.hasNext()) {
+				if (sr.next() != XMLStreamConstants.START_ELEMENT || !todo.remove(sr.getLocalName()))
+					continue;
+
+				String name = sr.getLocalName();
+				StringBuilder sb = new StringBuilder();
+				for (int depth = 0; depth >= 0 && sr.hasNext();) {
+					switch (sr.next()) {
+						case XMLStreamConstants.START_ELEMENT :
+							depth++;
+							break;
+						case XMLStreamConstants.END_ELEMENT :
+							depth--;
+							break;
+						case XMLStreamConstants.CHARACTERS :
+						case XMLStreamConstants.CDATA :
+						case XMLStreamConstants.SPACE :
+							sb.append(sr.getText());
+							break;
+						default :
+							break;
+					}
+				}
+				result.put(name, sb.toString());
+			}
+		} finally {
+			sr.close();
+		}
+		return result;
+	}
+
 	/*
 	 * A utility to open a URL on different OS's browsers
 	 * @param url the url to open
@@ -24,6 +24,7 @@ import aQute.bnd.service.Plugin;
 import aQute.bnd.service.Refreshable;
 import aQute.bnd.service.Registry;
 import aQute.bnd.service.RegistryPlugin;
+import aQute.bnd.service.RepositoryListenerPlugin;
 import aQute.bnd.service.RepositoryPlugin;
 import aQute.bnd.util.repository.DownloadListenerPromise;
 import aQute.bnd.version.Version;
@@ -74,6 +75,7 @@ public class BndPomRepository extends BaseRepository
 
 			MavenRepository repository = new MavenRepository(localRepo, name, release, snapshot,
 					Processor.getExecutor(), reporter, null);
+			repository.setPomCache(IO.getFile(location.getParentFile(), location.getName() + ".info/poms"));
 
 			if (pomFile != null) {
 				repoImpl = new PomRepository(repository, client, location, pomFile);
@@ -97,6 +99,8 @@ public class BndPomRepository extends BaseRepository
 		init();
 		repoImpl.refresh();
 		bridge = new BridgeRepository(repoImpl);
+		for (RepositoryListenerPlugin listener : registry.getPlugins(RepositoryListenerPlugin.class))
+			listener.repositoryRefreshed(this);
 		return true;
 	}
 
@@ -0,0 +1,158 @@
+package aQute.bnd.repository.maven.provider;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import aQute.lib.io.IO;
+
+/**
+ * Stores the descriptors of the archives of an index in a single file so that
+ * they can be loaded with one read. The file is a log of records, one per
+ * line, of the archive and the JSON of its descriptor. A record for an archive
+ * replaces the earlier records for that archive, a record without a
+ * descriptor removes the archive. Records are appended when a descriptor
+ * changes. When the log has too many replaced records it is compacted into a
+ * new file that atomically replaces the old one.
+ * <p>
+ * The store is a cache, records that cannot be read are ignored.
+ */
+class DescriptorStore {
+	private final static String	HEADER		= "# bnd descriptors 1";
+	private final static int	SLACK		= 64;
+
+	private final File					file;
+	private final Map<String,String>	appended	= new LinkedHashMap<>();
+	private int							records;
+
+	DescriptorStore(File file) {
+		this.file = file;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Read the descriptors.
+	 *
+	 * @return a map of archive to the JSON of its descriptor
+	 */
+	synchronized Map<String,String> load() {
+		Map<String,String> descriptors = new LinkedHashMap<>();
+		appended.clear();
+		records = 0;
+		if (!file.isFile())
+			return descriptors;
+
+		String content;
+		try {
+			content = new String(IO.read(file), StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return descriptors;
+		}
+
+		if (!content.startsWith(HEADER + "\n"))
+			return descriptors;
+
+		int n = HEADER.length() + 1;
+		while (n < content.length()) {
+			int end = content.indexOf('\n', n);
+			if (end < 0)
+				break; // incomplete last record
+
+			int tab = content.indexOf('\t', n);
+			if (tab > n && tab < end) {
+				String archive = content.substring(n, tab);
+				if (tab + 1 == end)
+					descriptors.remove(archive);
+				else
+					descriptors.put(archive, content.substring(tab + 1, end));
+				records++;
+			}
+			n = end + 1;
+		}
+		return descriptors;
+	}
+
+	/**
+	 * Append the descriptor of an archive.
+	 *
+	 * @param archive the archive
+	 * @param json the JSON of the descriptor, null to remove the archive
+	 */
+	synchronized void put(String archive, String json) throws IOException {
+		if (json != null && json.indexOf('\n') >= 0)
+			throw new IllegalArgumentException("A descriptor must be on a single line " + archive);
+
+		StringBuilder sb = new StringBuilder();
+		boolean exists = file.isFile();
+		if (!exists)
+			sb.append(HEADER).append('\n');
+		sb.append(archive).append('\t');
+		if (json != null)
+			sb.append(json);
+		sb.append('\n');
+
+		if (!exists)
+			file.getParentFile().mkdirs();
+		try (OutputStream out = new FileOutputStream(file, true)) {
+			out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		appended.put(archive, json);
+		records++;
+	}
+
+	/**
+	 * Answer if the log has enough replaced records to compact it.
+	 *
+	 * @param live the number of archives in the store
+	 */
+	synchronized boolean isCompactable(int live) {
+		return records > 2 * live + SLACK;
+	}
+
+	/**
+	 * Replace the log with a file that holds only the given descriptors and
+	 * the descriptors that were appended since the last load.
+	 *
+	 * @param live a map of archive to the JSON of its descriptor
+	 */
+	synchronized void compact(Map<String,String> live) throws IOException {
+		Map<String,String> descriptors = new LinkedHashMap<>(live);
+		for (Map.Entry<String,String> entry : appended.entrySet()) {
+			if (entry.getValue() == null)
+				descriptors.remove(entry.getKey());
+			else
+				descriptors.put(entry.getKey(), entry.getValue());
+		}
+
+		file.getParentFile().mkdirs();
+		File tmp = File.createTempFile("descriptors", null, file.getParentFile());
+		try {
+			StringBuilder sb = new StringBuilder();
+			sb.append(HEADER).append('\n');
+			for (Map.Entry<String,String> entry : descriptors.entrySet())
+				sb.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+			IO.store(sb, tmp);
+
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			records = descriptors.size();
+			appended.clear();
+		} finally {
+			IO.delete(tmp);
+		}
+	}
+}
@@ -12,6 +12,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -21,6 +22,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.jar.Manifest;
 
 import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
@@ -41,6 +43,7 @@ import aQute.lib.collections.MultiMap;
 import aQute.lib.io.IO;
 import aQute.lib.json.JSONCodec;
 import aQute.lib.strings.Strings;
+import aQute.libg.cryptography.MultiDigester;
 import aQute.libg.cryptography.SHA1;
 import aQute.libg.cryptography.SHA256;
 import aQute.maven.api.Archive;
@@ -50,7 +53,9 @@ import aQute.service.reporter.Reporter;
 
 /**
  * Maintains an index of descriptors of archives. These descriptors are stored
- * in the maven repository
+ * in a {@link DescriptorStore} in the index cache directory. Older versions
+ * stored the descriptors in a file per archive in the maven repository, these
+ * files are read when the store has no descriptor for an archive.
  */
 class IndexFile {
 
@@ -90,12 +95,14 @@ class IndexFile {
 	private long									lastModified;
 	private AtomicBoolean							refresh		= new AtomicBoolean();
 	private final ReadWriteLock							lock		= new ReentrantReadWriteLock();
+	private final DescriptorStore						store;
 
 	IndexFile(Reporter reporter, File file, IMavenRepo repo) throws Exception {
 		this.reporter = reporter;
 		this.indexFile = file;
 		this.repo = repo;
 		this.cacheDir = new File(indexFile.getParentFile(), indexFile.getName() + ".info");
+		this.store = new DescriptorStore(new File(cacheDir, "descriptors"));
 	}
 
 	void open() throws Exception {
@@ -229,6 +236,8 @@ class IndexFile {
 		lastModified = indexFile.lastModified();
 		Set<Archive> toBeDeleted = new HashSet<>(descriptors.keySet());
 		if (indexFile.isFile()) {
+			Map<String,String> stored = store.load();
+			Map<String,String> live = new LinkedHashMap<>();
 			lock.readLock().lock();
 			try (BufferedReader rdr = IO.reader(indexFile)) {
 				String line;
@@ -242,7 +251,7 @@ class IndexFile {
 						reporter.error("MavenBndRepository: invalid entry %s in file %s", line, indexFile);
 					} else {
 						toBeDeleted.remove(a);
-						loadDescriptorAsync(a);
+						loadDescriptorAsync(a, stored, live);
 					}
 				}
 			} finally {
@@ -251,6 +260,14 @@ class IndexFile {
 
 			this.descriptors.keySet().removeAll(toBeDeleted);
 			this.promises.keySet().removeAll(toBeDeleted);
+
+			if (store.isCompactable(live.size())) {
+				try {
+					store.compact(live);
+				} catch (Exception e) {
+					reporter.exception(e, "Failed to compact the descriptors in %s", store.getFile());
+				}
+			}
 		}
 	}
 
@@ -264,12 +281,15 @@ class IndexFile {
 			if (file == null || !file.isFile()) {
 				File descriptorFile = getDescriptorFile(descriptor.archive);
 				descriptorFile.delete();
+				store.put(descriptor.archive.toString(), null);
 				reporter.error("Could not find file %s", descriptor.archive);
 				descriptor.error = "File not found";
 			} else {
 				if (descriptor.lastModified != file.lastModified()) {
 
-					Domain m = Domain.domain(file);
+					MultiDigester digester = new MultiDigester(SHA1.ALGORITHM, SHA256.ALGORITHM).fromJar(file);
+					Manifest manifest = digester.getManifest();
+					Domain m = manifest != null ? Domain.domain(manifest) : Domain.domain(file);
 					if (m == null)
 						m = Domain.domain(Collections.<String, String> emptyMap());
 
@@ -284,10 +304,10 @@ class IndexFile {
 					} else if (descriptor.version == null)
 						descriptor.version = Version.LOWEST;
 					descriptor.description = m.getBundleDescription();
-					descriptor.id = SHA1.digest(file).digest();
+					descriptor.id = digester.digest(SHA1.ALGORITHM);
 					descriptor.included = false;
 					descriptor.lastModified = file.lastModified();
-					descriptor.sha256 = SHA256.digest(file).digest();
+					descriptor.sha256 = digester.digest(SHA256.ALGORITHM);
 					saveDescriptor(descriptor);
 					refresh.set(true);
 				}
@@ -303,32 +323,47 @@ class IndexFile {
 	}
 
 	private void saveDescriptor(BundleDescriptor descriptor) throws IOException, Exception {
-		File df = getDescriptorFile(descriptor.archive);
-		df.getParentFile().mkdirs();
-		CODEC.enc().to(df).put(descriptor);
+		store.put(descriptor.archive.toString(), CODEC.enc().put(descriptor).toString());
 	}
 
-	private void loadDescriptorAsync(final Archive archive) throws Exception {
-		if (updateLocal(archive))
+	private void loadDescriptorAsync(final Archive archive, Map<String,String> stored, Map<String,String> live)
+			throws Exception {
+		if (updateLocal(archive, stored, live))
 			return;
 
 		updateAsync(archive);
 	}
 
-	private boolean updateLocal(final Archive archive) {
+	/*
+	 * Use the stored descriptor when the archive is in the local repository.
+	 * A descriptor that is only in the old per archive file is added to the
+	 * store.
+	 */
+	private boolean updateLocal(final Archive archive, Map<String,String> stored, Map<String,String> live) {
 		File archiveFile = repo.toLocalFile(archive);
 		if (archiveFile.isFile()) {
-			File descriptorFile = getDescriptorFile(archive);
-			if (descriptorFile.isFile()) {
-				try {
-					BundleDescriptor descriptor = CODEC.dec().from(descriptorFile).get(BundleDescriptor.class);
-					descriptor.promise = Promises.resolved(archiveFile);
-					descriptor.resource = null;
-					descriptors.put(archive, descriptor);
-					return true;
-				} catch (Exception e) {
-					// ignore
+			String key = archive.toString();
+			String json = stored.get(key);
+			try {
+				BundleDescriptor descriptor;
+				if (json != null) {
+					descriptor = CODEC.dec().from(json).get(BundleDescriptor.class);
+				} else {
+					File descriptorFile = getDescriptorFile(archive);
+					if (!descriptorFile.isFile())
+						return false;
+
+					descriptor = CODEC.dec().from(descriptorFile).get(BundleDescriptor.class);
+					json = CODEC.enc().put(descriptor).toString();
+					store.put(key, json);
 				}
+				descriptor.promise = Promises.resolved(archiveFile);
+				descriptor.resource = null;
+				descriptors.put(archive, descriptor);
+				live.put(key, json);
+				return true;
+			} catch (Exception e) {
+				// ignore
 			}
 		}
 		return false;
@@ -359,6 +394,9 @@ class IndexFile {
 		return descriptor.promise;
 	}
 
+	/*
+	 * The descriptor file of older versions
+	 */
 	File getDescriptorFile(Archive archive) {
 		File dir = new File(repo.toLocalFile(archive).getParentFile(), ".bnd");
 		return new File(dir, archive.getName());
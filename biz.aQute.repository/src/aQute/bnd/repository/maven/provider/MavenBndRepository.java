@@ -475,8 +475,9 @@ public class MavenBndRepository extends BaseRepository
 					localRepo, client);
 			List<MavenBackingRepository> snapshot = MavenBackingRepository.create(configuration.snapshotUrl(), reporter,
 					localRepo, client);
-			storage = new MavenRepository(localRepo, getName(), release, snapshot, Processor.getExecutor(), reporter,
-					getRefreshCallback());
+			MavenRepository repository = new MavenRepository(localRepo, getName(), release, snapshot,
+					Processor.getExecutor(), reporter, getRefreshCallback());
+			storage = repository;
 
 			File base = IO.work;
 			if (registry != null) {
@@ -487,6 +488,7 @@ public class MavenBndRepository extends BaseRepository
 
 			File indexFile = IO.getFile(base, configuration.index(name.toLowerCase() + ".mvn"));
 			IndexFile ixf = new IndexFile(reporter, indexFile, storage);
+			repository.setPomCache(new File(ixf.cacheDir, "poms"));
 			ixf.open();
 			this.index = ixf;
 			startPoll(index);
@@ -580,7 +582,12 @@ public class MavenBndRepository extends BaseRepository
 
 	@Override
 	public boolean refresh() throws Exception {
-		return index.refresh();
+		if (!index.refresh())
+			return false;
+
+		for (RepositoryListenerPlugin listener : registry.getPlugins(RepositoryListenerPlugin.class))
+			listener.repositoryRefreshed(this);
+		return true;
 	}
 
 	@Override
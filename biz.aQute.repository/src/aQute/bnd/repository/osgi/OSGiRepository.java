@@ -270,6 +270,9 @@ public class OSGiRepository extends BaseRepository
 	@Override
 	public synchronized boolean refresh() throws Exception {
 		getIndex(false);
+		for (RepositoryListenerPlugin rp : registry.getPlugins(RepositoryListenerPlugin.class)) {
+			rp.repositoryRefreshed(this);
+		}
 		return true;
 	}
 
@@ -21,6 +21,7 @@ import aQute.bnd.service.Plugin;
 import aQute.bnd.service.Refreshable;
 import aQute.bnd.service.Registry;
 import aQute.bnd.service.RegistryPlugin;
+import aQute.bnd.service.RepositoryListenerPlugin;
 import aQute.bnd.service.RepositoryPlugin;
 import aQute.bnd.version.Version;
 import aQute.lib.converter.Converter;
@@ -118,6 +119,8 @@ public class P2Repository extends BaseRepository implements Plugin, RegistryPlug
 	@Override
 	public boolean refresh() throws Exception {
 		getP2Index().refresh();
+		for (RepositoryListenerPlugin listener : registry.getPlugins(RepositoryListenerPlugin.class))
+			listener.repositoryRefreshed(this);
 		return true;
 	}
 
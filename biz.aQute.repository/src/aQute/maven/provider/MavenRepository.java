@@ -2,11 +2,11 @@ package aQute.maven.provider;
 
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -47,6 +47,7 @@ public class MavenRepository implements IMavenRepo, Closeable {
 	private final Executor								executor;
 	private final boolean								localOnly;
 	private final Map<Revision,Promise<POM>>	poms		= new WeakHashMap<>();
+	private volatile File								pomCache;
 
 	public MavenRepository(File base, String id, List<MavenBackingRepository> release,
 			List<MavenBackingRepository> snapshot, Executor executor, Reporter reporter, Callable<Boolean> callback)
@@ -304,6 +305,31 @@ public class MavenRepository implements IMavenRepo, Closeable {
 		return id;
 	}
 
+	/**
+	 * Cache the parsed POM files of the local repository in a directory of
+	 * the owner of this repository.
+	 *
+	 * @param dir the cache directory or {@code null} to not cache the POM
+	 *            files
+	 */
+	public void setPomCache(File dir) {
+		this.pomCache = dir;
+	}
+
+	/*
+	 * The file that caches the model of a POM file in the local repository.
+	 */
+	File getPomCacheFile(File pomFile) {
+		File dir = pomCache;
+		if (dir == null)
+			return null;
+		Path path = pomFile.getAbsoluteFile().toPath().normalize();
+		Path root = base.getAbsoluteFile().toPath().normalize();
+		if (!path.startsWith(root))
+			return null;
+		return new File(dir, root.relativize(path) + PomParser.CACHE_SUFFIX);
+	}
+
 	@Override
 	public POM getPom(InputStream pomFile) throws Exception {
 		return new POM(this, pomFile);
@@ -334,8 +360,8 @@ public class MavenRepository implements IMavenRepo, Closeable {
 				if (pomFile == null) {
 					return null;
 				}
-				try (FileInputStream fin = new FileInputStream(pomFile)) {
-					return getPom(fin);
+				try {
+					return new POM(MavenRepository.this, pomFile);
 				} catch (Exception e) {
 					logger.error("Failed to parse pom {} from file {}", revision, pomFile, e);
 					return null;
@@ -1,8 +1,8 @@
 package aQute.maven.provider;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -16,20 +16,13 @@ import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import aQute.bnd.version.MavenVersion;
 import aQute.lib.io.IO;
@@ -39,6 +32,8 @@ import aQute.maven.api.IPom;
 import aQute.maven.api.MavenScope;
 import aQute.maven.api.Program;
 import aQute.maven.api.Revision;
+import aQute.maven.provider.PomParser.DependencyModel;
+import aQute.maven.provider.PomParser.PomModel;
 
 /**
  * Parser and placeholder for POM information.
@@ -46,15 +41,13 @@ import aQute.maven.api.Revision;
 public class POM implements IPom {
 	static Logger					l						= LoggerFactory.getLogger(POM.class);
 
-	static DocumentBuilderFactory	dbf						= DocumentBuilderFactory.newInstance();
-	static XPathFactory				xpf						= XPathFactory.newInstance();
+	static TransformerFactory		tf						= TransformerFactory.newInstance();
 	private Revision				revision;
 	private String					packaging;
 	private final Properties		properties;
 	private final POM				parent;
 	private Map<Program,Dependency>	dependencies			= new LinkedHashMap<>();
 	private Map<Program,Dependency>	dependencyManagement	= new LinkedHashMap<>();
-	private XPath					xp;
 
 	private MavenRepository			repo;
 
@@ -73,17 +66,12 @@ public class POM implements IPom {
 	}
 
 	public POM(MavenRepository repo, InputStream in) throws Exception {
-		this(repo, getDocBuilder().parse(processEntities(in)));
-	}
-
-	private static DocumentBuilder getDocBuilder() throws ParserConfigurationException {
-		DocumentBuilder db = dbf.newDocumentBuilder();
-		return db;
+		this(repo, PomParser.parse(processEntities(in)));
 	}
 
 	final static Pattern ENTITY_CLEAN_UP = Pattern.compile("&([-a-z0-9_]+);");
 
-	private static InputStream processEntities(InputStream in) throws IOException {
+	static InputStream processEntities(InputStream in) throws IOException {
 		byte[] read = IO.read(in);
 		int l = read.length;
 		outer: for (int i = 0; i < read.length; i++) {
@@ -120,18 +108,27 @@ public class POM implements IPom {
 	}
 
 	public POM(MavenRepository repo, File file) throws Exception {
-		this(repo, new FileInputStream(file));
+		this(repo, PomParser.parse(file, repo == null ? null : repo.getPomCacheFile(file)));
 	}
 
 	public POM(MavenRepository repo, Document doc) throws Exception {
+		this(repo, PomParser.parse(toStream(doc)));
+	}
+
+	private static InputStream toStream(Document doc) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tf.newTransformer().transform(new DOMSource(doc), new StreamResult(out));
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	POM(MavenRepository repo, PomModel model) throws Exception {
 		this.repo = repo;
-		xp = xpf.newXPath();
 
-		String parentGroup = Strings.trim(xp.evaluate("project/parent/groupId", doc));
-		String parentArtifact = Strings.trim(xp.evaluate("project/parent/artifactId", doc));
-		String parentVersion = Strings.trim(xp.evaluate("project/parent/version", doc));
-		String relativePath = Strings.trim(xp.evaluate("project/parent/relativePath", doc));
-		if (!parentGroup.isEmpty() && !parentArtifact.isEmpty() && !parentVersion.isEmpty()) {
+		String parentGroup = model.parentGroupId;
+		String parentArtifact = model.parentArtifactId;
+		String parentVersion = model.parentVersion;
+		String relativePath = model.parentRelativePath;
+		if (!isEmpty(parentGroup) && !isEmpty(parentArtifact) && !isEmpty(parentVersion)) {
 
 			Program program = Program.valueOf(parentGroup, parentArtifact);
 			if (program == null)
@@ -157,12 +154,10 @@ public class POM implements IPom {
 
 		this.properties = new Properties(this.parent.properties);
 
-		Element project = doc.getDocumentElement();
-		index(project, "project.", "modelVersion", "groupId", "artifactId", "version", "packaging");
+		for (Map.Entry<String,String> e : model.project.entrySet())
+			properties.put("project." + e.getKey(), e.getValue());
 
-		NodeList props = (NodeList) xp.evaluate("properties", project, XPathConstants.NODESET);
-		for (int i = 0; i < props.getLength(); i++)
-			index((Element) props.item(i), "");
+		properties.putAll(model.properties);
 
 		String group = get("project.groupId", null);
 		String artifact = getNoInheritance("project.artifactId", null);
@@ -190,37 +185,31 @@ public class POM implements IPom {
 		properties.put("pom.currentVersion", version);
 		properties.put("pom.packaging", this.packaging);
 
-		NodeList dependencies = (NodeList) xp.evaluate("project/dependencies/dependency", doc, XPathConstants.NODESET);
-		for (int i = 0; i < dependencies.getLength(); i++) {
-			Element dependency = (Element) dependencies.item(i);
+		for (DependencyModel dependency : model.dependencies) {
 			Dependency d = dependency(dependency);
 			this.dependencies.put(d.program, d);
 		}
 
-		NodeList dependencyManagement = (NodeList) xp.evaluate("project/dependencyManagement/dependencies/dependency",
-				doc, XPathConstants.NODESET);
-		for (int i = 0; i < dependencyManagement.getLength(); i++) {
-			Element dependency = (Element) dependencyManagement.item(i);
+		for (DependencyModel dependency : model.dependencyManagement) {
 			Dependency d = dependency(dependency);
 			this.dependencyManagement.put(d.program, d);
 		}
-		xp = null;
 	}
 
 	private MavenVersion getVersion() {
 		return revision.version;
 	}
 
-	private Dependency dependency(Element dependency) throws Exception {
-		String groupId = get(dependency, "groupId", "<no group>");
-		String artifactId = get(dependency, "artifactId", "<no artifact>");
+	private Dependency dependency(DependencyModel dependency) throws Exception {
+		String groupId = value(dependency.groupId, "<no group>");
+		String artifactId = value(dependency.artifactId, "<no artifact>");
 		Dependency d = new Dependency();
-		d.optional = isTrue(get(dependency, "optional", "true"));
+		d.optional = isTrue(value(dependency.optional, "true"));
 
-		String version = get(dependency, "version", null);
-		String extension = get(dependency, "type", "jar");
-		String classifier = get(dependency, "classifier", null);
-		String scope = get(dependency, "scope", "compile");
+		String version = value(dependency.version, null);
+		String extension = value(dependency.type, "jar");
+		String classifier = value(dependency.classifier, null);
+		String scope = value(dependency.scope, "compile");
 
 		Program program = Program.valueOf(groupId, artifactId);
 		if (program == null)
@@ -251,12 +240,15 @@ public class POM implements IPom {
 		return null;
 	}
 
+	private static boolean isEmpty(String s) {
+		return s == null || s.isEmpty();
+	}
+
 	private boolean isTrue(String other) {
 		return "true".equalsIgnoreCase(other);
 	}
 
-	private String get(Element dependency, String name, String deflt) throws XPathExpressionException {
-		String value = xp.evaluate(name, dependency);
+	private String value(String value, String deflt) {
 		if (value == null || value.isEmpty())
 			return Strings.trim(deflt);
 
@@ -305,28 +297,6 @@ public class POM implements IPom {
 		return sb.toString();
 	}
 
-	private void index(Element node, String prefix, String... names) throws XPathExpressionException {
-		String expr = "./*";
-		if (names.length > 0) {
-			StringBuilder sb = new StringBuilder("./*[");
-			String del = "name()=";
-			for (String name : names) {
-				sb.append(del).append('"').append(name).append('"');
-				del = " or name()=";
-			}
-			sb.append("]");
-			expr = sb.toString();
-		}
-
-		NodeList childNodes = (NodeList) xp.evaluate(expr, node, XPathConstants.NODESET);
-		for (int i = 0; i < childNodes.getLength(); i++) {
-			Node child = childNodes.item(i);
-			String key = child.getNodeName();
-			String value = child.getTextContent().trim();
-			properties.put(prefix + key, value);
-		}
-	}
-
 	public Revision getRevision() {
 		return revision;
 	}
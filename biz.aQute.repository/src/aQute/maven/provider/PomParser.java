@@ -0,0 +1,372 @@
+package aQute.maven.provider;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.util.dto.DTO;
+import aQute.lib.io.IO;
+import aQute.lib.json.JSONCodec;
+
+/**
+ * Reads the parts of a POM that are needed to calculate its dependencies in a
+ * single pass over the XML. The result is the POM as written, properties and
+ * macros are not yet resolved since they depend on the parent POM. See
+ * {@link POM} for the interpretation.
+ * <p>
+ * The model of a POM file can be cached in a file of the repository cache so
+ * that a POM that was read before does not have to be parsed again. The cache
+ * is used as long as the POM file has the same size and modification time.
+ */
+public class PomParser {
+	private final static Logger			logger			= LoggerFactory.getLogger(PomParser.class);
+	final static XMLInputFactory		inputFactory	= XMLInputFactory.newInstance();
+	final static JSONCodec				codec			= new JSONCodec();
+
+	static {
+		inputFactory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+		inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	/**
+	 * The suffix of the cache file that holds the model of a POM file.
+	 */
+	public final static String			CACHE_SUFFIX	= ".bnd.json";
+	final static int					FORMAT			= 1;
+
+	public static class PomModel extends DTO {
+		public int					format					= FORMAT;
+		public long					lastModified;
+		public long					length;
+
+		public String				parentGroupId;
+		public String				parentArtifactId;
+		public String				parentVersion;
+		public String				parentRelativePath;
+
+		/**
+		 * The modelVersion, groupId, artifactId, version, and packaging of the
+		 * project.
+		 */
+		public Map<String,String>	project					= new LinkedHashMap<>();
+		public Map<String,String>	properties				= new LinkedHashMap<>();
+		public List<DependencyModel>	dependencies			= new ArrayList<>();
+		public List<DependencyModel>	dependencyManagement	= new ArrayList<>();
+	}
+
+	/**
+	 * A dependency as written in the POM, the values are not trimmed.
+	 */
+	public static class DependencyModel extends DTO {
+		public String	groupId;
+		public String	artifactId;
+		public String	version;
+		public String	type;
+		public String	classifier;
+		public String	scope;
+		public String	optional;
+	}
+
+	/**
+	 * Parse a POM.
+	 *
+	 * @param in the input stream, it is not closed
+	 * @return the model of the POM
+	 */
+	public static PomModel parse(InputStream in) throws Exception {
+		XMLStreamReader sr = inputFactory.createXMLStreamReader(in);
+		try {
+			PomModel model = new PomModel();
+			while (sr.hasNext()) {
+				if (sr.next() == XMLStreamConstants.START_ELEMENT) {
+					project(sr, model);
+					break;
+				}
+			}
+			return model;
+		} finally {
+			sr.close();
+		}
+	}
+
+	/**
+	 * Parse a POM file.
+	 *
+	 * @param pomFile the POM file
+	 * @return the model of the POM
+	 */
+	public static PomModel parse(File pomFile) throws Exception {
+		return parse(pomFile, null);
+	}
+
+	/**
+	 * Answer the model of a POM file. The cached model is used when it is
+	 * still valid, otherwise the file is parsed and the model is cached.
+	 *
+	 * @param pomFile the POM file
+	 * @param cacheFile the file that caches the model or {@code null} to not
+	 *            cache the model
+	 * @return the model of the POM
+	 */
+	public static PomModel parse(File pomFile, File cacheFile) throws Exception {
+		long lastModified = pomFile.lastModified();
+		long length = pomFile.length();
+
+		if (cacheFile != null && cacheFile.isFile()) {
+			try {
+				PomModel model = codec.dec().from(cacheFile).get(PomModel.class);
+				if (model.format == FORMAT && model.lastModified == lastModified && model.length == length)
+					return model;
+			} catch (Exception e) {
+				logger.debug("Ignoring unreadable POM cache {}", cacheFile, e);
+			}
+		}
+
+		PomModel model;
+		try (InputStream in = new FileInputStream(pomFile)) {
+			model = parse(POM.processEntities(in));
+		}
+		model.lastModified = lastModified;
+		model.length = length;
+		if (cacheFile != null)
+			store(model, cacheFile);
+		return model;
+	}
+
+	private static void store(PomModel model, File cacheFile) {
+		try {
+			cacheFile.getParentFile().mkdirs();
+			File tmp = File.createTempFile("pom", CACHE_SUFFIX, cacheFile.getParentFile());
+			try {
+				IO.store(codec.enc().put(model).toString(), tmp);
+				try {
+					Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+							StandardCopyOption.REPLACE_EXISTING);
+				} catch (AtomicMoveNotSupportedException e) {
+					Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+			} finally {
+				IO.delete(tmp);
+			}
+		} catch (Exception e) {
+			// The cache is optional, the directory might not be writable
+			logger.debug("Could not cache POM model {}", cacheFile, e);
+		}
+	}
+
+	/*
+	 * Project parsing
+	 */
+
+	private static void project(XMLStreamReader sr, PomModel model) throws Exception {
+		while (nextElement(sr)) {
+			String name = sr.getLocalName();
+			switch (name) {
+				case "parent" :
+					parent(sr, model);
+					break;
+
+				case "modelVersion" :
+				case "groupId" :
+				case "artifactId" :
+				case "version" :
+				case "packaging" :
+					model.project.put(name, getText(sr).trim());
+					break;
+
+				case "properties" :
+					while (nextElement(sr)) {
+						String key = sr.getLocalName();
+						model.properties.put(key, getText(sr).trim());
+					}
+					break;
+
+				case "dependencies" :
+					dependencies(sr, model.dependencies);
+					break;
+
+				case "dependencyManagement" :
+					while (nextElement(sr)) {
+						if (sr.getLocalName().equals("dependencies"))
+							dependencies(sr, model.dependencyManagement);
+						else
+							skip(sr);
+					}
+					break;
+
+				default :
+					skip(sr);
+					break;
+			}
+			sr.require(XMLStreamConstants.END_ELEMENT, null, name);
+		}
+	}
+
+	private static void parent(XMLStreamReader sr, PomModel model) throws Exception {
+		while (nextElement(sr)) {
+			String name = sr.getLocalName();
+			switch (name) {
+				case "groupId" :
+					model.parentGroupId = first(model.parentGroupId, getText(sr).trim());
+					break;
+
+				case "artifactId" :
+					model.parentArtifactId = first(model.parentArtifactId, getText(sr).trim());
+					break;
+
+				case "version" :
+					model.parentVersion = first(model.parentVersion, getText(sr).trim());
+					break;
+
+				case "relativePath" :
+					model.parentRelativePath = first(model.parentRelativePath, getText(sr).trim());
+					break;
+
+				default :
+					skip(sr);
+					break;
+			}
+			sr.require(XMLStreamConstants.END_ELEMENT, null, name);
+		}
+	}
+
+	private static void dependencies(XMLStreamReader sr, List<DependencyModel> dependencies) throws Exception {
+		while (nextElement(sr)) {
+			if (sr.getLocalName().equals("dependency"))
+				dependencies.add(dependency(sr));
+			else
+				skip(sr);
+		}
+	}
+
+	private static DependencyModel dependency(XMLStreamReader sr) throws Exception {
+		DependencyModel d = new DependencyModel();
+		while (nextElement(sr)) {
+			String name = sr.getLocalName();
+			switch (name) {
+				case "groupId" :
+					d.groupId = first(d.groupId, getText(sr));
+					break;
+
+				case "artifactId" :
+					d.artifactId = first(d.artifactId, getText(sr));
+					break;
+
+				case "version" :
+					d.version = first(d.version, getText(sr));
+					break;
+
+				case "type" :
+					d.type = first(d.type, getText(sr));
+					break;
+
+				case "classifier" :
+					d.classifier = first(d.classifier, getText(sr));
+					break;
+
+				case "scope" :
+					d.scope = first(d.scope, getText(sr));
+					break;
+
+				case "optional" :
+					d.optional = first(d.optional, getText(sr));
+					break;
+
+				default :
+					skip(sr);
+					break;
+			}
+			sr.require(XMLStreamConstants.END_ELEMENT, null, name);
+		}
+		return d;
+	}
+
+	/*
+	 * Utils
+	 */
+
+	private static String first(String current, String value) {
+		return current != null ? current : value;
+	}
+
+	/**
+	 * Move to the next child element of the current element.
+	 *
+	 * @return true if positioned on the start of a child element, false if
+	 *         positioned on the end of the current element
+	 */
+	private static boolean nextElement(XMLStreamReader sr) throws XMLStreamException {
+		while (sr.hasNext()) {
+			switch (sr.next()) {
+				case XMLStreamConstants.START_ELEMENT :
+					return true;
+				case XMLStreamConstants.END_ELEMENT :
+					return false;
+				default :
+					break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Answer the text of the current element and its descendants, like the
+	 * text content in the DOM.
+	 */
+	private static String getText(XMLStreamReader sr) throws XMLStreamException {
+		StringBuilder sb = new StringBuilder();
+		int depth = 0;
+		while (sr.hasNext()) {
+			switch (sr.next()) {
+				case XMLStreamConstants.START_ELEMENT :
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT :
+					if (depth-- == 0)
+						return sb.toString();
+					break;
+				case XMLStreamConstants.CHARACTERS :
+				case XMLStreamConstants.CDATA :
+				case XMLStreamConstants.SPACE :
+					sb.append(sr.getTextCharacters(), sr.getTextStart(), sr.getTextLength());
+					break;
+				default :
+					break;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void skip(XMLStreamReader sr) throws XMLStreamException {
+		int depth = 0;
+		while (sr.hasNext()) {
+			switch (sr.next()) {
+				case XMLStreamConstants.START_ELEMENT :
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT :
+					if (depth-- == 0)
+						return;
+					break;
+				default :
+					break;
+			}
+		}
+	}
+}
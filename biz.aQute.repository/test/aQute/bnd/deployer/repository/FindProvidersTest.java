@@ -1,6 +1,7 @@
 package aQute.bnd.deployer.repository;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -12,6 +13,7 @@ import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
 
 import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.osgi.resource.ResourceBuilder;
 import aQute.lib.io.IO;
 import junit.framework.TestCase;
 
@@ -156,4 +158,30 @@ public class FindProvidersTest extends TestCase {
 		}
 	}
 
+
+	/**
+	 * Filters match the attribute names without regard to case and ignore the
+	 * white space around them, as the OSGi filters do
+	 */
+	public static void testFilterAttributeNames() throws Exception {
+		ResourceBuilder rb = new ResourceBuilder();
+		rb.addCapability(new CapReqBuilder("test").addAttribute("test", "a").addAttribute("Vendor", "Acme"));
+		CapabilityIndex index = new CapabilityIndex();
+		index.addResource(rb.build());
+
+		assertMatches(index, "(Vendor=Acme)", 1);
+		assertMatches(index, "(vendor=Acme)", 1);
+		assertMatches(index, "(&(TEST=a)(VeNdOr=Acme))", 1);
+		assertMatches(index, "( vendor =Acme)", 1);
+		assertMatches(index, "(vendor=acme)", 0);
+		assertMatches(index, "(vendor=*)", 1);
+		assertMatches(index, "(!(vendor=*))", 0);
+	}
+
+	private static void assertMatches(CapabilityIndex index, String filter, int count) {
+		Requirement req = new CapReqBuilder("test").addDirective("filter", filter).buildSyntheticRequirement();
+		List<Capability> caps = new ArrayList<Capability>();
+		index.appendMatchingCapabilities(req, caps);
+		assertEquals(filter, count, caps.size());
+	}
 }
@@ -4,6 +4,7 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -227,8 +228,63 @@ public class TestLocalIndexGeneration extends TestCase {
 		}
 	}
 
+	public void testIncremental() throws Exception {
+		config.put("incremental", "true");
+		repo.setProperties(config);
+
+		File minimal = put("testdata/bundles/name.njbartlett.osgi.emf.minimal-2.6.1.jar");
+		File fragmentsDir = IO.getFile(outputDir, ".cache/fragments/R5");
+		File[] fragments = fragmentsDir.listFiles();
+		assertNotNull(fragments);
+		assertEquals(1, fragments.length);
+		File fragment = fragments[0];
+		fragment.setLastModified(1000L);
+
+		File xmi = put("testdata/bundles/name.njbartlett.osgi.emf.xmi-2.5.0.jar");
+		assertEquals(2, fragmentsDir.listFiles().length);
+		assertTrue(fragment.isFile());
+		assertEquals(1000L, fragment.lastModified());
+
+		File indexFile = IO.getFile(outputDir, "index.xml");
+		AbstractIndexedRepo repo2 = createRepoForIndex(indexFile);
+		assertEquals(minimal.getAbsoluteFile(), repo2.get("name.njbartlett.osgi.emf.minimal", null)[0]);
+		assertEquals(xmi.getAbsoluteFile(), repo2.get("name.njbartlett.osgi.emf.xmi", null)[0]);
+
+		IO.delete(minimal);
+		assertTrue(repo.refresh());
+		fragments = fragmentsDir.listFiles();
+		assertEquals(1, fragments.length);
+		assertFalse(fragment.equals(fragments[0]));
+
+		repo2 = createRepoForIndex(indexFile);
+		assertEquals(Collections.singletonList("name.njbartlett.osgi.emf.xmi"), repo2.list("name.njbartlett.*"));
+		assertEquals(xmi.getAbsoluteFile(), repo2.get("name.njbartlett.osgi.emf.xmi", null)[0]);
+	}
+
+	public void testIncrementalCompressed() throws Exception {
+		config.put("incremental", "true");
+		config.put("pretty", "false");
+		repo.setProperties(config);
+
+		File minimal = put("testdata/bundles/name.njbartlett.osgi.emf.minimal-2.6.1.jar");
+		File xmi = put("testdata/bundles/name.njbartlett.osgi.emf.xmi-2.5.0.jar");
+
+		File indexFile = IO.getFile(outputDir, "index.xml.gz");
+		assertTrue(indexFile.exists());
+		assertTrue(IO.getFile(outputDir, "index.xml.gz.sha").exists());
+
+		AbstractIndexedRepo repo2 = createRepoForIndex(indexFile);
+		assertEquals(minimal.getAbsoluteFile(), repo2.get("name.njbartlett.osgi.emf.minimal", null)[0]);
+		assertEquals(xmi.getAbsoluteFile(), repo2.get("name.njbartlett.osgi.emf.xmi", null)[0]);
+	}
+
 	// UTILS
 
+	private File put(String path) throws Exception {
+		PutResult r = repo.put(new BufferedInputStream(new FileInputStream(path)), new RepositoryPlugin.PutOptions());
+		return new File(r.artifact);
+	}
+
 	private static AbstractIndexedRepo createRepoForIndex(File index) {
 		FixedIndexedRepo newRepo = new FixedIndexedRepo();
 
@@ -0,0 +1,89 @@
+package aQute.bnd.repository.maven.provider;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class DescriptorStoreTest extends TestCase {
+	File tmp;
+
+	@Override
+	protected void setUp() throws Exception {
+		tmp = IO.getFile("generated/tmp/test/" + getName());
+		IO.delete(tmp);
+		tmp.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		IO.delete(tmp);
+	}
+
+	public void testAppendAndLoad() throws Exception {
+		File file = IO.getFile(tmp, "index.info/descriptors");
+		DescriptorStore store = new DescriptorStore(file);
+		assertTrue(store.load().isEmpty());
+
+		store.put("g:a:1.0", "{\"bsn\":\"a\"}");
+		store.put("g:b:1.0", "{\"bsn\":\"b\"}");
+		store.put("g:a:1.0", "{\"bsn\":\"a2\"}");
+		store.put("g:c:1.0", "{\"bsn\":\"c\"}");
+		store.put("g:c:1.0", null);
+
+		Map<String,String> loaded = new DescriptorStore(file).load();
+		assertEquals(2, loaded.size());
+		assertEquals("{\"bsn\":\"a2\"}", loaded.get("g:a:1.0"));
+		assertEquals("{\"bsn\":\"b\"}", loaded.get("g:b:1.0"));
+
+		try {
+			store.put("g:d:1.0", "{\n}");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testIgnoresBrokenRecords() throws Exception {
+		File file = IO.getFile(tmp, "descriptors");
+		IO.store("# bnd descriptors 1\ng:a:1.0\t{}\ngarbage\ng:b:1.0\t{\"bsn\":", file);
+		Map<String,String> loaded = new DescriptorStore(file).load();
+		assertEquals(1, loaded.size());
+		assertEquals("{}", loaded.get("g:a:1.0"));
+
+		IO.store("g:a:1.0\t{}\n", file);
+		assertTrue(new DescriptorStore(file).load().isEmpty());
+	}
+
+	public void testCompact() throws Exception {
+		File file = IO.getFile(tmp, "descriptors");
+		DescriptorStore store = new DescriptorStore(file);
+		for (int i = 0; i < 100; i++)
+			store.put("g:a:1.0", "{\"n\":" + i + "}");
+		store.put("g:b:1.0", "{}");
+
+		store = new DescriptorStore(file);
+		Map<String,String> loaded = store.load();
+		assertEquals(2, loaded.size());
+		assertTrue(store.isCompactable(loaded.size()));
+
+		store.put("g:c:1.0", "{}");
+		store.put("g:b:1.0", null);
+		Map<String,String> live = new HashMap<>();
+		live.put("g:a:1.0", loaded.get("g:a:1.0"));
+		live.put("g:b:1.0", loaded.get("g:b:1.0"));
+		store.compact(live);
+		assertFalse(store.isCompactable(2));
+
+		String content = IO.collect(file);
+		assertEquals("# bnd descriptors 1\ng:a:1.0\t{\"n\":99}\ng:c:1.0\t{}\n", content);
+		assertEquals(1, tmp.list().length);
+
+		loaded = new DescriptorStore(file).load();
+		assertEquals(2, loaded.size());
+		assertEquals("{\"n\":99}", loaded.get("g:a:1.0"));
+		assertEquals("{}", loaded.get("g:c:1.0"));
+	}
+}
@@ -0,0 +1,140 @@
+package aQute.maven.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import aQute.lib.io.IO;
+import aQute.maven.provider.PomParser.DependencyModel;
+import aQute.maven.provider.PomParser.PomModel;
+import junit.framework.TestCase;
+
+public class PomParserTest extends TestCase {
+	File tmp;
+
+	@Override
+	protected void setUp() throws Exception {
+		tmp = IO.getFile("generated/tmp/test/" + getName());
+		IO.delete(tmp);
+		tmp.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		IO.delete(tmp);
+	}
+
+	public void testParse() throws Exception {
+		try (InputStream in = new FileInputStream(
+				IO.getFile("testresources/mavenrepo/commons-cli/commons-cli/1.2/commons-cli-1.2.pom"))) {
+			PomModel model = PomParser.parse(in);
+			assertEquals("org.apache.commons", model.parentGroupId);
+			assertEquals("commons-parent", model.parentArtifactId);
+			assertEquals("11", model.parentVersion);
+			assertNull(model.parentRelativePath);
+
+			assertEquals("4.0.0", model.project.get("modelVersion"));
+			assertEquals("commons-cli", model.project.get("groupId"));
+			assertEquals("commons-cli", model.project.get("artifactId"));
+			assertEquals("1.2", model.project.get("version"));
+			assertNull(model.project.get("packaging"));
+
+			assertEquals("commons-cli-${commons.release.version}", model.properties.get("commons.release.name"));
+			assertEquals("", model.properties.get("commons.binary.suffix"));
+			assertEquals("RC7", model.properties.get("commons.rc.version"));
+
+			assertEquals(1, model.dependencies.size());
+			DependencyModel d = model.dependencies.get(0);
+			assertEquals("junit", d.groupId);
+			assertEquals("junit", d.artifactId);
+			assertEquals("3.8.1", d.version);
+			assertEquals("test", d.scope);
+			assertNull(d.optional);
+			assertTrue(model.dependencyManagement.isEmpty());
+		}
+	}
+
+	public void testDependencyManagement() throws Exception {
+		String pom = "<?xml version='1.0'?>\n" //
+				+ "<project xmlns='http://maven.apache.org/POM/4.0.0'>" //
+				+ "<groupId>g</groupId><artifactId>a</artifactId><version>1</version>" //
+				+ "<packaging>bundle</packaging>" //
+				+ "<dependencyManagement><dependencies>" //
+				+ "<dependency><groupId>x</groupId><artifactId>y</artifactId><version> ${v} </version>" //
+				+ "<exclusions><exclusion><groupId>z</groupId></exclusion></exclusions></dependency>" //
+				+ "</dependencies></dependencyManagement>" //
+				+ "<build><plugins><plugin><groupId>p</groupId><version>2</version></plugin></plugins></build>" //
+				+ "<properties><v><![CDATA[1.0]]></v></properties>" //
+				+ "</project>";
+		PomModel model = PomParser.parse(new ByteArrayInputStream(pom.getBytes("UTF-8")));
+		assertEquals("g", model.project.get("groupId"));
+		assertEquals("1", model.project.get("version"));
+		assertEquals("bundle", model.project.get("packaging"));
+		assertEquals("1.0", model.properties.get("v"));
+		assertTrue(model.dependencies.isEmpty());
+		assertEquals(1, model.dependencyManagement.size());
+		DependencyModel d = model.dependencyManagement.get(0);
+		assertEquals("x", d.groupId);
+		assertEquals(" ${v} ", d.version);
+	}
+
+	public void testCache() throws Exception {
+		File pomFile = IO.getFile(tmp, "commons-cli-1.2.pom");
+		IO.copy(IO.getFile("testresources/mavenrepo/commons-cli/commons-cli/1.2/commons-cli-1.2.pom"), pomFile);
+		File cacheFile = IO.getFile(tmp, "cache/commons-cli-1.2.pom" + PomParser.CACHE_SUFFIX);
+
+		// Without a cache file nothing is written
+		assertEquals("commons-cli", PomParser.parse(pomFile).project.get("artifactId"));
+		assertEquals(1, tmp.list().length);
+
+		PomModel model = PomParser.parse(pomFile, cacheFile);
+		assertTrue(cacheFile.isFile());
+		assertEquals(pomFile.lastModified(), model.lastModified);
+		assertEquals(pomFile.length(), model.length);
+
+		// The cached model is used while the POM is unchanged
+		String json = IO.collect(cacheFile).replace("\"commons-cli\"", "\"cached\"");
+		IO.store(json, cacheFile);
+		assertEquals("cached", PomParser.parse(pomFile, cacheFile).project.get("artifactId"));
+
+		// A changed POM is parsed again
+		pomFile.setLastModified(pomFile.lastModified() - 10000);
+		assertEquals("commons-cli", PomParser.parse(pomFile, cacheFile).project.get("artifactId"));
+		assertFalse(IO.collect(cacheFile).contains("\"cached\""));
+
+		// A broken cache is ignored
+		IO.store("{", cacheFile);
+		assertEquals("commons-cli", PomParser.parse(pomFile, cacheFile).project.get("artifactId"));
+		assertEquals(2, tmp.list().length);
+		assertEquals(1, cacheFile.getParentFile().list().length);
+	}
+
+	public void testRepositoryCache() throws Exception {
+		File local = IO.getFile(tmp, "local");
+		File cache = IO.getFile(tmp, "cache");
+		File pomFile = IO.getFile(local, "org/example/example/1.0/example-1.0.pom");
+		pomFile.getParentFile().mkdirs();
+		IO.store("<project><groupId>org.example</groupId><artifactId>example</artifactId>"
+				+ "<version>1.0</version></project>", pomFile);
+
+		MavenRepository repo = new MavenRepository(local, "test", null, null, null, null, null);
+		try {
+			// POM files are not cached without a cache directory
+			new POM(repo, pomFile);
+			assertFalse(cache.exists());
+			assertEquals(1, pomFile.getParentFile().list().length);
+
+			repo.setPomCache(cache);
+			POM pom = new POM(repo, pomFile);
+			assertEquals("org.example:example:1.0", pom.getRevision().toString());
+			assertTrue(IO.getFile(cache, "org/example/example/1.0/example-1.0.pom" + PomParser.CACHE_SUFFIX).isFile());
+			assertEquals(1, pomFile.getParentFile().list().length);
+
+			// POM files outside the local repository are not cached
+			assertNull(repo.getPomCacheFile(IO.getFile(tmp, "other.pom")));
+		} finally {
+			repo.close();
+		}
+	}
+}
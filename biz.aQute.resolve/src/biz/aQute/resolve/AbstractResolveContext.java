@@ -105,6 +105,7 @@ public abstract class AbstractResolveContext extends ResolveContext {
 	private Set<Resource>							blacklistedResources		= new HashSet<Resource>();
 	private int										level						= 0;
 	private Resource								framework;
+	private ProviderCache							sharedProviderCache;
 
 	public AbstractResolveContext(LogService log) {
 		this.log = log;
@@ -303,12 +304,17 @@ public abstract class AbstractResolveContext extends ResolveContext {
 	 *         that are skipped.
 	 */
 	protected Collection<Capability> findProviders(Repository repo, Requirement requirement) {
-		Map<Requirement,Collection<Capability>> map = repo.findProviders(Collections.singleton(requirement));
+		Collection<Capability> caps;
+		if (sharedProviderCache != null) {
+			caps = new ArrayList<Capability>(sharedProviderCache.findProviders(repo, requirement));
+		} else {
+			Map<Requirement,Collection<Capability>> map = repo.findProviders(Collections.singleton(requirement));
 
-		if (map.isEmpty())
-			return Collections.emptySet();
+			if (map.isEmpty())
+				return Collections.emptySet();
 
-		Collection<Capability> caps = map.get(requirement);
+			caps = map.get(requirement);
+		}
 
 		for (Iterator<Capability> c = caps.iterator(); c.hasNext();) {
 			Capability capability = c.next();
@@ -379,6 +385,18 @@ public abstract class AbstractResolveContext extends ResolveContext {
 		return repositories;
 	}
 
+	/**
+	 * Share the providers found in the repositories with other contexts. The
+	 * cache must be set before the context is used.
+	 */
+	public void setProviderCache(ProviderCache cache) {
+		this.sharedProviderCache = cache;
+	}
+
+	public ProviderCache getProviderCache() {
+		return sharedProviderCache;
+	}
+
 	public List<Requirement> getFailed() {
 		return failed;
 	}
@@ -123,6 +123,8 @@ public class BndrunResolveContext extends AbstractResolveContext {
 		initialized = true;
 
 		try {
+			if (getProviderCache() == null && project != null && project.getWorkspace() != null)
+				setProviderCache(ProviderCache.getProviderCache(project.getWorkspace()));
 
 			if (getLevel() <= 0) {
 				Integer level = Converter.cnv(Integer.class, properties.getProperty("-resolvedebug", "0"));
@@ -0,0 +1,190 @@
+package biz.aQute.resolve;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.service.repository.Repository;
+
+import aQute.bnd.build.Workspace;
+import aQute.bnd.osgi.Jar;
+import aQute.bnd.service.RepositoryListenerPlugin;
+import aQute.bnd.service.RepositoryPlugin;
+
+/**
+ * A cache of the capabilities that repositories provide for requirements. A
+ * resolve context caches the providers it finds for the requirements of its
+ * own resolution. This cache holds the answers of the repositories
+ * themselves, it does not depend on the requiring resource or on the
+ * blacklist, preferences and hooks of a context. It can therefore be shared by
+ * all the resolve contexts of a workspace, also when they run concurrently.
+ * <p>
+ * The providers are cached per repository instance. The cache is registered
+ * as a {@link RepositoryListenerPlugin} in the workspace and is cleared when a
+ * repository reports a change. Repositories that are recreated, like the
+ * workspace repositories after a refresh, are new instances and never see the
+ * providers of their predecessors.
+ */
+public class ProviderCache implements RepositoryListenerPlugin {
+	private final Map<Repository,ConcurrentMap<Key,List<Capability>>>	repositories	= new WeakHashMap<>();
+	private final AtomicLong											hits			= new AtomicLong();
+	private final AtomicLong											misses			= new AtomicLong();
+
+	/*
+	 * The key of a requirement without its resource, the repositories do not
+	 * care who asks.
+	 */
+	private static class Key {
+		final String				namespace;
+		final Map<String,String>	directives;
+		final Map<String,Object>	attributes;
+		final int					hashcode;
+
+		Key(Requirement requirement) {
+			this.namespace = requirement.getNamespace();
+			this.directives = requirement.getDirectives();
+			this.attributes = requirement.getAttributes();
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((attributes == null) ? 0 : attributes.hashCode());
+			result = prime * result + ((directives == null) ? 0 : directives.hashCode());
+			result = prime * result + ((namespace == null) ? 0 : namespace.hashCode());
+			this.hashcode = result;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashcode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			return hashcode == other.hashcode && equals(namespace, other.namespace)
+					&& equals(directives, other.directives) && equals(attributes, other.attributes);
+		}
+
+		private static boolean equals(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	/**
+	 * Answer the capabilities that a repository provides for a requirement.
+	 *
+	 * @param repository the repository
+	 * @param requirement the requirement
+	 * @return an unmodifiable list of the capabilities of the repository that
+	 *         match the requirement
+	 */
+	public List<Capability> findProviders(Repository repository, Requirement requirement) {
+		ConcurrentMap<Key,List<Capability>> providers;
+		synchronized (repositories) {
+			providers = repositories.get(repository);
+			if (providers == null) {
+				providers = new ConcurrentHashMap<>();
+				repositories.put(repository, providers);
+			}
+		}
+
+		Key key = new Key(requirement);
+		List<Capability> result = providers.get(key);
+		if (result != null) {
+			hits.incrementAndGet();
+			return result;
+		}
+
+		misses.incrementAndGet();
+		Collection<Capability> capabilities = repository.findProviders(Collections.singleton(requirement))
+				.get(requirement);
+		result = capabilities == null ? Collections.<Capability> emptyList()
+				: Collections.unmodifiableList(new ArrayList<Capability>(capabilities));
+		List<Capability> previous = providers.putIfAbsent(key, result);
+		return previous != null ? previous : result;
+	}
+
+	/**
+	 * Forget all cached providers.
+	 */
+	public void clear() {
+		synchronized (repositories) {
+			repositories.clear();
+		}
+	}
+
+	/**
+	 * Answer the number of lookups that were answered from the cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Answer the number of lookups that were passed to a repository.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Answer the percentage of the lookups that were answered from the cache.
+	 */
+	public int getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (int) (h * 100 / total);
+	}
+
+	@Override
+	public void bundleAdded(RepositoryPlugin repository, Jar jar, File file) {
+		clear();
+	}
+
+	@Override
+	public void bundleRemoved(RepositoryPlugin repository, Jar jar, File file) {
+		clear();
+	}
+
+	@Override
+	public void repositoryRefreshed(RepositoryPlugin repository) {
+		clear();
+	}
+
+	@Override
+	public void repositoriesRefreshed() {
+		clear();
+	}
+
+	@Override
+	public String toString() {
+		return "ProviderCache[hits=" + hits + ", misses=" + misses + ", ratio=" + getHitRatio() + "%]";
+	}
+
+	/**
+	 * Answer the provider cache of a workspace. The cache is created and
+	 * registered as a plugin of the workspace when it does not exist yet.
+	 */
+	public static ProviderCache getProviderCache(Workspace workspace) {
+		synchronized (workspace) {
+			ProviderCache cache = workspace.getPlugin(ProviderCache.class);
+			if (cache == null) {
+				cache = new ProviderCache();
+				workspace.addBasicPlugin(cache);
+			}
+			return cache;
+		}
+	}
+}
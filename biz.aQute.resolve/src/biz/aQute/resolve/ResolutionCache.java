@@ -0,0 +1,413 @@
+package biz.aQute.resolve;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+import org.osgi.resource.Wire;
+import org.osgi.service.repository.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import aQute.bnd.osgi.About;
+import aQute.bnd.osgi.Constants;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.resource.ResourceUtils;
+import aQute.bnd.osgi.resource.ResourceUtils.ContentCapability;
+import aQute.bnd.osgi.resource.ResourceUtils.IdentityCapability;
+import aQute.bnd.osgi.resource.WireImpl;
+import aQute.lib.io.IO;
+import aQute.libg.cryptography.Digester;
+import aQute.libg.cryptography.SHA256;
+
+/**
+ * A persistent cache of the resolutions made by the {@link ResolveProcess}. A
+ * resolution is stored in a file named after a digest of its inputs: the
+ * instructions of the run model that the {@link BndrunResolveContext} reads,
+ * the system and input resources of the context and the content of every
+ * repository of the context. The content of a repository is the identity and
+ * the SHA-256 of each of its resources.
+ * <p>
+ * The wiring is stored as references to the resources of the repositories and
+ * to the requirements and capabilities of those resources. When the same
+ * inputs are resolved again, in this or in a later process, the wiring is
+ * restored from the repositories and the resolver is not run. A wiring that
+ * cannot be expressed in references, for example one with wires to hosted
+ * capabilities of fragments, is not cached. Failures to read or write the
+ * cache are never fatal, the resolver is then just run.
+ * <p>
+ * Every change of the inputs creates a new entry. The cache therefore only
+ * keeps the 100 most recently used entries.
+ */
+public class ResolutionCache {
+	private final static Logger		logger				= LoggerFactory.getLogger(ResolutionCache.class);
+	private final static int		VERSION				= 1;
+	final static int				MAX_ENTRIES			= 100;
+
+	/**
+	 * Set to false to disable the cache for a run model.
+	 */
+	public static final String		PROP_RESOLVE_CACHE	= "-resolve.cache";
+
+	private final static String[]	INSTRUCTIONS		= {
+			Constants.RUNREQUIRES, Constants.RUNFW, Constants.RUNEE, Constants.RUNBLACKLIST,
+			Constants.RUNSYSTEMPACKAGES, Constants.RUNSYSTEMCAPABILITIES, Constants.RUNPROVIDEDCAPABILITIES,
+			Constants.RUNPATH, Constants.RUNREPOS, Constants.AUGMENT, Constants.DISTRO,
+			BndrunResolveContext.RUN_EFFECTIVE_INSTRUCTION, BndrunResolveContext.PROP_RESOLVE_PREFERENCES
+	};
+
+	private final static String		INPUT				= "i";
+	private final static String		SYSTEM				= "s";
+	private final static String		REPOSITORY			= "r";
+	private final static String		TMP					= ".tmp";
+
+	private final File				dir;
+	private final int				maxEntries;
+	private final AtomicLong		hits				= new AtomicLong();
+	private final AtomicLong		misses				= new AtomicLong();
+
+	public ResolutionCache(File dir) {
+		this(dir, MAX_ENTRIES);
+	}
+
+	ResolutionCache(File dir, int maxEntries) {
+		this.dir = dir;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * The digest of the inputs of a resolution and the references to the
+	 * resources of the repositories of its context.
+	 */
+	static class Key {
+		final String					digest;
+		final AbstractResolveContext	context;
+		final Map<Resource,String>		refs		= new HashMap<>();
+		final Map<String,Resource>		resources	= new HashMap<>();
+
+		Key(String digest, AbstractResolveContext context) {
+			this.digest = digest;
+			this.context = context;
+		}
+	}
+
+	/**
+	 * Calculate the key of a resolution. The context must be initialized.
+	 *
+	 * @param properties the run model
+	 * @param context the context of the resolution
+	 * @return the key or null if no key could be calculated
+	 */
+	Key getKey(Processor properties, AbstractResolveContext context) {
+		try {
+			Digester<SHA256> digester = SHA256.getDigester();
+			DataOutputStream out = new DataOutputStream(digester);
+			out.writeInt(VERSION);
+			writeString(out, About.CURRENT.toString());
+			for (String instruction : INSTRUCTIONS) {
+				writeString(out, instruction);
+				writeString(out, properties.mergeProperties(instruction));
+			}
+			writeString(out, toText(context.getSystemResource()));
+			writeString(out, toText(context.getInputResource()));
+
+			Map<Resource,String> refs = new HashMap<>();
+			Map<String,Resource> resources = new HashMap<>();
+			Requirement all = ResourceUtils.createWildcardRequirement();
+			List<Repository> repositories = context.getRepositories();
+			for (int i = 0; i < repositories.size(); i++) {
+				Collection<Capability> capabilities = repositories.get(i)
+						.findProviders(Collections.singleton(all))
+						.get(all);
+				List<String> fingerprints = new ArrayList<>();
+				if (capabilities != null) {
+					for (Resource resource : ResourceUtils.getResources(capabilities)) {
+						String ref = REPOSITORY + i + ":" + getFingerprint(resource);
+						if (!resources.containsKey(ref)) {
+							resources.put(ref, resource);
+							fingerprints.add(ref);
+						}
+						if (!refs.containsKey(resource))
+							refs.put(resource, ref);
+					}
+				}
+				Collections.sort(fingerprints);
+				out.writeInt(fingerprints.size());
+				for (String fingerprint : fingerprints)
+					writeString(out, fingerprint);
+			}
+			out.flush();
+
+			Key key = new Key(digester.digest().asHex(), context);
+			key.refs.putAll(refs);
+			key.resources.putAll(resources);
+			return key;
+		} catch (Exception e) {
+			logger.debug("Cannot calculate the cache key of the resolution of {}", context.getInputResource(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Restore a resolution.
+	 *
+	 * @param key the key of the resolution
+	 * @param required the map to fill with the required resources
+	 * @param optional the map to fill with the optional resources
+	 * @return true if the resolution was restored
+	 */
+	boolean restore(Key key, Map<Resource,List<Wire>> required, Map<Resource,List<Wire>> optional) {
+		File file = getFile(key);
+		if (file.isFile()) {
+			try {
+				DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(IO.read(file))));
+				if (in.readInt() == VERSION && in.readUTF().equals(key.digest)) {
+					Map<Resource,List<Wire>> r = read(in, key);
+					Map<Resource,List<Wire>> o = read(in, key);
+					required.putAll(r);
+					optional.putAll(o);
+					hits.incrementAndGet();
+
+					// keep the entry when the cache is pruned
+					file.setLastModified(System.currentTimeMillis());
+					return true;
+				}
+			} catch (Exception e) {
+				logger.debug("Ignoring unreadable cache entry {}", file, e);
+			}
+		}
+		misses.incrementAndGet();
+		return false;
+	}
+
+	/*
+	 * The entry is written to a temporary file and then renamed so that
+	 * concurrent resolves never see a partial entry.
+	 */
+	void store(Key key, Map<Resource,List<Wire>> required, Map<Resource,List<Wire>> optional) {
+		File file = getFile(key);
+		try {
+			ByteArrayOutputStream bout = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bout));
+			out.writeInt(VERSION);
+			out.writeUTF(key.digest);
+			write(out, key, required);
+			write(out, key, optional);
+			out.close();
+
+			File parent = file.getParentFile();
+			if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory())
+				return;
+
+			File tmp = File.createTempFile(file.getName(), TMP, parent);
+			try {
+				IO.write(bout.toByteArray(), tmp);
+				IO.rename(tmp, file);
+			} finally {
+				IO.delete(tmp);
+			}
+			prune();
+		} catch (Exception e) {
+			logger.debug("Failed to store cache entry {}", file, e);
+		}
+	}
+
+	/*
+	 * Delete the least recently used entries when there are more than
+	 * maxEntries. Entries are only added after the resolver ran, so this is
+	 * cheap in comparison.
+	 */
+	void prune() {
+		File[] dirs = dir.listFiles();
+		if (dirs == null)
+			return;
+
+		final Map<File,Long> entries = new HashMap<>();
+		for (File sub : dirs) {
+			File[] files = sub.listFiles();
+			if (files == null)
+				continue;
+			for (File file : files) {
+				if (file.isFile() && !file.getName().endsWith(TMP))
+					entries.put(file, file.lastModified());
+			}
+		}
+		if (entries.size() <= maxEntries)
+			return;
+
+		List<File> files = new ArrayList<>(entries.keySet());
+		Collections.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return entries.get(b).compareTo(entries.get(a));
+			}
+		});
+		for (File file : files.subList(maxEntries, files.size())) {
+			logger.debug("Pruning cache entry {}", file);
+			IO.delete(file);
+			File parent = file.getParentFile();
+			String[] rest = parent.list();
+			if (rest != null && rest.length == 0)
+				IO.delete(parent);
+		}
+	}
+
+	/**
+	 * Answer the number of resolutions that were restored from the cache.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Answer the number of resolutions that were not found in the cache.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public File getRoot() {
+		return dir;
+	}
+
+	@Override
+	public String toString() {
+		return "ResolutionCache[" + dir + ", hits=" + hits + ", misses=" + misses + "]";
+	}
+
+	private File getFile(Key key) {
+		return new File(dir, key.digest.substring(0, 2) + "/" + key.digest);
+	}
+
+	/*
+	 * A resource is identified by its identity and the SHA-256 of its content.
+	 * Resources without content, for example those of the workspace, are
+	 * identified by a digest of their capabilities and requirements.
+	 */
+	private static String getFingerprint(Resource resource) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		IdentityCapability identity = ResourceUtils.getIdentityCapability(resource);
+		if (identity != null)
+			sb.append(identity.osgi_identity()).append(';').append(identity.version()).append(';');
+
+		ContentCapability content = ResourceUtils.getContentCapability(resource);
+		if (content != null && content.osgi_content() != null)
+			sb.append(content.osgi_content());
+		else
+			sb.append(SHA256.digest(toText(resource).getBytes("UTF-8")).asHex());
+		return sb.toString();
+	}
+
+	private static String toText(Resource resource) {
+		if (resource == null)
+			return "";
+		return resource.getCapabilities(null) + "\n" + resource.getRequirements(null);
+	}
+
+	private static void write(DataOutputStream out, Key key, Map<Resource,List<Wire>> wiring) throws IOException {
+		out.writeInt(wiring.size());
+		for (Entry<Resource,List<Wire>> entry : wiring.entrySet()) {
+			out.writeUTF(getRef(key, entry.getKey()));
+			out.writeInt(entry.getValue().size());
+			for (Wire wire : entry.getValue()) {
+				Requirement requirement = wire.getRequirement();
+				Resource requirer = requirement.getResource();
+				out.writeUTF(getRef(key, requirer));
+				out.writeUTF(requirement.getNamespace());
+				out.writeInt(getIndex(requirer.getRequirements(requirement.getNamespace()), requirement));
+
+				Capability capability = wire.getCapability();
+				Resource provider = capability.getResource();
+				out.writeUTF(getRef(key, provider));
+				out.writeUTF(capability.getNamespace());
+				out.writeInt(getIndex(provider.getCapabilities(capability.getNamespace()), capability));
+			}
+		}
+	}
+
+	private static Map<Resource,List<Wire>> read(DataInputStream in, Key key) throws IOException {
+		Map<Resource,List<Wire>> wiring = new HashMap<>();
+		int n = in.readInt();
+		for (int i = 0; i < n; i++) {
+			Resource resource = getResource(key, in.readUTF());
+			int size = in.readInt();
+			List<Wire> wires = new ArrayList<>(size);
+			for (int j = 0; j < size; j++) {
+				Resource requirer = getResource(key, in.readUTF());
+				Requirement requirement = get(requirer.getRequirements(in.readUTF()), in.readInt());
+				Resource provider = getResource(key, in.readUTF());
+				Capability capability = get(provider.getCapabilities(in.readUTF()), in.readInt());
+				wires.add(new WireImpl(capability, requirement));
+			}
+			wiring.put(resource, wires);
+		}
+		return wiring;
+	}
+
+	private static String getRef(Key key, Resource resource) {
+		if (key.context.isInputResource(resource))
+			return INPUT;
+		if (key.context.isSystemResource(resource))
+			return SYSTEM;
+		String ref = key.refs.get(resource);
+		if (ref == null)
+			throw new IllegalArgumentException("Resource is not in a repository " + resource);
+		return ref;
+	}
+
+	private static Resource getResource(Key key, String ref) throws IOException {
+		Resource resource;
+		if (INPUT.equals(ref))
+			resource = key.context.getInputResource();
+		else if (SYSTEM.equals(ref))
+			resource = key.context.getSystemResource();
+		else
+			resource = key.resources.get(ref);
+		if (resource == null)
+			throw new IOException("Resource no longer available " + ref);
+		return resource;
+	}
+
+	private static int getIndex(List< ? > list, Object o) {
+		int index = list.indexOf(o);
+		if (index < 0)
+			throw new IllegalArgumentException("Not declared by its resource " + o);
+		return index;
+	}
+
+	private static <T> T get(List<T> list, int index) throws IOException {
+		if (index < 0 || index >= list.size())
+			throw new IOException("Index out of range " + index);
+		return list.get(index);
+	}
+
+	/*
+	 * Instructions can be longer than writeUTF allows
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
@@ -38,6 +38,7 @@ import aQute.bnd.osgi.resource.CapReqBuilder;
 import aQute.bnd.osgi.resource.ResourceUtils;
 import aQute.bnd.osgi.resource.WireImpl;
 import aQute.bnd.service.Registry;
+import aQute.bnd.service.resolve.hook.ResolverHook;
 import aQute.lib.strings.Strings;
 import aQute.libg.generics.Create;
 import aQute.libg.tuple.Pair;
@@ -48,6 +49,7 @@ public class ResolveProcess {
 	private Map<Resource,List<Wire>>	optional;
 
 	private ResolutionException			resolutionException;
+	private ResolutionCache				cache;
 
 	public Map<Resource,List<Wire>> resolveRequired(BndEditModel inputModel, Registry plugins, Resolver resolver,
 			Collection<ResolutionCallback> callbacks, LogService log) throws ResolutionException {
@@ -69,6 +71,19 @@ public class ResolveProcess {
 
 		BndrunResolveContext rc = new BndrunResolveContext(properties, project, plugins, log);
 		rc.addCallbacks(callbacks);
+
+		// 0. Restore the resolution of the same inputs
+		ResolutionCache cache = getResolutionCache(properties, project, plugins, callbacks);
+		ResolutionCache.Key key = null;
+		if (cache != null) {
+			rc.init();
+			key = cache.getKey(properties, rc);
+			if (key != null && cache.restore(key, required, optional)) {
+				log.log(LogService.LOG_INFO, "Restored the resolution from " + cache);
+				return new HashMap<Resource,List<Wire>>(required);
+			}
+		}
+
 		// 1. Resolve initial requirements
 		Map<Resource,List<Wire>> wirings;
 		try {
@@ -188,9 +203,40 @@ public class ResolveProcess {
 		removeFrameworkAndInputResources(result, rc2);
 		required.putAll(result);
 		optional = tidyUpOptional(wirings, discoveredOptional, log);
+		if (rc2.getProviderCache() != null)
+			log.log(LogService.LOG_INFO, "Shared repository providers " + rc2.getProviderCache());
+		if (key != null)
+			cache.store(key, required, optional);
 		return result;
 	}
 
+	/**
+	 * Set the cache for the resolutions. By default resolutions of a project
+	 * in a workspace are cached in the cache directory of the workspace.
+	 */
+	public void setResolutionCache(ResolutionCache cache) {
+		this.cache = cache;
+	}
+
+	/*
+	 * Callbacks and resolver hooks can change a resolution in a way that is
+	 * not visible in the inputs, these resolutions are not cached.
+	 */
+	private ResolutionCache getResolutionCache(Processor properties, Project project, Registry plugins,
+			Collection<ResolutionCallback> callbacks) {
+		if (callbacks != null && !callbacks.isEmpty())
+			return null;
+		if (plugins != null && !plugins.getPlugins(ResolverHook.class).isEmpty())
+			return null;
+		if (!Processor.isTrue(properties.getProperty(ResolutionCache.PROP_RESOLVE_CACHE, "true")))
+			return null;
+		if (cache != null)
+			return cache;
+		if (project == null || project.getWorkspace() == null)
+			return null;
+		return new ResolutionCache(project.getWorkspace().getCache("resolve"));
+	}
+
 	/*
 	 * The Felix resolver reports an initial resource as unresolved if one of
 	 * its requirements cannot be found, even though it is in the repo. This
@@ -11,15 +11,23 @@ import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.osgi.resource.Capability;
 import org.osgi.resource.Requirement;
 import org.osgi.resource.Resource;
 import org.osgi.resource.Wire;
+import org.osgi.service.log.LogService;
 import org.osgi.service.repository.Repository;
 import org.osgi.service.resolver.ResolutionException;
 import org.osgi.service.resolver.Resolver;
@@ -39,10 +47,12 @@ import aQute.lib.strings.Strings;
 public class ResolverValidator extends Processor {
 	private final static Logger	logger			= LoggerFactory.getLogger(ResolverValidator.class);
 
-	LogReporter	reporter		= new LogReporter(this);
-	Resolver	resolver		= new BndResolver(reporter);
-	List<URI>	repositories	= new ArrayList<>();
-	Resource	system			= null;
+	LogReporter		reporter		= new LogReporter(this);
+	Resolver		resolver		= new BndResolver(reporter);
+	List<URI>		repositories	= new ArrayList<>();
+	Resource		system			= null;
+	int				threads			= 1;
+	ProviderCache	providers		= new ProviderCache();
 
 	public static class Resolution {
 		public Resource				resource;
@@ -71,6 +81,14 @@ public class ResolverValidator extends Processor {
 		this.system = resource;
 	}
 
+	/**
+	 * Set the number of resolutions that may run concurrently. The default is
+	 * 1, the resources are then resolved one after another.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
 	public List<Resolution> validate() throws Exception {
 		FixedIndexedRepo repository = getRepository();
 		Set<Resource> resources = getAllResources(repository);
@@ -95,6 +113,9 @@ public class ResolverValidator extends Processor {
 
 	public List<Resolution> validateResources(Repository repository, Collection<Resource> resources) throws Exception {
 		setProperty("-runfw", "dummy");
+		if (threads > 1)
+			return validateResourcesParallel(repository, resources);
+
 		List<Resolution> result = new ArrayList<>();
 		List<Resource> resourceList = new ArrayList<>(resources);
 		while (!resourceList.isEmpty()) {
@@ -113,6 +134,102 @@ public class ResolverValidator extends Processor {
 		return result;
 	}
 
+	/*
+	 * The resources are resolved concurrently against a snapshot of the
+	 * repository, every resolution has its own resolver and properties.
+	 * Resources that are part of a successful resolution are not resolved
+	 * again. The results are then collected in the same order as the
+	 * sequential validation would produce them. If a resolution was skipped
+	 * but the sequential order requires it anyway, it is resolved at that
+	 * point.
+	 */
+	private List<Resolution> validateResourcesParallel(Repository repository, Collection<Resource> resources)
+			throws Exception {
+		Repository index = new ResourcesRepository(getAllResources(repository));
+		Set<Resource> proven = Collections.newSetFromMap(new ConcurrentHashMap<Resource,Boolean>());
+		Map<Resource,Validation> validations = new HashMap<>();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Resource resource : resources) {
+				if (!validations.containsKey(resource)) {
+					Validation validation = new Validation(index, resource, proven);
+					validation.future = executor.submit(validation);
+					validations.put(resource, validation);
+				}
+			}
+
+			List<Resolution> result = new ArrayList<>();
+			List<Resource> resourceList = new ArrayList<>(resources);
+			while (!resourceList.isEmpty()) {
+				Resource resource = resourceList.remove(0);
+				Validation validation = validations.remove(resource);
+				Resolution resolution = validation == null ? null : validation.get();
+				if (resolution == null) {
+					validation = new Validation(index, resource, proven);
+					resolution = validation.resolve();
+				}
+				getInfo(validation.properties);
+				result.add(resolution);
+				for (Resource resolved : resolution.resolved) {
+					if (resourceList.remove(resolved)) {
+						Resolution curResolution = new Resolution();
+						curResolution.resource = resolved;
+						curResolution.succeeded = true;
+						result.add(curResolution);
+
+						Validation skipped = validations.remove(resolved);
+						if (skipped != null)
+							skipped.future.cancel(false);
+					}
+				}
+			}
+			return result;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private class Validation implements Callable<Resolution> {
+		final Repository	repository;
+		final Resource		resource;
+		final Set<Resource>	proven;
+		final Processor		properties	= new Processor(ResolverValidator.this);
+		Future<Resolution>	future;
+
+		Validation(Repository repository, Resource resource, Set<Resource> proven) {
+			this.repository = repository;
+			this.resource = resource;
+			this.proven = proven;
+		}
+
+		@Override
+		public Resolution call() throws Exception {
+			if (proven.contains(resource))
+				return null;
+			return resolve();
+		}
+
+		Resolution resolve() throws Exception {
+			LogReporter log = new LogReporter(properties);
+			Resolution resolution = ResolverValidator.this.resolve(repository, resource, properties, log,
+					new BndResolver(log));
+			if (resolution.succeeded)
+				proven.addAll(resolution.resolved);
+			return resolution;
+		}
+
+		Resolution get() throws Exception {
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception)
+					throw (Exception) e.getCause();
+				throw e;
+			}
+		}
+	}
+
 	public static Set<Resource> getAllResources(Repository repository) {
 		Requirement r = createWildcardRequirement();
 
@@ -121,13 +238,14 @@ public class ResolverValidator extends Processor {
 		return resources;
 	}
 
-	private BndrunResolveContext getResolveContext() throws Exception {
-		BndrunResolveContext context = new BndrunResolveContext(this, null, this, reporter) {
+	private BndrunResolveContext getResolveContext(Processor properties, LogService log) throws Exception {
+		BndrunResolveContext context = new BndrunResolveContext(properties, null, this, log) {
 			@Override
 			void loadFramework(ResourceBuilder systemBuilder) throws Exception {
 				systemBuilder.addCapabilities(system.getCapabilities(null));
 			}
 		};
+		context.setProviderCache(providers);
 		return context;
 	}
 
@@ -137,12 +255,17 @@ public class ResolverValidator extends Processor {
 	}
 
 	public Resolution resolve(Repository repository, Resource resource) throws Exception {
+		return resolve(repository, resource, this, reporter, resolver);
+	}
+
+	Resolution resolve(Repository repository, Resource resource, Processor properties, LogService log,
+			Resolver resolver) throws Exception {
 		Resolution resolution = new Resolution();
 
 		Requirement identity = getIdentity(resource);
-		setProperty("-runrequires", ResourceUtils.toRequireCapability(identity));
+		properties.setProperty("-runrequires", ResourceUtils.toRequireCapability(identity));
 
-		BndrunResolveContext context = getResolveContext();
+		BndrunResolveContext context = getResolveContext(properties, log);
 
 		context.addRepository(repository);
 		context.init();
@@ -196,10 +319,10 @@ public class ResolverValidator extends Processor {
 				}
 			}
 
-			error("resolving %s failed with %s", resource, resolution.message);
+			properties.error("resolving %s failed with %s", resource, resolution.message);
 		} catch (Exception e) {
 			e.printStackTrace();
-			error("resolving %s failed with %s", context.getInputResource().getRequirements(null), e);
+			properties.error("resolving %s failed with %s", context.getInputResource().getRequirements(null), e);
 			resolution.message = e.getMessage();
 		}
 
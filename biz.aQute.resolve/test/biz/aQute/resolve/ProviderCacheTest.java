@@ -0,0 +1,95 @@
+package biz.aQute.resolve;
+
+import java.util.List;
+
+import org.osgi.resource.Capability;
+import org.osgi.resource.Requirement;
+import org.osgi.resource.Resource;
+
+import aQute.bnd.build.model.EE;
+import aQute.bnd.build.model.OSGI_CORE;
+import aQute.bnd.deployer.repository.FixedIndexedRepo;
+import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.resource.CapReqBuilder;
+import aQute.bnd.osgi.resource.ResourceBuilder;
+import aQute.lib.io.IO;
+import junit.framework.TestCase;
+
+public class ProviderCacheTest extends TestCase {
+
+	public void testFindProviders() throws Exception {
+		FixedIndexedRepo repository = new FixedIndexedRepo();
+		repository.setLocations(IO.getFile("testdata/repo1.index.xml").toURI().toString());
+
+		ProviderCache cache = new ProviderCache();
+		Requirement r1 = CapReqBuilder.createPackageRequirement("org.apache.felix.gogo.api", null)
+				.buildSyntheticRequirement();
+		Requirement r2 = CapReqBuilder.createPackageRequirement("org.apache.felix.gogo.api", null)
+				.buildSyntheticRequirement();
+
+		List<Capability> providers = cache.findProviders(repository, r1);
+		assertFalse(providers.isEmpty());
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// An equal requirement of another resource is a hit
+		assertSame(providers, cache.findProviders(repository, r2));
+		assertEquals(1, cache.getHits());
+		assertEquals(50, cache.getHitRatio());
+
+		try {
+			providers.clear();
+			fail("cached providers must not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+
+		// A change in a repository clears the cache
+		cache.repositoryRefreshed(null);
+		assertNotSame(providers, cache.findProviders(repository, r1));
+		assertEquals(2, cache.getMisses());
+	}
+
+	public void testClearedByRefresh() throws Exception {
+		try (Processor registry = new Processor();) {
+			ProviderCache cache = new ProviderCache();
+			registry.addBasicPlugin(cache);
+			FixedIndexedRepo repository = new FixedIndexedRepo();
+			repository.setRegistry(registry);
+			repository.setLocations(IO.getFile("testdata/repo1.index.xml").toURI().toString());
+			Requirement r = CapReqBuilder.createPackageRequirement("org.apache.felix.gogo.api", null)
+					.buildSyntheticRequirement();
+
+			List<Capability> providers = cache.findProviders(repository, r);
+			assertSame(providers, cache.findProviders(repository, r));
+
+			// A refreshed index may have other providers
+			assertTrue(repository.refresh());
+			assertNotSame(providers, cache.findProviders(repository, r));
+			assertEquals(2, cache.getMisses());
+		}
+	}
+
+	public void testSharedByValidator() throws Exception {
+		try (ResolverValidator validator = new ResolverValidator();) {
+			ResourceBuilder system = new ResourceBuilder();
+			system.addEE(EE.JavaSE_1_8);
+			system.addManifest(OSGI_CORE.R6_0_0.getManifest());
+			validator.setSystem(system.build());
+			validator.addRepository(IO.getFile("testdata/repo1.index.xml").toURI());
+			FixedIndexedRepo repository = validator.getRepository();
+			Resource resource = ResolverValidator.getAllResources(repository).iterator().next();
+
+			assertTrue(validator.resolve(repository, resource).succeeded);
+			assertEquals(0, validator.providers.getHits());
+			long misses = validator.providers.getMisses();
+			assertTrue(misses > 0);
+
+			// The next resolution finds the providers in the cache
+			assertTrue(validator.resolve(repository, resource).succeeded);
+			assertEquals(misses, validator.providers.getMisses());
+			assertTrue(validator.providers.getHits() > 0);
+			assertTrue(validator.check());
+		}
+	}
+}
@@ -24,6 +24,7 @@ import org.osgi.service.resolver.ResolutionException;
 
 import aQute.bnd.deployer.repository.FixedIndexedRepo;
 import aQute.bnd.osgi.Processor;
+import aQute.bnd.osgi.resource.ResourceUtils;
 import aQute.lib.io.IO;
 import junit.framework.TestCase;
 import test.lib.MockRegistry;
@@ -141,6 +142,110 @@ public class ResolveProcessTest extends TestCase {
 				"org.osgi.service.cm", "org.osgi.service.log", "org.osgi.service.metatype");
 	}
 
+	public void testResolutionCache() throws Exception {
+		File dir = IO.getFile("generated/tmp/test/resolutioncache");
+		IO.delete(dir);
+		try {
+			ResolutionCache cache = new ResolutionCache(dir);
+			ResolverLogger logger = new ResolverLogger();
+
+			Processor model = new Processor();
+			model.setProperty("-runfw", "org.apache.felix.framework");
+			model.setProperty("-runrequires",
+					"osgi.extender;filter:='(&(osgi.extender=osgi.component)(version>=1.3)(!(version>=2)))'");
+
+			ResolveProcess process = new ResolveProcess();
+			process.setResolutionCache(cache);
+			MockRegistry registry = new MockRegistry();
+			registry.addPlugin(getIndex("testdata/repo7/index.xml"));
+			Map<Resource,List<Wire>> resolved = process.resolveRequired(model, null, registry,
+					new BndResolver(logger), Collections.<ResolutionCallback> emptyList(), logger);
+			assertEquals(0, cache.getHits());
+			assertEquals(1, cache.getMisses());
+
+			// The same inputs restore the resolution from the cache
+			process = new ResolveProcess();
+			process.setResolutionCache(cache);
+			registry = new MockRegistry();
+			registry.addPlugin(getIndex("testdata/repo7/index.xml"));
+			Map<Resource,List<Wire>> restored = process.resolveRequired(model, null, registry,
+					new BndResolver(logger), Collections.<ResolutionCallback> emptyList(), logger);
+			assertEquals(1, cache.getHits());
+
+			assertEquals(resolved.size(), restored.size());
+			Resource scr = restored.keySet().iterator().next();
+			assertEquals(ResourceUtils.getIdentityCapability(resolved.keySet().iterator().next()).osgi_identity(),
+					ResourceUtils.getIdentityCapability(scr).osgi_identity());
+			assertEquals(resolved.values().iterator().next().size(), restored.get(scr).size());
+
+			SortedSet<Resource> set = new TreeSet<Resource>(new ResourceComparator());
+			set.addAll(process.getOptionalResources());
+			assertEquals(3, set.size());
+			Iterator<Resource> it = set.iterator();
+			checkOptionalResource(process, it.next(), "org.apache.felix.configadmin", parseVersion("1.8.8"),
+					"org.osgi.service.cm");
+			checkOptionalResource(process, it.next(), "org.apache.felix.log", parseVersion("1.0.1"),
+					"org.osgi.service.log");
+			checkOptionalResource(process, it.next(), "org.apache.felix.metatype", parseVersion("1.1.0"),
+					"org.osgi.service.metatype");
+
+			// Other inputs are resolved again
+			model.setProperty("-runee", "JavaSE-1.8");
+			process = new ResolveProcess();
+			process.setResolutionCache(cache);
+			process.resolveRequired(model, null, registry, new BndResolver(logger),
+					Collections.<ResolutionCallback> emptyList(), logger);
+			assertEquals(1, cache.getHits());
+			assertEquals(2, cache.getMisses());
+
+			// The cache can be disabled
+			model.setProperty(ResolutionCache.PROP_RESOLVE_CACHE, "false");
+			process = new ResolveProcess();
+			process.setResolutionCache(cache);
+			process.resolveRequired(model, null, registry, new BndResolver(logger),
+					Collections.<ResolutionCallback> emptyList(), logger);
+			assertEquals(1, cache.getHits());
+			assertEquals(2, cache.getMisses());
+		} finally {
+			IO.delete(dir);
+		}
+	}
+
+	public void testResolutionCachePrune() throws Exception {
+		File dir = IO.getFile("generated/tmp/test/resolutioncacheprune");
+		IO.delete(dir);
+		try {
+			ResolutionCache cache = new ResolutionCache(dir, 2);
+			Map<Resource,List<Wire>> empty = Collections.emptyMap();
+			String[] digests = {
+					"aa01", "bb02", "aa03"
+			};
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < digests.length; i++) {
+				cache.store(new ResolutionCache.Key(digests[i], null), empty, empty);
+				File file = IO.getFile(dir, digests[i].substring(0, 2) + "/" + digests[i]);
+				assertTrue(file.isFile());
+				file.setLastModified(now - (digests.length - i) * 60000L);
+			}
+			cache.prune();
+
+			assertFalse(IO.getFile(dir, "aa/aa01").exists());
+			assertTrue(IO.getFile(dir, "bb/bb02").isFile());
+			assertTrue(IO.getFile(dir, "aa/aa03").isFile());
+
+			// An emptied directory is removed
+			IO.getFile(dir, "aa/aa03").setLastModified(now - 600000L);
+			cache.prune();
+			assertTrue(IO.getFile(dir, "aa/aa03").isFile());
+			cache.store(new ResolutionCache.Key("cc04", null), empty, empty);
+			assertFalse(IO.getFile(dir, "aa").exists());
+			assertTrue(IO.getFile(dir, "bb/bb02").isFile());
+			assertTrue(IO.getFile(dir, "cc/cc04").isFile());
+		} finally {
+			IO.delete(dir);
+		}
+	}
+
 	protected FixedIndexedRepo getIndex(String location) throws MalformedURLException, URISyntaxException {
 		File index = IO.getFile(location);
 		FixedIndexedRepo fir = new FixedIndexedRepo();
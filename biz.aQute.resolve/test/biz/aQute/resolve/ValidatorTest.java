@@ -108,6 +108,51 @@ public class ValidatorTest extends TestCase {
 		}
 	}
 
+	public void testParallel() throws Exception {
+		List<Resolution> sequential;
+		try (ResolverValidator validator = new ResolverValidator();) {
+			ResourceBuilder system = new ResourceBuilder();
+			system.addEE(EE.JavaSE_1_8);
+			system.addManifest(OSGI_CORE.R6_0_0.getManifest());
+			validator.setSystem(system.build());
+			validator.addRepository(IO.getFile("testdata/repo1.index.xml").toURI());
+			sequential = validator.validate();
+			assertTrue(validator.check());
+		}
+
+		try (ResolverValidator validator = new ResolverValidator();) {
+			ResourceBuilder system = new ResourceBuilder();
+			system.addEE(EE.JavaSE_1_8);
+			system.addManifest(OSGI_CORE.R6_0_0.getManifest());
+			validator.setSystem(system.build());
+			validator.setThreads(4);
+			validator.addRepository(IO.getFile("testdata/repo1.index.xml").toURI());
+			List<Resolution> parallel = validator.validate();
+			assertTrue(validator.check());
+
+			assertEquals(sequential.size(), parallel.size());
+			for (int i = 0; i < sequential.size(); i++) {
+				assertEquals(sequential.get(i).resource, parallel.get(i).resource);
+				assertEquals(sequential.get(i).succeeded, parallel.get(i).succeeded);
+			}
+		}
+	}
+
+	public void testParallelDelibarateFail() throws Exception {
+		try (ResolverValidator validator = new ResolverValidator();) {
+			ResourceBuilder system = new ResourceBuilder();
+			system.addEE(EE.JavaSE_1_8);
+			system.addManifest(OSGI_CORE.R6_0_0.getManifest());
+			validator.setSystem(system.build());
+			validator.setThreads(4);
+			validator.addRepository(IO.getFile("testdata/repo5-broken.index.xml").toURI());
+			List<Resolution> resolutions = validator.validate();
+			assertFalse(validator.check());
+			assertEquals(1, resolutions.size());
+			assertTrue(resolutions.get(0).message.contains("missing requirement org.apache.felix.gogo.api"));
+		}
+	}
+
 	public void _testLarger() throws Exception {
 		try (ResolverValidator validator = new ResolverValidator();) {
 			ResourceBuilder system = new ResourceBuilder();
@@ -2,6 +2,7 @@ package aQute.bnd.maven.baseline.plugin;
 
 import static org.apache.maven.plugins.annotations.LifecyclePhase.VERIFY;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
@@ -32,6 +33,7 @@ import aQute.bnd.differ.Baseline;
 import aQute.bnd.differ.Baseline.BundleInfo;
 import aQute.bnd.differ.Baseline.Info;
 import aQute.bnd.differ.DiffPluginImpl;
+import aQute.bnd.differ.TreeCache;
 import aQute.bnd.osgi.Jar;
 import aQute.libg.reporter.ReporterAdapter;
 import aQute.service.reporter.Reporter;
@@ -66,6 +68,9 @@ public class BaselineMojo extends AbstractMojo {
 
     @Parameter(defaultValue = "false", readonly = true)
     private boolean				skip;
+
+	@Parameter(property = "bnd.baseline.cache", defaultValue = "${user.home}/.bnd/caches/baseline", readonly = true)
+	private File					cache;
     
 	@Component
 	private RepositorySystem		system;
@@ -100,6 +105,7 @@ public class BaselineMojo extends AbstractMojo {
 				}
 
 				Baseline baseline = new Baseline(reporter, new DiffPluginImpl());
+				baseline.setTreeCache(new TreeCache(cache));
 
 				if (checkFailures(artifact, artifactResult, baseline)) {
 					if (continueOnError) {
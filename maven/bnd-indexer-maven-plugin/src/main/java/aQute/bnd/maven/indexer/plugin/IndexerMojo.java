@@ -98,6 +98,9 @@ public class IndexerMojo extends AbstractMojo {
 	@Parameter(property = "bnd.indexer.include.gzip", defaultValue = "true", readonly = true)
 	private boolean						includeGzip;
 
+	@Parameter(property = "bnd.indexer.threads", defaultValue = "1")
+	private int							threads;
+
 	@Parameter(defaultValue = "false", readonly = true)
 	private boolean						skip;
     
@@ -179,6 +182,7 @@ public class IndexerMojo extends AbstractMojo {
 
 		Map<String,String> config = new HashMap<String,String>();
 		config.put(ResourceIndexer.PRETTY, "true");
+		config.put(ResourceIndexer.THREADS, Integer.toString(threads));
 
 		OutputStream output;
 		try {
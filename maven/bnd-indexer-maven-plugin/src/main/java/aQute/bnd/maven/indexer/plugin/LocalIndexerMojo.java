@@ -53,6 +53,9 @@ public class LocalIndexerMojo extends AbstractMojo {
 	@Parameter(property = "bnd.indexer.include.gzip", defaultValue = "true", readonly = true)
 	private boolean						includeGzip;
 
+	@Parameter(property = "bnd.indexer.threads", defaultValue = "1")
+	private int							threads;
+
 	@Parameter(defaultValue = "false", readonly = true)
 	private boolean						skip;
 
@@ -90,6 +93,7 @@ public class LocalIndexerMojo extends AbstractMojo {
 
 		Map<String,String> config = new HashMap<String,String>();
 		config.put(ResourceIndexer.PRETTY, "true");
+		config.put(ResourceIndexer.THREADS, Integer.toString(threads));
 
 		OutputStream output;
 		try {
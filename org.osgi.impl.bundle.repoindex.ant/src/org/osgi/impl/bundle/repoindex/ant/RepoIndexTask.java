@@ -59,6 +59,10 @@ public class RepoIndexTask extends Task {
 		config.put(ResourceIndexer.ROOT_URL, root);
 	}
 
+	public void setThreads(int threads) {
+		config.put(ResourceIndexer.THREADS, Integer.toString(threads));
+	}
+
 	public void setOut(String outFile) {
 		this.repositoryFile = new File(outFile);
 	}
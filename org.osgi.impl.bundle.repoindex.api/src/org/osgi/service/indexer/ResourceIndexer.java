@@ -84,6 +84,15 @@ public interface ResourceIndexer {
 	/** Name of the configuration variable for the verbose mode */
 	public static final String	VERBOSE					= "verbose";
 
+	/**
+	 * Name of the configuration variable for the number of threads that
+	 * analyze the input files concurrently. The default is 1, a value less
+	 * than 1 uses the number of available processors. The resources in the
+	 * XML representation are always in the order of the input files. When more
+	 * than one thread is used the resource analyzers must be thread safe.
+	 */
+	public static final String	THREADS					= "threads";
+
 	/**
 	 * Index a set of input files and write the Repository XML representation to
 	 * the stream
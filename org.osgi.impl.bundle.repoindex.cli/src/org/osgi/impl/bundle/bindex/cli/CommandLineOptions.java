@@ -145,6 +145,16 @@ public class CommandLineOptions {
 	@Option(name = "--noincrement", handler = BooleanOptionHandler.class, usage = "Increment override")
 	boolean						incrementOverride	= DEFAULT_NOINCREMENT;
 
+	/*
+	 * Threads
+	 */
+
+	public static final int		DEFAULT_THREADS		= 1;
+
+	@Option(name = "--threads", metaVar = "n", usage = "Number of threads that analyze the files, less than 1 for the number of processors (default = "
+			+ DEFAULT_THREADS + ")")
+	int							threads				= DEFAULT_THREADS;
+
 	/*
 	 * File List
 	 */
@@ -181,6 +181,8 @@ public class Index {
 			config.put(ResourceIndexer.PRETTY, Boolean.TRUE.toString());
 		}
 
+		config.put(ResourceIndexer.THREADS, Integer.toString(commandLineOptions.threads));
+
 		if (commandLineOptions.overrideBuiltinKnownBundles) {
 			knownBundleAnalyzer = new KnownBundleAnalyzer(new Properties());
 		}
@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -22,6 +23,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
@@ -182,13 +188,18 @@ public class RepoIndex implements ResourceIndexer {
 			repoTag.addAttribute(Schema.ATTR_XML_NAMESPACE, Schema.NAMESPACE);
 
 			repoTag.printOpen(indent, pw, false);
-			for (File file : filesToIndex) {
-				try {
-					Tag resourceTag = generateResource(file, config);
-					resourceTag.print(indent.next(), pw);
-				} catch (Exception e) {
-					log(LogService.LOG_WARNING,
-							MessageFormat.format("Could not index {0}, skipped ({1}).", file, e), null);
+			int threads = getThreads(config);
+			if (threads > 1 && filesToIndex.size() > 1) {
+				generateResources(filesToIndex, config, threads, indent.next(), pw);
+			} else {
+				for (File file : filesToIndex) {
+					try {
+						Tag resourceTag = generateResource(file, config);
+						resourceTag.print(indent.next(), pw);
+					} catch (Exception e) {
+						log(LogService.LOG_WARNING,
+								MessageFormat.format("Could not index {0}, skipped ({1}).", file, e), null);
+					}
 				}
 			}
 			repoTag.printClose(indent, pw);
@@ -200,6 +211,54 @@ public class RepoIndex implements ResourceIndexer {
 		}
 	}
 
+	private int getThreads(Map<String,String> config) {
+		String threadsSetting = config.get(ResourceIndexer.THREADS);
+		if (threadsSetting == null)
+			return 1;
+
+		int threads;
+		try {
+			threads = Integer.parseInt(threadsSetting.trim());
+		} catch (NumberFormatException e) {
+			log(LogService.LOG_WARNING, MessageFormat.format("Invalid number of threads {0}, using 1.", threadsSetting),
+					null);
+			return 1;
+		}
+		return threads < 1 ? Runtime.getRuntime().availableProcessors() : threads;
+	}
+
+	/*
+	 * Analyze the files concurrently. The resources are printed in the order
+	 * of the files, a resource is printed as soon as its file and all files
+	 * before it have been analyzed.
+	 */
+	private void generateResources(Set<File> files, final Map<String,String> config, int threads, Indent indent,
+			PrintWriter pw) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+		try {
+			Map<File,Future<Tag>> resourceTags = new LinkedHashMap<File,Future<Tag>>();
+			for (final File file : files) {
+				resourceTags.put(file, executor.submit(new Callable<Tag>() {
+					public Tag call() throws Exception {
+						return generateResource(file, config);
+					}
+				}));
+			}
+
+			for (Entry<File,Future<Tag>> entry : resourceTags.entrySet()) {
+				try {
+					Tag resourceTag = entry.getValue().get();
+					resourceTag.print(indent, pw);
+				} catch (ExecutionException e) {
+					log(LogService.LOG_WARNING, MessageFormat.format("Could not index {0}, skipped ({1}).",
+							entry.getKey(), e.getCause()), null);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	private void resolveDirectories(Set<File> files, Set<File> filesToIndex) {
 		for (File file : files) {
 			if (!file.isDirectory()) {
@@ -259,32 +318,35 @@ public class RepoIndex implements ResourceIndexer {
 				bundleAnalyzer.setStateLocal(null);
 			}
 
-			// Iterate over the analyzers
+			// Iterate over a copy of the analyzers, other resources can be
+			// analyzed concurrently
+			List<Pair<ResourceAnalyzer,Filter>> entries;
+			synchronized (analyzers) {
+				entries = new ArrayList<Pair<ResourceAnalyzer,Filter>>(analyzers);
+			}
 			try {
-				synchronized (analyzers) {
-					for (Pair<ResourceAnalyzer,Filter> entry : analyzers) {
-						ResourceAnalyzer analyzer = entry.getFirst();
-						Filter filter = entry.getSecond();
-
-						if (filter == null || filter.match(resource.getProperties())) {
-							try {
-								analyzer.analyzeResource(resource, caps, reqs);
-							} catch (Exception e) {
-								log(LogService.LOG_ERROR,
-										MessageFormat.format("Error calling analyzer \"{0}\" on resource {1}.",
-												analyzer.getClass().getName(), resource.getLocation()),
-										e);
-
-								StringWriter writer = new StringWriter();
-								Formatter comment = new Formatter(writer);
-								comment.format(
-										"Error calling analyzer \"%s\" on resource %s with message %s and stack: ",
-										analyzer.getClass().getName(), resource.getLocation(), e);
-								comment.close();
-								e.printStackTrace(new PrintWriter(writer));
-
-								resourceTag.addComment(writer.toString());
-							}
+				for (Pair<ResourceAnalyzer,Filter> entry : entries) {
+					ResourceAnalyzer analyzer = entry.getFirst();
+					Filter filter = entry.getSecond();
+
+					if (filter == null || filter.match(resource.getProperties())) {
+						try {
+							analyzer.analyzeResource(resource, caps, reqs);
+						} catch (Exception e) {
+							log(LogService.LOG_ERROR,
+									MessageFormat.format("Error calling analyzer \"{0}\" on resource {1}.",
+											analyzer.getClass().getName(), resource.getLocation()),
+									e);
+
+							StringWriter writer = new StringWriter();
+							Formatter comment = new Formatter(writer);
+							comment.format(
+									"Error calling analyzer \"%s\" on resource %s with message %s and stack: ",
+									analyzer.getClass().getName(), resource.getLocation(), e);
+							comment.close();
+							e.printStackTrace(new PrintWriter(writer));
+
+							resourceTag.addComment(writer.toString());
 						}
 					}
 				}
@@ -304,6 +304,44 @@ public class TestIndexer extends TestCase {
 		}
 	}
 
+	public void testFullIndexThreads() throws Exception {
+		RepoIndex indexer = new RepoIndex();
+
+		Set<File> files = new LinkedHashSet<File>();
+		files.add(new File("testdata/06-requirebundle.jar"));
+		files.add(new File("testdata/03-export.jar"));
+
+		Map<String,String> config = new HashMap<String,String>();
+		config.put(RepoIndex.REPOSITORY_INCREMENT_OVERRIDE, "0");
+		config.put(ResourceIndexer.REPOSITORY_NAME, "full-c+f");
+		config.put(ResourceIndexer.PRETTY, "true");
+		config.put(ResourceIndexer.THREADS, "4");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		indexer.index(files, out, config);
+
+		String expected = Utils.readStream(new FileInputStream("testdata/full-03+06.txt"));
+		assertEquals(expected, out.toString());
+	}
+
+	public void testIndexDirectoryThreads() throws Exception {
+		RepoIndex indexer = new RepoIndex(mock(LogService.class));
+		Set<File> files = Collections.singleton(new File("testdata"));
+
+		Map<String,String> config = new HashMap<String,String>();
+		config.put(RepoIndex.REPOSITORY_INCREMENT_OVERRIDE, "0");
+		config.put(ResourceIndexer.PRETTY, "true");
+
+		ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+		indexer.index(files, sequential, config);
+
+		config.put(ResourceIndexer.THREADS, "0");
+		ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+		indexer.index(files, parallel, config);
+
+		assertEquals(sequential.toString(), parallel.toString());
+	}
+
 	public void testAddAnalyzer() throws Exception {
 		RepoIndex indexer = new RepoIndex();
 		indexer.addAnalyzer(new WibbleAnalyzer(), null);